@@ -0,0 +1,131 @@
+package test.cs.teamproject.sabrewulf;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.ServerWorld;
+import uob.cs.teamproject.sabrewulf.components.Inventory;
+import uob.cs.teamproject.sabrewulf.components.MovementPhysics;
+import uob.cs.teamproject.sabrewulf.map.Cell;
+import uob.cs.teamproject.sabrewulf.map.GameMap;
+import uob.cs.teamproject.sabrewulf.map.GameMapWrapper;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Tests for the {@link ServerWorld} class. */
+public class ServerWorldTest {
+
+    /* map generation parameters */
+    private final int mapWidth = 1080;
+    private final int mapHeight = 1080;
+    private final int cellCountX = 14;
+    private final int cellCountY = 14;
+
+    private final GameMapWrapper mapData = new GameMap(cellCountX, cellCountY, mapWidth/cellCountX,
+            mapHeight/cellCountY).getGameMapWrapper();
+
+    /* find a cell with no key or power-up, other than the given one */
+    private Cell findPlainCell(Cell other) {
+        for (Cell[] column : mapData.getCellGrid()) {
+            for (Cell cell : column) {
+                if (!cell.hasKey() && !cell.hasPowerUp() && cell != other) {
+                    return cell;
+                }
+            }
+        }
+        fail("Map has no plain cells");
+        return null;
+    }
+
+    /* find a number of different cells with no key or power-up */
+    private Cell[] findPlainCells(int count) {
+        Cell[] cells = new Cell[count];
+        int found = 0;
+        for (Cell[] column : mapData.getCellGrid()) {
+            for (Cell cell : column) {
+                if (found < count && !cell.hasKey() && !cell.hasPowerUp()) {
+                    cells[found++] = cell;
+                }
+            }
+        }
+        assertEquals(count, found, "Map has too few plain cells");
+        return cells;
+    }
+
+    /* move the first player onto the first enemy and run one step */
+    private void walkIntoEnemy(ServerWorld world, boolean invisible, long now) {
+        double[] enemyPositions = world.getDataStorage().enemyPositions;
+        world.setPlayerState(0, enemyPositions[0], enemyPositions[1], invisible);
+        world.update(now);
+    }
+
+    /** Test that the enemies are moved by their AI without anything being drawn. */
+    @Test
+    public void enemiesMoveTest() {
+        Cell playerCell = findPlainCell(null);
+        Cell enemyCell = mapData.getRandomEmptyCellOnRows(0, 4);
+        ServerWorld world = new ServerWorld(mapData,
+                new XYPair[]{new XYPair(playerCell.getX(), playerCell.getY())},
+                new XYPair[]{new XYPair(enemyCell.getX(), enemyCell.getY())});
+
+        for (int i = 0; i < 120; i++) {
+            world.update(i * 16_666_667L);
+        }
+        double[] enemyPositions = world.getDataStorage().enemyPositions;
+        assertTrue(enemyPositions[0] != enemyCell.getX() || enemyPositions[1] != enemyCell.getY(),
+                "Enemy has not moved");
+        world.remove();
+    }
+
+    /** Test that a coin is removed and counted for the player who picks it up. */
+    @Test
+    public void coinPickedUpTest() {
+        Cell playerCell = findPlainCell(null);
+        Cell coinCell = findPlainCell(playerCell);
+        ServerWorld world = new ServerWorld(mapData,
+                new XYPair[]{new XYPair(playerCell.getX(), playerCell.getY()), new XYPair(-1000, -1000)},
+                new XYPair[0]);
+
+        int coins = world.getNumCoins();
+        assertTrue(coins > 0, "World has no coins");
+        world.setPlayerState(0, coinCell.getX(), coinCell.getY(), false);
+        world.update(0);
+        assertEquals(coins - 1, world.getNumCoins(), "Coin was not removed");
+        assertEquals(1, world.getCoinsCollected(0), "Coin was not counted for the player who picked it up");
+        assertEquals(0, world.getCoinsCollected(1), "Coin was counted for the wrong player");
+
+        world.update(1);
+        assertEquals(1, world.getCoinsCollected(0), "Coin was counted twice");
+        world.remove();
+    }
+
+    /** Test that the score counts the coins picked up and loses points, never below zero, for each time the player
+     * is caught, but not while the player is invisible or still caught from the last time. */
+    @Test
+    public void caughtLosesPointsTest() {
+        Cell[] cells = findPlainCells(7);
+        ServerWorld world = new ServerWorld(mapData,
+                new XYPair[]{new XYPair(cells[0].getX(), cells[0].getY())},
+                new XYPair[]{new XYPair(cells[6].getX(), cells[6].getY())});
+        world.update(0);
+        walkIntoEnemy(world, true, 1);
+        assertEquals(Inventory.COIN_SCORE, world.getScore(0), "Invisible player was caught");
+
+        for (int i = 1; i < 6; i++) {
+            world.setPlayerState(0, cells[i].getX(), cells[i].getY(), false);
+            world.update(1 + i);
+        }
+        assertEquals(6 * Inventory.COIN_SCORE, world.getScore(0), "Coins were not counted");
+
+        walkIntoEnemy(world, false, 10);
+        assertEquals(6 * Inventory.COIN_SCORE - Inventory.HIT_PENALTY, world.getScore(0), "Catch was not counted");
+        walkIntoEnemy(world, false, 11);
+        assertEquals(6 * Inventory.COIN_SCORE - Inventory.HIT_PENALTY, world.getScore(0),
+                "Player was caught again while still caught");
+
+        for (int i = 0; i < Inventory.STUNNED_SECONDS * MovementPhysics.FRAMES_PER_SECOND; i++) {
+            walkIntoEnemy(world, false, 12 + i);
+        }
+        assertEquals(0, world.getScore(0), "Score went below zero");
+        world.remove();
+    }
+}
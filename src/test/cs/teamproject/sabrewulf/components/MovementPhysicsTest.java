@@ -0,0 +1,70 @@
+package test.cs.teamproject.sabrewulf.components;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
+import uob.cs.teamproject.sabrewulf.components.MovementPhysics;
+import uob.cs.teamproject.sabrewulf.map.Cell;
+import uob.cs.teamproject.sabrewulf.map.Divider;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests for {@link MovementPhysics}. */
+public class MovementPhysicsTest {
+
+    /** Test that a step moves from whole world units in each direction */
+    @Test
+    public void stepTest() {
+        XYPair position = new XYPair(10.7, 20.2);
+
+        MovementPhysics.step(position, CharacterMovement.Direction.RIGHT, CharacterMovement.Direction.UP, 3);
+
+        assertEquals(13, position.x);
+        assertEquals(17, position.y);
+
+        MovementPhysics.step(position, CharacterMovement.Direction.LEFT, CharacterMovement.Direction.NONE, 6);
+
+        assertEquals(7, position.x);
+        assertEquals(17, position.y);
+    }
+
+    /** Test that a player moves while it holds a direction key, unless it also holds the key to stand still */
+    @Test
+    public void isMovingTest() {
+        assertTrue(MovementPhysics.isMoving(CharacterMovement.Direction.LEFT, CharacterMovement.Direction.NONE, false));
+        assertTrue(MovementPhysics.isMoving(CharacterMovement.Direction.NONE, CharacterMovement.Direction.UP, false));
+        assertFalse(MovementPhysics.isMoving(CharacterMovement.Direction.NONE, CharacterMovement.Direction.NONE,
+                false));
+        assertFalse(MovementPhysics.isMoving(CharacterMovement.Direction.RIGHT, CharacterMovement.Direction.DOWN,
+                true));
+    }
+
+    /** Test that a wide overlap reverts Y, a tall one reverts X and a corner reverts both */
+    @Test
+    public void wallCollisionTest() {
+        XYPair wide = new XYPair(20, 3);
+        assertFalse(MovementPhysics.revertsX(wide));
+        assertTrue(MovementPhysics.revertsY(wide));
+
+        XYPair tall = new XYPair(3, 20);
+        assertTrue(MovementPhysics.revertsX(tall));
+        assertFalse(MovementPhysics.revertsY(tall));
+
+        XYPair corner = new XYPair(4, 4 + MovementPhysics.CORNER_THRESHOLD);
+        assertTrue(MovementPhysics.revertsX(corner));
+        assertTrue(MovementPhysics.revertsY(corner));
+    }
+
+    /** Test that each door is opened by the key of its own colour */
+    @Test
+    public void wallTagDataTest() {
+        assertEquals(0, MovementPhysics.wallTagData(Divider.DividerType.WALL));
+        assertEquals(Cell.KeyType.BLUEKEY.ordinal() + 1, MovementPhysics.wallTagData(Divider.DividerType.BLUEDOOR));
+        assertEquals(Cell.KeyType.GREENKEY.ordinal() + 1,
+                MovementPhysics.wallTagData(Divider.DividerType.GREENDOOR));
+        assertEquals(Cell.KeyType.YELLOWKEY.ordinal() + 1,
+                MovementPhysics.wallTagData(Divider.DividerType.YELLOWDOOR));
+    }
+}
@@ -15,6 +15,7 @@ import uob.cs.teamproject.sabrewulf.rendering.ResizeableCanvas;
 import uob.cs.teamproject.sabrewulf.ui.selectors.MODE;
 import uob.cs.teamproject.sabrewulf.ui.selectors.MODEL;
 import uob.cs.teamproject.sabrewulf.util.Transform;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
 
 import java.io.IOException;
 import java.net.SocketException;
@@ -30,9 +31,15 @@ public class RemotePLayerTest {
         networkSystem.initiateNetworkSystem(1,"test1","127.0.0.1", "55000");
         networkSystem.start();
 
-        networkSystem.getClient().sendCoordinates(CharacterMovement.Direction.LEFT, CharacterMovement.Direction.DOWN,
-                false, CharacterMovement.Direction.DOWN, 130.0, 100.0, false, false);
-        networkSystem.update();
+        networkSystem.getClient().sendInput(CharacterMovement.Direction.LEFT, CharacterMovement.Direction.DOWN,
+                true, false, false);
+        /* wait for the state to come back from the server and be published to the game thread */
+        DataStorage dataStorage = networkSystem.getClient().getDataStorage();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (dataStorage.getTransformCheck(0) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+            networkSystem.update();
+        }
 
         Transform transform = new Transform(10.0,10.0,10.0,10.0);
         Renderer renderer = new Renderer(new ResizeableCanvas(1080,1080));
@@ -40,11 +47,13 @@ public class RemotePLayerTest {
         CharacterMovement characterMovement = new CharacterMovement(characterAnimator, transform, null);
         PlayerCollider playerCollider = new PlayerCollider(new CollisionSystem(),transform);
         RemotePlayer remotePlayer = new RemotePlayer(transform,characterAnimator,playerCollider,characterMovement,
-                0,null,networkSystem.getClient().getDataStorage());
+                0,null,dataStorage);
 
+        /* the server puts the player where its commands take it, which is still its spawn */
+        XYPair spawn = dataStorage.getSpawnAt()[0];
         remotePlayer.update(1);
-        assertEquals(130.0,transform.position.x, 0.01);
-        assertEquals(100.0,transform.position.y, 0.01);
+        assertEquals(spawn.x,transform.position.x, 0.01);
+        assertEquals(spawn.y,transform.position.y, 0.01);
 
         networkSystem.closeClientSocket();
         networkSystem.closeServerSocket();
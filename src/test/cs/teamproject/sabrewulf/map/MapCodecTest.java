@@ -0,0 +1,76 @@
+package test.cs.teamproject.sabrewulf.map;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.map.Cell;
+import uob.cs.teamproject.sabrewulf.map.Divider;
+import uob.cs.teamproject.sabrewulf.map.GameMap;
+import uob.cs.teamproject.sabrewulf.map.MapCodec;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MapCodecTest {
+
+    /* map generation parameters */
+    private final int mapWidth = 1080;
+    private final int mapHeight = 1080;
+    private final int cellCountX = 14;
+    private final int cellCountY = 14;
+
+    @Test
+    public void encodedSizeTest() {
+        GameMap map = new GameMap(cellCountX, cellCountY, mapWidth/cellCountX, mapHeight/cellCountY);
+        ByteBuffer buffer = ByteBuffer.allocate(MapCodec.encodedSize(cellCountX, cellCountY));
+        MapCodec.encode(map.getCellGrid(), mapWidth/cellCountX, mapHeight/cellCountY, buffer);
+        assertFalse(buffer.hasRemaining(), "Encoded size is wrong");
+        assertTrue(buffer.position() < 300, "Encoded map is too large");
+    }
+
+    @Test
+    public void roundTripTest() {
+        GameMap map = new GameMap(cellCountX, cellCountY, mapWidth/cellCountX, mapHeight/cellCountY);
+        map.getCell(3, 2).setEmpty(false);
+        Cell[][] original = map.getCellGrid();
+
+        ByteBuffer buffer = ByteBuffer.allocate(MapCodec.encodedSize(cellCountX, cellCountY));
+        MapCodec.encode(original, mapWidth/cellCountX, mapHeight/cellCountY, buffer);
+        buffer.flip();
+        Cell[][] decoded = MapCodec.decode(buffer);
+
+        assertEquals(cellCountX, decoded.length, "Number of columns is wrong");
+        assertEquals(cellCountY, decoded[0].length, "Number of rows is wrong");
+        for (int x = 0; x < cellCountX; x++) {
+            for (int y = 0; y < cellCountY; y++) {
+                Cell expected = original[x][y];
+                Cell actual = decoded[x][y];
+                assertEquals(expected.getGridX(), actual.getGridX(), "x co-ordinate is wrong");
+                assertEquals(expected.getGridY(), actual.getGridY(), "y co-ordinate is wrong");
+                assertArrayEquals(expected.getDividerArray(), actual.getDividerArray(), "Dividers are wrong");
+                assertArrayEquals(expected.drawOrder(), actual.drawOrder(), "Draw order is wrong");
+                assertEquals(expected.hasKey(), actual.hasKey(), "hasKey is wrong");
+                assertEquals(expected.hasKey() ? expected.getKeyType() : null, actual.getKeyType(),
+                        "Key type is wrong");
+                assertEquals(expected.hasPowerUp(), actual.hasPowerUp(), "hasPowerUp is wrong");
+                assertEquals(expected.hasPowerUp() ? expected.getPowerUpType() : null, actual.getPowerUpType(),
+                        "Power up type is wrong");
+                assertEquals(expected.isEmpty(), actual.isEmpty(), "isEmpty is wrong");
+            }
+        }
+    }
+
+    @Test
+    public void neighboursAreLinkedTest() {
+        GameMap map = new GameMap(cellCountX, cellCountY, mapWidth/cellCountX, mapHeight/cellCountY);
+        ByteBuffer buffer = ByteBuffer.allocate(MapCodec.encodedSize(cellCountX, cellCountY));
+        MapCodec.encode(map.getCellGrid(), mapWidth/cellCountX, mapHeight/cellCountY, buffer);
+        buffer.flip();
+        Cell[][] decoded = MapCodec.decode(buffer);
+
+        assertSame(decoded[5][4], decoded[5][5].getNeighbour(Cell.Direction.UP), "UP neighbour is wrong");
+        assertSame(decoded[6][5], decoded[5][5].getNeighbour(Cell.Direction.RIGHT), "RIGHT neighbour is wrong");
+        assertFalse(decoded[0][0].hasNeighbour(Cell.Direction.LEFT), "Corner cell has a LEFT neighbour");
+        assertEquals(Divider.DividerType.WALL, decoded[0][0].getDivider(Cell.Direction.UP).getDividerType(),
+                "Boundary is not a wall");
+    }
+}
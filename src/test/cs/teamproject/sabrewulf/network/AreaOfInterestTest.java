@@ -0,0 +1,109 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
+import uob.cs.teamproject.sabrewulf.map.Cell;
+import uob.cs.teamproject.sabrewulf.network.AreaOfInterest;
+import uob.cs.teamproject.sabrewulf.network.Protocol;
+import uob.cs.teamproject.sabrewulf.network.Snapshot;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class AreaOfInterestTest {
+
+    private static final int SIZE = 10;
+    private static final int CELL = 60;
+
+    /* a grid of closed cells with one open corridor along row 5 */
+    private static AreaOfInterest corridor(int clients, int radius){
+        Cell[][] grid = new Cell[SIZE][SIZE];
+        for(int column = 0; column < SIZE; column++){
+            for(int row = 0; row < SIZE; row++){
+                grid[column][row] = new Cell(column, row);
+            }
+        }
+        for(int column = 0; column + 1 < SIZE; column++){
+            grid[column][5].getCellDividers()[2].inactivate();
+            grid[column + 1][5].getCellDividers()[3].inactivate();
+        }
+        return new AreaOfInterest(grid, CELL, CELL, clients, radius);
+    }
+
+    /* the centre of a cell, the map being centred on the origin */
+    private static double centre(int cell){
+        return cell * CELL - SIZE * CELL * 0.5 + CELL * 0.5;
+    }
+
+    private static void setPlayer(Snapshot snapshot, int slot, double x, double y){
+        ByteBuffer record = ByteBuffer.allocate(Protocol.PLAYER_RECORD_SIZE);
+        Protocol.writePlayer(record, 50000 + slot, CharacterMovement.Direction.NONE, CharacterMovement.Direction.NONE,
+                false, CharacterMovement.Direction.DOWN, false, false, x, y);
+        snapshot.setPlayer(slot, record);
+    }
+
+    @Test
+    public void radiusAndCorridorAreInterestingTest(){
+        AreaOfInterest interest = corridor(1, 1);
+        interest.moveTo(0, centre(5), centre(5));
+
+        assertTrue(interest.isInteresting(0, centre(6), centre(6)));
+        assertTrue(interest.isInteresting(0, centre(4), centre(4)));
+        /* at the ends of the corridor */
+        assertTrue(interest.isInteresting(0, centre(9), centre(5)));
+        assertTrue(interest.isInteresting(0, centre(0), centre(5)));
+        /* behind walls and out of the radius */
+        assertFalse(interest.isInteresting(0, centre(5), centre(9)));
+        assertFalse(interest.isInteresting(0, centre(8), centre(6)));
+    }
+
+    @Test
+    public void playerLeavingIsSentOnceThenLeftOutTest(){
+        AreaOfInterest interest = corridor(2, 1);
+        Snapshot baseline = new Snapshot(2, 0);
+        baseline.reset(1);
+        setPlayer(baseline, 0, centre(5), centre(5));
+        setPlayer(baseline, 1, centre(5), centre(6));
+
+        /* the other player walks out of the radius, into a closed cell */
+        Snapshot left = new Snapshot(2, 0);
+        left.reset(2);
+        setPlayer(left, 0, centre(5), centre(5));
+        setPlayer(left, 1, centre(5), centre(8));
+        assertTrue(interest.filter(0, left, baseline));
+        assertTrue(Protocol.isAbsent(left.getPlayerField(1, 1) & 0xFFFF));
+        assertEquals(baseline.getPlayerField(1, 3), left.getPlayerField(1, 3));
+        assertEquals(1 + 2, left.playerDeltaSize(1, baseline));
+
+        /* while away nothing more is sent about it */
+        Snapshot away = new Snapshot(2, 0);
+        away.reset(3);
+        setPlayer(away, 0, centre(5), centre(5));
+        setPlayer(away, 1, centre(4), centre(9));
+        assertTrue(interest.filter(0, away, left));
+        assertEquals(0, away.playerDeltaSize(1, left));
+
+        /* and it is sent in full once it comes back */
+        Snapshot back = new Snapshot(2, 0);
+        back.reset(4);
+        setPlayer(back, 0, centre(5), centre(5));
+        setPlayer(back, 1, centre(9), centre(5));
+        assertFalse(interest.filter(0, back, away));
+        assertFalse(Protocol.isAbsent(back.getPlayerField(1, 1) & 0xFFFF));
+        assertTrue(back.playerDeltaSize(1, away) > 0);
+    }
+
+    @Test
+    public void unknownPlayerOutsideIsNotSentTest(){
+        AreaOfInterest interest = corridor(2, 1);
+        Snapshot snapshot = new Snapshot(2, 0);
+        snapshot.reset(1);
+        setPlayer(snapshot, 0, centre(5), centre(5));
+        setPlayer(snapshot, 1, centre(0), centre(0));
+
+        assertTrue(interest.filter(0, snapshot, null));
+        assertTrue(snapshot.hasPlayer(0));
+        assertFalse(snapshot.hasPlayer(1));
+    }
+}
@@ -0,0 +1,80 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.network.ClockSync;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ClockSyncTest {
+
+    private static final long MS = 1_000_000L;
+
+    /* a server clock which started 5 seconds after the local one and runs at a given rate */
+    private static long serverClock(long local, double drift) {
+        return (long) ((local - 5000 * MS) * (1 + drift));
+    }
+
+    /* ping the server every 250 ms for a number of seconds, each way taking a given delay, and half the time up to
+     * a given queueing delay more */
+    private static long exchange(ClockSync clock, long start, int seconds, long delay, long queueing, double drift,
+                                 Random random) {
+        long now = start;
+        for (int i = 0; i < seconds * 4; i++) {
+            long there = delay + queued(queueing, random);
+            long back = delay + queued(queueing, random);
+            clock.onSample(now, serverClock(now + there, drift), now + there + back);
+            now += 250 * MS;
+        }
+        return now;
+    }
+
+    private static long queued(long queueing, Random random) {
+        return random.nextBoolean() ? (long) (random.nextDouble() * queueing) : 0;
+    }
+
+    @Test
+    public void offsetIsExactWithSymmetricDelayTest() {
+        ClockSync clock = new ClockSync();
+        assertFalse(clock.isSynchronized());
+        long now = exchange(clock, 6000 * MS, 2, 40 * MS, 0, 0, new Random(1));
+
+        assertTrue(clock.isSynchronized());
+        assertEquals(-5000 * MS, clock.getOffset());
+        assertEquals(80 * MS, clock.getRoundTripTime());
+        assertEquals(serverClock(now, 0), clock.toServerTime(now));
+        assertEquals(now, clock.toLocalTime(clock.toServerTime(now)));
+    }
+
+    @Test
+    public void queueingDelayIsFilteredOutTest() {
+        ClockSync clock = new ClockSync();
+        /* pings are held up by up to 200 ms either way, but the offset is taken from the fastest */
+        long now = exchange(clock, 6000 * MS, 10, 20 * MS, 200 * MS, 0, new Random(2));
+
+        long error = clock.toServerTime(now) - serverClock(now, 0);
+        assertTrue("error " + error, Math.abs(error) <= MS);
+        assertTrue(clock.getRoundTripTime() < 60 * MS);
+    }
+
+    @Test
+    public void driftIsTrackedTest() {
+        double drift = 200e-6;
+        ClockSync clock = new ClockSync();
+        long now = exchange(clock, 6000 * MS, 120, 20 * MS, 2 * MS, drift, new Random(3));
+
+        assertEquals(drift, clock.getDrift(), 50e-6);
+        /* a second after the last ping the clocks still agree to within a millisecond */
+        long later = now + 1000 * MS;
+        long error = clock.toServerTime(later) - serverClock(later, drift);
+        assertTrue("error " + error, Math.abs(error) <= MS);
+    }
+
+    @Test
+    public void driftIsClampedTest() {
+        ClockSync clock = new ClockSync();
+        exchange(clock, 6000 * MS, 60, 20 * MS, 0, 0.01, new Random(4));
+        assertEquals(ClockSync.MAX_DRIFT, clock.getDrift(), 1e-9);
+    }
+}
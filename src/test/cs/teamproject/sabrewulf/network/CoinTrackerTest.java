@@ -0,0 +1,93 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.map.Cell;
+import uob.cs.teamproject.sabrewulf.map.GameMapWrapper;
+import uob.cs.teamproject.sabrewulf.network.CoinTracker;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
+
+import static org.junit.Assert.*;
+
+public class CoinTrackerTest {
+
+    private static final int SIZE = 3;
+    private static final int CELL = 77;
+
+    /* a grid of plain cells with a key in the top left one, and a player spawning in the centre one */
+    private static CoinTracker tracker(){
+        Cell[][] grid = new Cell[SIZE][SIZE];
+        for(int column = 0; column < SIZE; column++){
+            for(int row = 0; row < SIZE; row++){
+                grid[column][row] = new Cell(column * CELL, row * CELL);
+            }
+        }
+        grid[0][0].setHasKey(true);
+        GameMapWrapper map = new GameMapWrapper(SIZE, SIZE, CELL, CELL, grid);
+        return new CoinTracker(map, new XYPair[]{new XYPair(grid[1][1].getX(), grid[1][1].getY())});
+    }
+
+    /* the centre of a cell */
+    private static double centre(int cell){
+        return cell * CELL - 540 + CELL / 2;
+    }
+
+    @Test
+    public void coinsAreInCellsWithNothingElseTest(){
+        CoinTracker coins = tracker();
+
+        assertEquals(SIZE * SIZE - 2, coins.getRemaining());
+    }
+
+    @Test
+    public void coinIsOnlyCollectedOnceTest(){
+        CoinTracker coins = tracker();
+        coins.onInput(0, 1, centre(2) - 10, centre(1));
+
+        assertTrue(coins.claim(0, 1));
+        assertEquals(SIZE * SIZE - 3, coins.getRemaining());
+        assertFalse(coins.claim(0, 1));
+        assertEquals(SIZE * SIZE - 3, coins.getRemaining());
+    }
+
+    @Test
+    public void coinOutOfReachIsRefusedTest(){
+        CoinTracker coins = tracker();
+        /* at the spawn, and up against the wall of the next cell */
+        coins.onInput(0, 1, centre(1), centre(1));
+        coins.onInput(0, 2, centre(1) + 22, centre(1));
+        /* by the key, which is not a coin */
+        coins.onInput(0, 3, centre(0), centre(0));
+
+        assertFalse(coins.claim(0, 1));
+        assertFalse(coins.claim(0, 2));
+        assertFalse(coins.claim(0, 3));
+        assertEquals(SIZE * SIZE - 2, coins.getRemaining());
+    }
+
+    @Test
+    public void claimIsCheckedWhereItsCommandMovedThePlayerTest(){
+        CoinTracker coins = tracker();
+        coins.onInput(0, 1, centre(1), centre(1));
+
+        /* the claim arrives before the command, which is only then checked */
+        assertFalse(coins.claim(0, 2));
+        assertEquals(1, coins.onInput(0, 2, centre(1), centre(2) - 20));
+        assertEquals(SIZE * SIZE - 3, coins.getRemaining());
+
+        /* the claim arrives after the player has walked back to the spawn */
+        coins.onInput(0, 3, centre(1), centre(0) + 20);
+        coins.onInput(0, 4, centre(1), centre(1));
+        assertTrue(coins.claim(0, 3));
+        assertEquals(SIZE * SIZE - 4, coins.getRemaining());
+    }
+
+    @Test
+    public void claimAfterLostCommandIsCheckedAtTheNextTest(){
+        CoinTracker coins = tracker();
+        coins.onInput(0, 1, centre(1), centre(1));
+        coins.onInput(0, 3, centre(2) - 20, centre(1));
+
+        assertTrue(coins.claim(0, 2));
+        assertEquals(SIZE * SIZE - 3, coins.getRemaining());
+    }
+}
@@ -6,8 +6,12 @@ import uob.cs.teamproject.sabrewulf.map.Cell;
 import uob.cs.teamproject.sabrewulf.network.DataStorage;
 import uob.cs.teamproject.sabrewulf.util.XYPair;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.*;
 
@@ -18,24 +22,38 @@ public class DataStorageTest {
             super(numOfPlayers,numOfEnemies);
         }
 
-        public void setReceivedEnemyDirections(int num, String dirX, String dirY, String isMoving, String facing){
+        public void setReceivedEnemyDirections(int num, CharacterMovement.Direction dirX,
+                                               CharacterMovement.Direction dirY, boolean isMoving,
+                                               CharacterMovement.Direction facing){
             super.setReceivedEnemyDirections(num,dirX,dirY,isMoving,facing);
         }
 
 
-        public void setReceivedPlayerInfo(int num, String dirX, String dirY, String isMoving, String facing,
-                                          String invisibility, String speed, String transformX, String transformY){
+        public void setReceivedPlayerInfo(int num, CharacterMovement.Direction dirX, CharacterMovement.Direction dirY,
+                                          boolean isMoving, CharacterMovement.Direction facing,
+                                          boolean invisibility, boolean speed, double transformX, double transformY){
             super.setReceivedPlayerInfo(num,dirX,dirY,isMoving,facing,invisibility,speed,transformX,transformY);
         }
+
+        public void addPlayerState(int num, long time, double x, double y, int bits){
+            super.addPlayerState(num,time,x,y,bits);
+        }
+
+        public void publishReceivedState(){
+            super.publishReceivedState();
+        }
     }
 
     @Test
     public void setAndGetReceivedEnemyDirectionsTest(){
         DataStorageTestSubclass dataStorage = new DataStorageTestSubclass(2,3);
 
-        dataStorage.setReceivedEnemyDirections(0,"LEFT", "UP", "true", "UP");
-        dataStorage.setReceivedEnemyDirections(1,"RIGHT", "NONE", "false", "RIGHT");
-        dataStorage.setReceivedEnemyDirections(2,"a", "2", "r", "");
+        dataStorage.setReceivedEnemyDirections(0,CharacterMovement.Direction.LEFT, CharacterMovement.Direction.UP,
+                true, CharacterMovement.Direction.UP);
+        dataStorage.setReceivedEnemyDirections(1,CharacterMovement.Direction.RIGHT, CharacterMovement.Direction.NONE,
+                false, CharacterMovement.Direction.RIGHT);
+        dataStorage.publishReceivedState();
+        assertTrue(dataStorage.acquireReceivedState());
 
         CharacterMovement.Direction[] directions = dataStorage.getEnemyDirections();
         CharacterMovement.Direction[] facing = dataStorage.getEnemyIsFacing();
@@ -51,8 +69,7 @@ public class DataStorageTest {
         assertEquals(CharacterMovement.Direction.RIGHT,facing[1]);
         assertFalse(isMoving[1]);
 
-        assertEquals(CharacterMovement.Direction.NONE,directions[4]);
-        assertEquals(CharacterMovement.Direction.DOWN,directions[5]);
+        /* an enemy which has not been received keeps its initial state */
         assertEquals(CharacterMovement.Direction.DOWN,facing[2]);
         assertFalse(isMoving[2]);
     }
@@ -61,12 +78,12 @@ public class DataStorageTest {
     public void setAndGetReceivedPlayerInfoTest(){
         DataStorageTestSubclass dataStorage = new DataStorageTestSubclass(3,0);
 
-        dataStorage.setReceivedPlayerInfo(0,"LEFT", "UP", "true", "UP","false",
-                "false","130.0","150.0");
-        dataStorage.setReceivedPlayerInfo(1,"RIGHT", "NONE", "false", "RIGHT",
-                "true", "true","-135.0","0.0");
-        dataStorage.setReceivedPlayerInfo(2,"a", "2", "r", "", "a","no?",
-                "f","n");
+        dataStorage.setReceivedPlayerInfo(0,CharacterMovement.Direction.LEFT, CharacterMovement.Direction.UP,
+                true, CharacterMovement.Direction.UP,false, false,130.0,150.0);
+        dataStorage.setReceivedPlayerInfo(1,CharacterMovement.Direction.RIGHT, CharacterMovement.Direction.NONE,
+                false, CharacterMovement.Direction.RIGHT, true, true,-135.0,0.0);
+        dataStorage.publishReceivedState();
+        assertTrue(dataStorage.acquireReceivedState());
 
         CharacterMovement.Direction[] directions = dataStorage.getPlayerDirections();
 
@@ -88,15 +105,98 @@ public class DataStorageTest {
         assertEquals(-135.0,dataStorage.getTransformCheck(1).x,0.01);
         assertEquals(0.0,dataStorage.getTransformCheck(1).y,0.01);
 
-        assertEquals(CharacterMovement.Direction.NONE,directions[4]);
-        assertEquals(CharacterMovement.Direction.DOWN,directions[5]);
-        assertEquals(CharacterMovement.Direction.DOWN,dataStorage.getPlayerIsFacing(2));
+        /* a player which has not been received has no position to check against */
         assertFalse(dataStorage.getPlayerIsMoving(2));
         assertFalse(dataStorage.getInvisibilityBoost(2));
         assertFalse(dataStorage.getSpeedBoost(2));
         assertNull(dataStorage.getTransformCheck(2));
     }
 
+    @Test
+    public void receivedTransformIsReusedTest(){
+        DataStorageTestSubclass dataStorage = new DataStorageTestSubclass(1,0);
+
+        /* the published copies are passed round between the threads, so receiving allocates no new pairs */
+        Set<XYPair> pairs = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(int i = 0; i < 10; i++){
+            dataStorage.setReceivedPlayerInfo(0,CharacterMovement.Direction.LEFT, CharacterMovement.Direction.UP,
+                    true, CharacterMovement.Direction.UP,false, false,130.0 + i,150.0);
+            dataStorage.publishReceivedState();
+            dataStorage.acquireReceivedState();
+            pairs.add(dataStorage.getTransformCheck(0));
+            assertEquals(130.0 + i,dataStorage.getTransformCheck(0).x,0.01);
+            assertEquals(150.0,dataStorage.getTransformCheck(0).y,0.01);
+        }
+        assertEquals(3,pairs.size());
+    }
+
+    @Test
+    public void receivedStateIsOnlySeenOnceAcquiredTest(){
+        DataStorageTestSubclass dataStorage = new DataStorageTestSubclass(2,0);
+
+        dataStorage.setReceivedPlayerInfo(0,CharacterMovement.Direction.LEFT, CharacterMovement.Direction.UP,
+                true, CharacterMovement.Direction.UP,false, false,130.0,150.0);
+        assertNull(dataStorage.getTransformCheck(0));
+        assertFalse(dataStorage.acquireReceivedState());
+
+        dataStorage.publishReceivedState();
+        /* a tick being written is not seen until it is published and acquired */
+        dataStorage.setReceivedPlayerInfo(1,CharacterMovement.Direction.LEFT, CharacterMovement.Direction.UP,
+                true, CharacterMovement.Direction.UP,false, false,10.0,20.0);
+        assertNull(dataStorage.getTransformCheck(0));
+        assertTrue(dataStorage.acquireReceivedState());
+        assertEquals(130.0,dataStorage.getTransformCheck(0).x,0.01);
+        assertNull(dataStorage.getTransformCheck(1));
+        assertFalse(dataStorage.acquireReceivedState());
+    }
+
+    @Test
+    public void gameThreadAlwaysReadsCompleteTickTest() throws InterruptedException {
+        int players = 4;
+        DataStorageTestSubclass dataStorage = new DataStorageTestSubclass(players,0);
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        /* every player is at the same position in every tick, so a tick which is read half written shows up as
+         * players at different positions */
+        Thread engine = new Thread(() -> {
+            for(int tick = 1; running.get(); tick++){
+                for(int num = 0; num < players; num++){
+                    dataStorage.setReceivedPlayerInfo(num,CharacterMovement.Direction.LEFT,
+                            CharacterMovement.Direction.NONE,true,CharacterMovement.Direction.LEFT,false,false,
+                            tick,tick);
+                    dataStorage.addPlayerState(num,tick,tick,tick,0);
+                }
+                dataStorage.publishReceivedState();
+            }
+        });
+        engine.start();
+        XYPair position = new XYPair(0,0);
+        double previous = 0;
+        int acquired = 0;
+        try {
+            for(int i = 0; i < 100000; i++){
+                if(!dataStorage.acquireReceivedState()){
+                    continue;
+                }
+                acquired++;
+                double tick = dataStorage.getTransformCheck(0).x;
+                assertTrue(tick > previous);
+                previous = tick;
+                for(int num = 0; num < players; num++){
+                    assertEquals(tick,dataStorage.getTransformCheck(num).x,0);
+                    assertEquals(tick,dataStorage.getTransformCheck(num).y,0);
+                    dataStorage.getPlayerInterpolation(num).sample((long) tick, position);
+                    assertEquals(tick,position.x,0);
+                }
+            }
+        }
+        finally {
+            running.set(false);
+            engine.join();
+        }
+        assertTrue(acquired > 0);
+    }
+
     @Test
     public void setAndGetUsernameTest(){
         DataStorage dataStorage = new DataStorage(1,0);
@@ -0,0 +1,107 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
+import uob.cs.teamproject.sabrewulf.components.MovementPhysics;
+import uob.cs.teamproject.sabrewulf.network.DeadReckoning;
+import uob.cs.teamproject.sabrewulf.network.Protocol;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class DeadReckoningTest {
+
+    private static ByteBuffer record(CharacterMovement.Direction dirX, CharacterMovement.Direction dirY, double x,
+                                     double y){
+        ByteBuffer record = ByteBuffer.allocate(Protocol.ENEMY_RECORD_SIZE);
+        boolean isMoving = dirX != CharacterMovement.Direction.NONE || dirY != CharacterMovement.Direction.NONE;
+        Protocol.writeEnemy(record, dirX, dirY, isMoving, CharacterMovement.Direction.DOWN, x, y);
+        return record;
+    }
+
+    /* where a client extrapolates the first enemy to at a tick */
+    private static double extrapolatedX(DeadReckoning reckoning, int tick){
+        ByteBuffer keyframe = reckoning.getKeyframes();
+        short velocity = keyframe.getShort(6);
+        return Protocol.extrapolate(keyframe.getShort(2), (byte) (velocity >> 8),
+                Protocol.ticksSince(tick, keyframe.getShort(8)));
+    }
+
+    @Test
+    public void steadyMovementNeedsNoCorrectionTest(){
+        DeadReckoning reckoning = new DeadReckoning(1, 2.0, 100);
+        assertEquals(1, reckoning.update(1, record(CharacterMovement.Direction.RIGHT,
+                CharacterMovement.Direction.NONE, 0.0, 0.0), 1));
+        /* the first keyframe has no speed yet, so the second tick corrects it */
+        assertEquals(0, reckoning.update(2, record(CharacterMovement.Direction.RIGHT,
+                CharacterMovement.Direction.NONE, 1.5, 0.0), 1));
+        assertEquals(1, reckoning.update(3, record(CharacterMovement.Direction.RIGHT,
+                CharacterMovement.Direction.NONE, 3.0, 0.0), 1));
+        for(int tick = 4; tick < 50; tick++){
+            assertEquals(0, reckoning.update(tick, record(CharacterMovement.Direction.RIGHT,
+                    CharacterMovement.Direction.NONE, 1.5 * (tick - 1), 0.0), 1));
+            assertEquals(1.5 * (tick - 1), extrapolatedX(reckoning, tick), 0.0);
+        }
+    }
+
+    @Test
+    public void fastestEnemyAtLowestTickRateNeedsNoCorrectionTest(){
+        /* 3 pixels a frame at 60 frames per second, sent at 10 ticks per second with a keyframe every second */
+        double speed = 3.0 * MovementPhysics.FRAMES_PER_SECOND / 10;
+        DeadReckoning reckoning = new DeadReckoning(1, 2.0, 10);
+        reckoning.update(1, record(CharacterMovement.Direction.RIGHT, CharacterMovement.Direction.NONE, 0.0, 0.0), 1);
+        assertEquals(1, reckoning.update(2, record(CharacterMovement.Direction.RIGHT,
+                CharacterMovement.Direction.NONE, speed, 0.0), 1));
+        int written = 0;
+        for(int tick = 3; tick <= 50; tick++){
+            written += reckoning.update(tick, record(CharacterMovement.Direction.RIGHT,
+                    CharacterMovement.Direction.NONE, speed * (tick - 1), 0.0), 1);
+            assertEquals(speed * (tick - 1), extrapolatedX(reckoning, tick), 0.0);
+        }
+        /* only the keyframes sent every 10 ticks, at ticks 12, 22, 32 and 42 */
+        assertEquals(4, written);
+    }
+
+    @Test
+    public void driftBeyondThresholdIsCorrectedTest(){
+        DeadReckoning reckoning = new DeadReckoning(1, 2.0, 100);
+        reckoning.update(1, record(CharacterMovement.Direction.RIGHT, CharacterMovement.Direction.NONE, 0.0, 0.0), 1);
+        assertEquals(1, reckoning.update(2, record(CharacterMovement.Direction.RIGHT,
+                CharacterMovement.Direction.NONE, 3.0, 0.0), 1));
+        /* held back by a wall, but still walking right: within the threshold, then beyond it */
+        assertEquals(0, reckoning.update(3, record(CharacterMovement.Direction.RIGHT,
+                CharacterMovement.Direction.NONE, 4.0, 0.0), 1));
+        assertEquals(1, reckoning.update(4, record(CharacterMovement.Direction.RIGHT,
+                CharacterMovement.Direction.NONE, 4.0, 0.0), 1));
+        assertEquals(4.0, extrapolatedX(reckoning, 4), 0.0);
+        assertEquals(4.0, extrapolatedX(reckoning, 10), 0.0);
+    }
+
+    @Test
+    public void turningSendsKeyframeWithNewVelocityTest(){
+        DeadReckoning reckoning = new DeadReckoning(1, 2.0, 100);
+        reckoning.update(1, record(CharacterMovement.Direction.RIGHT, CharacterMovement.Direction.NONE, 0.0, 0.0), 1);
+        reckoning.update(2, record(CharacterMovement.Direction.RIGHT, CharacterMovement.Direction.NONE, 3.0, 0.0), 1);
+        assertEquals(1, reckoning.update(3, record(CharacterMovement.Direction.NONE, CharacterMovement.Direction.UP,
+                3.0, -3.0), 1));
+
+        ByteBuffer keyframe = reckoning.getKeyframes();
+        short velocity = keyframe.getShort(6);
+        assertEquals(3.0, Protocol.extrapolate(keyframe.getShort(2), (byte) (velocity >> 8), 5), 0.0);
+        assertEquals(-18.0, Protocol.extrapolate(keyframe.getShort(4), (byte) velocity, 5), 0.0);
+    }
+
+    @Test
+    public void keyframeIsSentAfterIntervalTest(){
+        DeadReckoning reckoning = new DeadReckoning(1, 2.0, 10);
+        assertEquals(1, reckoning.update(1, record(CharacterMovement.Direction.NONE,
+                CharacterMovement.Direction.NONE, 5.0, 5.0), 1));
+        for(int tick = 2; tick < 11; tick++){
+            assertEquals(0, reckoning.update(tick, record(CharacterMovement.Direction.NONE,
+                    CharacterMovement.Direction.NONE, 5.0, 5.0), 1));
+        }
+        assertEquals(1, reckoning.update(11, record(CharacterMovement.Direction.NONE,
+                CharacterMovement.Direction.NONE, 5.0, 5.0), 1));
+    }
+}
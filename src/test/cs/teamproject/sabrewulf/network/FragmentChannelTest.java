@@ -0,0 +1,156 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.network.FragmentChannel;
+import uob.cs.teamproject.sabrewulf.network.LoopbackTransport;
+import uob.cs.teamproject.sabrewulf.network.Protocol;
+import uob.cs.teamproject.sabrewulf.network.ReliableChannel;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FragmentChannelTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final LoopbackTransport[] ends = LoopbackTransport.pair();
+    private final List<ByteBuffer> receivedByClient = new ArrayList<>();
+    private final FragmentChannel server =
+            new FragmentChannel(ends[0], ends[1].getLocalAddress(), message -> {});
+    private final FragmentChannel client =
+            new FragmentChannel(ends[1], ends[0].getLocalAddress(), receivedByClient::add);
+
+    public FragmentChannelTest() {
+        ends[0].setTimeout(100);
+        ends[1].setTimeout(100);
+    }
+
+    /* a message of the given length whose bytes depend on their position */
+    private static ByteBuffer message(int length){
+        ByteBuffer message = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; i++) {
+            message.put((byte) (i * 31 + 7));
+        }
+        message.flip();
+        return message;
+    }
+
+    /* take the next datagram waiting at an end */
+    private ByteBuffer take(LoopbackTransport end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(2048);
+        end.receive(buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private ByteBuffer poll(LoopbackTransport end) throws IOException {
+        end.setTimeout(10);
+        try {
+            return take(end);
+        }
+        catch (SocketTimeoutException e) {
+            return null;
+        }
+    }
+
+    /* pass a datagram to a channel as the engine would */
+    private void deliver(ByteBuffer packet, FragmentChannel channel, long now){
+        ByteBuffer data = packet.duplicate();
+        int type = Protocol.readHeader(data);
+        if (type == Protocol.FRAGMENT) {
+            channel.receiveFragment(data, now);
+        }
+        else {
+            assertEquals(Protocol.FRAGMENT_ACK, type);
+            channel.receiveAck(data, now);
+        }
+    }
+
+    @Test
+    public void longMessageIsReassembledTest() throws IOException {
+        int length = 5 * FragmentChannel.FRAGMENT_SIZE + 100;
+        server.send(message(length), 0);
+        List<ByteBuffer> fragments = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            ByteBuffer fragment = take(ends[1]);
+            assertTrue(fragment.remaining() <= 1200);
+            fragments.add(fragment);
+        }
+        assertNull(poll(ends[1]));
+
+        /* arriving out of order, some of them twice */
+        for (int i = fragments.size() - 1; i >= 0; i--) {
+            deliver(fragments.get(i), client, MS);
+            deliver(fragments.get(i), client, MS);
+        }
+        assertEquals(1, receivedByClient.size());
+        assertEquals(message(length), receivedByClient.get(0));
+
+        for (int i = 0; i < 12; i++) {
+            deliver(take(ends[0]), server, 2 * MS);
+        }
+        assertEquals(0, server.getUnacknowledgedCount());
+    }
+
+    @Test
+    public void onlyMissingFragmentsAreRetransmittedTest() throws IOException {
+        int length = 4 * FragmentChannel.FRAGMENT_SIZE;
+        server.send(message(length), 0);
+        ByteBuffer[] fragments = new ByteBuffer[4];
+        for (int i = 0; i < fragments.length; i++) {
+            fragments[i] = take(ends[1]);
+        }
+        /* the second and the fourth fragment are lost */
+        deliver(fragments[0], client, MS);
+        deliver(fragments[2], client, MS);
+        deliver(take(ends[0]), server, 2 * MS);
+        deliver(take(ends[0]), server, 2 * MS);
+        assertTrue(receivedByClient.isEmpty());
+        assertEquals(1, server.getUnacknowledgedCount());
+
+        server.update(2 * MS + server.getTimeout());
+        ByteBuffer second = take(ends[1]);
+        ByteBuffer fourth = take(ends[1]);
+        assertNull(poll(ends[1]));
+        assertEquals(1, second.getShort(Protocol.HEADER_SIZE + 4));
+        assertEquals(3, fourth.getShort(Protocol.HEADER_SIZE + 4));
+
+        deliver(fourth, client, 3 * MS);
+        deliver(second, client, 3 * MS);
+        assertEquals(1, receivedByClient.size());
+        assertEquals(message(length), receivedByClient.get(0));
+    }
+
+    @Test
+    public void messagesAreDeliveredInOrderTest() throws IOException {
+        server.send(message(FragmentChannel.FRAGMENT_SIZE + 1), 0);
+        server.send(message(3), 0);
+        ByteBuffer firstStart = take(ends[1]);
+        ByteBuffer firstEnd = take(ends[1]);
+        ByteBuffer second = take(ends[1]);
+
+        deliver(second, client, MS);
+        deliver(firstStart, client, MS);
+        assertTrue(receivedByClient.isEmpty());
+        deliver(firstEnd, client, MS);
+        assertEquals(2, receivedByClient.size());
+        assertEquals(message(FragmentChannel.FRAGMENT_SIZE + 1), receivedByClient.get(0));
+        assertEquals(message(3), receivedByClient.get(1));
+    }
+
+    @Test
+    public void unreachablePeerIsGivenUpOnTest() throws IOException {
+        server.send(message(10), 0);
+        long now = 0;
+        for (int i = 0; i < ReliableChannel.MAX_ATTEMPTS; i++) {
+            now += ReliableChannel.MAX_TIMEOUT;
+            server.update(now);
+        }
+        assertEquals(0, server.getUnacknowledgedCount());
+    }
+}
@@ -0,0 +1,155 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.network.ImpairedLink;
+import uob.cs.teamproject.sabrewulf.network.ImpairmentScenario;
+import uob.cs.teamproject.sabrewulf.network.NetworkConditions;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ImpairedLinkTest {
+
+    private static final long MS = 1_000_000L;
+    private static final SocketAddress TARGET = new InetSocketAddress("localhost", 1234);
+
+    /* the first byte of each datagram released, in order */
+    private final List<Integer> released = new ArrayList<>();
+    private final ImpairedLink.Sink sink = (data, target) -> {
+        assertEquals(TARGET, target);
+        released.add((int) data.get(data.position()));
+    };
+
+    private void submit(ImpairedLink link, int value, long now) {
+        link.submit(ByteBuffer.wrap(new byte[]{(byte) value, 0, 0, 0}), TARGET, now);
+    }
+
+    @Test
+    public void cleanLinkPassesEverythingStraightThroughTest() {
+        ImpairedLink link = new ImpairedLink(new NetworkConditions(), 1);
+        for (int i = 0; i < 10; i++) {
+            submit(link, i, 0);
+        }
+        assertEquals(10, link.release(0, sink));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, (int) released.get(i));
+        }
+    }
+
+    @Test
+    public void delayAndJitterTest() {
+        ImpairedLink link = new ImpairedLink(NetworkConditions.parse("delay=100 jitter=20"), 1);
+        for (int i = 0; i < 100; i++) {
+            submit(link, i, 0);
+        }
+        assertEquals(0, link.release(79 * MS, sink));
+        assertEquals(100, link.release(120 * MS, sink));
+    }
+
+    @Test
+    public void lossRateTest() {
+        ImpairedLink link = new ImpairedLink(NetworkConditions.parse("loss=25"), 7);
+        for (int i = 0; i < 4000; i++) {
+            submit(link, i, 0);
+        }
+        int delivered = link.release(0, sink);
+        assertEquals(4000, delivered + link.getDropped());
+        assertEquals(3000, delivered, 150);
+    }
+
+    @Test
+    public void burstLossDropsDatagramsInARowTest() {
+        ImpairedLink link = new ImpairedLink(NetworkConditions.parse("burst-loss=100 burst-length=5"), 1);
+        for (int i = 0; i < 5; i++) {
+            submit(link, i, 0);
+        }
+        link.getConditions().setBurstLoss(0);
+        submit(link, 5, 0);
+        link.release(0, sink);
+        assertEquals(5, link.getDropped());
+        assertEquals(1, released.size());
+        assertEquals(5, (int) released.get(0));
+    }
+
+    @Test
+    public void duplicationTest() {
+        ImpairedLink link = new ImpairedLink(NetworkConditions.parse("duplicate=100"), 1);
+        submit(link, 3, 0);
+        assertEquals(2, link.release(0, sink));
+        assertEquals(1, link.getDuplicated());
+    }
+
+    @Test
+    public void reorderedDatagramIsOvertakenTest() {
+        ImpairedLink link = new ImpairedLink(NetworkConditions.parse("reorder=100 reorder-delay=50"), 1);
+        submit(link, 0, 0);
+        link.getConditions().setReorder(0);
+        submit(link, 1, 10 * MS);
+        link.release(100 * MS, sink);
+        assertEquals(1, (int) released.get(0));
+        assertEquals(0, (int) released.get(1));
+    }
+
+    @Test
+    public void bandwidthSpacesDatagramsOutTest() {
+        /* 4 byte datagrams over a 4000 byte per second link take 1 ms each */
+        ImpairedLink link = new ImpairedLink(NetworkConditions.parse("bandwidth=4000"), 1);
+        for (int i = 0; i < 10; i++) {
+            submit(link, i, 0);
+        }
+        assertEquals(1, link.release(0, sink));
+        assertEquals(5, link.release(5 * MS, sink));
+        assertEquals(4, link.release(9 * MS, sink));
+    }
+
+    @Test
+    public void sameSeedBehavesTheSameTest() {
+        NetworkConditions conditions = NetworkConditions.parse("loss=30 jitter=50 duplicate=10 reorder=10");
+        ImpairedLink first = new ImpairedLink(conditions, 42);
+        ImpairedLink second = new ImpairedLink(conditions, 42);
+        for (int i = 0; i < 200; i++) {
+            submit(first, i, i * MS);
+        }
+        first.release(Long.MAX_VALUE / 2, sink);
+        List<Integer> firstOrder = new ArrayList<>(released);
+        released.clear();
+        for (int i = 0; i < 200; i++) {
+            submit(second, i, i * MS);
+        }
+        second.release(Long.MAX_VALUE / 2, sink);
+        assertEquals(firstOrder, released);
+    }
+
+    @Test
+    public void scenarioStepsTest() {
+        ImpairmentScenario scenario = ImpairmentScenario.parse(
+                "# clean, then slow, then lossy\n"
+                        + "0\n"
+                        + "\n"
+                        + "1000 delay=150 jitter=30\n"
+                        + "2500 loss=10\n");
+        assertEquals(2500, scenario.getLength());
+        assertEquals(0, scenario.stepAt(0));
+        assertEquals(0, scenario.stepAt(999));
+        assertEquals(1, scenario.stepAt(1000));
+        assertEquals(2, scenario.stepAt(10000));
+
+        NetworkConditions conditions = new NetworkConditions();
+        scenario.apply(1, conditions);
+        assertEquals(150, conditions.getDelay());
+        assertEquals(30, conditions.getJitter());
+        scenario.apply(2, conditions);
+        assertEquals(0, conditions.getDelay());
+        assertEquals(10.0, conditions.getLoss(), 0.001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownConditionTest() {
+        NetworkConditions.parse("latency=100");
+    }
+}
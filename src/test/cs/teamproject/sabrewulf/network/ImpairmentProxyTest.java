@@ -0,0 +1,89 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.network.ImpairmentProxy;
+import uob.cs.teamproject.sabrewulf.network.ImpairmentScenario;
+import uob.cs.teamproject.sabrewulf.network.NetworkConditions;
+import uob.cs.teamproject.sabrewulf.network.NetworkEngine;
+import uob.cs.teamproject.sabrewulf.network.Protocol;
+import uob.cs.teamproject.sabrewulf.network.ReliableChannel;
+import uob.cs.teamproject.sabrewulf.network.UdpTransport;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ImpairmentProxyTest {
+
+    /* a scenario which gets worse in steps while the test runs */
+    private static final String SCENARIO =
+            "0 delay=5 jitter=5\n"
+            + "200 delay=20 jitter=10 loss=20 duplicate=10 reorder=20\n"
+            + "600 delay=20 jitter=10 burst-loss=10 burst-length=4 bandwidth=20000\n";
+
+    @Test
+    public void controlMessagesSurviveScenarioTest() throws Exception {
+        UdpTransport server = UdpTransport.bind(0);
+        ImpairmentProxy proxy = new ImpairmentProxy(0,
+                new InetSocketAddress("localhost", server.getLocalAddress().getPort()), new NetworkConditions(), 5);
+        proxy.setScenario(ImpairmentScenario.parse(SCENARIO));
+        proxy.start();
+        InetSocketAddress proxyAddress = new InetSocketAddress("localhost", proxy.getLocalAddress().getPort());
+        UdpTransport client = UdpTransport.connect(proxyAddress);
+        NetworkEngine engine = new NetworkEngine("impairment-test");
+
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        AtomicReference<ReliableChannel> serverChannel = new AtomicReference<>();
+        ReliableChannel clientChannel = new ReliableChannel(client, proxyAddress, message -> { });
+        try {
+            /* the server does not know the address the proxy talks to it from until the first datagram arrives */
+            server.register(engine, (data, sender) -> {
+                if (serverChannel.get() == null) {
+                    serverChannel.set(new ReliableChannel(server, sender, received::add));
+                }
+                if (Protocol.isBinary(data) && Protocol.readHeader(data) == Protocol.CONTROL) {
+                    serverChannel.get().receive(data, System.nanoTime());
+                }
+            });
+            client.register(engine, (data, sender) -> {
+                if (Protocol.isBinary(data) && Protocol.readHeader(data) == Protocol.CONTROL) {
+                    clientChannel.receive(data, System.nanoTime());
+                }
+            });
+            engine.startTicking(() -> {
+                long now = System.nanoTime();
+                clientChannel.update(now);
+                ReliableChannel channel = serverChannel.get();
+                if (channel != null) {
+                    channel.update(now);
+                }
+            }, 100);
+
+            for (int i = 0; i < 60; i++) {
+                clientChannel.send("message#" + i + "#", System.nanoTime());
+                Thread.sleep(15);
+            }
+            for (int i = 0; i < 500 && received.size() < 60; i++) {
+                Thread.sleep(20);
+            }
+
+            assertEquals(60, received.size());
+            for (int i = 0; i < 60; i++) {
+                assertEquals("message#" + i + "#", received.get(i));
+            }
+            /* the last step of the scenario has been reached */
+            assertEquals(20000, proxy.getConditions().getBandwidth());
+        }
+        finally {
+            engine.shutdown();
+            proxy.close();
+            client.close();
+            server.close();
+        }
+    }
+}
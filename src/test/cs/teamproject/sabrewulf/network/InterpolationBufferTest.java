@@ -0,0 +1,82 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.network.InterpolationBuffer;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
+
+import static org.junit.Assert.*;
+
+public class InterpolationBufferTest {
+
+    private final XYPair position = new XYPair(0, 0);
+
+    @Test
+    public void emptyBufferTest(){
+        InterpolationBuffer buffer = new InterpolationBuffer(100);
+        assertEquals(-1, buffer.sample(1000, position));
+    }
+
+    @Test
+    public void interpolatesBetweenStatesTest(){
+        InterpolationBuffer buffer = new InterpolationBuffer(100);
+        buffer.add(1000, 0.0, 10.0, 1);
+        buffer.add(2000, 100.0, 10.0, 2);
+        buffer.add(3000, 100.0, 50.0, 3);
+
+        assertEquals(1, buffer.sample(1250, position));
+        assertEquals(25.0, position.x, 0.001);
+        assertEquals(10.0, position.y, 0.001);
+
+        assertEquals(2, buffer.sample(2500, position));
+        assertEquals(100.0, position.x, 0.001);
+        assertEquals(30.0, position.y, 0.001);
+    }
+
+    @Test
+    public void holdsOldestStateTest(){
+        InterpolationBuffer buffer = new InterpolationBuffer(100);
+        buffer.add(1000, 5.0, 6.0, 7);
+        buffer.add(2000, 50.0, 60.0, 8);
+
+        assertEquals(7, buffer.sample(0, position));
+        assertEquals(5.0, position.x, 0.001);
+        assertEquals(6.0, position.y, 0.001);
+    }
+
+    @Test
+    public void extrapolationIsBoundedTest(){
+        InterpolationBuffer buffer = new InterpolationBuffer(500);
+        buffer.add(1000, 0.0, 0.0, 1);
+        buffer.add(2000, 10.0, 0.0, 1);
+
+        buffer.sample(2200, position);
+        assertEquals(12.0, position.x, 0.001);
+
+        /* no further than 500 past the newest state */
+        buffer.sample(10000, position);
+        assertEquals(15.0, position.x, 0.001);
+    }
+
+    @Test
+    public void olderStatesAreIgnoredTest(){
+        InterpolationBuffer buffer = new InterpolationBuffer(0);
+        buffer.add(2000, 10.0, 0.0, 1);
+        buffer.add(1000, 99.0, 0.0, 2);
+
+        assertEquals(1, buffer.sample(1500, position));
+        assertEquals(10.0, position.x, 0.001);
+    }
+
+    @Test
+    public void oldestStatesAreOverwrittenTest(){
+        InterpolationBuffer buffer = new InterpolationBuffer(0);
+        for(int i = 1; i <= InterpolationBuffer.CAPACITY + 5; i++){
+            buffer.add(i * 100, i, 0.0, i);
+        }
+        assertEquals(6, buffer.sample(0, position));
+        assertEquals(6.0, position.x, 0.001);
+
+        buffer.clear();
+        assertEquals(-1, buffer.sample(0, position));
+    }
+}
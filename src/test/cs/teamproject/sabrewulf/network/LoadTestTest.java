@@ -0,0 +1,88 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.GameSettings;
+import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
+import uob.cs.teamproject.sabrewulf.network.BotScript;
+import uob.cs.teamproject.sabrewulf.network.LoadTest;
+import uob.cs.teamproject.sabrewulf.ui.selectors.DIFFICULTY;
+import uob.cs.teamproject.sabrewulf.ui.selectors.MODE;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LoadTestTest {
+
+    @Test
+    public void scriptRepeatsTest() {
+        BotScript script = BotScript.parse(
+                "# right, then down\n"
+                        + "10 RIGHT NONE\n"
+                        + "\n"
+                        + "5 none down\n");
+        assertEquals(15, script.getLength());
+        assertEquals(CharacterMovement.Direction.RIGHT, script.getDirectionX(0));
+        assertEquals(CharacterMovement.Direction.NONE, script.getDirectionY(9));
+        assertEquals(CharacterMovement.Direction.NONE, script.getDirectionX(10));
+        assertEquals(CharacterMovement.Direction.DOWN, script.getDirectionY(14));
+        assertEquals(CharacterMovement.Direction.RIGHT, script.getDirectionX(15));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownDirectionTest() {
+        BotScript.parse("10 SIDEWAYS NONE");
+    }
+
+    @Test
+    public void botsAgainstServerInProcessTest() throws Exception {
+        GameSettings.setGameMode(MODE.MULTIPLAYER);
+        GameSettings.setDifficulty(DIFFICULTY.EASY);
+        LoadTest test = new LoadTest(3, 3, null);
+        test.setSeed(1);
+        LoadTest.Report report = test.run(300, 1000);
+
+        assertTrue(report.get("ticks") > 0);
+        assertTrue(report.get("tick_p99_ms") >= report.get("tick_p50_ms"));
+        assertTrue(report.get("server_packets_received_per_s") > 0);
+        assertTrue(report.get("server_bytes_sent_per_s") > 0);
+        assertTrue(report.get("bot_inputs_sent_per_s") > 0);
+        assertTrue(report.get("latency_samples") > 0);
+        assertTrue(report.get("latency_p50_ms") > 0);
+        assertTrue(report.get("latency_max_ms") >= report.get("latency_p99_ms"));
+        assertEquals(3, report.get("players"), 0);
+
+        File file = File.createTempFile("load-test", ".csv");
+        file.delete();
+        try {
+            report.append(file.getPath());
+            report.append(file.getPath());
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            assertEquals(3, lines.size());
+            assertTrue(lines.get(0).startsWith("time_ms,players,"));
+            assertEquals(lines.get(0).split(",").length, lines.get(1).split(",", -1).length);
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void spectatorsWatchTest() throws Exception {
+        GameSettings.setGameMode(MODE.MULTIPLAYER);
+        GameSettings.setDifficulty(DIFFICULTY.EASY);
+        LoadTest test = new LoadTest(2, 3, null);
+        test.setSeed(2);
+        test.setSpectators(3);
+        LoadTest.Report report = test.run(300, 1000);
+
+        assertEquals(3, report.get("spectators"), 0);
+        /* every spectator is sent a snapshot on every tick */
+        assertTrue(report.get("spectator_packets_received_per_s") > 3 * report.get("tick_rate") / 2);
+        assertTrue(report.get("spectator_bytes_received_per_s") > 0);
+        assertTrue(report.get("bot_inputs_sent_per_s") > 0);
+    }
+}
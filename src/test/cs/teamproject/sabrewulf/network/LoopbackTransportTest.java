@@ -0,0 +1,112 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.network.LoopbackTransport;
+import uob.cs.teamproject.sabrewulf.network.NetworkEngine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LoopbackTransportTest {
+
+    @Test
+    public void sendAndReceiveTest() throws IOException {
+        LoopbackTransport[] ends = LoopbackTransport.pair();
+        ends[1].send(ByteBuffer.wrap(new byte[]{1, 2, 3}), ends[0].getLocalAddress());
+
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        SocketAddress sender = ends[0].receive(buffer);
+        assertEquals(ends[1].getLocalAddress(), sender);
+        assertEquals(3, buffer.position());
+        assertEquals(2, buffer.get(1));
+    }
+
+    @Test
+    public void sentBufferCanBeReusedTest() throws IOException {
+        LoopbackTransport[] ends = LoopbackTransport.pair();
+        ByteBuffer data = ByteBuffer.wrap(new byte[]{7});
+        ends[0].send(data, ends[1].getLocalAddress());
+        assertFalse(data.hasRemaining());
+        data.put(0, (byte) 9);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        ends[1].receive(buffer);
+        assertEquals(7, buffer.get(0));
+    }
+
+    @Test
+    public void readOnlyDatagramIsSentToEveryTargetTest() throws IOException {
+        LoopbackTransport[] ends = LoopbackTransport.pair();
+        ByteBuffer data = ByteBuffer.wrap(new byte[]{0, 4, 5, 6}).asReadOnlyBuffer();
+        data.position(1);
+        SocketAddress[] targets = {ends[1].getLocalAddress(), ends[1].getLocalAddress(), null};
+        ends[0].send(data, targets, 2);
+        assertFalse(data.hasRemaining());
+
+        for (int i = 0; i < 2; i++) {
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            ends[1].receive(buffer);
+            assertEquals(3, buffer.position());
+            assertEquals(4, buffer.get(0));
+            assertEquals(6, buffer.get(2));
+        }
+    }
+
+    @Test
+    public void largeDatagramIsTruncatedTest() throws IOException {
+        LoopbackTransport[] ends = LoopbackTransport.pair();
+        ends[1].send(ByteBuffer.allocate(2000), ends[0].getLocalAddress());
+
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        ends[0].receive(buffer);
+        assertEquals(16, buffer.position());
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void receiveTimesOutTest() throws IOException {
+        LoopbackTransport[] ends = LoopbackTransport.pair();
+        ends[0].setTimeout(10);
+        ends[0].receive(ByteBuffer.allocate(16));
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void datagramToAnotherAddressIsDroppedTest() throws IOException {
+        LoopbackTransport[] ends = LoopbackTransport.pair();
+        ends[1].send(ByteBuffer.wrap(new byte[]{1}), new InetSocketAddress("localhost", 4000));
+        ends[0].setTimeout(10);
+        ends[0].receive(ByteBuffer.allocate(16));
+    }
+
+    @Test
+    public void registeredTransportDeliversOnEngineTest() throws IOException, InterruptedException {
+        LoopbackTransport[] ends = LoopbackTransport.pair();
+        NetworkEngine engine = new NetworkEngine("loopback-test");
+        try {
+            /* sent before registering, so it has to be delivered once the transport is registered */
+            ends[1].send(ByteBuffer.wrap(new byte[]{4}), ends[0].getLocalAddress());
+
+            CountDownLatch received = new CountDownLatch(3);
+            AtomicInteger sum = new AtomicInteger();
+            ends[0].register(engine, (data, sender) -> {
+                sum.addAndGet(data.get());
+                received.countDown();
+            });
+            ends[1].send(ByteBuffer.wrap(new byte[]{5}), ends[0].getLocalAddress());
+            ends[1].send(ByteBuffer.wrap(new byte[]{6}), ends[0].getLocalAddress());
+
+            assertTrue(received.await(2, TimeUnit.SECONDS));
+            assertEquals(15, sum.get());
+        }
+        finally {
+            engine.shutdown();
+        }
+    }
+}
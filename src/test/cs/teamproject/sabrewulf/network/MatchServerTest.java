@@ -0,0 +1,85 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.GameSettings;
+import uob.cs.teamproject.sabrewulf.network.MatchServer;
+import uob.cs.teamproject.sabrewulf.network.Protocol;
+import uob.cs.teamproject.sabrewulf.network.UdpTransport;
+import uob.cs.teamproject.sabrewulf.ui.selectors.DIFFICULTY;
+import uob.cs.teamproject.sabrewulf.ui.selectors.MODE;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class MatchServerTest {
+
+    private MatchServer startServer(int playersPerMatch) throws IOException {
+        GameSettings.setGameMode(MODE.MULTIPLAYER);
+        GameSettings.setDifficulty(DIFFICULTY.EASY);
+        MatchServer server = new MatchServer(playersPerMatch, 3, 8, 2, UdpTransport.bind(0));
+        server.start();
+        return server;
+    }
+
+    private UdpTransport join(MatchServer server, String username) throws IOException {
+        UdpTransport client = UdpTransport.connect(
+                new InetSocketAddress("localhost", server.getLocalAddress().getPort()));
+        client.send(ByteBuffer.wrap(username.getBytes(StandardCharsets.UTF_8)),
+                new InetSocketAddress("localhost", server.getLocalAddress().getPort()));
+        /* wait for the list of usernames, so the server has routed the client before the next one joins */
+        client.setTimeout(2000);
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        client.receive(buffer);
+        return client;
+    }
+
+    private void awaitMatchCount(MatchServer server, int count) throws InterruptedException {
+        for (int i = 0; i < 100 && server.getMatchCount() != count; i++) {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void fullLobbyOpensNewMatchTest() throws Exception {
+        MatchServer server = startServer(2);
+        try {
+            UdpTransport first = join(server, "first");
+            UdpTransport second = join(server, "second");
+            assertEquals(1, server.getMatchCount());
+
+            UdpTransport third = join(server, "third");
+            awaitMatchCount(server, 2);
+            assertEquals(2, server.getMatchCount());
+
+            first.close();
+            second.close();
+            third.close();
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void binaryPacketFromUnknownClientIsDroppedTest() throws Exception {
+        MatchServer server = startServer(2);
+        try {
+            UdpTransport client = UdpTransport.connect(
+                    new InetSocketAddress("localhost", server.getLocalAddress().getPort()));
+            ByteBuffer packet = ByteBuffer.allocate(64);
+            Protocol.writeHeader(packet, Protocol.PLAYER_INPUT);
+            packet.flip();
+            client.send(packet, new InetSocketAddress("localhost", server.getLocalAddress().getPort()));
+            Thread.sleep(100);
+            assertEquals(0, server.getMatchCount());
+            client.close();
+        }
+        finally {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.network.NetworkStats;
+import uob.cs.teamproject.sabrewulf.network.Protocol;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class NetworkStatsTest {
+
+    private static final long MS = 1_000_000L;
+
+    /* send a ping at a time and answer it after a round trip time */
+    private void ping(NetworkStats stats, long sent, long rtt) {
+        ByteBuffer ping = ByteBuffer.allocate(Protocol.PING_SIZE);
+        stats.writePing(ping, sent);
+        ping.flip();
+        assertEquals(Protocol.PING, Protocol.readHeader(ping));
+
+        ByteBuffer pong = ByteBuffer.allocate(Protocol.PONG_SIZE);
+        new NetworkStats(0).writePong(ping, pong, sent + rtt / 2);
+        pong.flip();
+        assertEquals(Protocol.PONG, Protocol.readHeader(pong));
+        stats.onPong(pong, sent + rtt);
+    }
+
+    @Test
+    public void ratesArePerSecondTest() {
+        NetworkStats stats = new NetworkStats(0);
+        for (int i = 0; i < 20; i++) {
+            stats.onSent(100);
+            stats.onReceived(50);
+        }
+        assertFalse(stats.update(500 * MS));
+        assertTrue(stats.update(2000 * MS));
+        assertEquals(10, stats.getPacketsSentPerSecond());
+        assertEquals(1000, stats.getBytesSentPerSecond());
+        assertEquals(10, stats.getPacketsReceivedPerSecond());
+        assertEquals(500, stats.getBytesReceivedPerSecond());
+
+        assertTrue(stats.update(3000 * MS));
+        assertEquals(0, stats.getPacketsSentPerSecond());
+    }
+
+    @Test
+    public void lossAndOutOfOrderTest() {
+        NetworkStats stats = new NetworkStats(0);
+        stats.onSequence(1);
+        stats.onSequence(2);
+        stats.onSequence(4);
+        stats.onSequence(5);
+        stats.onSequence(7);
+        stats.onSequence(9);
+        stats.onSequence(10);
+        stats.onSequence(6);
+        stats.update(1000 * MS);
+        /* 3 and 8 were never received, and 6 arrived late */
+        assertEquals(20.0, stats.getLossPercent(), 0.01);
+        assertEquals(1, stats.getOutOfOrder());
+    }
+
+    @Test
+    public void restartedSequenceIsNotLossTest() {
+        NetworkStats stats = new NetworkStats(0);
+        stats.onSequence(50000);
+        stats.onSequence(1);
+        stats.onSequence(2);
+        stats.update(1000 * MS);
+        assertEquals(0.0, stats.getLossPercent(), 0.01);
+        assertEquals(0, stats.getOutOfOrder());
+    }
+
+    @Test
+    public void roundTripTimeTest() {
+        NetworkStats stats = new NetworkStats(0);
+        assertTrue(stats.pingDue(0));
+        for (int i = 0; i < 99; i++) {
+            ping(stats, i * 10 * MS, 20 * MS);
+        }
+        assertFalse(stats.pingDue(990 * MS));
+        ping(stats, 990 * MS, 120 * MS);
+        stats.update(1200 * MS);
+
+        assertEquals(21.0, stats.getRttMean(), 0.01);
+        assertEquals(20.0, stats.getRttP99(), 0.01);
+        /* a single 100 ms jump in the round trip time is smoothed by 1/16 */
+        assertEquals(100.0 / 16, stats.getJitter(), 0.01);
+    }
+
+    @Test
+    public void shortSequenceWrapsTest() {
+        NetworkStats stats = new NetworkStats(0);
+        stats.onShortSequence((short) 65534);
+        stats.onShortSequence((short) 65535);
+        stats.onShortSequence((short) 1);
+        stats.onShortSequence((short) 0);
+        stats.update(1000 * MS);
+        assertEquals(0.0, stats.getLossPercent(), 0.01);
+        assertEquals(1, stats.getOutOfOrder());
+        assertEquals(4, stats.getMessagesReceivedPerSecond());
+    }
+
+    @Test
+    public void pongReportsLossToPeerTest() {
+        NetworkStats receiver = new NetworkStats(0);
+        for (int i = 0; i < 10; i += 2) {
+            receiver.onSequence(i);
+        }
+        receiver.update(1000 * MS);
+        /* 1, 3, 5 and 7 of 0 to 8 were lost */
+        assertEquals(400.0 / 9, receiver.getLossPercent(), 0.01);
+
+        NetworkStats sender = new NetworkStats(0);
+        ByteBuffer ping = ByteBuffer.allocate(Protocol.PING_SIZE);
+        sender.writePing(ping, 1000 * MS);
+        ping.flip();
+        Protocol.readHeader(ping);
+        ByteBuffer pong = ByteBuffer.allocate(Protocol.PONG_SIZE);
+        receiver.writePong(ping, pong, 0);
+        assertFalse(pong.hasRemaining());
+        pong.flip();
+        Protocol.readHeader(pong);
+        sender.onPong(pong, 1030 * MS);
+        sender.update(1100 * MS);
+
+        assertEquals(Math.round(receiver.getLossPercent()), sender.getPeerLossPercent(), 0.01);
+        assertEquals(30.0, sender.getRecentRtt(), 0.01);
+    }
+
+    @Test
+    public void longestTickTest() {
+        NetworkStats stats = new NetworkStats(0);
+        stats.onTick(5 * MS);
+        stats.onTick(40 * MS);
+        stats.onTick(10 * MS);
+        stats.update(1000 * MS);
+        assertEquals(40.0, stats.getMaxTick(), 0.01);
+    }
+}
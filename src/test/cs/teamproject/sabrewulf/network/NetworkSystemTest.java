@@ -1,6 +1,7 @@
 package test.cs.teamproject.sabrewulf.network;
 
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.runner.RunWith;
@@ -9,14 +10,23 @@ import uob.cs.teamproject.sabrewulf.GameSettings;
 import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
 import uob.cs.teamproject.sabrewulf.components.Inventory;
 import uob.cs.teamproject.sabrewulf.exceptions.UsernameUnavailableException;
+import uob.cs.teamproject.sabrewulf.map.Cell;
+import uob.cs.teamproject.sabrewulf.network.DataStorage;
+import uob.cs.teamproject.sabrewulf.network.LobbyHandshake;
 import uob.cs.teamproject.sabrewulf.network.NetworkSystem;
 import uob.cs.teamproject.sabrewulf.ui.selectors.MODE;
 import uob.cs.teamproject.sabrewulf.ui.selectors.MODEL;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.SocketException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
 
 import static org.junit.Assert.*;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -25,6 +35,64 @@ public class NetworkSystemTest {
 
     private NetworkSystem networkSystem;
 
+    /* packets are received on the engine threads, so wait for them to be stored */
+    private void awaitReceived(BooleanSupplier received) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!received.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(received.getAsBoolean());
+    }
+
+    /* take the newest state received as the game thread would, and check whether a player is in it */
+    private static boolean hasReceived(NetworkSystem system, int num) {
+        DataStorage dataStorage = system.getClient().getDataStorage();
+        dataStorage.acquireReceivedState();
+        return dataStorage.getTransformCheck(num) != null;
+    }
+
+    /* the direction of a neighbouring cell with a coin in it which a player can walk into from where it spawns, or
+     * null if there is none */
+    private static Cell.Direction findOpenCoinCell(NetworkSystem system) {
+        DataStorage dataStorage = system.getClient().getDataStorage();
+        Cell[][] cellGrid = dataStorage.getCellGrid();
+        XYPair[] spawns = dataStorage.getSpawnAt();
+        for (int x = 0; x < cellGrid.length; x++) {
+            for (int y = 0; y < cellGrid[x].length; y++) {
+                if (cellGrid[x][y].getX() != spawns[0].x || cellGrid[x][y].getY() != spawns[0].y) {
+                    continue;
+                }
+                /* the wall between two cells belongs to the cell above or to the left of it */
+                if (x + 1 < cellGrid.length && !cellGrid[x][y].getCellDividers()[2].isActive()
+                        && hasCoin(cellGrid[x + 1][y], spawns)) {
+                    return Cell.Direction.RIGHT;
+                }
+                if (x > 0 && !cellGrid[x - 1][y].getCellDividers()[2].isActive()
+                        && hasCoin(cellGrid[x - 1][y], spawns)) {
+                    return Cell.Direction.LEFT;
+                }
+                if (y + 1 < cellGrid[x].length && !cellGrid[x][y].getCellDividers()[1].isActive()
+                        && hasCoin(cellGrid[x][y + 1], spawns)) {
+                    return Cell.Direction.DOWN;
+                }
+                if (y > 0 && !cellGrid[x][y - 1].getCellDividers()[1].isActive()
+                        && hasCoin(cellGrid[x][y - 1], spawns)) {
+                    return Cell.Direction.UP;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasCoin(Cell cell, XYPair[] spawns) {
+        for (XYPair spawn : spawns) {
+            if (spawn != null && cell.getX() == spawn.x && cell.getY() == spawn.y) {
+                return false;
+            }
+        }
+        return !cell.hasKey() && !cell.hasPowerUp();
+    }
+
     @After
     public void cleanUp(){
         GameSettings.setGameMode(null);
@@ -75,19 +143,51 @@ public class NetworkSystemTest {
         assertNotNull(networkSystem.getClient().getDataStorage().getCellGrid());
         assertNotNull(networkSystem.getClient().getDataStorage().getSpawnAt()[0]);
 
-        networkSystem.getClient().sendCoordinates(CharacterMovement.Direction.LEFT, CharacterMovement.Direction.DOWN,
-                false, CharacterMovement.Direction.DOWN, 130.0, 100.0, false, false);
+        networkSystem.getClient().sendInput(CharacterMovement.Direction.LEFT, CharacterMovement.Direction.DOWN,
+                true, false, false);
 
+        awaitReceived(() -> hasReceived(networkSystem, 0));
         networkSystem.update();
         CharacterMovement.Direction[] directions = networkSystem.getClient().getDataStorage().getPlayerDirections();
         assertEquals(CharacterMovement.Direction.LEFT,directions[0]);
         assertEquals(CharacterMovement.Direction.DOWN,directions[1]);
-        assertEquals(CharacterMovement.Direction.DOWN,networkSystem.getClient().getDataStorage().getPlayerIsFacing(0));
+        assertEquals(CharacterMovement.Direction.LEFT,networkSystem.getClient().getDataStorage().getPlayerIsFacing(0));
         assertFalse(networkSystem.getClient().getDataStorage().getPlayerIsMoving(0));
         assertFalse(networkSystem.getClient().getDataStorage().getInvisibilityBoost(0));
         assertFalse(networkSystem.getClient().getDataStorage().getSpeedBoost(0));
-        assertEquals(130.0,networkSystem.getClient().getDataStorage().getTransformCheck(0).x,0.01);
-        assertEquals(100.0,networkSystem.getClient().getDataStorage().getTransformCheck(0).y,0.01);
+        /* the first command only sets the directions, the player moves with the next one */
+        XYPair spawn = networkSystem.getClient().getDataStorage().getSpawnAt()[0];
+        assertEquals(spawn.x,networkSystem.getClient().getDataStorage().getTransformCheck(0).x,0.01);
+        assertEquals(spawn.y,networkSystem.getClient().getDataStorage().getTransformCheck(0).y,0.01);
+    }
+
+    @Test
+    public void serverMovesPlayerByInputTest() throws IOException, UsernameUnavailableException, InterruptedException {
+        networkSystem = new NetworkSystem();
+        GameSettings.setGameMode(MODE.SINGLEPLAYER);
+
+        networkSystem.initiateNetworkSystem(1,"test1","127.0.0.1", "55000");
+        networkSystem.start();
+
+        DataStorage dataStorage = networkSystem.getClient().getDataStorage();
+        XYPair spawn = dataStorage.getSpawnAt()[0];
+        int sequence = 0;
+        for (int i = 0; i < 3; i++) {
+            sequence = networkSystem.getClient().sendInput(CharacterMovement.Direction.RIGHT,
+                    CharacterMovement.Direction.NONE, false, false, false);
+        }
+
+        int last = sequence;
+        XYPair position = new XYPair(0, 0);
+        awaitReceived(() -> {
+            dataStorage.acquireReceivedState();
+            return dataStorage.getAcknowledgedInput(position) == last;
+        });
+        /* every command is applied in order, and each one moves the player by the one before it */
+        assertEquals(spawn.x + 6, position.x, 0.01);
+        assertEquals(spawn.y, position.y, 0.01);
+        assertEquals(CharacterMovement.Direction.RIGHT, dataStorage.getPlayerDirections()[0]);
+        assertTrue(dataStorage.getPlayerIsMoving(0));
     }
 
     @Test
@@ -117,11 +217,14 @@ public class NetworkSystemTest {
 
         networkSystem.initiateNetworkSystem(1,"test1","127.0.0.1", "55001");
         networkSystem.start();
+        networkSystem.update();
 
+        /* the scoreboard comes from the server, which has not been told of a coin the player has picked up */
+        awaitReceived(() -> networkSystem.getScores().containsKey("test1"));
         HashMap<String,Integer> scores = networkSystem.getScores();
 
-        assertTrue(scores.containsKey("test1"));
-        assertTrue(scores.containsValue(10));
+        assertEquals(1, scores.size());
+        assertEquals(0, (int) scores.get("test1"));
 
         GameSettings.setInventory(null);
     }
@@ -143,12 +246,13 @@ public class NetworkSystemTest {
         assertEquals("test1",networkSystem.getServer().getUsernames().get(0));
         assertEquals("test2",networkSystem.getServer().getUsernames().get(1));
 
-        networkSystem.getClient().sendCoordinates(CharacterMovement.Direction.LEFT, CharacterMovement.Direction.DOWN,
-                false, CharacterMovement.Direction.DOWN, 130.0, 100.0, false, false);
+        networkSystem.getClient().sendInput(CharacterMovement.Direction.LEFT, CharacterMovement.Direction.DOWN,
+                true, false, false);
 
-        networkSystem2.getClient().sendCoordinates(CharacterMovement.Direction.RIGHT, CharacterMovement.Direction.UP,
-                true, CharacterMovement.Direction.UP, 0.0, 10.0, false, false);
+        networkSystem2.getClient().sendInput(CharacterMovement.Direction.RIGHT, CharacterMovement.Direction.UP,
+                false, false, false);
 
+        awaitReceived(() -> hasReceived(networkSystem, 1) && hasReceived(networkSystem2, 1));
         networkSystem.update();
         networkSystem2.update();
 
@@ -157,7 +261,7 @@ public class NetworkSystemTest {
         assertEquals(CharacterMovement.Direction.DOWN,directions[1]);
         assertEquals(CharacterMovement.Direction.RIGHT,directions[2]);
         assertEquals(CharacterMovement.Direction.UP,directions[3]);
-        assertEquals(CharacterMovement.Direction.DOWN,networkSystem.getClient().getDataStorage().getPlayerIsFacing(0));
+        assertEquals(CharacterMovement.Direction.LEFT,networkSystem.getClient().getDataStorage().getPlayerIsFacing(0));
         assertEquals(CharacterMovement.Direction.UP,networkSystem.getClient().getDataStorage().getPlayerIsFacing(1));
         assertFalse(networkSystem.getClient().getDataStorage().getPlayerIsMoving(0));
         assertTrue(networkSystem.getClient().getDataStorage().getPlayerIsMoving(1));
@@ -165,15 +269,17 @@ public class NetworkSystemTest {
         assertFalse(networkSystem.getClient().getDataStorage().getSpeedBoost(0));
         assertFalse(networkSystem.getClient().getDataStorage().getInvisibilityBoost(1));
         assertFalse(networkSystem.getClient().getDataStorage().getSpeedBoost(1));
-        assertEquals(130.0,networkSystem.getClient().getDataStorage().getTransformCheck(0).x,0.01);
-        assertEquals(100.0,networkSystem.getClient().getDataStorage().getTransformCheck(0).y,0.01);
+        /* the first command only sets the directions, the player moves with the next one */
+        XYPair spawn = networkSystem.getClient().getDataStorage().getSpawnAt()[0];
+        assertEquals(spawn.x,networkSystem.getClient().getDataStorage().getTransformCheck(0).x,0.01);
+        assertEquals(spawn.y,networkSystem.getClient().getDataStorage().getTransformCheck(0).y,0.01);
 
         CharacterMovement.Direction[] directions2 = networkSystem2.getClient().getDataStorage().getPlayerDirections();
         assertEquals(CharacterMovement.Direction.LEFT,directions2[2]);
         assertEquals(CharacterMovement.Direction.DOWN,directions2[3]);
         assertEquals(CharacterMovement.Direction.RIGHT,directions2[0]);
         assertEquals(CharacterMovement.Direction.UP,directions2[1]);
-        assertEquals(CharacterMovement.Direction.DOWN,networkSystem2.getClient().getDataStorage().getPlayerIsFacing(1));
+        assertEquals(CharacterMovement.Direction.LEFT,networkSystem2.getClient().getDataStorage().getPlayerIsFacing(1));
         assertEquals(CharacterMovement.Direction.UP,networkSystem2.getClient().getDataStorage().getPlayerIsFacing(0));
         assertFalse(networkSystem2.getClient().getDataStorage().getPlayerIsMoving(1));
         assertTrue(networkSystem2.getClient().getDataStorage().getPlayerIsMoving(0));
@@ -181,10 +287,106 @@ public class NetworkSystemTest {
         assertFalse(networkSystem2.getClient().getDataStorage().getSpeedBoost(1));
         assertFalse(networkSystem2.getClient().getDataStorage().getInvisibilityBoost(0));
         assertFalse(networkSystem2.getClient().getDataStorage().getSpeedBoost(0));
-        assertEquals(0.0,networkSystem2.getClient().getDataStorage().getTransformCheck(0).x,0.01);
-        assertEquals(10.0,networkSystem2.getClient().getDataStorage().getTransformCheck(0).y,0.01);
+        XYPair spawn2 = networkSystem2.getClient().getDataStorage().getSpawnAt()[0];
+        assertEquals(spawn2.x,networkSystem2.getClient().getDataStorage().getTransformCheck(0).x,0.01);
+        assertEquals(spawn2.y,networkSystem2.getClient().getDataStorage().getTransformCheck(0).y,0.01);
 
         assertNull(networkSystem2.getServer());
         networkSystem2.closeClientSocket();
     }
+
+    @Test
+    public void scoreboardIsStreamedTest() throws IOException, UsernameUnavailableException, InterruptedException {
+        GameSettings.setGameMode(MODE.MULTIPLAYER);
+        GameSettings.setModel(MODEL.SERVER);
+        networkSystem = new NetworkSystem();
+        networkSystem.initiateNetworkSystem(2,"test1","127.0.0.1", "55003");
+
+        GameSettings.setModel(MODEL.CLIENT);
+        NetworkSystem networkSystem2 = new NetworkSystem();
+        networkSystem2.initiateNetworkSystem(2,"test2","127.0.0.1", "55003");
+        try {
+            networkSystem.start();
+            networkSystem2.start();
+
+            /* every score is known from the start */
+            awaitReceived(() -> networkSystem.getScores().size() == 2);
+            assertEquals(0, (int) networkSystem.getScores().get("test2"));
+
+            /* a coin is not counted where the second player has not moved to one */
+            networkSystem2.getClient().reportCoin();
+            Cell.Direction open = findOpenCoinCell(networkSystem2);
+            Assume.assumeNotNull(open);
+
+            /* the second player walks onto the coin in the next cell and picks it up */
+            CharacterMovement.Direction dirX = open == Cell.Direction.LEFT ? CharacterMovement.Direction.LEFT
+                    : open == Cell.Direction.RIGHT ? CharacterMovement.Direction.RIGHT
+                    : CharacterMovement.Direction.NONE;
+            CharacterMovement.Direction dirY = open == Cell.Direction.UP ? CharacterMovement.Direction.UP
+                    : open == Cell.Direction.DOWN ? CharacterMovement.Direction.DOWN
+                    : CharacterMovement.Direction.NONE;
+            for (int i = 0; i < 20; i++) {
+                networkSystem2.getClient().sendInput(dirX, dirY, false, false, false);
+                Thread.sleep(5);
+            }
+            networkSystem2.getClient().reportCoin();
+            /* the same coin cannot be picked up twice */
+            networkSystem2.getClient().reportCoin();
+
+            awaitReceived(() -> networkSystem.getScores().getOrDefault("test2", 0) == 10);
+            assertEquals(0, (int) networkSystem.getScores().get("test1"));
+            awaitReceived(() -> networkSystem2.getScores().getOrDefault("test2", 0) == 10);
+            Thread.sleep(100);
+            assertEquals(10, (int) networkSystem.getScores().get("test2"));
+        }
+        finally {
+            GameSettings.setInventory(null);
+            networkSystem2.closeClientSocket();
+        }
+    }
+
+    @Test
+    public void handshakeReportsEachStageTest() throws IOException, UsernameUnavailableException, InterruptedException {
+        networkSystem = new NetworkSystem();
+        GameSettings.setGameMode(MODE.SINGLEPLAYER);
+        networkSystem.initiateNetworkSystem(1,"test1","127.0.0.1", "55000");
+
+        List<LobbyHandshake.Stage> stages = new CopyOnWriteArrayList<>();
+        LobbyHandshake handshake = networkSystem.startAsync(new LobbyHandshake.Listener() {
+            @Override
+            public void onProgress(LobbyHandshake.Stage stage, List<String> usernames) {
+                stages.add(stage);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                fail(e.getMessage());
+            }
+        });
+        handshake.await();
+
+        assertEquals(Arrays.asList(LobbyHandshake.Stage.JOINING, LobbyHandshake.Stage.LOADING_MAP,
+                LobbyHandshake.Stage.LOADING_SPAWNS, LobbyHandshake.Stage.LOADED), stages);
+        assertNotNull(networkSystem.getClient().getDataStorage().getCellGrid());
+        assertNotNull(networkSystem.getClient().getDataStorage().getSpawnAt()[0]);
+    }
+
+    @Test
+    public void waitingForPlayersCanBeCancelledTest()
+            throws IOException, UsernameUnavailableException, InterruptedException {
+        GameSettings.setGameMode(MODE.MULTIPLAYER);
+        GameSettings.setModel(MODEL.SERVER);
+        networkSystem = new NetworkSystem();
+        networkSystem.initiateNetworkSystem(2,"test1","127.0.0.1", "55002");
+
+        LobbyHandshake handshake = networkSystem.startAsync(null);
+        awaitReceived(() -> handshake.getStage() == LobbyHandshake.Stage.WAITING_FOR_PLAYERS);
+        assertEquals(Collections.singletonList("test1"), networkSystem.getClient().getDataStorage().getUsernames());
+
+        long cancelledAt = System.currentTimeMillis();
+        handshake.cancel();
+        assertThrows(InterruptedIOException.class, handshake::await);
+        assertTrue(System.currentTimeMillis() - cancelledAt < 1000);
+        assertEquals(LobbyHandshake.Stage.CANCELLED, handshake.getStage());
+    }
 }
@@ -0,0 +1,62 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.network.PredictionBuffer;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
+
+import static org.junit.Assert.*;
+
+public class PredictionBufferTest {
+
+    private final XYPair correction = new XYPair(0, 0);
+
+    @Test
+    public void matchingStateNeedsNoCorrectionTest(){
+        PredictionBuffer prediction = new PredictionBuffer();
+        prediction.record(1, 100.0, 100.0);
+        prediction.record(2, 103.0, 100.0);
+        prediction.record(3, 106.0, 100.0);
+
+        assertTrue(prediction.reconcile(2, 103.0, 100.0, 109.0, 100.0, correction));
+        assertEquals(0.0, correction.x, 0.001);
+        assertEquals(0.0, correction.y, 0.001);
+        assertEquals(1, prediction.size());
+    }
+
+    @Test
+    public void replaysCommandsSinceAcknowledgedStateTest(){
+        PredictionBuffer prediction = new PredictionBuffer();
+        prediction.record(1, 100.0, 100.0);
+        prediction.record(2, 103.0, 100.0);
+        prediction.record(3, 106.0, 100.0);
+
+        /* the server put the player 10 pixels higher at command 1, the moves since are kept */
+        assertTrue(prediction.reconcile(1, 100.0, 90.0, 109.0, 100.0, correction));
+        assertEquals(0.0, correction.x, 0.001);
+        assertEquals(-10.0, correction.y, 0.001);
+        assertEquals(2, prediction.size());
+    }
+
+    @Test
+    public void unknownCommandIsIgnoredTest(){
+        PredictionBuffer prediction = new PredictionBuffer();
+        prediction.record(5, 0.0, 0.0);
+
+        assertFalse(prediction.reconcile(4, 50.0, 50.0, 0.0, 0.0, correction));
+        assertTrue(prediction.reconcile(5, 0.0, 0.0, 0.0, 0.0, correction));
+        assertFalse(prediction.reconcile(5, 0.0, 0.0, 0.0, 0.0, correction));
+        assertEquals(0, prediction.size());
+    }
+
+    @Test
+    public void oldestCommandsAreForgottenTest(){
+        PredictionBuffer prediction = new PredictionBuffer();
+        for(int i = 1; i <= PredictionBuffer.CAPACITY + 10; i++){
+            prediction.record(i, i, 0.0);
+        }
+        assertEquals(PredictionBuffer.CAPACITY, prediction.size());
+        assertFalse(prediction.reconcile(10, 0.0, 0.0, 0.0, 0.0, correction));
+        assertTrue(prediction.reconcile(11, 11.0, 0.0, 138.0, 0.0, correction));
+        assertEquals(PredictionBuffer.CAPACITY - 1, prediction.size());
+    }
+}
@@ -0,0 +1,96 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
+import uob.cs.teamproject.sabrewulf.network.DeadReckoning;
+import uob.cs.teamproject.sabrewulf.network.PriorityAccumulator;
+import uob.cs.teamproject.sabrewulf.network.Protocol;
+import uob.cs.teamproject.sabrewulf.network.Snapshot;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class PriorityAccumulatorTest {
+
+    private static final int PLAYERS = 2;
+    private static final int ENEMIES = 4;
+    /* enough for the y of the client's own player and one enemy */
+    private static final int BUDGET = Snapshot.deltaOverhead(PLAYERS, ENEMIES) + 1 + 2 + Protocol.ENEMY_KEYFRAME_SIZE;
+
+    /* the client's player at the origin, the other player far away and the enemies along the x axis */
+    private static Snapshot snapshot(int tick, double y, double... enemyXs){
+        Snapshot snapshot = new Snapshot(PLAYERS, ENEMIES);
+        snapshot.reset(tick);
+        ByteBuffer record = ByteBuffer.allocate(Protocol.PLAYER_RECORD_SIZE);
+        for(int slot = 0; slot < PLAYERS; slot++){
+            record.clear();
+            Protocol.writePlayer(record, 50000 + slot, CharacterMovement.Direction.NONE,
+                    CharacterMovement.Direction.DOWN, true, CharacterMovement.Direction.DOWN, false, false,
+                    slot * 1000.0, y);
+            snapshot.setPlayer(slot, record);
+        }
+        ByteBuffer enemies = ByteBuffer.allocate(ENEMIES * Protocol.ENEMY_RECORD_SIZE);
+        for(double x : enemyXs){
+            Protocol.writeEnemy(enemies, CharacterMovement.Direction.NONE, CharacterMovement.Direction.DOWN,
+                    true, CharacterMovement.Direction.DOWN, x, y);
+        }
+        DeadReckoning reckoning = new DeadReckoning(ENEMIES, 0.0, 100);
+        reckoning.update(tick, enemies, ENEMIES);
+        snapshot.setEnemies(reckoning.getKeyframes(), ENEMIES);
+        return snapshot;
+    }
+
+    @Test
+    public void closestChangeIsSentFirstTest(){
+        Snapshot baseline = snapshot(1, 0.0, 50.0, 500.0, 900.0, 100.0);
+        Snapshot latest = snapshot(2, 10.0, 50.0, 500.0, 900.0, 100.0);
+        Snapshot view = new Snapshot(PLAYERS, ENEMIES);
+        view.reset(2);
+
+        new PriorityAccumulator(PLAYERS, ENEMIES).fill(0, latest, baseline, view, BUDGET, 0.0, 10.0);
+        assertTrue(view.deltaSize(baseline) <= BUDGET);
+        assertEquals(latest.getPlayerField(0, 3), view.getPlayerField(0, 3));
+        assertEquals(Protocol.ENEMY_KEYFRAME_SIZE, view.enemyDeltaSize(0, baseline));
+        for(int enemy = 1; enemy < ENEMIES; enemy++){
+            assertEquals(0, view.enemyDeltaSize(enemy, baseline));
+        }
+        assertEquals(0, view.playerDeltaSize(1, baseline));
+    }
+
+    @Test
+    public void farChangesAreSentEventuallyTest(){
+        Snapshot baseline = snapshot(1, 0.0, 50.0, 500.0, 900.0, 100.0);
+        Snapshot latest = snapshot(2, 10.0, 50.0, 500.0, 900.0, 100.0);
+        PriorityAccumulator priorities = new PriorityAccumulator(PLAYERS, ENEMIES);
+        boolean[] sent = new boolean[ENEMIES];
+        for(int tick = 2; tick < 2 + 2 * ENEMIES; tick++){
+            Snapshot view = new Snapshot(PLAYERS, ENEMIES);
+            view.reset(tick);
+            /* the client never acknowledges, so every enemy stays changed against the same baseline */
+            priorities.fill(0, latest, baseline, view, BUDGET, 0.0, 10.0);
+            assertTrue(view.deltaSize(baseline) <= BUDGET);
+            for(int enemy = 0; enemy < ENEMIES; enemy++){
+                sent[enemy] |= view.enemyDeltaSize(enemy, baseline) != 0;
+            }
+        }
+        for(int enemy = 0; enemy < ENEMIES; enemy++){
+            assertTrue(sent[enemy]);
+        }
+    }
+
+    @Test
+    public void newEnemiesAreAlwaysSentTest(){
+        Snapshot latest = snapshot(1, 0.0, 50.0, 500.0, 900.0, 100.0);
+        Snapshot view = new Snapshot(PLAYERS, ENEMIES);
+        view.reset(1);
+
+        new PriorityAccumulator(PLAYERS, ENEMIES).fill(0, latest, null, view, BUDGET, 0.0, 0.0);
+        assertEquals(ENEMIES, view.getEnemyCount());
+        for(int enemy = 0; enemy < ENEMIES; enemy++){
+            assertEquals(latest.getEnemyField(enemy, 1), view.getEnemyField(enemy, 1));
+        }
+        assertTrue(view.hasPlayer(0));
+        assertFalse(view.hasPlayer(1));
+    }
+}
@@ -0,0 +1,122 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
+import uob.cs.teamproject.sabrewulf.network.Protocol;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class ProtocolTest {
+
+    @Test
+    public void playerRecordRoundTripTest(){
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        Protocol.writeHeader(buffer, Protocol.PLAYER_INPUT);
+        Protocol.writePlayer(buffer, 55000, CharacterMovement.Direction.LEFT, CharacterMovement.Direction.UP,
+                true, CharacterMovement.Direction.UP, false, true, -130.5, 420.0);
+
+        assertEquals(Protocol.HEADER_SIZE + Protocol.PLAYER_RECORD_SIZE, buffer.position());
+        assertTrue(Protocol.PLAYER_RECORD_SIZE < 12);
+
+        buffer.flip();
+        assertTrue(Protocol.isBinary(buffer));
+        assertEquals(Protocol.PLAYER_INPUT, Protocol.readHeader(buffer));
+
+        assertEquals(55000, buffer.getShort() & 0xFFFF);
+        int bits = buffer.getShort() & 0xFFFF;
+        assertEquals(CharacterMovement.Direction.LEFT, Protocol.directionX(bits));
+        assertEquals(CharacterMovement.Direction.UP, Protocol.directionY(bits));
+        assertEquals(CharacterMovement.Direction.UP, Protocol.facing(bits));
+        assertTrue(Protocol.isMoving(bits));
+        assertFalse(Protocol.invisibility(bits));
+        assertTrue(Protocol.speed(bits));
+        assertEquals(-130.5, Protocol.toPosition(buffer.getShort()), 0.0625);
+        assertEquals(420.0, Protocol.toPosition(buffer.getShort()), 0.0625);
+    }
+
+    @Test
+    public void inputRunRoundTripTest(){
+        int command = Protocol.packInput(CharacterMovement.Direction.RIGHT, CharacterMovement.Direction.UP,
+                true, true, false);
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        Protocol.writeInputRun(buffer, command, Protocol.MAX_INPUT_COMMANDS);
+        assertEquals(Protocol.INPUT_RUN_SIZE, buffer.position());
+
+        buffer.flip();
+        int run = Protocol.readInputRun(buffer);
+        assertEquals(Protocol.MAX_INPUT_COMMANDS, Protocol.runLength(run));
+        command = Protocol.runCommand(run);
+        assertEquals(CharacterMovement.Direction.RIGHT, Protocol.inputDirectionX(command));
+        assertEquals(CharacterMovement.Direction.UP, Protocol.inputDirectionY(command));
+        assertTrue(Protocol.inputStandsStill(command));
+        assertTrue(Protocol.inputInvisibility(command));
+        assertFalse(Protocol.inputSpeed(command));
+    }
+
+    @Test
+    public void inputWithoutKeysTest(){
+        int command = Protocol.packInput(CharacterMovement.Direction.NONE, CharacterMovement.Direction.NONE,
+                false, false, true);
+        assertEquals(CharacterMovement.Direction.NONE, Protocol.inputDirectionX(command));
+        assertEquals(CharacterMovement.Direction.NONE, Protocol.inputDirectionY(command));
+        assertFalse(Protocol.inputStandsStill(command));
+        assertFalse(Protocol.inputInvisibility(command));
+        assertTrue(Protocol.inputSpeed(command));
+    }
+
+    @Test
+    public void enemyRecordRoundTripTest(){
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        Protocol.writeEnemy(buffer, CharacterMovement.Direction.NONE, CharacterMovement.Direction.DOWN,
+                false, CharacterMovement.Direction.RIGHT, 540.25, 77.0);
+        assertEquals(Protocol.ENEMY_RECORD_SIZE, buffer.position());
+
+        buffer.flip();
+        int bits = buffer.getShort() & 0xFFFF;
+        assertEquals(CharacterMovement.Direction.NONE, Protocol.directionX(bits));
+        assertEquals(CharacterMovement.Direction.DOWN, Protocol.directionY(bits));
+        assertEquals(CharacterMovement.Direction.RIGHT, Protocol.facing(bits));
+        assertFalse(Protocol.isMoving(bits));
+        assertEquals(540.25, Protocol.toPosition(buffer.getShort()), 0.0625);
+        assertEquals(77.0, Protocol.toPosition(buffer.getShort()), 0.0625);
+    }
+
+    @Test
+    public void invalidDirectionsFallBackTest(){
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        Protocol.writeEnemy(buffer, null, null, true, null, 0.0, 0.0);
+        buffer.flip();
+        int bits = buffer.getShort() & 0xFFFF;
+
+        assertEquals(CharacterMovement.Direction.NONE, Protocol.directionX(bits));
+        assertEquals(CharacterMovement.Direction.DOWN, Protocol.directionY(bits));
+        assertEquals(CharacterMovement.Direction.DOWN, Protocol.facing(bits));
+        assertTrue(Protocol.isMoving(bits));
+    }
+
+    @Test
+    public void positionsAreClampedTest(){
+        assertEquals(Short.MAX_VALUE, Protocol.toFixedPoint(100000.0));
+        assertEquals(Short.MIN_VALUE, Protocol.toFixedPoint(-100000.0));
+    }
+
+    @Test
+    public void textMessagesAreNotBinaryTest(){
+        assertFalse(Protocol.isBinary(ByteBuffer.wrap("start#55000#".getBytes())));
+        assertFalse(Protocol.isBinary(ByteBuffer.wrap("end#score#".getBytes())));
+    }
+
+    @Test
+    public void otherVersionIsRejectedTest(){
+        ByteBuffer buffer = ByteBuffer.allocate(Protocol.HEADER_SIZE);
+        buffer.put((byte) Protocol.PROTOCOL_ID);
+        buffer.put((byte) (Protocol.VERSION + 1));
+        buffer.put((byte) Protocol.WORLD_STATE);
+        buffer.flip();
+
+        assertTrue(Protocol.isBinary(buffer));
+        assertEquals(-1, Protocol.readHeader(buffer));
+    }
+}
@@ -0,0 +1,150 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.network.LoopbackTransport;
+import uob.cs.teamproject.sabrewulf.network.Protocol;
+import uob.cs.teamproject.sabrewulf.network.ReliableChannel;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReliableChannelTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final LoopbackTransport[] ends = LoopbackTransport.pair();
+    private final List<String> receivedByServer = new ArrayList<>();
+    private final List<String> receivedByClient = new ArrayList<>();
+    private final ReliableChannel server =
+            new ReliableChannel(ends[0], ends[1].getLocalAddress(), receivedByServer::add);
+    private final ReliableChannel client =
+            new ReliableChannel(ends[1], ends[0].getLocalAddress(), receivedByClient::add);
+
+    public ReliableChannelTest() {
+        ends[0].setTimeout(100);
+        ends[1].setTimeout(100);
+    }
+
+    /* take the next datagram waiting at an end */
+    private ByteBuffer take(LoopbackTransport end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(2048);
+        end.receive(buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    /* pass a datagram to a channel as the engine would */
+    private void deliver(ByteBuffer packet, ReliableChannel channel, long now){
+        ByteBuffer data = packet.duplicate();
+        assertEquals(Protocol.CONTROL, Protocol.readHeader(data));
+        channel.receive(data, now);
+    }
+
+    @Test
+    public void messagesAreDeliveredAndAcknowledgedTest() throws IOException {
+        client.send("score#test1#10#", 0);
+        client.send("end#", 0);
+        deliver(take(ends[0]), server, 5 * MS);
+        deliver(take(ends[0]), server, 5 * MS);
+        assertEquals(2, receivedByServer.size());
+        assertEquals("score#test1#10#", receivedByServer.get(0));
+        assertEquals("end#", receivedByServer.get(1));
+
+        assertEquals(2, client.getUnacknowledgedCount());
+        deliver(take(ends[1]), client, 10 * MS);
+        deliver(take(ends[1]), client, 10 * MS);
+        assertEquals(0, client.getUnacknowledgedCount());
+        assertTrue(receivedByClient.isEmpty());
+    }
+
+    @Test
+    public void lostMessageIsRetransmittedTest() throws IOException {
+        client.send("quit#", 0);
+        /* the first transmission is lost */
+        take(ends[0]);
+
+        client.update(ReliableChannel.INITIAL_TIMEOUT - 1);
+        assertNull(poll(ends[0]));
+        client.update(ReliableChannel.INITIAL_TIMEOUT);
+        deliver(take(ends[0]), server, ReliableChannel.INITIAL_TIMEOUT + 5 * MS);
+        assertEquals(1, receivedByServer.size());
+        assertEquals("quit#", receivedByServer.get(0));
+        assertEquals(2 * ReliableChannel.INITIAL_TIMEOUT, client.getTimeout());
+    }
+
+    @Test
+    public void messagesAreDeliveredOnceInOrderTest() throws IOException {
+        server.send("start#1#", 0);
+        server.send("end#score#", 0);
+        ByteBuffer first = take(ends[1]);
+        ByteBuffer second = take(ends[1]);
+
+        deliver(second, client, MS);
+        assertTrue(receivedByClient.isEmpty());
+        deliver(first, client, MS);
+        deliver(first, client, MS);
+        deliver(second, client, MS);
+        assertEquals(2, receivedByClient.size());
+        assertEquals("start#1#", receivedByClient.get(0));
+        assertEquals("end#score#", receivedByClient.get(1));
+    }
+
+    @Test
+    public void timeoutFollowsRoundTripTimeTest() throws IOException {
+        for (int i = 0; i < 8; i++) {
+            long sent = i * 1000 * MS;
+            client.send("score#" + i + "#", sent);
+            deliver(take(ends[0]), server, sent);
+            deliver(take(ends[1]), client, sent + 100 * MS);
+        }
+        /* a steady 100 ms round trip brings the timeout down from the initial guess towards it */
+        assertTrue(client.getTimeout() >= 100 * MS);
+        assertTrue(client.getTimeout() < 200 * MS);
+    }
+
+    @Test
+    public void unreachablePeerIsGivenUpOnTest() throws IOException {
+        int[] givenUp = new int[1];
+        client.setUnreachableHandler(() -> givenUp[0]++);
+        client.send("quit#", 0);
+        long now = 0;
+        for (int i = 0; i < ReliableChannel.MAX_ATTEMPTS - 1; i++) {
+            now += ReliableChannel.MAX_TIMEOUT;
+            client.update(now);
+        }
+        assertFalse(client.isUnreachable());
+        assertEquals(0, givenUp[0]);
+
+        now += ReliableChannel.MAX_TIMEOUT;
+        client.update(now);
+        assertTrue(client.isUnreachable());
+        assertEquals(1, givenUp[0]);
+        /* the message is not forgotten as if it had been delivered */
+        assertEquals(1, client.getUnacknowledgedCount());
+
+        /* nothing more is sent to the peer, and the owner is only told once */
+        while (poll(ends[0]) != null) {
+            //Drain every transmission so far
+        }
+        client.send("end#", now);
+        client.update(now + ReliableChannel.MAX_TIMEOUT);
+        assertNull(poll(ends[0]));
+        assertEquals(1, givenUp[0]);
+        assertEquals(2, client.getUnacknowledgedCount());
+    }
+
+    private ByteBuffer poll(LoopbackTransport end) throws IOException {
+        end.setTimeout(10);
+        try {
+            return take(end);
+        }
+        catch (SocketTimeoutException e) {
+            return null;
+        }
+    }
+}
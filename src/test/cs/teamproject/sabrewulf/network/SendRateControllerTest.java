@@ -0,0 +1,69 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.network.SendRateController;
+
+import static org.junit.Assert.*;
+
+public class SendRateControllerTest {
+
+    private static final long MS = 1_000_000L;
+
+    /* the number of messages due in a second, checked on every frame at a frame rate */
+    private static int dueInOneSecond(SendRateController controller, long start, int frameRate) {
+        int due = 0;
+        for (int i = 0; i < frameRate; i++) {
+            if (controller.isDue(start + i * 1000 * MS / frameRate)) {
+                due++;
+            }
+        }
+        return due;
+    }
+
+    @Test
+    public void rateLimitsHighFrameRateTest() {
+        SendRateController controller = new SendRateController(10, 60);
+        assertEquals(60.0, controller.getRate(), 0.01);
+        int due = dueInOneSecond(controller, 0, 144);
+        assertTrue("due " + due, due >= 59 && due <= 61);
+    }
+
+    @Test
+    public void lossCutsRateTest() {
+        SendRateController controller = new SendRateController(10, 60);
+        controller.adjust(10, 40);
+        assertEquals(45.0, controller.getRate(), 0.01);
+        for (int i = 0; i < 20; i++) {
+            controller.adjust(10, 40);
+        }
+        assertEquals(10.0, controller.getRate(), 0.01);
+        int due = dueInOneSecond(controller, 0, 144);
+        assertTrue("due " + due, due >= 9 && due <= 11);
+    }
+
+    @Test
+    public void growingRoundTripCutsRateTest() {
+        SendRateController controller = new SendRateController(10, 60);
+        controller.adjust(0, 40);
+        controller.adjust(0, 50);
+        assertEquals(60.0, controller.getRate(), 0.01);
+        /* packets queueing on the way make the round trip much longer than the lowest recent one */
+        controller.adjust(0, 100);
+        assertEquals(45.0, controller.getRate(), 0.01);
+    }
+
+    @Test
+    public void cleanLinkProbesBackUpTest() {
+        SendRateController controller = new SendRateController(10, 60);
+        for (int i = 0; i < 10; i++) {
+            controller.adjust(50, 0);
+        }
+        assertEquals(10.0, controller.getRate(), 0.01);
+        controller.adjust(0, 0);
+        assertEquals(15.0, controller.getRate(), 0.01);
+        for (int i = 0; i < 20; i++) {
+            controller.adjust(0, 0);
+        }
+        assertEquals(60.0, controller.getRate(), 0.01);
+    }
+}
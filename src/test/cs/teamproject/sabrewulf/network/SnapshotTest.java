@@ -0,0 +1,150 @@
+package test.cs.teamproject.sabrewulf.network;
+
+import org.junit.Test;
+import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
+import uob.cs.teamproject.sabrewulf.network.DeadReckoning;
+import uob.cs.teamproject.sabrewulf.network.Protocol;
+import uob.cs.teamproject.sabrewulf.network.Snapshot;
+import uob.cs.teamproject.sabrewulf.network.SnapshotHistory;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class SnapshotTest {
+
+    private static final int PLAYERS = 4;
+    private static final int ENEMIES = 4;
+
+    private static void fill(Snapshot snapshot, double x){
+        ByteBuffer record = ByteBuffer.allocate(Protocol.PLAYER_RECORD_SIZE);
+        for(int i = 0; i < PLAYERS; i++){
+            record.clear();
+            Protocol.writePlayer(record, 50000 + i, CharacterMovement.Direction.RIGHT,
+                    CharacterMovement.Direction.NONE, true, CharacterMovement.Direction.RIGHT, false, false,
+                    i == 0 ? x : 100.0 * i, 200.0);
+            snapshot.setPlayer(i, record);
+        }
+        ByteBuffer enemies = ByteBuffer.allocate(ENEMIES * Protocol.ENEMY_RECORD_SIZE);
+        for(int i = 0; i < ENEMIES; i++){
+            Protocol.writeEnemy(enemies, CharacterMovement.Direction.LEFT, CharacterMovement.Direction.NONE,
+                    true, CharacterMovement.Direction.LEFT, 40.0 * i, 60.0);
+        }
+        DeadReckoning reckoning = new DeadReckoning(ENEMIES, 2.0, 30);
+        reckoning.update(1, enemies, ENEMIES);
+        snapshot.setEnemies(reckoning.getKeyframes(), ENEMIES);
+    }
+
+    @Test
+    public void fullSnapshotRoundTripTest(){
+        Snapshot sent = new Snapshot(PLAYERS, ENEMIES);
+        sent.reset(1);
+        fill(sent, 12.5);
+        ByteBuffer buffer = ByteBuffer.allocate(Snapshot.maxDeltaSize(PLAYERS, ENEMIES));
+        sent.writeDelta(buffer, null);
+        buffer.flip();
+
+        Snapshot received = new Snapshot(PLAYERS, ENEMIES);
+        received.reset(1);
+        assertTrue(received.readDelta(buffer, null));
+        assertFalse(buffer.hasRemaining());
+        for(int i = 0; i < PLAYERS; i++){
+            assertTrue(received.hasPlayer(i));
+            for(int field = 0; field < 4; field++){
+                assertEquals(sent.getPlayerField(i, field), received.getPlayerField(i, field));
+            }
+        }
+        assertEquals(ENEMIES, received.getEnemyCount());
+        assertEquals(sent.getEnemyBits(3), received.getEnemyBits(3));
+        assertEquals(120.0, Protocol.toPosition(received.getEnemyField(3, 1)), 0.0);
+    }
+
+    @Test
+    public void deltaOnlySendsChangesTest(){
+        Snapshot baseline = new Snapshot(PLAYERS, ENEMIES);
+        baseline.reset(1);
+        fill(baseline, 12.5);
+        Snapshot current = new Snapshot(PLAYERS, ENEMIES);
+        current.reset(2);
+        fill(current, 13.0);
+
+        ByteBuffer full = ByteBuffer.allocate(Snapshot.maxDeltaSize(PLAYERS, ENEMIES));
+        current.writeDelta(full, null);
+        ByteBuffer delta = ByteBuffer.allocate(Snapshot.maxDeltaSize(PLAYERS, ENEMIES));
+        current.writeDelta(delta, baseline);
+
+        /* one player has moved along x: its field mask and x are all that is sent */
+        assertEquals(1 + 1 + 1 + 2 + 1 + 1, delta.position());
+        assertTrue(delta.position() * 5 < full.position());
+
+        delta.flip();
+        Snapshot received = new Snapshot(PLAYERS, ENEMIES);
+        received.reset(2);
+        assertTrue(received.readDelta(delta, baseline));
+        assertEquals(13.0, Protocol.toPosition(received.getPlayerField(0, 2)), 0.0);
+        assertEquals(300.0, Protocol.toPosition(received.getPlayerField(3, 2)), 0.0);
+        assertEquals(50002, received.getPlayerField(2, 0) & 0xFFFF);
+        assertEquals(ENEMIES, received.getEnemyCount());
+    }
+
+    @Test
+    public void deltaSizeMatchesWrittenDeltaTest(){
+        Snapshot baseline = new Snapshot(PLAYERS, ENEMIES);
+        baseline.reset(1);
+        fill(baseline, 12.5);
+        Snapshot current = new Snapshot(PLAYERS, ENEMIES);
+        current.reset(2);
+        fill(current, 13.0);
+
+        ByteBuffer buffer = ByteBuffer.allocate(Snapshot.maxDeltaSize(PLAYERS, ENEMIES));
+        current.writeDelta(buffer, baseline);
+        assertEquals(buffer.position(), current.deltaSize(baseline));
+        buffer.clear();
+        current.writeDelta(buffer, null);
+        assertEquals(buffer.position(), current.deltaSize(null));
+    }
+
+    @Test
+    public void mismatchedSlotsAreRejectedTest(){
+        Snapshot sent = new Snapshot(PLAYERS, ENEMIES);
+        sent.reset(1);
+        fill(sent, 0.0);
+        ByteBuffer buffer = ByteBuffer.allocate(Snapshot.maxDeltaSize(PLAYERS, ENEMIES));
+        sent.writeDelta(buffer, null);
+        buffer.flip();
+
+        assertFalse(new Snapshot(PLAYERS - 1, ENEMIES).readDelta(buffer, null));
+    }
+
+    @Test
+    public void historyAcknowledgementTest(){
+        SnapshotHistory history = new SnapshotHistory(PLAYERS, ENEMIES);
+        for(int tick = 1; tick <= 10; tick++){
+            history.next(tick);
+        }
+        assertNull(history.latestAcknowledged(0));
+
+        /* slot 0 has received tick 8 and, from the bitfield, ticks 7 and 5 */
+        history.acknowledge(0, 8, 0b101);
+        assertEquals(8, history.latestAcknowledged(0).getTick());
+        assertTrue(history.get(5).isAcknowledged(0));
+        assertFalse(history.get(6).isAcknowledged(0));
+        assertNull(history.latestAcknowledged(1));
+
+        /* an older acknowledgement arriving late does not move the baseline back */
+        history.acknowledge(0, 6, 0);
+        assertEquals(8, history.latestAcknowledged(0).getTick());
+    }
+
+    @Test
+    public void historyForgetsOldTicksTest(){
+        SnapshotHistory history = new SnapshotHistory(PLAYERS, ENEMIES);
+        history.next(1);
+        history.acknowledge(0, 1, 0);
+        history.next(1 + SnapshotHistory.SIZE);
+
+        assertNull(history.get(1));
+        assertNull(history.latestAcknowledged(0));
+        assertNotNull(history.get(1 + SnapshotHistory.SIZE));
+    }
+}
@@ -2,6 +2,7 @@ package uob.cs.teamproject.sabrewulf;
 
 import javafx.animation.AnimationTimer;
 import javafx.application.Application;
+import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.StackPane;
@@ -10,17 +11,23 @@ import uob.cs.teamproject.sabrewulf.achievements.StatisticsTracker;
 import uob.cs.teamproject.sabrewulf.audio.Audio;
 import uob.cs.teamproject.sabrewulf.collisions.CollisionSystem;
 import uob.cs.teamproject.sabrewulf.input.Input;
+import uob.cs.teamproject.sabrewulf.network.DedicatedServer;
+import uob.cs.teamproject.sabrewulf.network.ImpairmentProxy;
+import uob.cs.teamproject.sabrewulf.network.LoadTest;
+import uob.cs.teamproject.sabrewulf.network.MatchServer;
 import uob.cs.teamproject.sabrewulf.network.NetworkSystem;
 import uob.cs.teamproject.sabrewulf.rendering.Renderer;
 import uob.cs.teamproject.sabrewulf.rendering.ResizeableCanvas;
 import uob.cs.teamproject.sabrewulf.ui.InGameBar;
 import uob.cs.teamproject.sabrewulf.ui.MenuManager;
+import uob.cs.teamproject.sabrewulf.ui.NetworkStatsOverlay;
 import uob.cs.teamproject.sabrewulf.ui.scene.AchievementsAwardedScene;
 import uob.cs.teamproject.sabrewulf.ui.scene.FinalScoreScene;
 import uob.cs.teamproject.sabrewulf.ui.selectors.MODE;
 import uob.cs.teamproject.sabrewulf.ui.selectors.MODEL;
 import uob.cs.teamproject.sabrewulf.ui.selectors.WINDOWSIZE;
 
+import java.io.IOException;
 import java.util.Set;
 
 /**
@@ -63,16 +70,42 @@ public class Game extends Application implements GameStateOwner {
         /* JavaFX controls for displaying the game */
         private ResizeableCanvas canvas;
         private InGameBar inGameBar;
-
-        /* stores the time when a game starts, so that the duration of the game can be determined */
-        private long gameStartTime;
-
+        private NetworkStatsOverlay networkStatsOverlay;
 
         /**
-         * The entry point of the program. Launches the JavaFX preloader and the main application.
+         * The entry point of the program. Launches the JavaFX preloader and the main application, or a
+         * {@link DedicatedServer} without any window if the first argument is {@code --dedicated}, or a
+         * {@link MatchServer} hosting many games at once if it is {@code --matches}, or an {@link ImpairmentProxy}
+         * to play through under bad network conditions if it is {@code --proxy}, or a {@link LoadTest} of bots
+         * against a server if it is {@code --load-test}. The arguments
+         * {@code --stats-log <file>} write the network statistics of each game to a CSV file.
          * @param args command line arguments
+         * @throws IOException if a dedicated server could not be started
          */
-        public static void main(String[] args) {
+        public static void main(String[] args) throws IOException {
+                if (args.length > 0 && args[0].equals("--dedicated")) {
+                        DedicatedServer.main(args);
+                        return;
+                }
+                if (args.length > 0 && args[0].equals("--matches")) {
+                        MatchServer.main(args);
+                        return;
+                }
+                if (args.length > 0 && args[0].equals("--proxy")) {
+                        ImpairmentProxy.main(args);
+                        return;
+                }
+                if (args.length > 0 && args[0].equals("--load-test")) {
+                        LoadTest.main(args);
+                        return;
+                }
+
+                for (int i = 0; i + 1 < args.length; i++) {
+                        if (args[i].equals("--stats-log")) {
+                                GameSettings.setNetworkStatsLog(args[i + 1]);
+                        }
+                }
+
                 /* enable the 'preloader' splash screen */
                 System.setProperty("javafx.preloader", GamePreloader.class.getCanonicalName());
 
@@ -118,6 +151,7 @@ public class Game extends Application implements GameStateOwner {
 
                 /* create the rest of the controls */
                 inGameBar       = new InGameBar(audioSystem);
+                networkStatsOverlay = new NetworkStatsOverlay();
 
                 /* lay out and configure the controls */
                 initialiseControls();
@@ -153,6 +187,7 @@ public class Game extends Application implements GameStateOwner {
                             collisionSystem.update();
                             networkSystem.update();
                             renderer.update();
+                            networkStatsOverlay.update(now, networkSystem.getNetworkStats());
                         }
                 };
 
@@ -171,9 +206,9 @@ public class Game extends Application implements GameStateOwner {
                         mainStage.setFullScreen(true);
                 }
 
-                /* if this is a singleplayer game, record the current time and notify the achievements system */
+                /* record when the game started, and if this is a singleplayer game notify the achievements system */
+                networkSystem.markStarted();
                 if(GameSettings.getGameMode() == MODE.SINGLEPLAYER) {
-                        gameStartTime = System.nanoTime();
                         statisticsTracker.noteGameStarted();
                 }
 
@@ -244,8 +279,8 @@ public class Game extends Application implements GameStateOwner {
                                 /* play success audio if the player successfully completes the game */
                                 audioSystem.playSuccessAudio();
 
-                                /* work out the duration of the game */
-                                long gameTimeMillis = (System.nanoTime() - gameStartTime) / 1000000L;
+                                /* work out the duration of the game, on the clock shared with the server */
+                                long gameTimeMillis = networkSystem.getMatchTime();
 
                                 /* notify the statistics tracker that the game has completed */
                                 statisticsTracker.noteGameFinished(GameSettings.getDifficulty(), gameTimeMillis);
@@ -375,6 +410,7 @@ public class Game extends Application implements GameStateOwner {
                         inGameBar       (top)
                         canvasContainer (center)
                           canvas
+                          networkStatsOverlay (top left, shown with F3)
                 */
 
                 /* set window title and icon */
@@ -387,6 +423,8 @@ public class Game extends Application implements GameStateOwner {
                 gameLayoutPane.setTop(inGameBar);
                 gameLayoutPane.setCenter(canvasContainer);
                 canvasContainer.getChildren().add(canvas);
+                canvasContainer.getChildren().add(networkStatsOverlay);
+                StackPane.setAlignment(networkStatsOverlay, Pos.TOP_LEFT);
 
                 /* configure the controls */
                 menuRoot.prefWidthProperty().bind(mainScene.widthProperty());
@@ -1,6 +1,8 @@
 package uob.cs.teamproject.sabrewulf;
 
+import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import uob.cs.teamproject.sabrewulf.components.Inventory;
 import uob.cs.teamproject.sabrewulf.ui.selectors.DIFFICULTY;
@@ -26,6 +28,16 @@ public class GameSettings {
     private static String username;
     private static Inventory inventory;
     private static Boolean pauseMenuDisabled;
+    private static int serverTickRate = 30;
+    private static int interpolationDelay = 100;
+    private static double enemyCorrectionThreshold = 2.0;
+    private static int enemyKeyframeInterval = 1000;
+    private static int clientBandwidthBudget = 1200;
+    private static int interestRadius = 0;
+    private static int minSendRate = 10;
+    private static int maxSendRate = 60;
+    private static final BooleanProperty networkStatsShown = new SimpleBooleanProperty(false);
+    private static String networkStatsLog;
 
     /** Initialise the values for the game settings
      */
@@ -145,6 +157,100 @@ public class GameSettings {
         GameSettings.pauseMenuDisabled = disablePauseMenu;
     }
 
+    /** Set the number of times per second the server updates and sends the game state to the clients
+     *  (only accepts values between 10 and 120)
+     * @param serverTickRate - Number of server ticks per second
+     */
+    public static void setServerTickRate(int serverTickRate) {
+        if (serverTickRate >= 10 && serverTickRate <= 120) {
+            GameSettings.serverTickRate = serverTickRate;
+        }
+    }
+
+    /** Set how far in the past, in milliseconds, characters controlled by other users are drawn, so that their
+     *  movement can be interpolated between received states (only accepts values between 0 and 1000)
+     * @param interpolationDelay - Interpolation delay in milliseconds
+     */
+    public static void setInterpolationDelay(int interpolationDelay) {
+        if (interpolationDelay >= 0 && interpolationDelay <= 1000) {
+            GameSettings.interpolationDelay = interpolationDelay;
+        }
+    }
+
+    /** Set how far, in pixels, an enemy may drift from the position the clients extrapolate before the server sends
+     *  them a correction (only accepts values between 0 and 64)
+     * @param enemyCorrectionThreshold - Correction threshold in pixels
+     */
+    public static void setEnemyCorrectionThreshold(double enemyCorrectionThreshold) {
+        if (enemyCorrectionThreshold >= 0 && enemyCorrectionThreshold <= 64) {
+            GameSettings.enemyCorrectionThreshold = enemyCorrectionThreshold;
+        }
+    }
+
+    /** Set the longest time, in milliseconds, the server goes without sending the position of an enemy, even if the
+     *  clients are extrapolating it correctly (only accepts values between 100 and 10000)
+     * @param enemyKeyframeInterval - Keyframe interval in milliseconds
+     */
+    public static void setEnemyKeyframeInterval(int enemyKeyframeInterval) {
+        if (enemyKeyframeInterval >= 100 && enemyKeyframeInterval <= 10000) {
+            GameSettings.enemyKeyframeInterval = enemyKeyframeInterval;
+        }
+    }
+
+    /** Set the largest number of bytes the server sends each client on each tick; changes which do not fit wait for a
+     *  later tick (only accepts values between 64 and 1400)
+     * @param clientBandwidthBudget - Bytes per client per tick
+     */
+    public static void setClientBandwidthBudget(int clientBandwidthBudget) {
+        if (clientBandwidthBudget >= 64 && clientBandwidthBudget <= 1400) {
+            GameSettings.clientBandwidthBudget = clientBandwidthBudget;
+        }
+    }
+
+    /** Set how many cells around their own player each client is sent the other characters in, as well as any they
+     *  can see along a corridor; 0 sends every client everything (only accepts values between 0 and 64)
+     * @param interestRadius - Radius of the area of interest in cells
+     */
+    public static void setInterestRadius(int interestRadius) {
+        if (interestRadius >= 0 && interestRadius <= 64) {
+            GameSettings.interestRadius = interestRadius;
+        }
+    }
+
+    /** Set the fewest snapshots or input messages sent to a peer each second, however congested the link to it is
+     *  (only accepts values between 1 and 120)
+     * @param minSendRate - Messages per second
+     */
+    public static void setMinSendRate(int minSendRate) {
+        if (minSendRate >= 1 && minSendRate <= 120) {
+            GameSettings.minSendRate = minSendRate;
+        }
+    }
+
+    /** Set the most snapshots or input messages sent to a peer each second, which a clean link climbs back to;
+     *  snapshots are also never sent more often than the server ticks (only accepts values between 1 and 240)
+     * @param maxSendRate - Messages per second
+     */
+    public static void setMaxSendRate(int maxSendRate) {
+        if (maxSendRate >= 1 && maxSendRate <= 240) {
+            GameSettings.maxSendRate = maxSendRate;
+        }
+    }
+
+    /** Set whether the network statistics overlay is shown during a multiplayer game
+     * @param shown - Whether the overlay is shown
+     */
+    public static void setNetworkStatsShown(boolean shown) {
+        GameSettings.networkStatsShown.set(shown);
+    }
+
+    /** Set the file the network statistics of each game are written to
+     * @param networkStatsLog - Path of the CSV file, or null to not write them
+     */
+    public static void setNetworkStatsLog(String networkStatsLog) {
+        GameSettings.networkStatsLog = networkStatsLog;
+    }
+
     /** @return Current value of game mode
      */
     public static MODE getGameMode() {
@@ -217,6 +323,66 @@ public class GameSettings {
         return inventory;
     }
 
+    /** @return Current number of server ticks per second
+     */
+    public static int getServerTickRate() {
+        return serverTickRate;
+    }
+
+    /** @return Current interpolation delay in milliseconds
+     */
+    public static int getInterpolationDelay() {
+        return interpolationDelay;
+    }
+
+    /** @return Current enemy correction threshold in pixels
+     */
+    public static double getEnemyCorrectionThreshold() {
+        return enemyCorrectionThreshold;
+    }
+
+    /** @return Current enemy keyframe interval in milliseconds
+     */
+    public static int getEnemyKeyframeInterval() {
+        return enemyKeyframeInterval;
+    }
+
+    /** @return Current number of bytes the server sends each client on each tick at most
+     */
+    public static int getClientBandwidthBudget() {
+        return clientBandwidthBudget;
+    }
+
+    /** @return Current radius of the area of interest in cells, or 0 if every client is sent everything
+     */
+    public static int getInterestRadius() {
+        return interestRadius;
+    }
+
+    /** @return Current fewest snapshots or input messages sent to a peer each second
+     */
+    public static int getMinSendRate() {
+        return minSendRate;
+    }
+
+    /** @return Current most snapshots or input messages sent to a peer each second
+     */
+    public static int getMaxSendRate() {
+        return maxSendRate;
+    }
+
+    /** @return Returns the property of whether the network statistics overlay is shown
+     */
+    public static BooleanProperty networkStatsShownProperty() {
+        return networkStatsShown;
+    }
+
+    /** @return Path of the CSV file the network statistics are written to, or null if they are not written
+     */
+    public static String getNetworkStatsLog() {
+        return networkStatsLog;
+    }
+
     /** @return Return whether the menu should be disabled
      */
     public static Boolean getPauseMenuDisabled() {
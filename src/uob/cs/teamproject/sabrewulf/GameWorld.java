@@ -41,15 +41,14 @@ public class GameWorld {
     private final Subscription<GameComponent> gameComponents = new Subscription<>();
 
     /* map generation parameters */
-    private final int mapWidth = 1080;
-    private final int mapHeight = 1080;
+    private final int mapWidth = MovementPhysics.MAP_WIDTH;
+    private final int mapHeight = MovementPhysics.MAP_HEIGHT;
     private final int cellCountX = 14;
     private final int cellCountY = 14;
-    private final int wallThickness = 5;
 
     /* width and height of players and enemies */
-    private final double PLAYER_WIDTH = 28;
-    private final double PLAYER_HEIGHT = 36;
+    private final double PLAYER_WIDTH = MovementPhysics.PLAYER_WIDTH;
+    private final double PLAYER_HEIGHT = MovementPhysics.PLAYER_HEIGHT;
     private final double ENEMY_WIDTH = 30;
     private final double ENEMY_HEIGHT = 46;
 
@@ -136,69 +135,7 @@ public class GameWorld {
 
     /* add the walls into the world */
     private void placeWalls(GameMapWrapper mapData) {
-
-        int cellWidth = mapData.getCellDimensions()[0];
-        int cellHeight = mapData.getCellDimensions()[1];
-
-        for(int gridX = 0; gridX < cellCountX; gridX++) {
-            for(int gridY = 0; gridY < cellCountY; gridY++) {
-
-                Cell current = mapData.getCellGrid()[gridX][gridY];
-
-                double x = (gridX * cellWidth) - (mapWidth*0.5f) + cellWidth*0.5f;
-                double y = (gridY * cellHeight) - (mapHeight*0.5f) + cellHeight*0.5f;
-
-                Divider[] walls = current.getCellDividers();
-
-                for (int i = 0; i < 4; i++) {
-                    if (walls[i].isActive()) {
-                        boolean wallAlreadyAdded = false;
-                        double wallPosX=0, wallPosY=0;      // these default values get overwritten where necessary,
-                        double wallWidth=0, wallHeight=0;   // they're just to appease the compiler
-                        switch (i) {
-                            case 0: /* wall on -y side (above) */
-                                if (gridY == 0) {
-                                    wallPosX = x;
-                                    wallPosY = y - cellWidth*0.5f;
-                                    wallWidth = cellWidth;
-                                    wallHeight = wallThickness;
-                                } else {
-                                    wallAlreadyAdded = true;
-                                }
-                                break;
-                            case 1: /* wall on +y side (below) */
-                                wallPosX = x;
-                                wallPosY = y + cellWidth*0.5f;
-                                wallWidth = cellWidth;
-                                wallHeight = wallThickness;
-                                break;
-                            case 2: /* wall on +x side (right) */
-                                wallPosX = x + cellWidth*0.5f;
-                                wallPosY = y;
-                                wallWidth = wallThickness;
-                                wallHeight = cellHeight;
-                                break;
-                            case 3: /* wall on -x side (left) */
-                                if (gridX == 0) {
-                                    wallPosX = x - cellWidth*0.5f;
-                                    wallPosY = y;
-                                    wallWidth = wallThickness;
-                                    wallHeight = cellHeight;
-                                } else {
-                                    wallAlreadyAdded = true;
-                                }
-                                break;
-                            default:
-                                assert false; /* switch statement is missing cases */
-                                return;
-                        }
-                        if (!wallAlreadyAdded) {
-                            createWall(wallPosX, wallPosY, wallWidth, wallHeight, walls[i].getDividerType());
-                        }
-                    }
-                }
-            }
-        }
+        MovementPhysics.forEachWall(mapData, this::createWall);
     }
 
     /* add the items into the world */
@@ -383,8 +320,6 @@ public class GameWorld {
 
     /* create a key for players to pick up */
     private void createKey(double posX, double posY, Cell.KeyType keyType) {
-        final double KEY_WIDTH = 60, KEY_HEIGHT = 50;
-
         Image image;
         switch (keyType) {
             case BLUEKEY:
@@ -400,7 +335,8 @@ public class GameWorld {
                 assert false; /* switch statement is missing cases */
                 return;
         }
-        createItem(posX, posY, KEY_WIDTH, KEY_HEIGHT, ColliderTag.KEY, keyType.ordinal(), image);
+        createItem(posX, posY, MovementPhysics.KEY_WIDTH, MovementPhysics.KEY_HEIGHT, ColliderTag.KEY,
+                keyType.ordinal(), image);
     }
 
     /* create a power-up for players to pick up */
@@ -442,23 +378,18 @@ public class GameWorld {
     /* creates a section of wall whose color depends on 'dividerType' */
     private void createWall(double posX, double posY, double width, double height, Divider.DividerType dividerType) {
         Color wallColor;
-        int wallType;
         switch (dividerType) {
             case WALL:
                 wallColor = Color.rgb(200,200,200);
-                wallType = 0;
                 break;
             case BLUEDOOR:
                 wallColor = Color.BLUE;
-                wallType = Cell.KeyType.BLUEKEY.ordinal() + 1;
                 break;
             case GREENDOOR:
                 wallColor = Color.GREEN;
-                wallType = Cell.KeyType.GREENKEY.ordinal() + 1;
                 break;
             case YELLOWDOOR:
                 wallColor = Color.YELLOW;
-                wallType = Cell.KeyType.YELLOWKEY.ordinal() + 1;
                 break;
             default:
                 assert false; /* switch statement is missing cases */
@@ -466,7 +397,7 @@ public class GameWorld {
         }
         Transform transform = new Transform(posX, posY, width, height);
 
-        WallCollider collider = new WallCollider(collisionSystem, transform, wallType);
+        WallCollider collider = new WallCollider(collisionSystem, transform, MovementPhysics.wallTagData(dividerType));
         WallGraphic graphic = new WallGraphic(renderer, transform, wallColor);
 
         addComponentToWorld(collider);
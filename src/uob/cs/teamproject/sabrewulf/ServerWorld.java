@@ -0,0 +1,323 @@
+package uob.cs.teamproject.sabrewulf;
+
+import uob.cs.teamproject.sabrewulf.collisions.BoxCollider;
+import uob.cs.teamproject.sabrewulf.collisions.ColliderTag;
+import uob.cs.teamproject.sabrewulf.collisions.CollisionSystem;
+import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
+import uob.cs.teamproject.sabrewulf.components.EnemyCollider;
+import uob.cs.teamproject.sabrewulf.components.Inventory;
+import uob.cs.teamproject.sabrewulf.components.ItemCollider;
+import uob.cs.teamproject.sabrewulf.components.MovementPhysics;
+import uob.cs.teamproject.sabrewulf.components.PlayerColliderData;
+import uob.cs.teamproject.sabrewulf.enemyai.MovementLogicAI;
+import uob.cs.teamproject.sabrewulf.map.Cell;
+import uob.cs.teamproject.sabrewulf.map.GameMapWrapper;
+import uob.cs.teamproject.sabrewulf.network.DataStorage;
+import uob.cs.teamproject.sabrewulf.ui.selectors.DIFFICULTY;
+import uob.cs.teamproject.sabrewulf.util.Subscriber;
+import uob.cs.teamproject.sabrewulf.util.Subscription;
+import uob.cs.teamproject.sabrewulf.util.Transform;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
+
+/**
+ * A ServerWorld instance is the headless counterpart of a {@link GameWorld}, used by a dedicated server to run the
+ * authoritative simulation of a single run of the game. It creates the enemies, the items and a collider for each
+ * player, but nothing which needs a {@link uob.cs.teamproject.sabrewulf.rendering.Renderer}, an image or a sound.
+ * <p>
+ * Players are moved by the server's {@link uob.cs.teamproject.sabrewulf.network.Server} from the input commands of
+ * their clients, which also keeps them out of the walls, so their positions are set from there and no walls are
+ * created here. The enemies are moved by their AI, and the states
+ * of the enemies are left in a {@link DataStorage} for the server to send to the clients. The collider of each player
+ * counts the coins it picks up and the times it is caught, from which the server keeps the scoreboard.
+ */
+public class ServerWorld {
+
+    /* game systems */
+    private final CollisionSystem collisionSystem;
+
+    /* collection of GameComponents */
+    private final Subscription<GameComponent> gameComponents = new Subscription<>();
+
+    /* width and height of players, enemies and items */
+    private final double PLAYER_WIDTH = MovementPhysics.PLAYER_WIDTH;
+    private final double PLAYER_HEIGHT = MovementPhysics.PLAYER_HEIGHT;
+    private final double ENEMY_WIDTH = 30;
+    private final double ENEMY_HEIGHT = 46;
+
+    /* the number of players and enemies in this game */
+    private final int numOfPlayers;
+    private final int numOfEnemies;
+
+    /* the enemy states to be sent to the clients */
+    private final DataStorage dataStorage;
+
+    /* the transform and collider of each player, the number of coins each one has picked up, the score of each one
+     * and how many more steps each one cannot be caught for */
+    private final Transform[] playerTransforms;
+    private final BoxCollider[] playerColliders;
+    private final Subscriber<BoxCollider>[] playerColliderSubs;
+    private final int[] coinsCollected;
+    private final int[] scores;
+    private final int[] stunnedSteps;
+
+    /* the number of coins currently in the game */
+    private int numCoins = 0;
+
+    /**
+     * Create all of the GameComponents which are required at the start of the game.
+     * @param mapData the map, as sent to the clients
+     * @param playerSpawns the position each player spawns at
+     * @param enemySpawns the position each enemy spawns at
+     */
+    public ServerWorld(GameMapWrapper mapData, XYPair[] playerSpawns, XYPair[] enemySpawns) {
+        this.collisionSystem = new CollisionSystem();
+        this.numOfPlayers = playerSpawns.length;
+        this.numOfEnemies = enemySpawns.length;
+        this.dataStorage = new DataStorage(numOfPlayers, numOfEnemies);
+
+        playerTransforms = new Transform[numOfPlayers];
+        playerColliders = new BoxCollider[numOfPlayers];
+        playerColliderSubs = newSubscriberArray(numOfPlayers);
+        coinsCollected = new int[numOfPlayers];
+        scores = new int[numOfPlayers];
+        stunnedSteps = new int[numOfPlayers];
+
+        placeItems(mapData, playerSpawns);
+        placeEnemies(mapData, enemySpawns);
+        placePlayers(playerSpawns);
+    }
+
+    /**
+     * Run one step of the simulation: call {@link GameComponent#update(long)} on every stored {@link GameComponent},
+     * then check for collisions, the same as one frame of the game loop.
+     * @param now a timestamp for the step, given in nanoseconds
+     */
+    public void update(long now) {
+        for (GameComponent gc : gameComponents) {
+            gc.update(now);
+        }
+        for (int i = 0; i < numOfPlayers; i++) {
+            if (stunnedSteps[i] > 0 && --stunnedSteps[i] == 0) {
+                playerColliders[i].setTagData(PlayerColliderData.setCaptured(playerColliders[i].getTagData(), false));
+            }
+        }
+        collisionSystem.update();
+    }
+
+    /** call {@link GameComponent#remove()} on every stored {@link GameComponent} */
+    public void remove() {
+        for (GameComponent gc : gameComponents) {
+            gc.remove();
+        }
+        for (int i = 0; i < numOfPlayers; i++) {
+            removePlayer(i);
+        }
+    }
+
+    /**
+     * Move a player to the position its input commands have taken it to.
+     * @param num the number of the player
+     * @param x the x position of the player
+     * @param y the y position of the player
+     * @param invisible true if the player is using the invisibility boost, so that enemies cannot detect them
+     */
+    public void setPlayerState(int num, double x, double y, boolean invisible) {
+        if (playerColliderSubs[num] == null) {
+            return;
+        }
+        playerTransforms[num].position.x = x;
+        playerTransforms[num].position.y = y;
+        int tagData = playerColliders[num].getTagData();
+        tagData = invisible
+                ? PlayerColliderData.addPowerUp(tagData, Cell.PowerUpType.INVISIBILITY)
+                : PlayerColliderData.removePowerUp(tagData, Cell.PowerUpType.INVISIBILITY);
+        playerColliders[num].setTagData(tagData);
+    }
+
+    /**
+     * Remove a player who has left the game, so that enemies no longer chase them.
+     * @param num the number of the player
+     */
+    public void removePlayer(int num) {
+        if (playerColliderSubs[num] != null) {
+            playerColliderSubs[num].unsubscribe();
+            playerColliderSubs[num] = null;
+        }
+    }
+
+    /**
+     * @return the {@link DataStorage} holding the latest state of each enemy
+     */
+    public DataStorage getDataStorage() {
+        return dataStorage;
+    }
+
+    /**
+     * @return the number of enemies in the game
+     */
+    public int getNumEnemies() {
+        return numOfEnemies;
+    }
+
+    /**
+     * @return the number of coins which have not been picked up
+     */
+    public int getNumCoins() {
+        return numCoins;
+    }
+
+    /**
+     * @param num the number of a player
+     * @return the number of coins the player has picked up
+     */
+    public int getCoinsCollected(int num) {
+        return coinsCollected[num];
+    }
+
+    /* create an array of subscribers to the colliders of the players, as a generic array cannot be created directly */
+    @SuppressWarnings("unchecked")
+    private static Subscriber<BoxCollider>[] newSubscriberArray(int length) {
+        return (Subscriber<BoxCollider>[]) new Subscriber<?>[length];
+    }
+
+    /**
+     * @param num the number of a player
+     * @return the score of the player, worked out from the coins it has picked up and the times it has been caught
+     * in the same way as by its {@link Inventory}
+     */
+    public int getScore(int num) {
+        return scores[num];
+    }
+
+    /* add a GameComponent to the collection of GameComponents */
+    private void addComponentToWorld(GameComponent component) {
+        gameComponents.addSubscriber(new Subscriber<>(component));
+    }
+
+    /* add a GameComponent to a GameEntity and to the collection of GameComponents */
+    private void addComponentToEntity(GameComponent component, GameEntity entity) {
+        Subscriber<GameComponent> componentSub = new Subscriber<>(component);
+        gameComponents.addSubscriber(componentSub);
+        entity.addComponent(componentSub);
+    }
+
+    /* add the items into the world, in the same cells as GameWorld places them */
+    private void placeItems(GameMapWrapper mapData, XYPair[] playerSpawns) {
+        Cell[][] cellGrid = mapData.getCellGrid();
+        for (int gridX = 0; gridX < cellGrid.length; gridX++) {
+            for (int gridY = 0; gridY < cellGrid[0].length; gridY++) {
+                Cell cell = cellGrid[gridX][gridY];
+                if (cell.hasKey()) {
+                    createItem(cell.getX(), cell.getY(), 60, 50, ColliderTag.KEY, cell.getKeyType().ordinal());
+                }
+                else if (cell.hasPowerUp()) {
+                    createItem(cell.getX(), cell.getY(), 32, 32, ColliderTag.POWERUP,
+                            cell.getPowerUpType().ordinal());
+                }
+                else {
+                    /* only spawn in a coin if there is no player in that cell */
+                    boolean containsPlayer = false;
+                    for (XYPair playerCoords : playerSpawns) {
+                        if (playerCoords.x == cell.getX() && playerCoords.y == cell.getY()) {
+                            containsPlayer = true;
+                            break;
+                        }
+                    }
+                    if (!containsPlayer) {
+                        createCoin(cell.getX(), cell.getY());
+                    }
+                }
+            }
+        }
+    }
+
+    /* add the enemies into the world, with the same detection radius and speed as GameWorld gives them */
+    private void placeEnemies(GameMapWrapper mapData, XYPair[] enemySpawns) {
+        for (int i = 0; i < numOfEnemies; i++) {
+            if (GameSettings.getDifficulty() == DIFFICULTY.HARD) {
+                createEnemy(mapData, 600, 3, enemySpawns[i], i);
+            }
+            else if (GameSettings.getDifficulty() == DIFFICULTY.MEDIUM) {
+                createEnemy(mapData, i < 2 ? 300 : 500, i % 2 == 0 ? 2 : 3, enemySpawns[i], i);
+            }
+            else {
+                createEnemy(mapData, 300, 2, enemySpawns[i], i);
+            }
+        }
+    }
+
+    /* add a collider for each player, which counts the coins the player picks up and the times it is caught */
+    private void placePlayers(XYPair[] playerSpawns) {
+        for (int i = 0; i < numOfPlayers; i++) {
+            int num = i;
+            playerTransforms[i] = new Transform(playerSpawns[i].x, playerSpawns[i].y, PLAYER_WIDTH, PLAYER_HEIGHT);
+            playerColliders[i] = new BoxCollider(playerTransforms[i], ColliderTag.PLAYER,
+                    PlayerColliderData.INITIAL_VALUE) {
+                @Override
+                public void onCollision(ColliderTag tag, int tagData, XYPair posOfOther, XYPair overlapSize) {
+                    if (tag == ColliderTag.COIN) {
+                        coinsCollected[num]++;
+                        scores[num] += Inventory.COIN_SCORE;
+                    }
+                    else if (tag == ColliderTag.ENEMY) {
+                        onCaught(num);
+                    }
+                }
+            };
+            playerColliderSubs[i] = collisionSystem.addBoxCollider(playerColliders[i]);
+        }
+    }
+
+    /* a player caught by an enemy loses points, which never go below zero, and cannot be caught again for a while
+     * unless it was using the invisibility boost, as in Player */
+    private void onCaught(int num) {
+        int tagData = playerColliders[num].getTagData();
+        if (stunnedSteps[num] > 0 || PlayerColliderData.hasPowerUp(tagData, Cell.PowerUpType.INVISIBILITY)) {
+            return;
+        }
+        scores[num] = Math.max(0, scores[num] - Inventory.HIT_PENALTY);
+        stunnedSteps[num] = Inventory.STUNNED_SECONDS * MovementPhysics.FRAMES_PER_SECOND;
+        playerColliders[num].setTagData(PlayerColliderData.setCaptured(tagData, true));
+    }
+
+    /* create an AI-controlled enemy character */
+    private void createEnemy(GameMapWrapper mapData, int detectionRadius, int speed, XYPair spawnAt, int num) {
+        Transform transform = new Transform(spawnAt.x, spawnAt.y, ENEMY_WIDTH, ENEMY_HEIGHT);
+
+        CharacterMovement characterMovement = new CharacterMovement(transform, mapData);
+        characterMovement.setSpeed(speed);
+        EnemyCollider enemyCollider = new EnemyCollider(collisionSystem, transform, detectionRadius);
+        MovementLogicAI movementLogicAI = new MovementLogicAI(transform, null, mapData,
+                enemyCollider, characterMovement, dataStorage, num);
+        movementLogicAI.setAuthoritative(true);
+
+        addComponentToWorld(characterMovement);
+        addComponentToWorld(movementLogicAI);
+        addComponentToWorld(enemyCollider);
+    }
+
+    /* create a coin for players to pick up */
+    private void createCoin(double posX, double posY) {
+        GameEntity entity = createItem(posX, posY, 32, 32, ColliderTag.COIN, 0);
+
+        addComponentToEntity(new GameComponent() {
+            @Override
+            public void remove() {
+                numCoins--;
+            }
+        }, entity);
+        numCoins++;
+    }
+
+    /* create an item for players to pick up */
+    private GameEntity createItem(double posX, double posY, double width, double height, ColliderTag colliderTag,
+                                  int colliderData) {
+        Transform transform = new Transform(posX, posY, width, height);
+        GameEntity entity = new GameEntity();
+
+        ItemCollider collider = new ItemCollider(collisionSystem, transform, colliderTag, colliderData, entity);
+        addComponentToEntity(collider, entity);
+
+        return entity;
+    }
+}
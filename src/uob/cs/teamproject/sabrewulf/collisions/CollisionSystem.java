@@ -128,8 +128,12 @@ public class CollisionSystem {
         return sub;
     }
 
-    /* Return true iff the 'other' collider is close enough to the player to check collision between them. */
-    private boolean closeToPlayer(BoxCollider player, BoxCollider other) {
+    /**
+     * @param player the collider of a player
+     * @param other any other collider
+     * @return true iff the 'other' collider is close enough to the player to check collision between them
+     */
+    public static boolean closeToPlayer(BoxCollider player, BoxCollider other) {
 
         /* the 'other' collider is close enough iff it is within a square of side length
          * CLOSE_TO_PLAYER_DISTANCE * 2, centred at the player */
@@ -34,6 +34,7 @@ public class CharacterAnimator extends GameComponent {
     private boolean isMoving = false;
     private int flashRate = 24;
     private int currentlyNoImageTimer = flashRate;
+    private boolean hidden = false;
 
     /**
      * The constructor for a CharacterAnimator.
@@ -52,6 +53,9 @@ public class CharacterAnimator extends GameComponent {
 
         final double[] wh = {500}; //has to be an array so draw can change it even though it is final
         this.graphicElemSub = renderer.addForegroundElem(brush -> {
+            if (hidden) {
+                return;
+            }
             final int SIZE_DECREASE_RATE = 7; //trial and error number which looks smooth enough
             if ((player != null) && wh[0] > 0) {
                 brush.drawOval(transform.position.x, transform.position.y, wh[0], wh[0], new Color(0.9, 0.9, 0.9, 0.5));
@@ -172,6 +176,15 @@ public class CharacterAnimator extends GameComponent {
         this.remotePlayer = p;
     }
 
+    /**
+     * Used to stop drawing a replicated character while it is outside the area the server sends this client.
+     *
+     * @param b: b==true if the character is not drawn, b==false if it is drawn as usual.
+     */
+    void setHidden(boolean b) {
+        this.hidden = b;
+    }
+
     /**
      * Updates the character's coordinates.
      *
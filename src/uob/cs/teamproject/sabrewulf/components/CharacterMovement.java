@@ -3,6 +3,7 @@ package uob.cs.teamproject.sabrewulf.components;
 import uob.cs.teamproject.sabrewulf.GameComponent;
 import uob.cs.teamproject.sabrewulf.map.GameMapWrapper;
 import uob.cs.teamproject.sabrewulf.util.Transform;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
 
 /**
  * This component allows character behaviour classes (e.g. PlayerBehaviour, EnemyBehaviour) to re-use common movement
@@ -11,14 +12,17 @@ import uob.cs.teamproject.sabrewulf.util.Transform;
 public class CharacterMovement extends GameComponent {
     public enum Direction {LEFT, RIGHT, UP, DOWN, NONE}
     private Boolean isMoving = false;
-    private int speed = 3;
+    private int speed = MovementPhysics.SPEED;
     private int speedBoost = 0;
     private Direction directionX = Direction.NONE;
     private Direction directionY = Direction.DOWN;
     private Direction facing = Direction.DOWN;
+    private boolean replicated = false;
     private CharacterAnimator animator;
     private Transform transform;
     private GameMapWrapper gameMapWrapper;
+    /* reused for the position the character moves to in each frame */
+    private final XYPair nextPosition = new XYPair(0, 0);
 
     /**
      * Constructor for a CharacterMovement component.
@@ -35,7 +39,20 @@ public class CharacterMovement extends GameComponent {
     }
 
     /**
-     * @return the CharacterAnimator belonging to this class.
+     * Constructor for a CharacterMovement component of a character which is not drawn, such as an enemy simulated
+     * by a dedicated server.
+     *
+     * @param transform:      The Transform component belonging to this.
+     * @param gameMapWrapper: The GameMapWrapper component belonging to this.
+     */
+    public CharacterMovement(Transform transform, GameMapWrapper gameMapWrapper) {
+        this.animator = null;
+        this.transform = transform;
+        this.gameMapWrapper = gameMapWrapper;
+    }
+
+    /**
+     * @return the CharacterAnimator belonging to this class, or null if the character is not drawn.
      */
     public CharacterAnimator getCharacterAnimator() {
         return animator;
@@ -57,7 +74,9 @@ public class CharacterMovement extends GameComponent {
     public void setIsMoving(Boolean b) {
         try {
             this.isMoving = b;
-            animator.setIsMoving(b);
+            if (animator != null) {
+                animator.setIsMoving(b);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -81,6 +100,16 @@ public class CharacterMovement extends GameComponent {
         return new Direction[]{this.directionX, this.directionY};
     }
 
+    /**
+     * Sets whether the position of the character is set from states received over the network, in which case the
+     * character is still animated but is not moved by its directions.
+     *
+     * @param replicated: true if the position is received over the network.
+     */
+    public void setReplicated(boolean replicated) {
+        this.replicated = replicated;
+    }
+
     /**
      * Sets the speed the character is moving.
      *
@@ -161,7 +190,9 @@ public class CharacterMovement extends GameComponent {
         this.directionY = directionY;
         this.isMoving = true;
 
-        animator.setDirection(facing);
+        if (animator != null) {
+            animator.setDirection(facing);
+        }
     }
 
     /**
@@ -180,24 +211,25 @@ public class CharacterMovement extends GameComponent {
      * animation is carried out.
      */
     private void move() {
-        int xCoord = (int) transform.position.x;
-        int yCoord = (int) transform.position.y;
+        if (replicated) {
+            if (animator != null) {
+                animator.setDirection(facing);
+            }
+            return;
+        }
         int totalSpeed = speed + speedBoost;
 
         if (isMoving) {
-            if (directionX == Direction.LEFT) {
-                xCoord = xCoord - totalSpeed;
-            } else if (directionX == Direction.RIGHT) {
-                xCoord = xCoord + totalSpeed;
+            nextPosition.x = transform.position.x;
+            nextPosition.y = transform.position.y;
+            MovementPhysics.step(nextPosition, directionX, directionY, totalSpeed);
+            if (animator != null) {
+                animator.setCoords((int) nextPosition.x, (int) nextPosition.y);
+                animator.setDirection(facing);
+            } else {
+                transform.position.x = nextPosition.x;
+                transform.position.y = nextPosition.y;
             }
-
-            if (directionY == Direction.UP) {
-                yCoord = yCoord - totalSpeed;
-            } else if (directionY == Direction.DOWN) {
-                yCoord = yCoord + totalSpeed;
-            }
-            animator.setCoords(xCoord, yCoord);
-            animator.setDirection(facing);
         }
     }
 
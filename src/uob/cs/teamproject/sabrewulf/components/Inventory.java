@@ -9,6 +9,13 @@ import uob.cs.teamproject.sabrewulf.map.Cell;
  */
 public class Inventory extends GameComponent {
 
+    /** the points a coin is worth */
+    public static final int COIN_SCORE = 10;
+    /** the points lost each time the player is caught */
+    public static final int HIT_PENALTY = 50;
+    /** how long a player who has been caught cannot be caught again, in seconds */
+    public static final int STUNNED_SECONDS = 3;
+
     private final Cell.KeyType[] keys = new Cell.KeyType[3];
     private int numberOfCoins = 0;
     private int invisibilityTimer = 0;
@@ -355,7 +362,7 @@ public class Inventory extends GameComponent {
     /** Update the player's score based on the number of coins collected and their hit count
      */
     public void updateScore() {
-        score.set((numberOfCoins * 10) - (hitCount * 50));
+        score.set((numberOfCoins * COIN_SCORE) - (hitCount * HIT_PENALTY));
         if (score.get() < 0) {
             score.set(0);
             numberOfCoins = 0;
@@ -0,0 +1,182 @@
+package uob.cs.teamproject.sabrewulf.components;
+
+import uob.cs.teamproject.sabrewulf.map.Cell;
+import uob.cs.teamproject.sabrewulf.map.Divider;
+import uob.cs.teamproject.sabrewulf.map.GameMapWrapper;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
+
+/**
+ * This class holds the rules which decide where a character can move: the size of the map, its walls, the players
+ * and the keys, the speed of a character, and how a player is pushed back out of a wall. {@link CharacterMovement},
+ * {@link PlayerCollider} and the {@link uob.cs.teamproject.sabrewulf.GameWorld} use it to move the characters in a
+ * game, and the server uses it to move each player by its input commands, so that both always agree on where every
+ * player ends up.
+ */
+public final class MovementPhysics {
+
+    /** the width and height of the map, in world units */
+    public static final int MAP_WIDTH = 1080;
+    public static final int MAP_HEIGHT = 1080;
+    /** the thickness of a wall or a door */
+    public static final int WALL_THICKNESS = 5;
+
+    /** the width and height of a player */
+    public static final double PLAYER_WIDTH = 28;
+    public static final double PLAYER_HEIGHT = 36;
+    /** the width and height of a key */
+    public static final double KEY_WIDTH = 60;
+    public static final double KEY_HEIGHT = 50;
+
+    /** the number of frames run each second, which every timer in the game counts in */
+    public static final int FRAMES_PER_SECOND = 60;
+    /** the distance a character moves each frame, unless its speed is set otherwise */
+    public static final int SPEED = 3;
+    /** the extra distance a player moves each frame while using the speed boost */
+    public static final int SPEED_BOOST = 3;
+    /** how long the speed boost and the invisibility boost last, in seconds */
+    public static final int BOOST_SECONDS = 5;
+    /** how long the speed boost and the invisibility boost last, in frames */
+    public static final int BOOST_FRAMES = BOOST_SECONDS * FRAMES_PER_SECOND;
+
+    /** the largest difference between the width and height of an overlap with a wall for it to count as a corner */
+    public static final double CORNER_THRESHOLD = 5;
+
+    /** Receives the position, size and type of each wall of a map from {@link #forEachWall}. */
+    public interface WallConsumer {
+
+        /**
+         * @param posX the x position of the centre of the wall
+         * @param posY the y position of the centre of the wall
+         * @param width the width of the wall
+         * @param height the height of the wall
+         * @param dividerType the type of the wall, which is either a plain wall or a door
+         */
+        void accept(double posX, double posY, double width, double height, Divider.DividerType dividerType);
+    }
+
+    private MovementPhysics() {
+    }
+
+    /**
+     * Moves a character by one frame.
+     * @param position the position of the character, which is moved to whole world units
+     * @param directionX the x direction the character is moving in
+     * @param directionY the y direction the character is moving in
+     * @param speed the distance the character moves in each direction
+     */
+    public static void step(XYPair position, CharacterMovement.Direction directionX,
+                            CharacterMovement.Direction directionY, int speed) {
+        int xCoord = (int) position.x;
+        int yCoord = (int) position.y;
+
+        if (directionX == CharacterMovement.Direction.LEFT) {
+            xCoord = xCoord - speed;
+        } else if (directionX == CharacterMovement.Direction.RIGHT) {
+            xCoord = xCoord + speed;
+        }
+
+        if (directionY == CharacterMovement.Direction.UP) {
+            yCoord = yCoord - speed;
+        } else if (directionY == CharacterMovement.Direction.DOWN) {
+            yCoord = yCoord + speed;
+        }
+        position.x = xCoord;
+        position.y = yCoord;
+    }
+
+    /**
+     * @param directionX the x direction of the keys a player holds
+     * @param directionY the y direction of the keys a player holds
+     * @param standStill true if the player holds the key which keeps it standing still
+     * @return true if the player moves in the directions of its keys
+     */
+    public static boolean isMoving(CharacterMovement.Direction directionX, CharacterMovement.Direction directionY,
+                                   boolean standStill) {
+        return !standStill && (directionX != CharacterMovement.Direction.NONE
+                || directionY != CharacterMovement.Direction.NONE);
+    }
+
+    /**
+     * @param overlapSize the size of the overlap between a player and a wall
+     * @return true if the player is moved back to its last X coordinate which was not colliding, i.e. unless the
+     * overlap rectangle is wide
+     */
+    public static boolean revertsX(XYPair overlapSize) {
+        return overlapSize.x - overlapSize.y <= CORNER_THRESHOLD;
+    }
+
+    /**
+     * @param overlapSize the size of the overlap between a player and a wall
+     * @return true if the player is moved back to its last Y coordinate which was not colliding, i.e. unless the
+     * overlap rectangle is tall
+     */
+    public static boolean revertsY(XYPair overlapSize) {
+        return overlapSize.y - overlapSize.x <= CORNER_THRESHOLD;
+    }
+
+    /**
+     * @param dividerType the type of a wall
+     * @return the tag data of the collider of the wall: 0 for a plain wall, or the ordinal of the key which opens
+     * the door plus one
+     */
+    public static int wallTagData(Divider.DividerType dividerType) {
+        switch (dividerType) {
+            case BLUEDOOR:
+                return Cell.KeyType.BLUEKEY.ordinal() + 1;
+            case GREENDOOR:
+                return Cell.KeyType.GREENKEY.ordinal() + 1;
+            case YELLOWDOOR:
+                return Cell.KeyType.YELLOWKEY.ordinal() + 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Finds every wall and door of a map. Each divider between two cells is only given once, so the walls above and
+     * to the left of a cell are only given for the top row and the first column.
+     * @param mapData the map
+     * @param consumer receives each wall
+     */
+    public static void forEachWall(GameMapWrapper mapData, WallConsumer consumer) {
+
+        int cellWidth = mapData.getCellDimensions()[0];
+        int cellHeight = mapData.getCellDimensions()[1];
+        Cell[][] cellGrid = mapData.getCellGrid();
+
+        for (int gridX = 0; gridX < cellGrid.length; gridX++) {
+            for (int gridY = 0; gridY < cellGrid[gridX].length; gridY++) {
+
+                double x = (gridX * cellWidth) - (MAP_WIDTH*0.5f) + cellWidth*0.5f;
+                double y = (gridY * cellHeight) - (MAP_HEIGHT*0.5f) + cellHeight*0.5f;
+
+                Divider[] walls = cellGrid[gridX][gridY].getCellDividers();
+
+                for (int i = 0; i < 4; i++) {
+                    if (!walls[i].isActive()) {
+                        continue;
+                    }
+                    Divider.DividerType type = walls[i].getDividerType();
+                    switch (i) {
+                        case 0: /* wall on -y side (above) */
+                            if (gridY == 0) {
+                                consumer.accept(x, y - cellWidth*0.5f, cellWidth, WALL_THICKNESS, type);
+                            }
+                            break;
+                        case 1: /* wall on +y side (below) */
+                            consumer.accept(x, y + cellWidth*0.5f, cellWidth, WALL_THICKNESS, type);
+                            break;
+                        case 2: /* wall on +x side (right) */
+                            consumer.accept(x + cellWidth*0.5f, y, WALL_THICKNESS, cellHeight, type);
+                            break;
+                        case 3: /* wall on -x side (left) */
+                            if (gridX == 0) {
+                                consumer.accept(x - cellWidth*0.5f, y, WALL_THICKNESS, cellHeight, type);
+                            }
+                            break;
+                    }
+                }
+            }
+        }
+    }
+}
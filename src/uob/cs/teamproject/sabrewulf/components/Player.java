@@ -8,13 +8,20 @@ import uob.cs.teamproject.sabrewulf.map.Cell;
 import uob.cs.teamproject.sabrewulf.map.GameMapWrapper;
 import uob.cs.teamproject.sabrewulf.network.Client;
 import uob.cs.teamproject.sabrewulf.network.DataStorage;
+import uob.cs.teamproject.sabrewulf.network.PredictionBuffer;
 import uob.cs.teamproject.sabrewulf.ui.selectors.MODE;
 import uob.cs.teamproject.sabrewulf.util.Transform;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
 
 import java.util.ArrayList;
 
 public class Player extends PlayerBehaviour{
 
+    /* a correction is spread over this many frames so the player does not visibly jump */
+    private static final int CORRECTION_FRAMES = 6;
+    /* corrections larger than this, in pixels, are applied at once */
+    private static final double SNAP_DISTANCE = 64;
+
     private CharacterMovement.Direction facing;
     private String thisKeyDown = "";
     private Transform transform;
@@ -23,6 +30,15 @@ public class Player extends PlayerBehaviour{
     private final DataStorage dataStorage;
     private final Client client;
 
+    /* the input commands sent to the server which it has not yet acknowledged */
+    private final PredictionBuffer prediction = new PredictionBuffer();
+    private final XYPair acknowledgedPosition = new XYPair(0, 0);
+    private final XYPair correction = new XYPair(0, 0);
+    private int lastReconciled;
+    private double pendingCorrectionX;
+    private double pendingCorrectionY;
+    private int correctionFramesLeft;
+
     /**
      * Constructor for PlayerBehaviour class.
      * Also contains the handlers for different types of collisions detected by its PlayerCollider component.
@@ -56,6 +72,9 @@ public class Player extends PlayerBehaviour{
                             giveTemporaryInactivity();
                             inventory.setInvisibility(true);
                             inventory.incrementHitCount();
+                            if (client != null) {
+                                client.reportCaught();
+                            }
                             audioComponent.playHitAudio();
                             penalisePlayer();
                         }
@@ -85,6 +104,9 @@ public class Player extends PlayerBehaviour{
                 @Override
                 public void onCoinCollision() {
                     inventory.addCoin();
+                    if (client != null) {
+                        client.reportCoin();
+                    }
                     audioComponent.playCoinAudio();
                 }
 
@@ -123,6 +145,8 @@ public class Player extends PlayerBehaviour{
     /**
      * The update function for the player class which performs
      * movement and actions belonging to the parent class.
+     * In multiplayer the player is moved as soon as a key is pressed and reconciled with the state sent back by the
+     * server afterwards.
      * @param t: The current time in nanoseconds.
      */
     public void update(long t){
@@ -134,21 +158,55 @@ public class Player extends PlayerBehaviour{
         analyseInputs(input.getCurrentKeyDown(), inputList);
 
         if(GameSettings.getGameMode() != MODE.SINGLEPLAYER){
-            CharacterMovement.Direction[] directions = dataStorage.getPlayerDirections();
-            boolean isMoving = dataStorage.getPlayerIsMoving(0);
-            CharacterMovement.Direction isFacing = dataStorage.getPlayerIsFacing(0);
-            if (directions != null && isFacing != null) {
-                if (directions[0] != null && directions[1] != null) {
-                    characterMovement.changeDirection(directions[0], directions[1]);
-                    characterMovement.setFacing(isFacing);
-                    characterMovement.setIsMoving(isMoving);
-                }
-            }
+            reconcile();
+            applyCorrection();
         }
 
         super.update(t);
     }
 
+    /**
+     * Rewinds the player to the newest state acknowledged by the server and replays the input commands sent since.
+     * If the result differs from where the player has been predicted to be, the difference is applied over the
+     * next few frames.
+     */
+    private void reconcile(){
+        int sequence = dataStorage.getAcknowledgedInput(acknowledgedPosition);
+        if(sequence == lastReconciled || !prediction.reconcile(sequence, acknowledgedPosition.x,
+                acknowledgedPosition.y, transform.position.x, transform.position.y, correction)){
+            return;
+        }
+        lastReconciled = sequence;
+        if(Math.abs(correction.x) < 1 && Math.abs(correction.y) < 1){
+            return;
+        }
+        if(Math.abs(correction.x) > SNAP_DISTANCE || Math.abs(correction.y) > SNAP_DISTANCE){
+            characterMovement.getCharacterAnimator().setCoords((int) (transform.position.x + correction.x),
+                    (int) (transform.position.y + correction.y));
+            correctionFramesLeft = 0;
+            return;
+        }
+        pendingCorrectionX = correction.x;
+        pendingCorrectionY = correction.y;
+        correctionFramesLeft = CORRECTION_FRAMES;
+    }
+
+    /**
+     * Applies one frame's share of the current correction
+     */
+    private void applyCorrection(){
+        if(correctionFramesLeft == 0){
+            return;
+        }
+        double dx = pendingCorrectionX / correctionFramesLeft;
+        double dy = pendingCorrectionY / correctionFramesLeft;
+        pendingCorrectionX -= dx;
+        pendingCorrectionY -= dy;
+        correctionFramesLeft--;
+        characterMovement.getCharacterAnimator().setCoords((int) Math.round(transform.position.x + dx),
+                (int) Math.round(transform.position.y + dy));
+    }
+
     /**
      * Reads the current key input(s) and changes the direction of the player appropriately.
      * @param currentKeyDown: The most recent key to be pressed.
@@ -158,7 +216,6 @@ public class Player extends PlayerBehaviour{
     public void analyseInputs(String currentKeyDown, ArrayList<String> inputList) {
         CharacterMovement.Direction dirX = CharacterMovement.Direction.NONE;
         CharacterMovement.Direction dirY = CharacterMovement.Direction.NONE; //reset directions
-        boolean isMoving = false;
         boolean invisibilty = false;
         boolean speed = false;
 
@@ -217,20 +274,11 @@ public class Player extends PlayerBehaviour{
         }
         thisKeyDown = currentKeyDown;
 
-        if (currentKeyDown.equals("W") || currentKeyDown.equals("A") || currentKeyDown.equals("S") ||
-                currentKeyDown.equals("D") || currentKeyDown.equals("UP") || currentKeyDown.equals("DOWN")
-                || currentKeyDown.equals("LEFT") || currentKeyDown.equals("RIGHT")) {
-            isMoving = false;
-        }
-
-
         if (inputList.contains("W")||inputList.contains("UP")) {
             dirY = CharacterMovement.Direction.UP;
-            isMoving = true;
         }
         else if (inputList.contains("S")||inputList.contains("DOWN")) {
             dirY = CharacterMovement.Direction.DOWN;
-            isMoving = true;
         }
         else {
             dirY = CharacterMovement.Direction.NONE;
@@ -238,23 +286,18 @@ public class Player extends PlayerBehaviour{
 
         if (inputList.contains("A")||inputList.contains("LEFT")) {
             dirX = CharacterMovement.Direction.LEFT;
-            isMoving = true;
         }
         else if (inputList.contains("D")||inputList.contains("RIGHT")) {
             dirX = CharacterMovement.Direction.RIGHT;
-            isMoving = true;
         }
         else {
             dirX = CharacterMovement.Direction.NONE;
         }
 
-        if (dirX == CharacterMovement.Direction.NONE && dirY == CharacterMovement.Direction.NONE) {
-            isMoving = false;
-        }
+        /* holding shift keeps the player standing still, which the server works out from the keys in the same way */
+        boolean standStill = inputList.contains("SHIFT");
+        boolean isMoving = MovementPhysics.isMoving(dirX, dirY, standStill);
 
-        if (currentKeyDown.equals("SHIFT")) {
-            isMoving = false;
-        }
         switch (currentKeyDown) {
             case "W":
             case "UP":
@@ -275,12 +318,13 @@ public class Player extends PlayerBehaviour{
         }
 
         try {
-            this.client.sendCoordinates(dirX, dirY, isMoving, facing, transform.position.x, transform.position.y,
-                    invisibilty, speed);
-            if(GameSettings.getGameMode() == MODE.SINGLEPLAYER){
-                characterMovement.changeDirection(dirX, dirY);
-                characterMovement.setFacing(facing);
-                characterMovement.setIsMoving(isMoving);
+            int sequence = this.client.sendInput(dirX, dirY, standStill, invisibilty, speed);
+            /* the input is applied straight away rather than when the server sends it back */
+            characterMovement.changeDirection(dirX, dirY);
+            characterMovement.setFacing(facing);
+            characterMovement.setIsMoving(isMoving);
+            if(GameSettings.getGameMode() != MODE.SINGLEPLAYER){
+                prediction.record(sequence, transform.position.x, transform.position.y);
             }
         }
         catch (Exception ignored) {
@@ -25,8 +25,8 @@ public class PlayerBehaviour extends GameComponent {
     protected Inventory inventory;
     protected int score;
     protected boolean isUndetectable = false;
-    private final int DEFAULT_TIMER_LIMIT = 5;
-    private final int DEFAULT_STUNNED_TIME = 3;
+    private final int DEFAULT_TIMER_LIMIT = MovementPhysics.BOOST_SECONDS;
+    private final int DEFAULT_STUNNED_TIME = Inventory.STUNNED_SECONDS;
 
     /**
      * The constructor for the behaviour component of a player.
@@ -229,7 +229,7 @@ public class PlayerBehaviour extends GameComponent {
     protected void giveTemporarySpeedBoost(int t) {
         inventory.setSpeedBoostTimer(t*60);
         inventory.setBoost(true);
-        characterMovement.setSpeedBoost(3);
+        characterMovement.setSpeedBoost(MovementPhysics.SPEED_BOOST);
     }
 
     /**
@@ -187,22 +187,9 @@ public class PlayerCollider extends GameComponent {
 
     /* move the transform back to the last non-colliding X or Y (or both) coordinate(s) */
     private void handleWallCollision(XYPair overlapSize) {
-        final double CORNER_THRESHOLD = 5; /* maximum difference between X and Y overlap for it to count as a corner */
-        boolean revertX=false, revertY=false;
-
-        if (overlapSize.x - overlapSize.y > CORNER_THRESHOLD) {
-            /* overlap rectangle is wide, so move to previous Y coord */
-            revertY = true;
-
-        } else if (overlapSize.y - overlapSize.x > CORNER_THRESHOLD) {
-            /* overlap rectangle is tall, so move to previous X coord */
-            revertX = true;
-
-        } else {
-            /* overlap rectangle is roughly square, so move back in both X and Y */
-            revertX = true;
-            revertY = true;
-        }
+        /* a wide overlap rectangle only moves back in Y, a tall one only in X, and a roughly square one in both */
+        boolean revertX = MovementPhysics.revertsX(overlapSize);
+        boolean revertY = MovementPhysics.revertsY(overlapSize);
 
         if (revertX) {
             /* move back to the last non-colliding X coordinate */
@@ -2,10 +2,15 @@ package uob.cs.teamproject.sabrewulf.components;
 
 import javafx.scene.image.Image;
 import uob.cs.teamproject.sabrewulf.GameComponent;
+import uob.cs.teamproject.sabrewulf.GameSettings;
 import uob.cs.teamproject.sabrewulf.ResourceManager;
 import uob.cs.teamproject.sabrewulf.network.DataStorage;
+import uob.cs.teamproject.sabrewulf.network.InterpolationBuffer;
+import uob.cs.teamproject.sabrewulf.network.Protocol;
 import uob.cs.teamproject.sabrewulf.util.XYPair;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * The RemoteEnemy component is responsible for replicating the enemy (MovementLogicAI) behaviour to clients
  */
@@ -15,6 +20,7 @@ public class RemoteEnemy extends GameComponent {
     private final EnemyCollider enemyCollider;
     private final DataStorage dataStorage;
     private final int num;
+    private final XYPair position = new XYPair(0, 0);
 
     /**
      * The constructor for the RemoteEnemy class.
@@ -31,6 +37,7 @@ public class RemoteEnemy extends GameComponent {
         this.enemyCollider = enemyCollider;
         this.characterAnimator = characterAnimator;
         characterMovement.setIsMoving(false);
+        characterMovement.setReplicated(true);
         setSprites();
         setSecondarySprites();
     }
@@ -119,7 +126,9 @@ public class RemoteEnemy extends GameComponent {
 
     /**
      * The update method for the RemoteEnemy. Sets characterAnimator to use secondary sprites if the enemy is
-     * detecting a player. Makes changes to the characterMovement according to the changes received from the server.
+     * detecting a player. Draws the enemy where the AI controlled by the host was
+     * {@link GameSettings#getInterpolationDelay()} milliseconds ago, interpolated between the states received
+     * from the server, or hides it while it is outside this client's area of interest.
      * @param now a timestamp for the current step of the game loop, given in nanoseconds
      */
     @Override
@@ -127,15 +136,17 @@ public class RemoteEnemy extends GameComponent {
         XYPair playerXY = enemyCollider.getTargetPlayerPos();
         characterAnimator.setUseSecondaryStrips(playerXY != null);
 
-        CharacterMovement.Direction[] directions = this.dataStorage.getEnemyDirections();
-        boolean[] isMoving = this.dataStorage.getEnemyIsMoving();
-        CharacterMovement.Direction[] isFacing = dataStorage.getEnemyIsFacing();
-        if(directions!=null && isMoving != null && isFacing != null){
-            if(directions[num*2] != null && directions[num*2+1] != null) {
-                characterMovement.changeDirection(directions[num*2], directions[num*2+1]);
-                characterMovement.setFacing(isFacing[num]);
-                characterMovement.setIsMoving(isMoving[num]);
-            }
+        InterpolationBuffer interpolation = dataStorage.getEnemyInterpolation(num);
+        long renderTime = now - TimeUnit.MILLISECONDS.toNanos(GameSettings.getInterpolationDelay());
+        int bits = interpolation.sample(renderTime, position);
+        if(bits >= 0){
+            characterAnimator.setHidden(Protocol.isAbsent(bits));
+        }
+        if(bits >= 0 && !Protocol.isAbsent(bits)){
+            characterMovement.changeDirection(Protocol.directionX(bits), Protocol.directionY(bits));
+            characterMovement.setFacing(Protocol.facing(bits));
+            characterMovement.setIsMoving(Protocol.isMoving(bits));
+            characterAnimator.setCoords((int) Math.round(position.x), (int) Math.round(position.y));
         }
     }
 }
\ No newline at end of file
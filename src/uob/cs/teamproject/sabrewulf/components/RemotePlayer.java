@@ -1,11 +1,16 @@
 package uob.cs.teamproject.sabrewulf.components;
 
 import uob.cs.teamproject.sabrewulf.GameEntity;
+import uob.cs.teamproject.sabrewulf.GameSettings;
 import uob.cs.teamproject.sabrewulf.map.Cell;
 import uob.cs.teamproject.sabrewulf.network.DataStorage;
+import uob.cs.teamproject.sabrewulf.network.InterpolationBuffer;
+import uob.cs.teamproject.sabrewulf.network.Protocol;
 import uob.cs.teamproject.sabrewulf.util.Transform;
 import uob.cs.teamproject.sabrewulf.util.XYPair;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * The RemotePlayer is responsible for replicating a player controlled by another user.
  */
@@ -15,6 +20,7 @@ public class RemotePlayer extends PlayerBehaviour {
     private final Transform transform;
     private final GameEntity entity;
     private final DataStorage dataStorage;
+    private final XYPair position = new XYPair(0, 0);
 
     /**
      * The constructor for the RemotePlayer class.
@@ -35,6 +41,7 @@ public class RemotePlayer extends PlayerBehaviour {
         this.characterAnimator = characterAnimator;
         this.entity = entity;
         this.dataStorage = dataStorage;
+        characterMovement.setReplicated(true);
         characterAnimator.setRemotePlayer(this);
         characterAnimator.setSpriteSets(setSprites());
         this.playerCollider.setHandler(new PlayerCollider.CollisionHandler() {
@@ -98,13 +105,14 @@ public class RemotePlayer extends PlayerBehaviour {
      * The update method for the RemotePlayer class.
      * Removes the character if the player has left the game.
      * Checks if the character is using an invisibility or a speed boost.
-     * Makes changes to the characterMovement according to the changes received from the server.
-     * Checks if the RemotePlayer position is the same as the position of the Player which it is replicating.
+     * Draws the character where the Player it is replicating was {@link GameSettings#getInterpolationDelay()}
+     * milliseconds ago, interpolated between the states received from the server, or hides it while it is outside
+     * this client's area of interest.
      * Calls an update method of its parent class.
      * @param t: The current time in nanoseconds.
      */
     public void update(long t){
-        if(dataStorage.getRemove().containsValue(num)){
+        if(dataStorage.isRemoved(num)){
             entity.remove();
             return;
         }
@@ -119,22 +127,17 @@ public class RemotePlayer extends PlayerBehaviour {
             inventory.decrementNumSpeedBoostsWaiting();
         }
 
-        CharacterMovement.Direction[] directions = dataStorage.getPlayerDirections();
-        boolean isMoving = dataStorage.getPlayerIsMoving(num);
-        CharacterMovement.Direction isFacing = dataStorage.getPlayerIsFacing(num);
-        if(directions != null && isFacing != null){
-            if(directions[num*2] != null && directions[(num*2)+1] != null) {
-                characterMovement.changeDirection(directions[num*2], directions[num*2+1]);
-                characterMovement.setFacing(isFacing);
-                characterMovement.setIsMoving(isMoving);
-            }
+        InterpolationBuffer interpolation = dataStorage.getPlayerInterpolation(num);
+        long renderTime = t - TimeUnit.MILLISECONDS.toNanos(GameSettings.getInterpolationDelay());
+        int bits = interpolation.sample(renderTime, position);
+        if(bits >= 0){
+            characterAnimator.setHidden(Protocol.isAbsent(bits));
         }
-
-        XYPair tc = dataStorage.getTransformCheck(num);
-        if(tc != null){
-            if(transform.position.x != tc.x || transform.position.y != tc.y){
-                characterAnimator.setCoords((int) tc.x, (int) tc.y);
-            }
+        if(bits >= 0 && !Protocol.isAbsent(bits)){
+            characterMovement.changeDirection(Protocol.directionX(bits), Protocol.directionY(bits));
+            characterMovement.setFacing(Protocol.facing(bits));
+            characterMovement.setIsMoving(Protocol.isMoving(bits));
+            characterAnimator.setCoords((int) Math.round(position.x), (int) Math.round(position.y));
         }
 
         super.update(t);
@@ -19,7 +19,7 @@ public class MovementLogicAI extends GameComponent {
     private CharacterMovement.Direction directionX;
     private CharacterMovement.Direction directionY;
     private CharacterMovement.Direction facing = CharacterMovement.Direction.UP;
-    private static GameMapWrapper mapWrapper;
+    private GameMapWrapper mapWrapper;
     private CharacterMovement characterMovement;
     private Cell randomCellToReach;
     private Cell theCurrentCell;
@@ -30,12 +30,14 @@ public class MovementLogicAI extends GameComponent {
     private Boolean firstTime = true;
     private int[][] coordsToReach;
     private EnemyCollider enemyCollider;
+    private boolean authoritative;
 
     /**
      * The constructor for the AI's logic/ decision making class.
      * The constructor spawns the AI on a cell around the top of the map.
      * @param transform: The Transform component belonging to the AI.
-     * @param characterAnimator: The CharacterAnimator component belonging to the AI.
+     * @param characterAnimator: The CharacterAnimator component belonging to the AI, or null if the AI is not drawn
+     *                         (e.g. on a dedicated server), in which case no sprites are loaded.
      * @param map: The GameMap of the current game so the AI can make appropriate decisions.
      * @param enemyCollider: The EnemyCollider system belonging to the AI.
      * @param characterMovement: The CharacterMovement component belonging to the AI.
@@ -51,8 +53,11 @@ public class MovementLogicAI extends GameComponent {
         this.dataStorage = dataStorage;
         this.characterMovement = characterMovement;
         this.num = num;
-        setSprites();
-        setSecondarySprites();
+        this.authoritative = GameSettings.getGameMode() == MODE.SINGLEPLAYER;
+        if (characterAnimator != null) {
+            setSprites();
+            setSecondarySprites();
+        }
         setInitialDirection();
 
         randomCellToReach = mapWrapper.getRandomCell();
@@ -67,6 +72,15 @@ public class MovementLogicAI extends GameComponent {
         m = new MazeSolver(mapWrapper);
     }
 
+    /**
+     * Sets whether the AI's decisions are applied to the enemy straight away, as in a single player game or on a
+     * dedicated server, rather than once they have come back from the server in a snapshot.
+     * @param authoritative: true if the decisions are applied straight away.
+     */
+    public void setAuthoritative(boolean authoritative) {
+        this.authoritative = authoritative;
+    }
+
     /**
      * Sets the sprites as images from the predefined file location and passes them
      * to the CharacterAnimator component.
@@ -161,6 +175,7 @@ public class MovementLogicAI extends GameComponent {
      */
     public void update(long t) {
         updateAstarApproach();
+        dataStorage.setEnemyPosition(num, transform.position.x, transform.position.y);
     }
 
     /**
@@ -212,7 +227,9 @@ public class MovementLogicAI extends GameComponent {
 
         if (playerXY == null) {
             isChasing = false;
-            characterAnimator.setUseSecondaryStrips(false);
+            if (characterAnimator != null) {
+                characterAnimator.setUseSecondaryStrips(false);
+            }
             //traverse randomly
             if (AIcurrentCell == randomCellToReach || !characterMovement.getIsMoving()) {
 
@@ -231,7 +248,9 @@ public class MovementLogicAI extends GameComponent {
             //move towards player
             randomCellToReach = mapWrapper.getRandomCell(); //prevents ai stuck in loops
             playerCurrentCell = mapWrapper.coordsToCell((int) playerXY.x, (int) playerXY.y);
-            characterAnimator.setUseSecondaryStrips(true);
+            if (characterAnimator != null) {
+                characterAnimator.setUseSecondaryStrips(true);
+            }
         }
 
 
@@ -282,7 +301,7 @@ public class MovementLogicAI extends GameComponent {
                     facing = CharacterMovement.Direction.DOWN;
                 }
 
-                if(GameSettings.getGameMode() == MODE.SINGLEPLAYER){
+                if(authoritative){
                     dataStorage.setEnemyDirections(num, directionX, directionY, facing);
                     dataStorage.setEnemyIsMoving(num, true);
                     characterMovement.setIsMoving(true);
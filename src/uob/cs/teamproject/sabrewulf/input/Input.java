@@ -62,6 +62,9 @@ public class Input {
                         audio.setVolumeMusic(0);
                         audio.setVolumeFX(0);
                     }
+                    if (e.getCode().equals(KeyCode.F3) && gameActive) {
+                        GameSettings.setNetworkStatsShown(!GameSettings.networkStatsShownProperty().get());
+                    }
                     if (e.getCode().equals(KeyCode.TAB)) {
                         if (!GameSettings.getPauseMenuDisabled()) {
                             GameSettings.getGameStateOwner().pauseGame();
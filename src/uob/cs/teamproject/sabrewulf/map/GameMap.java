@@ -75,7 +75,7 @@ public class GameMap extends GameComponent {
 
         /* step (1) */
         createCells();
-        setCellNeighbours();
+        setCellNeighbours(cellGrid);
         /* step (2) */
         connectAllCells();
         /* step (3) */
@@ -168,9 +168,14 @@ public class GameMap extends GameComponent {
         }
     }
 
-    /** Store the neighbours of each cell within each cell object. */
+    /** Store the neighbours of each cell within each cell object. Also used by {@link MapCodec} to link the cells of
+     * a received map.
+     * @param cellGrid
+     * The grid of cells to link. */
 
-    private void setCellNeighbours() {
+    static void setCellNeighbours(Cell[][] cellGrid) {
+        int cellCountX = cellGrid.length;
+        int cellCountY = cellGrid[0].length;
         for (int gridY = 0; gridY < cellCountY; gridY++) {
 
             for (int gridX = 0; gridX < cellCountX; gridX++) {
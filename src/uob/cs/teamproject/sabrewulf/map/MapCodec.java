@@ -0,0 +1,237 @@
+package uob.cs.teamproject.sabrewulf.map;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class is used to send a generated map to the clients in a compact binary form.
+ * Only what a client needs to play on the map is sent: the type of every divider, bit-packed once per edge since
+ * neighbouring cells share their dividers, and the key, power up and empty flag of every cell. A 14x14 map takes
+ * fewer than 300 bytes. The client then rebuilds the {@link Cell}s and the links between neighbours itself.
+ * <p>
+ * The map is sent as a size header (count of cells across each axis as a byte, width and height of a cell as shorts)
+ * followed by the bits, in the order the cells are stored in the grid.
+ */
+
+public final class MapCodec {
+
+    /* bits used for the type of a divider, for a key type or none and for a power up type or none */
+    private static final int DIVIDER_BITS = 3;
+    private static final int KEY_BITS = 2;
+    private static final int POWER_UP_BITS = 2;
+    private static final int HEADER_SIZE = 6;
+
+    /* cached because values() returns a new array on every call */
+    private static final Divider.DividerType[] DIVIDER_TYPES = Divider.DividerType.values();
+    private static final Cell.KeyType[] KEY_TYPES = Cell.KeyType.values();
+    private static final Cell.PowerUpType[] POWER_UP_TYPES = Cell.PowerUpType.values();
+
+    private MapCodec(){}
+
+    /**
+     * This is used to get the number of bytes a map is encoded in.
+     * @param cellCountX
+     * The number of cells across the x-axis of the cell grid.
+     * @param cellCountY
+     * The number of cells across the y-axis of the cell grid.
+     * @return
+     * Returns the number of bytes written by {@link #encode(Cell[][], int, int, ByteBuffer)}.
+     */
+    public static int encodedSize(int cellCountX, int cellCountY) {
+        /* the top and left divider of every cell, plus the bottom row and the right column */
+        int edges = 2 * cellCountX * cellCountY + cellCountX + cellCountY;
+        int bits = edges * DIVIDER_BITS + cellCountX * cellCountY * (KEY_BITS + POWER_UP_BITS + 1);
+        return HEADER_SIZE + (bits + 7) / 8;
+    }
+
+    /**
+     * This is used to write a map to a buffer.
+     * @param cellGrid
+     * The grid of cells to write.
+     * @param cellWidth
+     * The real-world width of the cells.
+     * @param cellHeight
+     * The real-world height of the cells.
+     * @param buffer
+     * The buffer to write to, which must have at least {@link #encodedSize(int, int)} bytes remaining.
+     */
+    public static void encode(Cell[][] cellGrid, int cellWidth, int cellHeight, ByteBuffer buffer) {
+        int cellCountX = cellGrid.length;
+        int cellCountY = cellGrid[0].length;
+        buffer.put((byte) cellCountX);
+        buffer.put((byte) cellCountY);
+        buffer.putShort((short) cellWidth);
+        buffer.putShort((short) cellHeight);
+
+        BitWriter writer = new BitWriter(buffer);
+        for (int gridY = 0; gridY < cellCountY; gridY++) {
+            for (int gridX = 0; gridX < cellCountX; gridX++) {
+                Cell cell = cellGrid[gridX][gridY];
+                writer.write(cell.getDivider(Cell.Direction.UP).getDividerType().ordinal(), DIVIDER_BITS);
+                writer.write(cell.getDivider(Cell.Direction.LEFT).getDividerType().ordinal(), DIVIDER_BITS);
+                if (gridY == cellCountY - 1) {
+                    writer.write(cell.getDivider(Cell.Direction.DOWN).getDividerType().ordinal(), DIVIDER_BITS);
+                }
+                if (gridX == cellCountX - 1) {
+                    writer.write(cell.getDivider(Cell.Direction.RIGHT).getDividerType().ordinal(), DIVIDER_BITS);
+                }
+                writer.write(cell.hasKey() ? cell.getKeyType().ordinal() + 1 : 0, KEY_BITS);
+                writer.write(cell.hasPowerUp() ? cell.getPowerUpType().ordinal() + 1 : 0, POWER_UP_BITS);
+                writer.write(cell.isEmpty() ? 1 : 0, 1);
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * This is used to rebuild a map written by {@link #encode(Cell[][], int, int, ByteBuffer)}.
+     * @param buffer
+     * The buffer to read from.
+     * @return
+     * Returns the rebuilt grid of cells, linked to their neighbours.
+     * @throws BufferUnderflowException
+     * If the buffer ends before the whole map has been read.
+     * @throws IllegalArgumentException
+     * If the buffer does not contain a valid map.
+     */
+    public static Cell[][] decode(ByteBuffer buffer) {
+        int cellCountX = buffer.get() & 0xFF;
+        int cellCountY = buffer.get() & 0xFF;
+        int cellWidth = buffer.getShort() & 0xFFFF;
+        int cellHeight = buffer.getShort() & 0xFFFF;
+        if (cellCountX == 0 || cellCountY == 0) {
+            throw new IllegalArgumentException("Map has no cells");
+        }
+
+        /* create the cells and their links the same way GameMap does, so every cell starts with four walls */
+        Cell[][] cellGrid = new Cell[cellCountX][cellCountY];
+        for (int gridY = 0; gridY < cellCountY; gridY++) {
+            for (int gridX = 0; gridX < cellCountX; gridX++) {
+                cellGrid[gridX][gridY] = new Cell(gridX * cellWidth, gridY * cellHeight);
+            }
+        }
+        GameMap.setCellNeighbours(cellGrid);
+
+        BitReader reader = new BitReader(buffer);
+        for (int gridY = 0; gridY < cellCountY; gridY++) {
+            for (int gridX = 0; gridX < cellCountX; gridX++) {
+                Cell cell = cellGrid[gridX][gridY];
+                setDivider(cell, Cell.Direction.UP, readDividerType(reader));
+                setDivider(cell, Cell.Direction.LEFT, readDividerType(reader));
+                if (gridY == cellCountY - 1) {
+                    setDivider(cell, Cell.Direction.DOWN, readDividerType(reader));
+                }
+                if (gridX == cellCountX - 1) {
+                    setDivider(cell, Cell.Direction.RIGHT, readDividerType(reader));
+                }
+                int key = reader.read(KEY_BITS);
+                if (key > 0) {
+                    cell.setKeyType(KEY_TYPES[key - 1]);
+                    cell.setHasKey(true);
+                }
+                int powerUp = reader.read(POWER_UP_BITS);
+                if (powerUp > 0) {
+                    if (powerUp > POWER_UP_TYPES.length) {
+                        throw new IllegalArgumentException("Unknown power up type " + powerUp);
+                    }
+                    cell.setPowerUpType(POWER_UP_TYPES[powerUp - 1]);
+                    cell.setHasPowerUp(true);
+                }
+                cell.setEmpty(reader.read(1) == 1);
+            }
+        }
+        return cellGrid;
+    }
+
+    private static Divider.DividerType readDividerType(BitReader reader) {
+        int type = reader.read(DIVIDER_BITS);
+        if (type >= DIVIDER_TYPES.length) {
+            throw new IllegalArgumentException("Unknown divider type " + type);
+        }
+        return DIVIDER_TYPES[type];
+    }
+
+    /**
+     * This is used to give a divider of a rebuilt cell its type. Dividers between two cells are changed through
+     * {@link Cell} so that both sides of the edge are changed together, the same way they were when the map was
+     * generated.
+     * @param cell
+     * The cell the divider belongs to.
+     * @param direction
+     * The direction of the divider.
+     * @param type
+     * The type the divider should be.
+     */
+    private static void setDivider(Cell cell, Cell.Direction direction, Divider.DividerType type) {
+        boolean hasNeighbour = cell.hasNeighbour(direction);
+        Divider divider = cell.getDivider(direction);
+        switch (type) {
+            case EMPTY:
+                if (hasNeighbour) { cell.removeDividers(direction); } else { divider.inactivate(); }
+                break;
+            case BLUEDOOR:
+                if (hasNeighbour) { cell.makeBlueDoor(direction); } else { divider.setBlue(true); }
+                break;
+            case GREENDOOR:
+                if (hasNeighbour) { cell.makeGreenDoor(direction); } else { divider.setGreen(true); }
+                break;
+            case YELLOWDOOR:
+                if (hasNeighbour) { cell.makeYellowDoor(direction); } else { divider.setYellow(true); }
+                break;
+            default:
+                /* every divider starts as a wall */
+                break;
+        }
+    }
+
+    /* packs values of a few bits each into bytes, most significant bit first */
+    private static final class BitWriter {
+        private final ByteBuffer buffer;
+        private int bits;
+        private int count;
+
+        BitWriter(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void write(int value, int width) {
+            bits = (bits << width) | value;
+            count += width;
+            while (count >= 8) {
+                count -= 8;
+                buffer.put((byte) (bits >>> count));
+            }
+            bits &= (1 << count) - 1;
+        }
+
+        void flush() {
+            if (count > 0) {
+                buffer.put((byte) (bits << (8 - count)));
+                bits = 0;
+                count = 0;
+            }
+        }
+    }
+
+    /* reads values written by a BitWriter */
+    private static final class BitReader {
+        private final ByteBuffer buffer;
+        private int bits;
+        private int count;
+
+        BitReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int read(int width) {
+            while (count < width) {
+                bits = (bits << 8) | (buffer.get() & 0xFF);
+                count += 8;
+            }
+            count -= width;
+            int value = (bits >>> count) & ((1 << width) - 1);
+            bits &= (1 << count) - 1;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import uob.cs.teamproject.sabrewulf.map.Cell;
+import uob.cs.teamproject.sabrewulf.map.Divider;
+import uob.cs.teamproject.sabrewulf.map.GameMapWrapper;
+
+import java.util.Arrays;
+
+/**
+ * The AreaOfInterest decides which players and enemies each client is sent, using the cells of the maze as a
+ * spatial index. A client is interested in every cell within a radius of cells around its own player, and in every
+ * cell it can see along a straight corridor of open dividers from its player's cell. Anything else is marked absent
+ * in the client's snapshot: the client hides it when it leaves the area and shows it again when it comes back, and
+ * nothing about it is sent in between.
+ * Only used by the {@link NetworkEngine} thread, and does not allocate once created.
+ */
+public final class AreaOfInterest {
+
+    private final int columns;
+    private final int rows;
+    private final int cellWidth;
+    private final int cellHeight;
+    private final int radius;
+
+    /* whether the divider on the right of and below each cell is open, indexed by column * rows + row */
+    private final boolean[] openRight;
+    private final boolean[] openDown;
+
+    /* the cells each client is interested in, and the cell its player was in when they were found */
+    private final boolean[][] interesting;
+    private final int[] centres;
+
+    /**
+     * @param map the map of the game
+     * @param clients the number of clients
+     * @param radius the number of cells around a client's player it is interested in whatever the walls
+     */
+    public AreaOfInterest(GameMapWrapper map, int clients, int radius){
+        this(map.getCellGrid(), map.getCellDimensions()[0], map.getCellDimensions()[1], clients, radius);
+    }
+
+    /**
+     * @param cellGrid the cells of the maze, indexed by column then row
+     * @param cellWidth the width of a cell in pixels
+     * @param cellHeight the height of a cell in pixels
+     * @param clients the number of clients
+     * @param radius the number of cells around a client's player it is interested in whatever the walls
+     */
+    public AreaOfInterest(Cell[][] cellGrid, int cellWidth, int cellHeight, int clients, int radius){
+        columns = cellGrid.length;
+        rows = cellGrid[0].length;
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.radius = radius;
+        openRight = new boolean[columns * rows];
+        openDown = new boolean[columns * rows];
+        for(int column = 0; column < columns; column++){
+            for(int row = 0; row < rows; row++){
+                Divider[] dividers = cellGrid[column][row].getCellDividers();
+                /* the walls on the right of and below each cell are the ones the game places, see GameWorld */
+                openRight[column * rows + row] = column + 1 < columns && !dividers[2].isActive();
+                openDown[column * rows + row] = row + 1 < rows && !dividers[1].isActive();
+            }
+        }
+        interesting = new boolean[clients][columns * rows];
+        centres = new int[clients];
+        Arrays.fill(centres, -1);
+    }
+
+    /**
+     * Marks each player and enemy outside a client's area of interest as absent in the snapshot for the client
+     * @param client the slot of the client, whose own player must be in the snapshot
+     * @param snapshot a copy of the newest snapshot, which is changed into the snapshot for the client
+     * @param baseline the snapshot the client already has, or null
+     * @return true if anything was marked absent
+     */
+    public boolean filter(int client, Snapshot snapshot, Snapshot baseline){
+        moveTo(client, Protocol.toPosition(snapshot.getPlayerField(client, 2)),
+                Protocol.toPosition(snapshot.getPlayerField(client, 3)));
+        boolean hidden = false;
+        for(int slot = 0; slot < snapshot.getSlots(); slot++){
+            if(slot != client && snapshot.hasPlayer(slot)
+                    && !isInteresting(client, Protocol.toPosition(snapshot.getPlayerField(slot, 2)),
+                    Protocol.toPosition(snapshot.getPlayerField(slot, 3)))){
+                snapshot.hidePlayer(slot, baseline);
+                hidden = true;
+            }
+        }
+        int tick = snapshot.getTick();
+        for(int enemy = 0; enemy < snapshot.getEnemyCount(); enemy++){
+            short velocity = snapshot.getEnemyField(enemy, 3);
+            int ticks = Protocol.ticksSince(tick, snapshot.getEnemyField(enemy, 4));
+            double x = Protocol.extrapolate(snapshot.getEnemyField(enemy, 1), (byte) (velocity >> 8), ticks);
+            double y = Protocol.extrapolate(snapshot.getEnemyField(enemy, 2), (byte) velocity, ticks);
+            if(!isInteresting(client, x, y)){
+                snapshot.hideEnemy(enemy, baseline);
+                hidden = true;
+            }
+        }
+        return hidden;
+    }
+
+    /**
+     * Finds the cells a client is interested in, if its player has moved to another cell
+     * @param client the slot of the client
+     * @param x the x position of the client's player
+     * @param y the y position of the client's player
+     */
+    public void moveTo(int client, double x, double y){
+        int centre = cellOf(x, y);
+        if(centre == centres[client]){
+            return;
+        }
+        centres[client] = centre;
+        boolean[] cells = interesting[client];
+        Arrays.fill(cells, false);
+        int column = centre / rows;
+        int row = centre % rows;
+        for(int i = Math.max(0, column - radius); i <= Math.min(columns - 1, column + radius); i++){
+            for(int j = Math.max(0, row - radius); j <= Math.min(rows - 1, row + radius); j++){
+                cells[i * rows + j] = true;
+            }
+        }
+        /* along each corridor until it is closed off */
+        for(int i = column; i + 1 < columns && openRight[i * rows + row]; i++){
+            cells[(i + 1) * rows + row] = true;
+        }
+        for(int i = column; i > 0 && openRight[(i - 1) * rows + row]; i--){
+            cells[(i - 1) * rows + row] = true;
+        }
+        for(int j = row; j + 1 < rows && openDown[column * rows + j]; j++){
+            cells[column * rows + j + 1] = true;
+        }
+        for(int j = row; j > 0 && openDown[column * rows + j - 1]; j--){
+            cells[column * rows + j - 1] = true;
+        }
+    }
+
+    /**
+     * @param client the slot of a client, which has been moved with {@link #moveTo(int, double, double)}
+     * @param x an x position
+     * @param y a y position
+     * @return true if the position is in a cell the client is interested in
+     */
+    public boolean isInteresting(int client, double x, double y){
+        return interesting[client][cellOf(x, y)];
+    }
+
+    /* the index of the cell a position is in, the map being centred on the origin; positions off the map are put in
+     * the nearest cell */
+    private int cellOf(double x, double y){
+        int column = (int) Math.floor((x + columns * cellWidth * 0.5) / cellWidth);
+        int row = (int) Math.floor((y + rows * cellHeight * 0.5) / cellHeight);
+        column = Math.max(0, Math.min(columns - 1, column));
+        row = Math.max(0, Math.min(rows - 1, row));
+        return column * rows + row;
+    }
+}
@@ -0,0 +1,232 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
+import uob.cs.teamproject.sabrewulf.exceptions.UsernameUnavailableException;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * A BotClient is a {@link Client} without a game or a window, which joins a server through the same protocol as a
+ * player and sends an input command every frame, either walking at random or following a {@link BotScript}.
+ * Many bots can be run in one process by a {@link LoadTest} to measure how the server copes with a full game.
+ * <p>
+ * The bot also measures the end-to-end latency of its inputs: the time from sending an input command until the
+ * first snapshot which includes it arrives back. The server applies the commands in order, so a snapshot which
+ * acknowledges a command includes every command sent before it as well.
+ * Once the bot has joined, everything runs on the thread of the {@link NetworkEngine} it is attached to.
+ */
+public class BotClient extends Client {
+
+    /* half the size in pixels of the map the server creates, which is centred on the origin */
+    private static final int MAP_HALF_SIZE = 540;
+    /* how far the character moves each frame, the speed of a character without a boost */
+    private static final int SPEED = 3;
+    /* the chance of a bot walking at random changing direction on each frame, about twice a second */
+    private static final double TURN_CHANCE = 1.0 / 30;
+    /* how many input commands the send time is kept for, several seconds at 60 frames per second */
+    private static final int SENT_TIMES = 512;
+
+    private static final CharacterMovement.Direction[] X_DIRECTIONS = {CharacterMovement.Direction.LEFT,
+            CharacterMovement.Direction.RIGHT, CharacterMovement.Direction.NONE};
+    private static final CharacterMovement.Direction[] Y_DIRECTIONS = {CharacterMovement.Direction.UP,
+            CharacterMovement.Direction.DOWN, CharacterMovement.Direction.NONE};
+
+    private final BotScript script;
+    private final Random random;
+
+    /* where the bot thinks its character is, moved every frame and reset to the position the server has applied */
+    private double x;
+    private double y;
+    private CharacterMovement.Direction dirX;
+    private CharacterMovement.Direction dirY;
+    private long frame;
+
+    /* the time each recent input command was sent, indexed by sequence number */
+    private final long[] sentAt;
+    private int newestSent;
+    private int newestApplied;
+    private final XYPair appliedPosition;
+
+    /* only recorded while measuring, read once the engine has stopped */
+    private volatile boolean measuring;
+    private final Samples latency;
+    private long inputsSent;
+    private long packetsReceived;
+    private long bytesReceived;
+
+    /**
+     * Sends a username to the server to join its lobby
+     * @param numberOfPlayers a number of players
+     * @param numberOfEnemies a number of enemies
+     * @param username a username, which must be different to that of every other player
+     * @param serverAddress the address of the server
+     * @param script the movement to repeat, or null to walk at random
+     * @param seed the seed of the random walk
+     * @throws SocketException if the client could not initiate a socket
+     */
+    public BotClient(int numberOfPlayers, int numberOfEnemies, String username, SocketAddress serverAddress,
+                     BotScript script, long seed) throws SocketException {
+        super(numberOfPlayers, numberOfEnemies, username, UdpTransport.connect(serverAddress), serverAddress);
+        this.script = script;
+        random = new Random(seed);
+        dirX = CharacterMovement.Direction.NONE;
+        dirY = CharacterMovement.Direction.NONE;
+        sentAt = new long[SENT_TIMES];
+        appliedPosition = new XYPair(0, 0);
+        latency = new Samples();
+    }
+
+    /**
+     * Waits until every player has joined, then receives the map and the spawn positions. Blocks.
+     * @throws IOException if the server could not be reached, did not answer in time or refused the username
+     */
+    public void join() throws IOException {
+        try {
+            start();
+        }
+        catch (UsernameUnavailableException e) {
+            throw new IOException("The username is unavailable", e);
+        }
+        getMap();
+        getRandomCoordinates();
+        XYPair spawn = getDataStorage().getSpawnAt()[0];
+        if(spawn != null){
+            x = spawn.x;
+            y = spawn.y;
+        }
+    }
+
+    /**
+     * Receives packets on the thread of an engine from now on. {@link #step(long)} must then only be called on that
+     * thread.
+     * @param engine the engine
+     */
+    public void attach(NetworkEngine engine){
+        transport.register(engine, this::onPacket);
+    }
+
+    /**
+     * Chooses the direction to walk in on this frame and sends the input command to the server. Called once a frame
+     * on the {@link NetworkEngine} thread, which also sends control messages which have to be sent again and pings.
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     */
+    public void step(long now){
+        tick();
+        chooseDirection();
+        x = move(x, dirX, CharacterMovement.Direction.LEFT, CharacterMovement.Direction.RIGHT);
+        y = move(y, dirY, CharacterMovement.Direction.UP, CharacterMovement.Direction.DOWN);
+        newestSent = sendInput(dirX, dirY, false, false, false);
+        sentAt[newestSent % SENT_TIMES] = now;
+        frame++;
+        if(measuring){
+            inputsSent++;
+        }
+    }
+
+    /**
+     * Closes the socket of the bot, without telling the server
+     */
+    public void close(){
+        closeChannel();
+    }
+
+    /**
+     * Handles a packet as any client would, then measures the latency of every input command which the packet is
+     * the first to acknowledge
+     * @param data the received bytes
+     * @param sender the address of the server
+     */
+    @Override
+    protected void onPacket(ByteBuffer data, SocketAddress sender){
+        int size = data.remaining();
+        super.onPacket(data, sender);
+        boolean measured = measuring;
+        if(measured){
+            packetsReceived++;
+            bytesReceived += size;
+        }
+        /* the bot has no game thread, so it takes each tick on the engine thread as soon as it is published */
+        getDataStorage().acquireReceivedState();
+        int applied = getDataStorage().getAcknowledgedInput(appliedPosition);
+        if(applied - newestApplied > 0){
+            if(measured){
+                long now = System.nanoTime();
+                int first = Math.max(newestApplied + 1, newestSent - SENT_TIMES + 1);
+                for(int sequence = first; sequence <= applied; sequence++){
+                    latency.add(now - sentAt[sequence % SENT_TIMES]);
+                }
+            }
+            newestApplied = applied;
+            /* the server keeps the character out of the walls, which the bot knows nothing about */
+            x = appliedPosition.x;
+            y = appliedPosition.y;
+        }
+    }
+
+    /**
+     * @param measuring true to record the latency and count the packets from now on
+     */
+    void setMeasuring(boolean measuring){
+        this.measuring = measuring;
+    }
+
+    /**
+     * @return the end-to-end latency of each input command measured, in nanoseconds
+     */
+    Samples getLatency(){
+        return latency;
+    }
+
+    long getInputsSent(){
+        return inputsSent;
+    }
+
+    long getPacketsReceived(){
+        return packetsReceived;
+    }
+
+    long getBytesReceived(){
+        return bytesReceived;
+    }
+
+    /* follow the script, or turn now and again at random and away from the edges of the map */
+    private void chooseDirection(){
+        if(script != null){
+            dirX = script.getDirectionX(frame);
+            dirY = script.getDirectionY(frame);
+            return;
+        }
+        if(random.nextDouble() < TURN_CHANCE){
+            dirX = X_DIRECTIONS[random.nextInt(X_DIRECTIONS.length)];
+            dirY = Y_DIRECTIONS[random.nextInt(Y_DIRECTIONS.length)];
+        }
+        if(x - SPEED < -MAP_HALF_SIZE){
+            dirX = CharacterMovement.Direction.RIGHT;
+        }
+        else if(x + SPEED > MAP_HALF_SIZE){
+            dirX = CharacterMovement.Direction.LEFT;
+        }
+        if(y - SPEED < -MAP_HALF_SIZE){
+            dirY = CharacterMovement.Direction.DOWN;
+        }
+        else if(y + SPEED > MAP_HALF_SIZE){
+            dirY = CharacterMovement.Direction.UP;
+        }
+    }
+
+    private static double move(double position, CharacterMovement.Direction direction,
+                               CharacterMovement.Direction back, CharacterMovement.Direction forward){
+        if(direction == back){
+            position -= SPEED;
+        }
+        else if(direction == forward){
+            position += SPEED;
+        }
+        return Math.max(-MAP_HALF_SIZE, Math.min(MAP_HALF_SIZE, position));
+    }
+}
@@ -0,0 +1,142 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A BotScript is the movement a {@link BotClient} repeats for the whole game, so that every run of a load test sends
+ * the same inputs.
+ * <p>
+ * A script is written one step per line: the number of frames the step lasts, followed by the x and the y direction
+ * to move in for those frames, as named by {@link CharacterMovement.Direction}. Blank lines and lines starting with
+ * {@code #} are ignored, e.g.
+ * <pre>
+ * # walk a square, then stand still for a second
+ * 60 RIGHT NONE
+ * 60 NONE DOWN
+ * 60 LEFT NONE
+ * 60 NONE UP
+ * 60 NONE NONE
+ * </pre>
+ */
+public class BotScript {
+
+    private final List<Step> steps;
+    private final int length;
+
+    private BotScript(List<Step> steps){
+        this.steps = steps;
+        int frames = 0;
+        for(Step step : steps){
+            frames += step.frames;
+        }
+        length = frames;
+    }
+
+    /**
+     * @param text the script
+     * @return the parsed script
+     * @throws IllegalArgumentException if a line cannot be parsed or the script has no frames
+     */
+    public static BotScript parse(String text){
+        List<Step> steps = new ArrayList<>();
+        for(String line : text.split("\n")){
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")){
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            if(parts.length != 3){
+                throw new IllegalArgumentException("Expected frames and two directions: " + line);
+            }
+            int frames;
+            try {
+                frames = Integer.parseInt(parts[0]);
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected a number of frames: " + line, e);
+            }
+            if(frames < 0){
+                throw new IllegalArgumentException("Expected a number of frames: " + line);
+            }
+            steps.add(new Step(frames, direction(parts[1]), direction(parts[2])));
+        }
+        BotScript script = new BotScript(steps);
+        if(script.length == 0){
+            throw new IllegalArgumentException("The script has no frames");
+        }
+        return script;
+    }
+
+    /**
+     * @param file the path of a file containing a script
+     * @return the parsed script
+     * @throws IOException if the file could not be read
+     * @throws IllegalArgumentException if the script cannot be parsed
+     */
+    public static BotScript load(String file) throws IOException {
+        return parse(new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param frame the number of frames since the start of the game
+     * @return the x direction to move in on that frame, the script being repeated once it has finished
+     */
+    public CharacterMovement.Direction getDirectionX(long frame){
+        return stepAt(frame).dirX;
+    }
+
+    /**
+     * @param frame the number of frames since the start of the game
+     * @return the y direction to move in on that frame, the script being repeated once it has finished
+     */
+    public CharacterMovement.Direction getDirectionY(long frame){
+        return stepAt(frame).dirY;
+    }
+
+    /**
+     * @return the number of frames the script lasts before it is repeated
+     */
+    public int getLength(){
+        return length;
+    }
+
+    private Step stepAt(long frame){
+        long remaining = frame % length;
+        for(Step step : steps){
+            if(remaining < step.frames){
+                return step;
+            }
+            remaining -= step.frames;
+        }
+        throw new IllegalStateException();
+    }
+
+    private static CharacterMovement.Direction direction(String name){
+        try {
+            return CharacterMovement.Direction.valueOf(name.toUpperCase());
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown direction: " + name, e);
+        }
+    }
+
+    /* the directions to move in for a number of frames */
+    private static final class Step {
+        final int frames;
+        final CharacterMovement.Direction dirX;
+        final CharacterMovement.Direction dirY;
+
+        Step(int frames, CharacterMovement.Direction dirX, CharacterMovement.Direction dirY){
+            this.frames = frames;
+            this.dirX = dirX;
+            this.dirY = dirY;
+        }
+    }
+}
@@ -3,17 +3,24 @@ package uob.cs.teamproject.sabrewulf.network;
 import uob.cs.teamproject.sabrewulf.GameSettings;
 import uob.cs.teamproject.sabrewulf.exceptions.UsernameUnavailableException;
 import uob.cs.teamproject.sabrewulf.map.Cell;
+import uob.cs.teamproject.sabrewulf.map.MapCodec;
 import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
 import uob.cs.teamproject.sabrewulf.ui.scene.FinalScoreScene;
 import uob.cs.teamproject.sabrewulf.ui.selectors.MODEL;
 import uob.cs.teamproject.sabrewulf.util.XYPair;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.net.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static java.lang.Integer.parseInt;
 
@@ -21,23 +28,94 @@ import static java.lang.Integer.parseInt;
  * The Client class is used to create a connection with a server socket
  * and contains methods to send data to the server and receive data from it.
  * It talks to some of the game components with the help of {@link DataStorage}
+ * While the game loads the {@link Transport} is used with blocking calls; once the game is loaded it is registered
+ * with a {@link NetworkEngine} and received packets are handled by {@link #onPacket(ByteBuffer, SocketAddress)}.
  */
 public class Client {
-    protected DatagramSocket datagramSocket;
-    private final String hostIp;
-    private final int port;
+    /* how long getStart waits for the message to arrive, in milliseconds */
+    private static final long WAIT_TIMEOUT = 1000;
+    /* how often control messages which have not been acknowledged are checked for retransmission */
+    private static final int CONTROL_RATE = 20;
+
+    protected Transport transport;
+    private final SocketAddress serverAddress;
     private boolean isConnected;
     private int playersConnected;
     private final int clientNumber;
     private final ArrayList<Integer> portsOfUsersConnected;
     private final HashMap<Integer,Integer> userNumByPort;
+    /* true if this client watches the game without a player of its own */
+    private boolean spectating;
+    /* the port of each user, indexed by user number, so received packets can be matched without boxing */
+    private int[] portByUserNum;
 
     private int numberOfPlayers;
     private final int numberOfEnemies;
 
     private DataStorage dataStorage;
 
-    /**'The client class constructor initiates a {@link DatagramSocket} and
+    /* the tick of the newest world state received, so that older ones arriving out of order are ignored */
+    private int latestTick;
+    /* the snapshots received at the most recent ticks, which newer snapshots are sent as deltas against */
+    private SnapshotHistory history;
+    /* the newest tick received in the high 32 bits and a bit for each of the 32 ticks before it which was received,
+     * written by the engine thread and sent back to the server with every input message */
+    private volatile long acknowledgement;
+
+    /* the difference between the local clock and the server's tick clock, in nanoseconds, so that received states
+     * are time-stamped at the regular times the server sent them rather than the uneven times they arrived, until
+     * the clock has been synchronised with the server */
+    private long clockOffset;
+    private boolean clockOffsetSet;
+    /* the clock of the server, synchronised by every pong from it and replaced for every game */
+    private volatile ClockSync clock;
+    /* the server times the game started and ended at, in milliseconds, or -1 if not known yet, and the local time
+     * this client started it at */
+    private volatile long startServerMillis;
+    private volatile long endServerMillis;
+    private volatile long localStartTime;
+
+    /* the sequence number of the last input command recorded, and the most recent commands recorded in this game
+     * indexed by sequence number, guarded by the send buffer since commands held back are sent by the engine thread */
+    private int inputSequence;
+    private final int[] recentInputs;
+    private int inputsThisGame;
+    /* decides how often input messages are sent, the number of commands recorded since the last one was sent and
+     * the number of the next message */
+    private volatile SendRateController inputRate;
+    private int pendingInputs;
+    private int inputMessages;
+
+    /* sends and receives control messages reliably, replaced for every game */
+    private volatile ReliableChannel control;
+    /* reassembles the messages too long for one datagram, replaced for every game, and the messages it has
+     * delivered which have not been read yet */
+    private volatile FragmentChannel fragments;
+    private final ConcurrentLinkedQueue<ByteBuffer> messages;
+    /* reused for every datagram received while the game loads */
+    private final ByteBuffer lobbyBuffer;
+
+    /* reused for every input message sent, so sending does not allocate */
+    private final ByteBuffer sendBuffer;
+    /* reused for every ping and pong, only used by the engine thread */
+    private final ByteBuffer probeBuffer;
+
+    /* the quality of the connection to the server, replaced for every game, and where it is logged if anywhere */
+    private volatile NetworkStats stats;
+    private volatile NetworkStatsLog statsLog;
+    /* the time of the last call to update(), to measure the frame time of the game loop */
+    private long lastUpdate;
+
+    /* written by the engine thread, applied on the game thread by update() */
+    private final AtomicReference<FinalScoreScene.COMPLETIONTYPE> pendingCompletion;
+    private final AtomicInteger pendingRemovals;
+
+    /* set by the engine thread when the host starts the game */
+    private final Object startLock = new Object();
+    private boolean started;
+    private boolean closed;
+
+    /**'The client class constructor initiates a {@link UdpTransport} and
      * sends a username to the server to connect to it
      * @param numberOfPlayers a number of players
      * @param numberOfEnemies a number of enemies
@@ -48,87 +126,236 @@ public class Client {
      */
     public Client(int numberOfPlayers, int numberOfEnemies, String username, String hostIp, int port)
             throws SocketException {
+        this(numberOfPlayers, numberOfEnemies, username, resolve(hostIp, port));
+    }
+
+    private Client(int numberOfPlayers, int numberOfEnemies, String username, InetSocketAddress serverAddress)
+            throws SocketException {
+        this(numberOfPlayers, numberOfEnemies, username, UdpTransport.connect(serverAddress), serverAddress);
+    }
+
+    /**
+     * The client class constructor which talks to the server through a given {@link Transport} and
+     * sends a username to the server to connect to it
+     * @param numberOfPlayers a number of players
+     * @param numberOfEnemies a number of enemies
+     * @param username a username
+     * @param transport the transport to talk to the server through
+     * @param serverAddress the address of the server
+     * @throws SocketException if the timeout of the transport could not be set
+     */
+    protected Client(int numberOfPlayers, int numberOfEnemies, String username, Transport transport,
+                     SocketAddress serverAddress) throws SocketException {
+        this(numberOfPlayers, numberOfEnemies, username, transport, serverAddress, true);
+    }
+
+    /**
+     * The client class constructor which talks to the server through a given {@link Transport}
+     * @param numberOfPlayers a number of players
+     * @param numberOfEnemies a number of enemies
+     * @param username a username
+     * @param transport the transport to talk to the server through
+     * @param serverAddress the address of the server
+     * @param join true to send the username to the server to join its lobby, false for a {@link SpectatorClient}
+     * @throws SocketException if the timeout of the transport could not be set
+     */
+    protected Client(int numberOfPlayers, int numberOfEnemies, String username, Transport transport,
+                     SocketAddress serverAddress, boolean join) throws SocketException {
         this.numberOfPlayers = numberOfPlayers;
         this.numberOfEnemies = numberOfEnemies;
-        this.hostIp = hostIp;
-        this.port = port;
+        this.transport = transport;
+        this.serverAddress = serverAddress;
         this.dataStorage = new DataStorage(numberOfPlayers,numberOfEnemies);
         dataStorage.setUsername(username);
         portsOfUsersConnected = new ArrayList<>();
         userNumByPort = new HashMap<>();
         isConnected = false;
         playersConnected = 0;
+        pendingCompletion = new AtomicReference<>();
+        pendingRemovals = new AtomicInteger();
+        portByUserNum = new int[0];
+        history = new SnapshotHistory(numberOfPlayers, numberOfEnemies);
+        stats = new NetworkStats(System.nanoTime());
+        control = new ReliableChannel(transport, serverAddress, this::handleControl);
+        control.setStats(stats);
+        control.setUnreachableHandler(this::onServerUnreachable);
+        messages = new ConcurrentLinkedQueue<>();
+        fragments = new FragmentChannel(transport, serverAddress, messages::add);
+        fragments.setStats(stats);
+        lobbyBuffer = ByteBuffer.allocate(NetworkEngine.MAX_DATAGRAM_SIZE);
+        probeBuffer = ByteBuffer.allocate(Protocol.PONG_SIZE);
+        clock = new ClockSync();
+        inputRate = new SendRateController(GameSettings.getMinSendRate(), GameSettings.getMaxSendRate());
+        recentInputs = new int[Protocol.MAX_INPUT_COMMANDS];
+        sendBuffer = ByteBuffer.allocate(Protocol.HEADER_SIZE + Protocol.SEQUENCE_SIZE + Protocol.ACK_SIZE + 4 + 1
+                + Protocol.MAX_INPUT_COMMANDS * Protocol.INPUT_RUN_SIZE + 1
+                + numberOfEnemies * Protocol.ENEMY_RECORD_SIZE);
 
-        SocketAddress address= null;
         try {
-            address = new InetSocketAddress(InetAddress.getByName(hostIp),port);
+            transport.setTimeout(300000);
+        }
+        catch (SocketException e) {
+            closeChannel();
+            throw e;
+        }
+
+        clientNumber = transport.getLocalAddress().getPort();
+        if(join){
+            sendData(username);
+        }
+    }
+
+    /**
+     * Finds the address of a server
+     * @param hostIp an IP address of the user hosting the server
+     * @param port a port the server is listening on
+     * @return the address
+     * @throws SocketException if the host is unknown
+     */
+    private static InetSocketAddress resolve(String hostIp, int port) throws SocketException {
+        try {
+            return new InetSocketAddress(InetAddress.getByName(hostIp), port);
         }
         catch (UnknownHostException e) {
-            e.printStackTrace();
+            throw new SocketException(e.getMessage());
         }
+    }
 
-        datagramSocket = new DatagramSocket();
-        datagramSocket.connect(address);
-        datagramSocket.setSoTimeout(300000);
-
-        clientNumber = datagramSocket.getLocalPort();
-        sendData(username);
-    }
-
-    /**
-     * Sends character's information to the server
-     * @param dirX the x direction of the character
-     * @param dirY the y direction of the character
-     * @param isMoving true if the character is moving, false otherwise
-     * @param facing the direction the character is facing
-     * @param x the x position of character transform object
-     * @param y the y position of character transform object
-     * @param invisibility true if character is using the invisibility boost
-     * @param speed true if character is using the speed boost
-     */
-    public void sendCoordinates(CharacterMovement.Direction dirX, CharacterMovement.Direction dirY,
-                                boolean isMoving, CharacterMovement.Direction facing,
-                                double x, double y, boolean invisibility, boolean speed){
-        StringBuilder str = new StringBuilder();
-        str.append(clientNumber).append("#");
-        str.append(dirX).append("#");
-        str.append(dirY).append("#");
-        str.append(isMoving).append("#");
-        str.append(facing).append("#");
-        str.append(invisibility).append("#");
-        str.append(speed).append("#");
-        str.append(x).append("#");
-        str.append(y).append("#");
-        if(GameSettings.getModel() == MODEL.SERVER){
-            for(int i = 0; i < numberOfEnemies; i++){
-                str.append("e#");
-                str.append(dataStorage.enemyDirections[i*2]).append("#");
-                str.append(dataStorage.enemyDirections[i*2+1]).append("#");
-                str.append(dataStorage.enemyIsMoving[i]).append("#");
-                str.append(dataStorage.enemyIsFacing[i]).append("#");
+    /**
+     * Records the input command of this frame and sends it to the server as a {@link Protocol#PLAYER_INPUT} message,
+     * which also acknowledges the snapshots received from the server.
+     * Each command has its own sequence number, which the server sends back with the state it has applied so the
+     * local player can be reconciled with it. The commands sent just before it are sent again in the same message,
+     * so the server still gets every command in order when a few messages are lost.
+     * Messages are only sent as often as the {@link SendRateController} allows, so a command may wait for a later
+     * frame or for the engine thread to send it, but never once half of {@link Protocol#MAX_INPUT_COMMANDS} have
+     * waited, so that every command is still sent at least twice.
+     * Only the keys are sent; the server works out whether the player moves and the way it faces from them.
+     * @param dirX the x direction of the keys held
+     * @param dirY the y direction of the keys held
+     * @param standStill true if the key which keeps the player standing still is held
+     * @param invisibility true if the invisibility boost is activated on this frame
+     * @param speed true if the speed boost is activated on this frame
+     * @return the sequence number of the command
+     */
+    public int sendInput(CharacterMovement.Direction dirX, CharacterMovement.Direction dirY, boolean standStill,
+                         boolean invisibility, boolean speed){
+        synchronized (sendBuffer) {
+            inputSequence++;
+            recentInputs[inputSequence % recentInputs.length] = Protocol.packInput(dirX, dirY, standStill,
+                    invisibility, speed);
+            inputsThisGame = Math.min(inputsThisGame + 1, recentInputs.length);
+            pendingInputs++;
+            if(inputRate.isDue(System.nanoTime()) || pendingInputs >= Protocol.MAX_INPUT_COMMANDS / 2){
+                transmitInput();
             }
+            return inputSequence;
         }
-        sendData(str.toString());
     }
 
     /**
-     * @return true if the game should start, false otherwise
+     * Sends the recent input commands to the server, while holding the lock on the send buffer
      */
-    public boolean getStart(){
-        DatagramPacket dtPacket = null;
+    private void transmitInput(){
+        pendingInputs = 0;
+        sendBuffer.clear();
+        Protocol.writeHeader(sendBuffer, Protocol.PLAYER_INPUT);
+        sendBuffer.putShort((short) inputMessages++);
+        long ack = acknowledgement;
+        sendBuffer.putInt((int) (ack >>> 32));
+        sendBuffer.putInt((int) ack);
+        sendBuffer.putInt(inputSequence);
+        writeRecentInputs();
+        if(GameSettings.getModel() == MODEL.SERVER){
+            sendBuffer.put((byte) numberOfEnemies);
+            for(int i = 0; i < numberOfEnemies; i++){
+                Protocol.writeEnemy(sendBuffer, dataStorage.enemyDirections[i*2], dataStorage.enemyDirections[i*2+1],
+                        dataStorage.enemyIsMoving[i], dataStorage.enemyIsFacing[i],
+                        dataStorage.enemyPositions[i*2], dataStorage.enemyPositions[i*2+1]);
+            }
+        }
+        else {
+            sendBuffer.put((byte) 0);
+        }
+        sendBuffer.flip();
+        stats.onSent(sendBuffer.remaining());
         try {
-            dtPacket = getData(32);
+            transport.send(sendBuffer, serverAddress);
         }
-        catch (SocketTimeoutException | PortUnreachableException e) {
+        catch (IOException e) {
             e.printStackTrace();
         }
-        if(dtPacket != null){
-            String str = new String(dtPacket.getData());
-            String[] s = str.split("#",-2);
-            return s[0].trim().equals("start");
+    }
+
+    /**
+     * Writes the number of runs and then the recent input commands, newest first, as runs of identical commands
+     */
+    private void writeRecentInputs(){
+        int countAt = sendBuffer.position();
+        sendBuffer.put((byte) 0);
+        int runs = 0;
+        int i = 0;
+        while(i < inputsThisGame){
+            int command = recentInputs[(inputSequence - i) % recentInputs.length];
+            int length = 1;
+            while(i + length < inputsThisGame
+                    && recentInputs[(inputSequence - i - length) % recentInputs.length] == command){
+                length++;
+            }
+            Protocol.writeInputRun(sendBuffer, command, length);
+            runs++;
+            i += length;
         }
-        else {
-            return false;
+        sendBuffer.put(countAt, (byte) runs);
+    }
+
+    /**
+     * Waits for the message from the host which starts the game
+     * @return true if the game should start, false if it has not been started yet
+     */
+    public boolean getStart(){
+        return waitForStart(WAIT_TIMEOUT);
+    }
+
+    /**
+     * Waits until the host starts the game or the client is closed
+     * @return true if the game should start, false if the client was closed first
+     */
+    public boolean awaitStart(){
+        synchronized (startLock) {
+            while (!started && !closed) {
+                try {
+                    startLock.wait();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return started;
+        }
+    }
+
+    /**
+     * Waits for the message from the host which starts the game
+     * @param timeout the longest time to wait, in milliseconds
+     * @return true if the game should start, false if it has not been started in time
+     */
+    private boolean waitForStart(long timeout){
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (startLock) {
+            long remaining = timeout;
+            while (!started && remaining > 0) {
+                try {
+                    startLock.wait(remaining);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return started;
         }
     }
 
@@ -149,43 +376,315 @@ public class Client {
      * @throws UsernameUnavailableException if the username is unavailable
      */
     protected void start() throws SocketTimeoutException, PortUnreachableException, UsernameUnavailableException {
-        receiveUsernames();
+        beginLobby();
+        while(!readUsernames(decode(receiveMessage()))){
+            //Wait until every player has joined
+        }
+        assignUserNumbers();
+    }
 
-        while(numberOfPlayers != playersConnected){
-            receiveUsernames();
+    /**
+     * Forgets everything about the previous game, so that the messages of a new one can be read
+     */
+    protected void beginLobby(){
+        synchronized (startLock) {
+            started = false;
         }
+        pendingCompletion.set(null);
+        pendingRemovals.set(0);
+        latestTick = 0;
+        acknowledgement = 0;
+        clockOffsetSet = false;
+        clock = new ClockSync();
+        inputRate = new SendRateController(GameSettings.getMinSendRate(), GameSettings.getMaxSendRate());
+        startServerMillis = -1;
+        endServerMillis = -1;
+        synchronized (sendBuffer) {
+            inputsThisGame = 0;
+            pendingInputs = 0;
+        }
+        dataStorage.clearReceivedState();
+        stats = new NetworkStats(System.nanoTime());
+        lastUpdate = 0;
+        control = new ReliableChannel(transport, serverAddress, this::handleControl);
+        control.setStats(stats);
+        control.setUnreachableHandler(this::onServerUnreachable);
+        messages.clear();
+        fragments = new FragmentChannel(transport, serverAddress, messages::add);
+        fragments.setStats(stats);
+    }
 
-        userNumByPort.put(clientNumber,0);
-        int num = 1;
+    /**
+     * Numbers every player once all of them have joined, the player of this client being number 0, or the players
+     * in the order they joined if this client is a spectator
+     */
+    protected void assignUserNumbers(){
+        spectating = !portsOfUsersConnected.contains(clientNumber);
+        int num = 0;
+        if(!spectating){
+            userNumByPort.put(clientNumber,0);
+            num = 1;
+        }
         for(int p : portsOfUsersConnected){
             if(p != clientNumber){
                 userNumByPort.put(p,num);
                 num++;
             }
         }
+        portByUserNum = new int[userNumByPort.size()];
+        for(HashMap.Entry<Integer,Integer> user : userNumByPort.entrySet()){
+            portByUserNum[user.getValue()] = user.getKey();
+        }
+        history = new SnapshotHistory(numberOfPlayers, numberOfEnemies);
     }
 
     /**
-     * The update method for the client
+     * The update method for the client, called on the game thread.
+     * Never blocks: takes the newest complete tick published to {@link DataStorage} by the engine thread, which the
+     * game components read in the next frame, and applies the events which have to be handled by the game (players
+     * leaving, the game ending).
      */
     protected void update(){
-        receiveDirections();
+        dataStorage.acquireReceivedState();
+        long now = System.nanoTime();
+        if(lastUpdate != 0){
+            stats.onTick(now - lastUpdate);
+        }
+        lastUpdate = now;
+        int removed = pendingRemovals.getAndSet(0);
+        if(removed > 0){
+            numberOfPlayers = numberOfPlayers - removed;
+            GameSettings.setNumPlayers(numberOfPlayers);
+        }
+        FinalScoreScene.COMPLETIONTYPE completion = pendingCompletion.getAndSet(null);
+        if(completion != null){
+            GameSettings.getGameStateOwner().completeGame(completion);
+        }
+    }
+
+    /**
+     * Handles a packet received from the server during the game. Called on the {@link NetworkEngine} thread.
+     * Control messages are passed to the {@link ReliableChannel}, which hands them to
+     * {@link #handleControl(String)} in order, and so are the text messages reassembled by the
+     * {@link FragmentChannel}.
+     * @param data the received bytes
+     * @param sender the address of the server
+     */
+    protected void onPacket(ByteBuffer data, SocketAddress sender){
+        if(!Protocol.isBinary(data)){
+            return;
+        }
+        stats.onReceived(data.remaining());
+        try {
+            switch (Protocol.readHeader(data)) {
+                case Protocol.WORLD_STATE:
+                    receiveWorldState(data);
+                    break;
+                case Protocol.CONTROL:
+                    control.receive(data, System.nanoTime());
+                    break;
+                case Protocol.FRAGMENT:
+                    fragments.receiveFragment(data, System.nanoTime());
+                    ByteBuffer message;
+                    while((message = messages.poll()) != null){
+                        if(!Protocol.isBinary(message)){
+                            handleControl(decode(message));
+                        }
+                    }
+                    break;
+                case Protocol.PING:
+                    probeBuffer.clear();
+                    stats.writePong(data, probeBuffer, System.nanoTime());
+                    sendProbe();
+                    break;
+                case Protocol.PONG:
+                    long now = System.nanoTime();
+                    long sent = data.getLong(data.position());
+                    long serverTime = data.getLong(data.position() + 8);
+                    stats.onPong(data, now);
+                    clock.onSample(sent, serverTime, now);
+                    break;
+            }
+        }
+        catch (BufferUnderflowException e){
+            //Ignore a truncated packet, should not occur
+        }
+    }
+
+    /**
+     * Checks whether any control messages have to be sent again, sends any input commands which have waited for the
+     * rate to allow it, pings the server, and adjusts the input rate and logs the quality of the connection once a
+     * second. Called regularly on the {@link NetworkEngine} thread.
+     */
+    protected void tick(){
+        long now = System.nanoTime();
+        control.update(now);
+        synchronized (sendBuffer) {
+            if(pendingInputs > 0 && inputRate.isDue(now)){
+                transmitInput();
+            }
+        }
+        if(stats.pingDue(now)){
+            probeBuffer.clear();
+            stats.writePing(probeBuffer, now);
+            sendProbe();
+        }
+        NetworkStatsLog log = statsLog;
+        if(stats.update(now)){
+            inputRate.onWindow(stats);
+            if(log != null){
+                log.write("client-" + clientNumber, stats);
+            }
+        }
+    }
+
+    /**
+     * @return the quality of the connection to the server, measured over the last second
+     */
+    public NetworkStats getNetworkStats(){
+        return stats;
+    }
+
+    /**
+     * @param statsLog the log to write the quality of the connection to once a second, or null
+     */
+    public void setStatsLog(NetworkStatsLog statsLog){
+        this.statsLog = statsLog;
+    }
+
+    /* send the ping or pong in the probe buffer to the server */
+    private void sendProbe(){
+        probeBuffer.flip();
+        stats.onSent(probeBuffer.remaining());
+        try {
+            transport.send(probeBuffer, serverAddress);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the number of times per second {@link #tick()} should be called
+     */
+    protected int getTickRate(){
+        return CONTROL_RATE;
+    }
+
+    /**
+     * Handles a control message received in order from the server. Called on the {@link NetworkEngine} thread.
+     * @param message the message
+     */
+    private void handleControl(String message){
+        String[] parts = message.split("#",-2);
+        String type = parts[0].trim();
+        switch (type) {
+            case "start":
+                if(parts.length > 2){
+                    startServerMillis = parseServerMillis(parts[2]);
+                }
+                synchronized (startLock) {
+                    started = true;
+                    startLock.notifyAll();
+                }
+                break;
+            case "end":
+                if(parts.length > 2){
+                    endServerMillis = parseServerMillis(parts[2]);
+                }
+                receiveFinalScoreboard(parts);
+                if(parts[1].trim().equals("score")){
+                    pendingCompletion.set(FinalScoreScene.COMPLETIONTYPE.SUCCESS);
+                }
+                else {
+                    pendingCompletion.set(FinalScoreScene.COMPLETIONTYPE.QUIT);
+                }
+                break;
+        }
+    }
+
+    /* the server has not acknowledged anything for so long that its channel has given up on it, so the game ends as
+     * if the host had quit, unless it has already ended; called on the engine thread */
+    private void onServerUnreachable(){
+        if(endServerMillis < 0){
+            pendingCompletion.compareAndSet(null, FinalScoreScene.COMPLETIONTYPE.QUIT);
+        }
+    }
+
+    /* a server time in a control message, or -1 if it is missing */
+    private static long parseServerMillis(String time){
+        try {
+            return Long.parseLong(time.trim());
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Records the local time the game started at, which measures how long it lasts if the server never says when
+     * it started. Called on the game thread.
+     */
+    protected void markStarted(){
+        localStartTime = System.nanoTime();
+    }
+
+    /**
+     * @return the clock of the server, as synchronised by this client
+     */
+    public ClockSync getClock(){
+        return clock;
+    }
+
+    /**
+     * @return the current time on the clock of the server, in milliseconds since the game was loaded, or on the
+     * local clock if the clock has not been synchronised yet
+     */
+    public long getServerTime(){
+        return TimeUnit.NANOSECONDS.toMillis(clock.toServerTime(System.nanoTime()));
+    }
+
+    /**
+     * Measures how long the game has lasted on the clock of the server, from the server time it was started at to
+     * the one it ended at or to now, so every player gets the same duration. Falls back to the local clock if the
+     * server has not sent when the game started, as in a single player game, or the clock is not synchronised.
+     * @return the duration of the game, in milliseconds
+     */
+    public long getMatchTime(){
+        long start = startServerMillis;
+        if(start < 0 || !clock.isSynchronized()){
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - localStartTime);
+        }
+        long end = endServerMillis;
+        return (end < 0 ? getServerTime() : end) - start;
     }
 
     /**
      * Gets a map from the server and stores it in {@link DataStorage}
-     * @throws IOException if an IO error occurs
-     * @throws ClassNotFoundException if a class of a serialized object cannot be found
+     * @throws IOException if an IO error occurs or the message received is not a valid map
+     */
+    protected void getMap() throws IOException {
+        readMap(receiveMessage());
+    }
+
+    /**
+     * Stores a map received from the server in {@link DataStorage}
+     * @param buffer a message received through the {@link FragmentChannel}
+     * @throws IOException if the message is not a valid map
      */
-    protected void getMap() throws IOException, ClassNotFoundException {
-        DatagramPacket dtPacket = getData(40000);
-        ByteArrayInputStream byteInputStream = new ByteArrayInputStream(dtPacket.getData());
-        ObjectInputStream objectInputStream = new ObjectInputStream(byteInputStream);
-        Cell[][] cellGrid = (Cell[][]) objectInputStream.readObject();
-        if(cellGrid != null){
-            isConnected = true;
-            dataStorage.setCellGrid(cellGrid);
+    protected void readMap(ByteBuffer buffer) throws IOException {
+        if(!Protocol.isBinary(buffer) || Protocol.readHeader(buffer) != Protocol.MAP){
+            throw new IOException("Expected a map from the server");
+        }
+        Cell[][] cellGrid;
+        try {
+            cellGrid = MapCodec.decode(buffer);
         }
+        catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Received an invalid map", e);
+        }
+        isConnected = true;
+        dataStorage.setCellGrid(cellGrid);
     }
 
     /**
@@ -194,8 +693,14 @@ public class Client {
      * @throws SocketTimeoutException if the socket does not receive any packets in time
      */
     protected void getRandomCoordinates() throws PortUnreachableException, SocketTimeoutException {
-        DatagramPacket dtPacket = getData(164);
-        String coordinates = new String(dtPacket.getData());
+        readCoordinates(decode(receiveMessage()));
+    }
+
+    /**
+     * Stores the positions all players and enemies spawn on, received from the server, in {@link DataStorage}
+     * @param coordinates a message received through the {@link FragmentChannel}
+     */
+    protected void readCoordinates(String coordinates){
         String[] randomCoordinates = coordinates.trim().split("#",-2);
         int characters = 0;
         for(int i = 0; i < randomCoordinates.length; i = i + 2){
@@ -222,14 +727,20 @@ public class Client {
      */
     protected void sendData(String data){
         try {
-            DatagramPacket dtPacket =
-                    new DatagramPacket(data.getBytes(),data.getBytes().length, InetAddress.getByName(hostIp), port);
-            datagramSocket.send(dtPacket);
+            transport.send(ByteBuffer.wrap(data.getBytes()), serverAddress);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Sends a control message to the server reliably, through the {@link ReliableChannel}
+     * @param message a message to be sent
+     */
+    protected void sendControl(String message){
+        control.send(message, System.nanoTime());
+    }
+
     /**
      * Send a message when a player quits
      */
@@ -241,30 +752,46 @@ public class Client {
         else {
             str = "quit#";
         }
-        sendData(str);
+        /* the player has left the game, so there is nothing to end if the server never hears of it */
+        control.setUnreachableHandler(null);
+        sendControl(str);
     }
 
     /**
-     * Send a username and a score
-     * @param score a score of a player
+     * Tells the server the player has picked up a coin, along with the last input command sent, which a server hosted
+     * by a player checks against where that command moved the player to before putting it on the scoreboard. A
+     * {@link DedicatedServer} ignores it and counts the coin itself. Called on the game thread.
      */
-    protected void sendScore(int score){
-        String str = "score#" + dataStorage.getUsername() + "#" + score + "#";
-        sendData(str);
+    public void reportCoin(){
+        int sequence;
+        synchronized (sendBuffer) {
+            sequence = inputSequence;
+        }
+        sendControl("coin#" + sequence + "#");
+    }
+
+    /**
+     * Tells the server the player has been caught by an enemy, which costs it points on the scoreboard of a server
+     * hosted by a player. A {@link DedicatedServer} ignores it and counts the catch itself. Called on the game thread.
+     */
+    public void reportCaught(){
+        sendControl("caught#");
     }
 
     /**
-     * Receives a {@link DatagramPacket} of given length
-     * @param size the length of byte array to receive
-     * @return a {@link DatagramPacket}
+     * Receives the next message sent by the server through the {@link FragmentChannel} while the game loads,
+     * reassembled from as many datagrams as it was split into, so no size has to be known in advance
+     * @return a buffer holding only the message, which is empty if an IO error occurs
      * @throws SocketTimeoutException if the socket does not receive any packets in time
      * @throws PortUnreachableException if the port of the server is not reachable
      */
-    protected DatagramPacket getData(int size) throws SocketTimeoutException, PortUnreachableException {
-        byte[] data = new byte [size];
-        DatagramPacket dtPacket = new DatagramPacket(data,data.length);
+    protected ByteBuffer receiveMessage() throws SocketTimeoutException, PortUnreachableException {
         try {
-            datagramSocket.receive(dtPacket);
+            ByteBuffer message;
+            while ((message = pollMessage()) == null) {
+                //Wait for the rest of the fragments
+            }
+            return message;
         }
         catch (SocketTimeoutException e) {
             throw new SocketTimeoutException("Client not connected");
@@ -275,60 +802,111 @@ public class Client {
         catch (IOException e) {
             e.printStackTrace();
         }
-        return dtPacket;
+        return ByteBuffer.allocate(0);
+    }
+
+    /**
+     * Receives at most one datagram while the game loads, waiting no longer than the timeout of the transport
+     * @return the next message sent by the server through the {@link FragmentChannel}, or null if no message has
+     * been completed yet
+     * @throws SocketTimeoutException if no datagram is received in time
+     * @throws IOException if an IO error occurs
+     */
+    protected ByteBuffer pollMessage() throws IOException {
+        ByteBuffer message = messages.poll();
+        if(message != null){
+            return message;
+        }
+        lobbyBuffer.clear();
+        transport.receive(lobbyBuffer);
+        lobbyBuffer.flip();
+        /* skip any state or control messages still arriving from the previous game */
+        if(Protocol.isBinary(lobbyBuffer) && Protocol.readHeader(lobbyBuffer) == Protocol.FRAGMENT){
+            try {
+                fragments.receiveFragment(lobbyBuffer, System.nanoTime());
+            }
+            catch (BufferUnderflowException e) {
+                //Ignore a truncated packet, should not occur
+            }
+        }
+        return messages.poll();
     }
 
     /**
-     * Get scores of all clients
-     * @return a {@link HashMap<>} that contains a {@link String} username as a key and
-     * an {@link Integer} score as a value
+     * @param message a text message reassembled by the {@link FragmentChannel}
+     * @return the text of the message
      */
-    protected HashMap<String, Integer> getScores(){
+    protected static String decode(ByteBuffer message){
+        return new String(message.array(), message.arrayOffset() + message.position(), message.remaining(),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a copy of the newest scoreboard received from the server, with a {@link String} username as a key
+     * and an {@link Integer} score as a value, which is empty if none has been received yet. Never blocks.
+     */
+    protected HashMap<String, Integer> getScoreboard(){
+        HashMap<String, Integer> scores = dataStorage.getScores();
+        return scores == null ? new HashMap<>() : new HashMap<>(scores);
+    }
+
+    /**
+     * Reads the scoreboard at the end of a {@link Protocol#WORLD_STATE} message and stores it in
+     * {@link DataStorage} if the server has sent it, which it only does when it has changed
+     * @param data the message, positioned at the scoreboard
+     */
+    private void receiveScoreboard(ByteBuffer data){
+        int count = data.get() & 0xFF;
+        if(count == 0){
+            return;
+        }
         HashMap<String,Integer> scores = new HashMap<>();
-        DatagramPacket packet = null;
-        try {
-            packet = getData(400);
+        List<String> usernames = dataStorage.getUsernames();
+        for(int i = 0; i < count; i++){
+            int port = data.getShort() & 0xFFFF;
+            int score = data.getInt();
+            putScore(scores, usernames, port, score);
         }
-        catch (SocketTimeoutException | PortUnreachableException e) {
-            e.printStackTrace();
+        dataStorage.setScores(scores);
+    }
+
+    /**
+     * Reads the final scoreboard sent with the end of the game, as the port and the score of each player after the
+     * server time, and stores it in {@link DataStorage}, so it replaces any scoreboard still on its way in a snapshot
+     * @param parts the end message, split on '#'
+     */
+    private void receiveFinalScoreboard(String[] parts){
+        if(parts.length < 5){
+            return;
         }
-        assert packet != null;
-        String[] data = (new String(packet.getData())).trim().split("#",-2);
-        int i = 0;
-        if(data[i].trim().equals("scores")) {
-            i = 1;
-            while (i < data.length) {
-                String username = data[i];
-                int score;
-                if (!data[i].equals("")) {
-                    try {
-                        score = parseInt(data[i + 1]);
-                    }
-                    catch (NumberFormatException e) {
-                        score = 0;
-                    }
-                    scores.put(username, score);
-                }
-                i = i + 2;
+        HashMap<String,Integer> scores = new HashMap<>();
+        List<String> usernames = dataStorage.getUsernames();
+        try {
+            for(int i = 3; i + 1 < parts.length; i += 2){
+                putScore(scores, usernames, Integer.parseInt(parts[i].trim()), Integer.parseInt(parts[i + 1].trim()));
             }
         }
-        else {
-            return null;
+        catch (NumberFormatException e) {
+            return;
         }
         dataStorage.setScores(scores);
-        return scores;
+    }
+
+    /* put the score of the player with a port on a scoreboard, under its username */
+    private void putScore(HashMap<String,Integer> scores, List<String> usernames, int port, int score){
+        int index = portsOfUsersConnected.indexOf(port);
+        if(index >= 0 && index < usernames.size()){
+            scores.put(usernames.get(index), score);
+        }
     }
 
     /**
-     * Receive usernames of all clients and store them in {@link DataStorage}
-     * @throws SocketTimeoutException if the socket does not receive any packets in time
-     * @throws PortUnreachableException if the port of the server is not reachable
+     * Stores the usernames of the clients which have joined so far in {@link DataStorage}
+     * @param allUsernames a message received through the {@link FragmentChannel}
+     * @return true once every player has joined
      * @throws UsernameUnavailableException if the username is unavailable
      */
-    private void receiveUsernames()
-            throws SocketTimeoutException, PortUnreachableException, UsernameUnavailableException {
-        DatagramPacket dtPacket = getData(560);
-        String allUsernames = new String(dtPacket.getData());
+    protected boolean readUsernames(String allUsernames) throws UsernameUnavailableException {
         String[] user = allUsernames.split("#",-2);
         if(user[0].trim().equals("unavailable")){
             throw new UsernameUnavailableException("Username already in use");
@@ -341,65 +919,169 @@ public class Client {
                 portsOfUsersConnected.add(parseInt(user[i+1].trim()));
             }
         }
+        return playersConnected == numberOfPlayers;
     }
 
     /**
-     * Receive information of all clients and store them in {@link DataStorage}
+     * Sends the username to the server again, in case the first one was lost
      */
-    private void receiveDirections(){
-        DatagramPacket dtPacket = null;
-        try {
-            dtPacket = getData(1024);
-        } catch (SocketTimeoutException | PortUnreachableException e) {
-            e.printStackTrace();
+    protected void sendUsername(){
+        sendData(dataStorage.getUsername());
+    }
+
+    /**
+     * Receive information of all clients and store them in {@link DataStorage}, which publishes them to the game
+     * thread as one tick once the whole message has been read.
+     * The {@link Snapshot} in the message is a delta against an older snapshot, which has to still be in the
+     * history for the message to be read; otherwise the message is dropped and the server keeps sending deltas
+     * against the last snapshot this client acknowledged.
+     * @param data a {@link Protocol#WORLD_STATE} message, positioned after the header
+     */
+    private void receiveWorldState(ByteBuffer data){
+        stats.onShortSequence(data.getShort());
+        int tick = data.getInt();
+        int baselineTick = data.getInt();
+        int tickRate = data.get() & 0xFF;
+        long serverMillis = data.getInt() & 0xFFFFFFFFL;
+        if(tick - latestTick <= 0 || tickRate == 0){
+            return;
         }
-        int i = 0;
-        int en = 0;
-        assert dtPacket != null;
-        String directions = new String(dtPacket.getData());
-        String[] direction = directions.split("#",-2);
-        label:
-        while(i < direction.length - 1){
-            if(!(direction[i].trim().equals(""))){
-                switch (direction[i].trim()) {
-                    case "end":
-                        if(direction[i+1].trim().equals("score")){
-                            GameSettings.getGameStateOwner().completeGame(FinalScoreScene.COMPLETIONTYPE.SUCCESS);
-                        }
-                        else {
-                            GameSettings.getGameStateOwner().completeGame(FinalScoreScene.COMPLETIONTYPE.QUIT);
-                        }
-                        break label;
-                    case "e":
-                        dataStorage.setReceivedEnemyDirections(en,direction[i+1],direction[i+2],
-                                direction[i+3],direction[i+4]);
-                        en++;
-                        i = i + 5;
-                        break;
-                    case "remove":
-                        try{
-                            dataStorage.setRemove(parseInt(direction[i+1].trim()),
-                                    userNumByPort.get(parseInt(direction[i + 1].trim())));
-                            GameSettings.setNumPlayers(--numberOfPlayers);
-                        }
-                        catch (NumberFormatException e){
-                            //Ignore if not valid, should not occur
-                        }
-                        i = i + 2;
-                        break;
-                    default:
-                        try{
-                            int j = userNumByPort.get(parseInt(direction[i].trim()));
-                            dataStorage.setReceivedPlayerInfo(j,direction[i+1],direction[i+2],direction[i+3],
-                                    direction[i+4],direction[i+5],direction[i+6],direction[i+7],direction[i+8]);
-                        }
-                        catch (NumberFormatException e){
-                            //Ignore if not valid, should not occur
-                        }
-                        i = i + 9;
-                        break;
+        Snapshot baseline = null;
+        if(baselineTick != 0){
+            baseline = history.get(baselineTick);
+            if(baseline == null){
+                return;
+            }
+        }
+        Snapshot snapshot = history.next(tick);
+        if(!snapshot.readDelta(data, baseline)){
+            snapshot.reset(0);
+            return;
+        }
+        acknowledge(tick);
+        /* stamped with the server time it was taken at, so every client interpolates the same moment of the game */
+        ClockSync currentClock = clock;
+        long time = currentClock.isSynchronized()
+                ? currentClock.toLocalTime(TimeUnit.MILLISECONDS.toNanos(serverMillis))
+                : toLocalTime(tick, tickRate);
+        int ownSlot = -1;
+
+        for(int slot = 0; slot < snapshot.getSlots(); slot++){
+            if(!snapshot.hasPlayer(slot)){
+                continue;
+            }
+            int j = userNumOf(snapshot.getPlayerField(slot, 0) & 0xFFFF);
+            if(j == 0 && !spectating){
+                ownSlot = slot;
+            }
+            if(j >= 0){
+                int bits = snapshot.getPlayerField(slot, 1) & 0xFFFF;
+                double x = Protocol.toPosition(snapshot.getPlayerField(slot, 2));
+                double y = Protocol.toPosition(snapshot.getPlayerField(slot, 3));
+                /* a player outside this client's area of interest keeps its last state, marked absent */
+                if(!Protocol.isAbsent(bits)){
+                    dataStorage.setReceivedPlayerInfo(j, Protocol.directionX(bits), Protocol.directionY(bits),
+                            Protocol.isMoving(bits), Protocol.facing(bits), Protocol.invisibility(bits),
+                            Protocol.speed(bits), x, y);
                 }
+                dataStorage.addPlayerState(j, time, x, y, bits);
+            }
+        }
+
+        /* each enemy is where its keyframe extrapolates to at this tick, which the server keeps close to the truth */
+        int enemies = Math.min(snapshot.getEnemyCount(), numberOfEnemies);
+        for(int i = 0; i < enemies; i++){
+            int bits = snapshot.getEnemyBits(i);
+            int velocity = snapshot.getEnemyField(i, 3);
+            int ticks = Protocol.ticksSince(tick, snapshot.getEnemyField(i, 4));
+            if(!Protocol.isAbsent(bits)){
+                dataStorage.setReceivedEnemyDirections(i, Protocol.directionX(bits), Protocol.directionY(bits),
+                        Protocol.isMoving(bits), Protocol.facing(bits));
+            }
+            dataStorage.addEnemyState(i, time,
+                    Protocol.extrapolate(snapshot.getEnemyField(i, 1), (byte) (velocity >> 8), ticks),
+                    Protocol.extrapolate(snapshot.getEnemyField(i, 2), (byte) velocity, ticks), bits);
+        }
+
+        int removed = data.get() & 0xFF;
+        for(int i = 0; i < removed; i++){
+            int removedPort = data.getShort() & 0xFFFF;
+            int j = userNumOf(removedPort);
+            if(j >= 0 && !dataStorage.getRemove().containsKey(removedPort)){
+                dataStorage.setRemove(removedPort, j);
+                pendingRemovals.incrementAndGet();
+            }
+        }
+
+        receiveScoreboard(data);
+        int appliedInput = data.getInt();
+        if(ownSlot >= 0){
+            dataStorage.setAcknowledgedInput(appliedInput, Protocol.toPosition(snapshot.getPlayerField(ownSlot, 2)),
+                    Protocol.toPosition(snapshot.getPlayerField(ownSlot, 3)));
+        }
+        dataStorage.publishReceivedState();
+    }
+
+    /**
+     * Converts a server tick to the local time it would have arrived at without any network delay or jitter.
+     * The offset between the clocks is the smallest one seen, i.e. that of the fastest packet; it is measured again
+     * if packets start arriving much later, e.g. after the game has been paused.
+     * @param tick a server tick
+     * @param tickRate the number of server ticks per second
+     * @return the time of the tick on the {@link System#nanoTime()} clock
+     */
+    private long toLocalTime(int tick, int tickRate){
+        long serverTime = tick * (TimeUnit.SECONDS.toNanos(1) / tickRate);
+        long offset = System.nanoTime() - serverTime;
+        if(!clockOffsetSet || offset < clockOffset || offset - clockOffset > TimeUnit.SECONDS.toNanos(1)){
+            clockOffset = offset;
+            clockOffsetSet = true;
+        }
+        return serverTime + clockOffset;
+    }
+
+    /**
+     * Records that a snapshot has been received, to be acknowledged with the next input message
+     * @param tick the tick of the snapshot, newer than any received before
+     */
+    private void acknowledge(int tick){
+        long ack = acknowledgement;
+        int newest = (int) (ack >>> 32);
+        int bits = (int) ack;
+        int shift = tick - newest;
+        if(newest == 0 || shift > 32){
+            bits = 0;
+        }
+        else {
+            bits = (shift == 32 ? 0 : bits << shift) | (1 << (shift - 1));
+        }
+        latestTick = tick;
+        acknowledgement = ((long) tick << 32) | (bits & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param port the port of a client
+     * @return the number the client is distinguished by, or -1 if the port is not known
+     */
+    private int userNumOf(int port){
+        for(int i = 0; i < portByUserNum.length; i++){
+            if(portByUserNum[i] == port){
+                return i;
             }
         }
+        return -1;
+    }
+
+    /**
+     * Closes the client channel
+     */
+    protected void closeChannel(){
+        if(transport != null){
+            transport.close();
+        }
+        synchronized (startLock) {
+            closed = true;
+            startLock.notifyAll();
+        }
     }
 }
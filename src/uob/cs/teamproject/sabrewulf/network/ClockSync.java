@@ -0,0 +1,135 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+/**
+ * The ClockSync estimates the offset and the drift between the local {@link System#nanoTime()} clock and the clock of
+ * the server, in the same way as NTP, so that times sent by the server can be compared with local ones.
+ * Each {@link Protocol#PONG} from the server gives a sample: the time the ping was sent, the server time it was
+ * answered at and the time it came back. Assuming the ping took as long each way, the server time was read half way
+ * through the round trip, and the error of the offset is at most half the round trip time. Queueing only ever makes a
+ * round trip longer, so of the recent samples the one with the shortest round trip is trusted, and the drift is the
+ * change in offset between the best of the newer samples and the best of the older ones, smoothed over time.
+ * Samples are added on the {@link NetworkEngine} thread; the clock can be read from any thread.
+ */
+public final class ClockSync {
+
+    /** the number of samples the offset and the drift are chosen from */
+    public static final int SAMPLES = 16;
+    /** the largest drift believed, as a fraction of the elapsed time; quartz clocks stay well within it */
+    public static final double MAX_DRIFT = 500e-6;
+
+    /* each new measurement of the drift moves the estimate this fraction of the way */
+    private static final double DRIFT_GAIN = 0.125;
+
+    /* ring of samples, the newest at index (next - 1): the offset of the server clock, the round trip time and the
+     * local time half way through the round trip */
+    private final long[] offsets;
+    private final long[] rtts;
+    private final long[] times;
+    private int next;
+    private int count;
+
+    /* the offset of the best recent sample, the local time it was measured at, and the drift since */
+    private boolean synced;
+    private long offset;
+    private long reference;
+    private long referenceRtt;
+    private double drift;
+
+    public ClockSync(){
+        offsets = new long[SAMPLES];
+        rtts = new long[SAMPLES];
+        times = new long[SAMPLES];
+    }
+
+    /**
+     * Adds a sample from a ping answered by the server
+     * @param sent the local time the ping was sent, in nanoseconds
+     * @param serverTime the server time the ping was answered at, in nanoseconds
+     * @param received the local time the answer arrived, in nanoseconds
+     */
+    public synchronized void onSample(long sent, long serverTime, long received){
+        long rtt = received - sent;
+        if(rtt < 0){
+            return;
+        }
+        long midpoint = sent + rtt / 2;
+        offsets[next] = serverTime - midpoint;
+        rtts[next] = rtt;
+        times[next] = midpoint;
+        next = (next + 1) % SAMPLES;
+        count = Math.min(count + 1, SAMPLES);
+
+        int newest = best(0, (count + 1) / 2);
+        offset = offsets[newest];
+        reference = times[newest];
+        referenceRtt = rtts[newest];
+        synced = true;
+        if(count == SAMPLES){
+            int oldest = best(SAMPLES / 2, SAMPLES);
+            long span = times[newest] - times[oldest];
+            if(span > 0){
+                double measured = (offsets[newest] - offsets[oldest]) / (double) span;
+                measured = Math.max(-MAX_DRIFT, Math.min(MAX_DRIFT, measured));
+                drift += (measured - drift) * DRIFT_GAIN;
+            }
+        }
+    }
+
+    /**
+     * @return true once at least one sample has been added
+     */
+    public synchronized boolean isSynchronized(){
+        return synced;
+    }
+
+    /**
+     * @param localTime a time on the local clock, in nanoseconds
+     * @return the same time on the server clock, or the local time if no sample has been added yet
+     */
+    public synchronized long toServerTime(long localTime){
+        return localTime + offset + (long) (drift * (localTime - reference));
+    }
+
+    /**
+     * @param serverTime a time on the server clock, in nanoseconds
+     * @return the same time on the local clock
+     */
+    public synchronized long toLocalTime(long serverTime){
+        long localTime = serverTime - offset;
+        return localTime - (long) (drift * (localTime - reference));
+    }
+
+    /**
+     * @return the difference between the server clock and the local clock at the best recent sample, in nanoseconds
+     */
+    public synchronized long getOffset(){
+        return offset;
+    }
+
+    /**
+     * @return how much faster the server clock runs than the local clock, as a fraction of the elapsed time
+     */
+    public synchronized double getDrift(){
+        return drift;
+    }
+
+    /**
+     * @return the round trip time of the best recent sample, twice the largest error of the offset, in nanoseconds
+     */
+    public synchronized long getRoundTripTime(){
+        return referenceRtt;
+    }
+
+    /* the index of the sample with the shortest round trip time among those at least from and less than to samples
+     * older than the newest */
+    private int best(int from, int to){
+        int best = -1;
+        for(int age = from; age < Math.min(to, count); age++){
+            int index = (next - 1 - age + SAMPLES) % SAMPLES;
+            if(best < 0 || rtts[index] < rtts[best]){
+                best = index;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,156 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import uob.cs.teamproject.sabrewulf.components.MovementPhysics;
+import uob.cs.teamproject.sabrewulf.map.Cell;
+import uob.cs.teamproject.sabrewulf.map.GameMapWrapper;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The CoinTracker keeps the coins which have not been picked up yet, so that a server hosted by a player, which has no
+ * world of its own, can check each pickup a client reports. The coins are in the same cells as
+ * {@link uob.cs.teamproject.sabrewulf.GameWorld} places them in: every cell without a key, a power-up or a player
+ * spawning in it.
+ * A client reports a pickup along with the sequence number of the last input command it sent, and the pickup is
+ * checked against where the server moved the player to with that very command, so it does not matter whether the
+ * report arrives before or after the command. It is only accepted if a coin is still there, touching the player, and
+ * that coin is then gone for every player.
+ * Only used by the {@link NetworkEngine} thread.
+ */
+public final class CoinTracker {
+
+    /** the width and height of a coin */
+    public static final double COIN_SIZE = 32;
+    /** how far the client may have put its player from where the server has moved it, e.g. after being pushed by
+     * another player, before a pickup is refused */
+    public static final double PICKUP_TOLERANCE = 8;
+    /** how many input commands of each player the position is remembered after */
+    public static final int HISTORY = 64;
+
+    /* the centre of each coin not picked up yet */
+    private final List<XYPair> coins;
+
+    /* the position of each player after each of its most recent input commands, indexed by sequence number, along
+     * with that sequence number since a command which was lost is never applied */
+    private final double[][] historyX;
+    private final double[][] historyY;
+    private final int[][] historySequence;
+    /* the sequence number of the newest input command applied for each player */
+    private final int[] applied;
+    /* the sequence numbers of the pickups reported before the input command they were made after had been applied */
+    private final List<ArrayDeque<Integer>> pending;
+
+    /**
+     * @param mapData the map of the game
+     * @param playerSpawns the position each player spawns at, one for each slot
+     */
+    public CoinTracker(GameMapWrapper mapData, XYPair[] playerSpawns){
+        coins = new ArrayList<>();
+        for(Cell[] column : mapData.getCellGrid()){
+            for(Cell cell : column){
+                if(!cell.hasKey() && !cell.hasPowerUp() && !isSpawn(cell, playerSpawns)){
+                    coins.add(new XYPair(cell.getX(), cell.getY()));
+                }
+            }
+        }
+        int slots = playerSpawns.length;
+        historyX = new double[slots][HISTORY];
+        historyY = new double[slots][HISTORY];
+        historySequence = new int[slots][HISTORY];
+        for(int[] sequences : historySequence){
+            Arrays.fill(sequences, -1);
+        }
+        applied = new int[slots];
+        pending = new ArrayList<>();
+        for(int i = 0; i < slots; i++){
+            pending.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Records where an input command has moved a player to, and checks every pickup which was reported before it
+     * arrived. Has to be called for each command in the order they are applied.
+     * @param slot the slot of the player
+     * @param sequence the sequence number of the command
+     * @param x the x position of the player after the command
+     * @param y the y position of the player after the command
+     * @return the number of pickups which were accepted
+     */
+    public int onInput(int slot, int sequence, double x, double y){
+        int index = sequence % HISTORY;
+        historyX[slot][index] = x;
+        historyY[slot][index] = y;
+        historySequence[slot][index] = sequence;
+        applied[slot] = sequence;
+
+        int collected = 0;
+        ArrayDeque<Integer> claims = pending.get(slot);
+        /* a pickup made after a command which was lost is checked after the next one */
+        while(!claims.isEmpty() && claims.peek() - sequence <= 0){
+            claims.poll();
+            if(collect(x, y)){
+                collected++;
+            }
+        }
+        return collected;
+    }
+
+    /**
+     * Takes the coin a player says it has picked up, if the player was touching one after the input command it was
+     * picked up after. If that command has not been applied yet, the pickup is kept until it has been.
+     * @param slot the slot of the player
+     * @param sequence the sequence number of the last input command the client sent before picking up the coin
+     * @return true if a coin was taken, false if there is no coin where the player was or the command has not been
+     * applied yet
+     */
+    public boolean claim(int slot, int sequence){
+        if(sequence - applied[slot] > 0){
+            ArrayDeque<Integer> claims = pending.get(slot);
+            if(claims.size() < HISTORY){
+                claims.add(sequence);
+            }
+            return false;
+        }
+        for(int s = sequence; s - applied[slot] <= 0 && s - sequence < HISTORY; s++){
+            int index = s % HISTORY;
+            if(historySequence[slot][index] == s){
+                return collect(historyX[slot][index], historyY[slot][index]);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of coins which have not been picked up
+     */
+    public int getRemaining(){
+        return coins.size();
+    }
+
+    /* takes the coin touching a player at the given position, if there is one */
+    private boolean collect(double x, double y){
+        double reachX = (MovementPhysics.PLAYER_WIDTH + COIN_SIZE) / 2 + PICKUP_TOLERANCE;
+        double reachY = (MovementPhysics.PLAYER_HEIGHT + COIN_SIZE) / 2 + PICKUP_TOLERANCE;
+        for(int i = 0; i < coins.size(); i++){
+            XYPair coin = coins.get(i);
+            if(Math.abs(coin.x - x) < reachX && Math.abs(coin.y - y) < reachY){
+                coins.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSpawn(Cell cell, XYPair[] playerSpawns){
+        for(XYPair spawn : playerSpawns){
+            if(spawn.x == cell.getX() && spawn.y == cell.getY()){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -7,40 +7,52 @@ import uob.cs.teamproject.sabrewulf.util.XYPair;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The DataStorage class is used to store data that is received by the client or could be send by the client to
  * the server. It allows other game components to get the information they need that has been stored by the client.
+ * <p>
+ * What is received from the server is written by the {@link NetworkEngine} thread into a {@link ReceivedState} of its
+ * own, which is copied and published once a whole tick has been read. The game thread takes the newest published
+ * copy with {@link #acquireReceivedState()} and every getter of received state reads that copy until it is called
+ * again. Three copies are passed between the threads through an {@link AtomicReference}, so neither thread ever
+ * waits for the other and the game thread always reads one complete tick.
  */
 public class DataStorage {
 
+    /* how long a remote character keeps moving when no newer state has arrived */
+    private static final long MAX_EXTRAPOLATION = TimeUnit.MILLISECONDS.toNanos(250);
+
     private String username;
     private final List<String> usernames;
 
-    private HashMap<String,Integer> scores;
+    /* the newest scoreboard received from the server, replaced as a whole on the engine thread */
+    private volatile HashMap<String,Integer> scores;
 
     private final int numberOfEnemies;
 
+    /* the port and number of each player which has left, only used by the engine thread */
     private HashMap<Integer,Integer> remove;
 
     private Cell[][] cellGrid;
     private final XYPair[] spawnAt;
 
-    private XYPair[] transformCheck;
-
-    private CharacterMovement.Direction[] receivedPlayerDirections;
-    private CharacterMovement.Direction[] receivedPlayerIsFacing;
-    private boolean[] receivedPlayerIsMoving;
-    private boolean[] receivedPlayerInvisibilityBoost;
-    private boolean[] receivedPlayerSpeedBoost;
-
-    private CharacterMovement.Direction[] receivedEnemyDirections;
-    private CharacterMovement.Direction[] receivedEnemyIsFacing;
-    private boolean[] receivedEnemyIsMoving;
+    /* the state the engine thread writes as it reads each packet */
+    private final ReceivedState received;
+    /* the copy the engine thread publishes next, only used by the engine thread */
+    private ReceivedState back;
+    /* the newest published copy, waiting to be taken by the game thread */
+    private final AtomicReference<ReceivedState> published;
+    /* the copy the getters read, only used by the game thread */
+    private ReceivedState front;
 
+    /* the state of the enemies decided by the enemy AI, only used by the thread which runs the AI */
     public CharacterMovement.Direction[] enemyDirections;
     public CharacterMovement.Direction[] enemyIsFacing;
     public boolean[] enemyIsMoving;
+    public double[] enemyPositions;
 
     /**
      * The constructor of the DataStorage class
@@ -51,54 +63,34 @@ public class DataStorage {
         this.numberOfEnemies = numberOfEnemies;
         usernames  = new CopyOnWriteArrayList<>();
         remove = new HashMap<>();
-        receivedPlayerDirections = new CharacterMovement.Direction[numOfPlayers*2];
-        receivedPlayerIsFacing = new CharacterMovement.Direction[numOfPlayers];
-        receivedPlayerIsMoving = new boolean[numOfPlayers];
-        receivedPlayerInvisibilityBoost = new boolean[numOfPlayers];
-        receivedPlayerSpeedBoost = new boolean[numOfPlayers];
-        receivedEnemyDirections = new CharacterMovement.Direction[numberOfEnemies*2];
-        receivedEnemyIsFacing = new CharacterMovement.Direction[numberOfEnemies];
-        receivedEnemyIsMoving = new boolean[numberOfEnemies];
+        received = new ReceivedState(numOfPlayers, numberOfEnemies, MAX_EXTRAPOLATION);
+        back = new ReceivedState(numOfPlayers, numberOfEnemies, MAX_EXTRAPOLATION);
+        published = new AtomicReference<>(new ReceivedState(numOfPlayers, numberOfEnemies, MAX_EXTRAPOLATION));
+        front = new ReceivedState(numOfPlayers, numberOfEnemies, MAX_EXTRAPOLATION);
         enemyDirections = new CharacterMovement.Direction[numberOfEnemies*2];
         enemyIsFacing = new CharacterMovement.Direction[numberOfEnemies];
         enemyIsMoving = new boolean[numberOfEnemies];
+        enemyPositions = new double[numberOfEnemies*2];
         spawnAt = new XYPair[numOfPlayers+numberOfEnemies];
-        transformCheck = new XYPair[numOfPlayers];
         setInitialEnemyInfo();
     }
 
     /**
-     * Store received enemy directions by the number of the enemy
+     * Store received enemy directions by the number of the enemy, to be published with the rest of the tick
      * @param num the number of the enemy
      * @param dirX the x direction of the enemy character
      * @param dirY the y direction of the enemy character
      * @param isMoving true if the enemy character is moving, false otherwise
      * @param facing the direction the enemy character is facing
      */
-    protected void setReceivedEnemyDirections(int num, String dirX, String dirY, String isMoving, String facing){
-        try{
-            receivedEnemyDirections[num*2] = CharacterMovement.Direction.valueOf(dirX.trim());
-        } catch (IllegalArgumentException | NullPointerException e){
-            receivedEnemyDirections[num*2] = CharacterMovement.Direction.NONE;
-        }
-
-        try{
-            receivedEnemyDirections[num*2+1] = CharacterMovement.Direction.valueOf(dirY.trim());
-        } catch (IllegalArgumentException | NullPointerException e){
-            receivedEnemyDirections[num*2+1] = CharacterMovement.Direction.DOWN;
-        }
-
-        receivedEnemyIsMoving[num] = isMoving.equals("true");
-
-        try{
-            receivedEnemyIsFacing[num] = CharacterMovement.Direction.valueOf(facing.trim());
-        } catch (IllegalArgumentException | NullPointerException e){
-            receivedEnemyIsFacing[num] = CharacterMovement.Direction.DOWN;
-        }
+    protected void setReceivedEnemyDirections(int num, CharacterMovement.Direction dirX,
+                                              CharacterMovement.Direction dirY, boolean isMoving,
+                                              CharacterMovement.Direction facing){
+        received.setEnemy(num, dirX, dirY, isMoving, facing);
     }
 
     /**
-     * Store received player directions by the number of the player
+     * Store received player directions by the number of the player, to be published with the rest of the tick
      * @param num the number of the player
      * @param dirX the x direction of the character
      * @param dirY the y direction of the character
@@ -109,41 +101,79 @@ public class DataStorage {
      * @param transformX the x position of character transform object
      * @param transformY the y position of character transform object
      */
-    protected void setReceivedPlayerInfo(int num, String dirX, String dirY, String isMoving, String facing,
-                                      String invisibility, String speed, String transformX, String transformY){
-        try{
-            receivedPlayerDirections[num*2] = CharacterMovement.Direction.valueOf(dirX.trim());
-        }
-        catch (IllegalArgumentException | NullPointerException e){
-            receivedPlayerDirections[num*2] = CharacterMovement.Direction.NONE;
-        }
+    protected void setReceivedPlayerInfo(int num, CharacterMovement.Direction dirX, CharacterMovement.Direction dirY,
+                                         boolean isMoving, CharacterMovement.Direction facing,
+                                         boolean invisibility, boolean speed, double transformX, double transformY){
+        received.setPlayer(num, dirX, dirY, isMoving, facing, invisibility, speed, transformX, transformY);
+    }
 
-        try{
-            receivedPlayerDirections[num*2+1] = CharacterMovement.Direction.valueOf(dirY.trim());
-        }
-        catch (IllegalArgumentException | NullPointerException e){
-            receivedPlayerDirections[num*2+1] = CharacterMovement.Direction.DOWN;
-        }
+    /**
+     * Adds a time-stamped state of a player to be interpolated between, to be published with the rest of the tick
+     * @param num the number of the player
+     * @param time the time of the state, in nanoseconds on the {@link System#nanoTime()} clock
+     * @param x the x position of the character
+     * @param y the y position of the character
+     * @param bits the packed directions and flags of the character, as written by {@link Protocol}
+     */
+    protected void addPlayerState(int num, long time, double x, double y, int bits){
+        received.getPlayerInterpolation(num).add(time, x, y, bits);
+    }
 
-        receivedPlayerIsMoving[num] = isMoving.equals("true");
+    /**
+     * Adds a time-stamped state of an enemy to be interpolated between, to be published with the rest of the tick
+     * @param num the number of the enemy
+     * @param time the time of the state, in nanoseconds on the {@link System#nanoTime()} clock
+     * @param x the x position of the enemy
+     * @param y the y position of the enemy
+     * @param bits the packed directions and flags of the enemy, as written by {@link Protocol}
+     */
+    protected void addEnemyState(int num, long time, double x, double y, int bits){
+        received.getEnemyInterpolation(num).add(time, x, y, bits);
+    }
 
-        try{
-            receivedPlayerIsFacing[num] = CharacterMovement.Direction.valueOf(facing.trim());
-        }
-        catch (IllegalArgumentException | NullPointerException e){
-            receivedPlayerIsFacing[num] = CharacterMovement.Direction.DOWN;
-        }
+    /**
+     * Publishes everything stored since the last call as one complete tick, for the game thread to take with
+     * {@link #acquireReceivedState()}. Called by the engine thread once a whole packet has been read; never blocks.
+     */
+    protected void publishReceivedState(){
+        back.copyFrom(received);
+        back.fresh = true;
+        back = published.getAndSet(back);
+    }
 
-        receivedPlayerInvisibilityBoost[num] = invisibility.equals("true");
+    /**
+     * Takes the newest tick published by the engine thread, if a newer one has been published since the last call,
+     * for every getter of received state to read until the next call. Called by the game thread once a frame, so
+     * that every game component sees the same tick; never blocks.
+     * @return true if a newer tick was taken
+     */
+    public boolean acquireReceivedState(){
+        if(!published.get().fresh){
+            return false;
+        }
+        front = published.getAndSet(front);
+        front.fresh = false;
+        return true;
+    }
 
-        receivedPlayerSpeedBoost[num] = speed.equals("true");
+    /**
+     * Store the state of the local player sent back by the server, to be published with the rest of the tick
+     * @param sequence the sequence number of the last input command the server has applied
+     * @param x the x position of the character in the server's state
+     * @param y the y position of the character in the server's state
+     */
+    protected void setAcknowledgedInput(int sequence, double x, double y){
+        received.setAcknowledgedInput(sequence, x, y);
+    }
 
-        try{
-            transformCheck[num] = new XYPair(Double.parseDouble(transformX), Double.parseDouble(transformY));
-        }
-        catch (NullPointerException | NumberFormatException e) {
-            //Do not make any changes
-        }
+    /**
+     * Get the state of the local player sent back by the server, as of the tick taken by
+     * {@link #acquireReceivedState()}
+     * @param position set to the position of the character in the server's state
+     * @return the sequence number of the last input command the server has applied, or 0 if none has been
+     */
+    public int getAcknowledgedInput(XYPair position){
+        return front.getAcknowledgedInput(position);
     }
 
     public void setUsername(String username){
@@ -169,20 +199,27 @@ public class DataStorage {
         enemyIsMoving[num] = isMoving;
     }
 
+    public void setEnemyPosition(int num, double x, double y){
+        enemyPositions[num*2] = x;
+        enemyPositions[num*2+1] = y;
+    }
+
+    /**
+     * Store that a player has left, to be published with the rest of the tick
+     * @param port the port of the player
+     * @param num the number of the player
+     */
     protected void setRemove(int port, int num){
         remove.put(port,num);
+        received.setRemoved(num);
     }
 
     protected void setInitialEnemyInfo() {
         for(int i = 0; i < numberOfEnemies; i++){
             enemyDirections[i] = CharacterMovement.Direction.NONE;
-            receivedEnemyDirections[i] = CharacterMovement.Direction.NONE;
             enemyDirections[i+1] = CharacterMovement.Direction.DOWN;
-            receivedEnemyDirections[i+1] = CharacterMovement.Direction.DOWN;
             enemyIsMoving[i] = false;
             enemyIsFacing[i] = CharacterMovement.Direction.DOWN;
-            receivedEnemyIsMoving[i] = false;
-            receivedEnemyIsFacing[i] = CharacterMovement.Direction.DOWN;
         }
     }
 
@@ -207,42 +244,80 @@ public class DataStorage {
     }
 
     public XYPair getTransformCheck(int num){
-        return transformCheck[num];
+        return front.getTransformCheck(num);
+    }
+
+    /**
+     * Removes everything received from the server and publishes the empty state, e.g. when a new game starts.
+     * Called while the engine thread is not receiving.
+     */
+    protected void clearReceivedState(){
+        remove.clear();
+        received.clear();
+        scores = null;
+        publishReceivedState();
+    }
+
+    /**
+     * @param num the number of the player
+     * @return the time-stamped states received for the player
+     */
+    public InterpolationBuffer getPlayerInterpolation(int num){
+        return front.getPlayerInterpolation(num);
+    }
+
+    /**
+     * @param num the number of the enemy
+     * @return the time-stamped states received for the enemy
+     */
+    public InterpolationBuffer getEnemyInterpolation(int num){
+        return front.getEnemyInterpolation(num);
     }
 
     public CharacterMovement.Direction[] getPlayerDirections(){
-        return receivedPlayerDirections;
+        return front.getPlayerDirections();
     }
 
     public CharacterMovement.Direction getPlayerIsFacing(int num){
-        return receivedPlayerIsFacing[num];
+        return front.getPlayerIsFacing(num);
     }
 
     public boolean getPlayerIsMoving(int num){
-        return receivedPlayerIsMoving[num];
+        return front.getPlayerIsMoving(num);
     }
 
     public boolean getInvisibilityBoost(int num){
-        return receivedPlayerInvisibilityBoost[num];
+        return front.getInvisibilityBoost(num);
     }
 
     public boolean getSpeedBoost(int num) {
-        return receivedPlayerSpeedBoost[num];
+        return front.getSpeedBoost(num);
     }
 
     public CharacterMovement.Direction[] getEnemyDirections(){
-        return receivedEnemyDirections;
+        return front.getEnemyDirections();
     }
 
     public CharacterMovement.Direction[] getEnemyIsFacing(){
-        return receivedEnemyIsFacing;
+        return front.getEnemyIsFacing();
     }
 
     public boolean[] getEnemyIsMoving(){
-        return receivedEnemyIsMoving;
+        return front.getEnemyIsMoving();
     }
 
-    public HashMap<Integer,Integer> getRemove(){
+    /**
+     * @param num the number of a player
+     * @return true if the player had left the game as of the tick taken by {@link #acquireReceivedState()}
+     */
+    public boolean isRemoved(int num){
+        return front.isRemoved(num);
+    }
+
+    /**
+     * @return the port and number of each player which has left, only used by the engine thread
+     */
+    protected HashMap<Integer,Integer> getRemove(){
         return remove;
     }
 
@@ -0,0 +1,127 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The DatagramQueue holds datagrams waiting to be received by a {@link Transport} which has no channel of its own,
+ * such as a {@link LoopbackTransport} or a {@link MatchTransport}.
+ * <p>
+ * Each datagram is copied once into a pooled buffer, because senders reuse their buffers as soon as a send returns.
+ * As with UDP, a datagram which does not fit in the queue is dropped.
+ */
+final class DatagramQueue {
+
+    /* the number of datagrams which can wait to be received */
+    private static final int QUEUE_SIZE = 1024;
+    /* the size of a pooled buffer, which grows if a larger datagram is queued */
+    private static final int BUFFER_SIZE = 512;
+
+    private final BlockingQueue<Datagram> queue;
+    /* datagrams which have been received and can be reused for another */
+    private final Queue<Datagram> pool;
+
+    DatagramQueue(){
+        queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        pool = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Copies a datagram into the queue. Can be called from any thread.
+     * @param data the bytes between the position and the limit of the buffer, which are all consumed
+     * @param sender the address the datagram was sent from
+     * @return true if the datagram was queued, false if the queue is full and it was dropped
+     */
+    boolean offer(ByteBuffer data, SocketAddress sender){
+        Datagram datagram = pool.poll();
+        if(datagram == null){
+            datagram = new Datagram();
+        }
+        ByteBuffer buffer = datagram.data;
+        if(buffer.capacity() < data.remaining()){
+            buffer = ByteBuffer.allocate(data.remaining());
+            datagram.data = buffer;
+        }
+        buffer.clear();
+        buffer.put(data);
+        buffer.flip();
+        datagram.sender = sender;
+        if(!queue.offer(datagram)){
+            pool.offer(datagram);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Waits for a datagram. A datagram larger than the space remaining in the buffer is truncated.
+     * @param buffer the buffer to receive the datagram into, from its position
+     * @param timeout how long to wait in milliseconds, 0 to wait forever
+     * @return the address the datagram was sent from
+     * @throws SocketTimeoutException if no datagram is queued in time
+     */
+    SocketAddress take(ByteBuffer buffer, int timeout) throws SocketTimeoutException {
+        Datagram datagram;
+        try {
+            if(timeout == 0){
+                datagram = queue.take();
+            }
+            else {
+                datagram = queue.poll(timeout, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SocketTimeoutException("Interrupted");
+        }
+        if(datagram == null){
+            throw new SocketTimeoutException("Receive timed out");
+        }
+        try {
+            ByteBuffer data = datagram.data;
+            if(data.remaining() > buffer.remaining()){
+                data.limit(data.position() + buffer.remaining());
+            }
+            buffer.put(data);
+            return datagram.sender;
+        }
+        finally {
+            pool.offer(datagram);
+        }
+    }
+
+    /**
+     * Passes every queued datagram to a handler
+     * @param handler the handler to pass datagrams to
+     */
+    void drain(NetworkEngine.PacketHandler handler){
+        Datagram datagram;
+        while ((datagram = queue.poll()) != null) {
+            try {
+                handler.onPacket(datagram.data, datagram.sender);
+            }
+            finally {
+                pool.offer(datagram);
+            }
+        }
+    }
+
+    /**
+     * Drops every queued datagram
+     */
+    void clear(){
+        queue.clear();
+    }
+
+    /* a datagram waiting in a queue */
+    private static final class Datagram {
+        ByteBuffer data = ByteBuffer.allocate(BUFFER_SIZE);
+        SocketAddress sender;
+    }
+}
@@ -0,0 +1,142 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
+
+import java.nio.ByteBuffer;
+
+/**
+ * DeadReckoning turns the true state of each enemy into the keyframes sent in each {@link Snapshot}.
+ * A keyframe holds the position, directions and velocity of an enemy at one tick, and the clients extrapolate the
+ * enemy from it with {@link Protocol#extrapolate(short, byte, int)} until a newer one arrives. The server runs the
+ * same extrapolation and only writes a new keyframe when the true position has drifted further than a threshold from
+ * it, when the directions or flags of the enemy change, or when the keyframe is older than a set number of ticks.
+ * Between keyframes an enemy's record in the snapshot does not change, so the delta against the client's baseline
+ * leaves it out.
+ * Only used by the {@link NetworkEngine} thread.
+ */
+public final class DeadReckoning {
+
+    private final double threshold;
+    private final int keyframeInterval;
+
+    /* the keyframe of each enemy, as it is written in the snapshots */
+    private final ByteBuffer keyframes;
+    private final short[] keyXs;
+    private final short[] keyYs;
+    private final byte[] velocityXs;
+    private final byte[] velocityYs;
+    private final int[] keyTicks;
+    private final int[] keyBits;
+    private final boolean[] known;
+
+    /* the true position of each enemy at the previous update, to measure its speed */
+    private final double[] lastXs;
+    private final double[] lastYs;
+    private final int[] lastTicks;
+
+    /**
+     * @param maxEnemies the largest number of enemies
+     * @param threshold how far in pixels the true position may drift from the extrapolated one along either axis
+     * @param keyframeInterval the largest number of ticks between two keyframes of an enemy
+     */
+    public DeadReckoning(int maxEnemies, double threshold, int keyframeInterval){
+        this.threshold = threshold;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        keyframes = ByteBuffer.allocate(maxEnemies * Protocol.ENEMY_KEYFRAME_SIZE);
+        keyXs = new short[maxEnemies];
+        keyYs = new short[maxEnemies];
+        velocityXs = new byte[maxEnemies];
+        velocityYs = new byte[maxEnemies];
+        keyTicks = new int[maxEnemies];
+        keyBits = new int[maxEnemies];
+        known = new boolean[maxEnemies];
+        lastXs = new double[maxEnemies];
+        lastYs = new double[maxEnemies];
+        lastTicks = new int[maxEnemies];
+    }
+
+    /**
+     * Compares the true state of each enemy with where the clients will extrapolate it to at this tick, and writes a
+     * new keyframe for each enemy which needs one
+     * @param tick the tick of the snapshot being built
+     * @param records a buffer holding the {@link Protocol#ENEMY_RECORD_SIZE} byte enemy records from position 0
+     * @param count the number of records
+     * @return the number of keyframes written
+     */
+    public int update(int tick, ByteBuffer records, int count){
+        count = Math.min(count, known.length);
+        int written = 0;
+        for(int enemy = 0; enemy < count; enemy++){
+            int offset = enemy * Protocol.ENEMY_RECORD_SIZE;
+            int bits = records.getShort(offset) & 0xFFFF;
+            short fixedX = records.getShort(offset + 2);
+            short fixedY = records.getShort(offset + 4);
+            double x = Protocol.toPosition(fixedX);
+            double y = Protocol.toPosition(fixedY);
+
+            double speed = 0;
+            if(known[enemy] && tick != lastTicks[enemy]){
+                speed = Math.max(Math.abs(x - lastXs[enemy]), Math.abs(y - lastYs[enemy])) / (tick - lastTicks[enemy]);
+            }
+            if(needsKeyframe(enemy, tick, bits, x, y)){
+                writeKeyframe(enemy, tick, bits, fixedX, fixedY, speed);
+                written++;
+            }
+            lastXs[enemy] = x;
+            lastYs[enemy] = y;
+            lastTicks[enemy] = tick;
+        }
+        return written;
+    }
+
+    /**
+     * @return a buffer holding the {@link Protocol#ENEMY_KEYFRAME_SIZE} byte keyframe of each enemy from position 0
+     */
+    public ByteBuffer getKeyframes(){
+        return keyframes;
+    }
+
+    private boolean needsKeyframe(int enemy, int tick, int bits, double x, double y){
+        if(!known[enemy] || bits != keyBits[enemy]){
+            return true;
+        }
+        int ticks = tick - keyTicks[enemy];
+        if(ticks >= keyframeInterval){
+            return true;
+        }
+        return Math.abs(x - Protocol.extrapolate(keyXs[enemy], velocityXs[enemy], ticks)) > threshold
+                || Math.abs(y - Protocol.extrapolate(keyYs[enemy], velocityYs[enemy], ticks)) > threshold;
+    }
+
+    /* characters move at the same speed along each axis they are moving along, so the speed measured since the
+     * previous tick is given the signs of the directions of the enemy, which also copes with the enemy turning */
+    private void writeKeyframe(int enemy, int tick, int bits, short x, short y, double speed){
+        if(!Protocol.isMoving(bits)){
+            speed = 0;
+        }
+        byte velocityX = Protocol.toVelocity(speed * sign(Protocol.directionX(bits)));
+        byte velocityY = Protocol.toVelocity(speed * sign(Protocol.directionY(bits)));
+        keyXs[enemy] = x;
+        keyYs[enemy] = y;
+        velocityXs[enemy] = velocityX;
+        velocityYs[enemy] = velocityY;
+        keyTicks[enemy] = tick;
+        keyBits[enemy] = bits;
+        known[enemy] = true;
+        keyframes.position(enemy * Protocol.ENEMY_KEYFRAME_SIZE);
+        Protocol.writeEnemyKeyframe(keyframes, bits, x, y, velocityX, velocityY, tick);
+    }
+
+    private static int sign(CharacterMovement.Direction direction){
+        switch(direction){
+            case LEFT:
+            case UP:
+                return -1;
+            case RIGHT:
+            case DOWN:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+}
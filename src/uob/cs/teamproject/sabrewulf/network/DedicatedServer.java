@@ -0,0 +1,297 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import uob.cs.teamproject.sabrewulf.GameSettings;
+import uob.cs.teamproject.sabrewulf.ServerWorld;
+import uob.cs.teamproject.sabrewulf.ui.selectors.DIFFICULTY;
+import uob.cs.teamproject.sabrewulf.ui.selectors.MODE;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A dedicated server runs the game on its own, without a window or a player of its own, so that every player joins
+ * it as a client. Unlike a {@link Server} hosted by a player, it runs the authoritative simulation of the enemies and
+ * the items itself in a {@link ServerWorld}, at a fixed rate on its {@link NetworkEngine} thread, so the game no
+ * longer depends on the frame rate or the machine of the host.
+ * <p>
+ * It never creates anything from JavaFX which needs a display. On its own it serves one game after another until
+ * the process is stopped; a {@link MatchServer} runs many of them at once, one for each match. It is started with
+ * the {@code --dedicated} command line argument, e.g.
+ * {@code --dedicated --port 50000 --players 2 --difficulty MEDIUM}. Every client has to choose the same difficulty,
+ * since that decides the number of enemies.
+ */
+public class DedicatedServer extends Server {
+
+    /** the port the server listens on if none is given */
+    public static final int DEFAULT_PORT = 50000;
+
+    /* the game loop of a client runs at 60 frames per second, so the world is stepped at the same rate */
+    private static final int SIMULATION_RATE = 60;
+    private static final long STEP = TimeUnit.SECONDS.toNanos(1) / SIMULATION_RATE;
+    /* the most steps run in one tick, so that a server which falls behind skips time rather than never catching up */
+    private static final int MAX_STEPS_PER_TICK = 10;
+    /* how long to wait for the clients to acknowledge the end of a game */
+    private static final long END_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+    /* a game in which no client has sent anything for this long is abandoned */
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+
+    private volatile ServerWorld world;
+    private long nextStep;
+    /* the time the end of the game was first seen, or 0 */
+    private long endedAt;
+    /* reused for reading the position of each player */
+    private final XYPair position;
+
+    /**
+     * @param numberOfPlayers a number of players in each game
+     * @param numberOfEnemies a number of enemies
+     * @param port a port the server is listening on
+     * @throws SocketException if the port is unavailable or the channel could not be opened
+     */
+    public DedicatedServer(int numberOfPlayers, int numberOfEnemies, int port) throws SocketException {
+        super(numberOfPlayers, numberOfEnemies, port);
+        position = new XYPair(0, 0);
+    }
+
+    /**
+     * @param numberOfPlayers a number of players in each game
+     * @param numberOfEnemies a number of enemies
+     * @param transport the transport to talk to clients through
+     * @throws SocketException if the timeout of the transport could not be set
+     */
+    DedicatedServer(int numberOfPlayers, int numberOfEnemies, Transport transport) throws SocketException {
+        super(numberOfPlayers, numberOfEnemies, transport);
+        position = new XYPair(0, 0);
+    }
+
+    /**
+     * The entry point of a dedicated server, which serves games until the process is stopped
+     * @param args the command line arguments: {@code --port}, {@code --players}, {@code --difficulty},
+     * {@code --tick-rate}, {@code --enemy-threshold} in pixels, {@code --keyframe-interval} in milliseconds,
+     * {@code --client-budget} in bytes per tick, {@code --interest-radius} in cells, {@code --min-send-rate} and
+     * {@code --max-send-rate} in messages per second and {@code --stats-log}, each followed by its value; any other
+     * argument is ignored
+     * @throws IOException if the server could not be started
+     */
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int players = 2;
+        DIFFICULTY difficulty = DIFFICULTY.EASY;
+        String statsLog = null;
+        for (int i = 0; i + 1 < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--players":
+                    players = Integer.parseInt(args[++i]);
+                    break;
+                case "--difficulty":
+                    difficulty = DIFFICULTY.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--tick-rate":
+                    GameSettings.setServerTickRate(Integer.parseInt(args[++i]));
+                    break;
+                case "--enemy-threshold":
+                    GameSettings.setEnemyCorrectionThreshold(Double.parseDouble(args[++i]));
+                    break;
+                case "--keyframe-interval":
+                    GameSettings.setEnemyKeyframeInterval(Integer.parseInt(args[++i]));
+                    break;
+                case "--client-budget":
+                    GameSettings.setClientBandwidthBudget(Integer.parseInt(args[++i]));
+                    break;
+                case "--interest-radius":
+                    GameSettings.setInterestRadius(Integer.parseInt(args[++i]));
+                    break;
+                case "--min-send-rate":
+                    GameSettings.setMinSendRate(Integer.parseInt(args[++i]));
+                    break;
+                case "--max-send-rate":
+                    GameSettings.setMaxSendRate(Integer.parseInt(args[++i]));
+                    break;
+                case "--stats-log":
+                    statsLog = args[++i];
+                    break;
+            }
+        }
+        GameSettings.setGameMode(MODE.MULTIPLAYER);
+        GameSettings.setDifficulty(difficulty);
+        int numberOfEnemies = difficulty == DIFFICULTY.EASY ? 3 : 4;
+
+        DedicatedServer server = new DedicatedServer(players, numberOfEnemies, port);
+        if (statsLog != null) {
+            server.setStatsLog(new NetworkStatsLog(statsLog), "dedicated");
+        }
+        System.out.println("Dedicated server listening on port " + port + " for " + players + " players ("
+                + difficulty + ")");
+        server.run();
+    }
+
+    /**
+     * Serves one game after another: waits for every player to join, runs the game until it is over and then
+     * prepares a new map for the next one
+     * @throws IOException if the server channel has been closed or the engine could not be opened
+     */
+    public void run() throws IOException {
+        NetworkEngine engine = new NetworkEngine("dedicated-server");
+        try {
+            while (true) {
+                try {
+                    runGame(engine);
+                }
+                catch (SocketTimeoutException e) {
+                    //Not every player joined in time, so start again with an empty lobby
+                }
+                catch (SocketException e) {
+                    throw e;
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+                setInitialValues();
+                createMap();
+            }
+        }
+        finally {
+            engine.shutdown();
+            closeChannel();
+        }
+    }
+
+    /**
+     * Runs a single game, from the first player joining until the scores have been sent
+     * @param engine the engine to receive packets and run ticks on
+     * @throws IOException if an IO error occurs while the players join
+     */
+    private void runGame(NetworkEngine engine) throws IOException {
+        start();
+        beginGame();
+        transport.register(engine, this::onPacket);
+        engine.startTicking(this::tick, getTickRate());
+        sendStart();
+        try {
+            while (!isOver(System.nanoTime())) {
+                try {
+                    Thread.sleep(100);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        finally {
+            engine.stopTicking();
+            transport.unregister(engine);
+            endGame();
+        }
+    }
+
+    /**
+     * Sends the spawn positions to the clients once every player has joined, and builds the {@link ServerWorld}
+     * @throws IOException if an IO error occurs
+     */
+    void beginGame() throws IOException {
+        sendRandomCoordinates();
+        world = new ServerWorld(getGameMapWrapper(), getPlayerSpawns(), getEnemySpawns());
+        nextStep = System.nanoTime();
+        endedAt = 0;
+    }
+
+    /**
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     * @return true once the end of the game has reached every player, every player has left, it has not been
+     * acknowledged in time or the clients have stopped responding
+     */
+    boolean isOver(long now) {
+        if (hasEnded() && endedAt == 0) {
+            endedAt = now;
+        }
+        if (isFinished() && !hasUnacknowledgedControl()) {
+            return true;
+        }
+        if (endedAt != 0 && now - endedAt > END_TIMEOUT) {
+            return true;
+        }
+        return now - getLastPacketTime() > IDLE_TIMEOUT;
+    }
+
+    /**
+     * Removes the {@link ServerWorld} once the game is over. Called once the server no longer ticks.
+     */
+    void endGame() {
+        if (world != null) {
+            world.remove();
+            world = null;
+        }
+    }
+
+    /**
+     * Moves each player to the position its input commands have taken it to, steps the {@link ServerWorld} at
+     * {@value #SIMULATION_RATE} steps per second and sets the state of every enemy and the score of every player,
+     * from the coins it has picked up and the times it has been caught, for the next snapshot. Ends the game once every coin has been picked up.
+     * @param now the time of the tick, in nanoseconds on the {@link System#nanoTime()} clock
+     */
+    @Override
+    protected void simulate(long now) {
+        ServerWorld world = this.world;
+        if (world == null) {
+            return;
+        }
+        for (int slot = 0; slot < getSlotCount(); slot++) {
+            if (!isSlotActive(slot)) {
+                world.removePlayer(slot);
+                continue;
+            }
+            if (readPlayerState(slot, position)) {
+                world.setPlayerState(slot, position.x, position.y, isPlayerInvisible(slot));
+            }
+        }
+
+        int steps = 0;
+        while (now - nextStep >= 0 && steps < MAX_STEPS_PER_TICK) {
+            world.update(nextStep);
+            nextStep += STEP;
+            steps++;
+        }
+        if (steps == MAX_STEPS_PER_TICK) {
+            nextStep = now + STEP;
+        }
+
+        for (int slot = 0; slot < getSlotCount(); slot++) {
+            setScore(slot, world.getScore(slot));
+        }
+
+        DataStorage enemies = world.getDataStorage();
+        for (int i = 0; i < world.getNumEnemies(); i++) {
+            setEnemyState(i, enemies.enemyDirections[i * 2], enemies.enemyDirections[i * 2 + 1],
+                    enemies.enemyIsMoving[i], enemies.enemyIsFacing[i],
+                    enemies.enemyPositions[i * 2], enemies.enemyPositions[i * 2 + 1]);
+        }
+
+        if (world.getNumCoins() == 0 && !hasEnded()) {
+            sendEnd(true);
+        }
+    }
+
+    /**
+     * @return false, since the server moves the enemies itself
+     */
+    @Override
+    protected boolean acceptsEnemyStates() {
+        return false;
+    }
+
+    /**
+     * @return false, since the server counts the coins each player picks up and the times it is caught itself rather
+     * than trusting the clients
+     */
+    @Override
+    protected boolean acceptsReportedPickups() {
+        return false;
+    }
+}
@@ -0,0 +1,357 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The FragmentChannel delivers messages of any length between a client and the server exactly once and in the order
+ * they were sent, over a {@link Transport} which may drop, duplicate or reorder datagrams. It carries the messages
+ * which do not fit in one datagram, or may not once the game grows: the map, the usernames and the spawn positions
+ * sent while a game loads.
+ * <p>
+ * Each message is split into {@link Protocol#FRAGMENT} messages of at most {@link #FRAGMENT_SIZE} bytes, small enough
+ * not to be fragmented by IP, which carry the id of the message, the index of the fragment and the number of
+ * fragments, so the receiver knows how large a buffer to reassemble the message in from the first fragment that
+ * arrives. Every fragment received is answered with a {@link Protocol#FRAGMENT_ACK} holding a bit for each fragment
+ * of the message received so far, and when the retransmission timeout expires only the fragments which have not been
+ * acknowledged are sent again. The timeout is estimated and backed off in the same way as by
+ * {@link ReliableChannel}.
+ * <p>
+ * Messages can be sent from any thread. Received messages are passed to the handler on the thread that calls
+ * {@link #receiveFragment(ByteBuffer, long)}.
+ */
+public class FragmentChannel {
+
+    /** the most bytes of a message carried by one fragment */
+    public static final int FRAGMENT_SIZE = 1024;
+    /** the most fragments a message can be split into */
+    public static final int MAX_FRAGMENTS = 1024;
+
+    /* message id (4 bytes), fragment index and fragment count (2 bytes each) */
+    private static final int FRAGMENT_HEADER_SIZE = 8;
+    /* the number of messages after the last one delivered which are reassembled at once */
+    private static final int RECEIVE_WINDOW = 16;
+
+    private final Transport transport;
+    private final SocketAddress peer;
+    private final Consumer<ByteBuffer> handler;
+    private final ByteBuffer packet;
+    /* counts the packets sent, if set */
+    private volatile NetworkStats stats;
+
+    /* messages sent which have fragments not yet acknowledged, oldest first */
+    private final ArrayDeque<Outgoing> unacknowledged;
+    private int nextId;
+
+    /* the last message delivered in order and the messages after it which are being reassembled */
+    private int delivered;
+    private final HashMap<Integer, Incoming> incoming;
+
+    /* round trip time estimate */
+    private long smoothedRtt;
+    private long rttVariance;
+    private boolean rttMeasured;
+    private long timeout;
+    private long lastTransmission;
+    private int attempts;
+
+    /**
+     * @param transport the transport to send through
+     * @param peer the address of the other end of the channel
+     * @param handler passed every message received, once each and in order, as a buffer holding only the message
+     */
+    public FragmentChannel(Transport transport, SocketAddress peer, Consumer<ByteBuffer> handler){
+        this.transport = transport;
+        this.peer = peer;
+        this.handler = handler;
+        packet = ByteBuffer.allocate(Protocol.HEADER_SIZE + FRAGMENT_HEADER_SIZE
+                + Math.max(FRAGMENT_SIZE, MAX_FRAGMENTS / 8));
+        unacknowledged = new ArrayDeque<>();
+        incoming = new HashMap<>();
+        nextId = 1;
+        timeout = ReliableChannel.INITIAL_TIMEOUT;
+    }
+
+    /**
+     * @param stats the statistics to count every packet sent through the channel in, or null
+     */
+    public void setStats(NetworkStats stats){
+        this.stats = stats;
+    }
+
+    /**
+     * Sends a message, whose fragments are retransmitted by {@link #update(long)} until each is acknowledged
+     * @param message the message to send, from its position to its limit, which is left unchanged
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     * @throws IllegalArgumentException if the message needs more than {@link #MAX_FRAGMENTS} fragments
+     */
+    public synchronized void send(ByteBuffer message, long now){
+        byte[] bytes = new byte[message.remaining()];
+        message.duplicate().get(bytes);
+        int count = Math.max(1, (bytes.length + FRAGMENT_SIZE - 1) / FRAGMENT_SIZE);
+        if(count > MAX_FRAGMENTS){
+            throw new IllegalArgumentException("Message too long: " + bytes.length + " bytes");
+        }
+        Outgoing outgoing = new Outgoing(nextId++, bytes, count, now);
+        if(unacknowledged.isEmpty()){
+            lastTransmission = now;
+        }
+        unacknowledged.add(outgoing);
+        for(int i = 0; i < count; i++){
+            transmitFragment(outgoing, i);
+        }
+    }
+
+    /**
+     * Handles a {@link Protocol#FRAGMENT} message from the peer: stores the fragment, acknowledges every fragment of
+     * its message received so far and passes any messages which are now complete and can be delivered in order to
+     * the handler
+     * @param data the message, positioned after the header
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     */
+    public void receiveFragment(ByteBuffer data, long now){
+        List<ByteBuffer> deliverable = null;
+        synchronized (this) {
+            int id = data.getInt();
+            int index = data.getShort() & 0xFFFF;
+            int count = data.getShort() & 0xFFFF;
+            if(count == 0 || count > MAX_FRAGMENTS || index >= count){
+                return;
+            }
+            int ahead = id - delivered;
+            if(ahead <= 0){
+                /* delivered already, but the acknowledgement may have been lost */
+                transmitAck(id, count, null);
+                return;
+            }
+            if(ahead > RECEIVE_WINDOW){
+                return;
+            }
+            Incoming message = incoming.get(id);
+            if(message == null){
+                message = new Incoming(count);
+                incoming.put(id, message);
+            }
+            else if(message.received.length != count){
+                return;
+            }
+            message.store(index, data);
+            transmitAck(id, count, message.received);
+
+            while((message = incoming.get(delivered + 1)) != null && message.isComplete()){
+                incoming.remove(delivered + 1);
+                if(deliverable == null){
+                    deliverable = new ArrayList<>();
+                }
+                deliverable.add(ByteBuffer.wrap(message.bytes, 0, message.length));
+                delivered++;
+            }
+        }
+        /* handled outside the lock, since a handler may send on this or another channel */
+        if(deliverable != null){
+            for(ByteBuffer message : deliverable){
+                handler.accept(message);
+            }
+        }
+    }
+
+    /**
+     * Handles a {@link Protocol#FRAGMENT_ACK} message from the peer, forgetting the fragments it acknowledges
+     * @param data the message, positioned after the header
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     */
+    public synchronized void receiveAck(ByteBuffer data, long now){
+        int id = data.getInt();
+        int count = data.getShort() & 0xFFFF;
+        Outgoing outgoing = null;
+        for(Outgoing candidate : unacknowledged){
+            if(candidate.id == id){
+                outgoing = candidate;
+                break;
+            }
+        }
+        if(outgoing == null || outgoing.acknowledged.length != count){
+            return;
+        }
+        boolean progress = false;
+        for(int i = 0; i < (count + 7) / 8; i++){
+            int bits = data.get() & 0xFF;
+            for(int j = 0; j < 8 && i * 8 + j < count; j++){
+                if((bits & (1 << j)) != 0 && !outgoing.acknowledged[i * 8 + j]){
+                    outgoing.acknowledged[i * 8 + j] = true;
+                    outgoing.remaining--;
+                    progress = true;
+                }
+            }
+        }
+        if(!progress){
+            return;
+        }
+        /* only measure messages sent once, as it is not known which transmission was acknowledged otherwise */
+        if(!outgoing.retransmitted && !outgoing.measured){
+            measure(now - outgoing.sent);
+            outgoing.measured = true;
+        }
+        if(outgoing.remaining == 0){
+            unacknowledged.remove(outgoing);
+        }
+        attempts = 0;
+        lastTransmission = now;
+    }
+
+    /**
+     * Sends every fragment which has not been acknowledged again if the retransmission timeout has expired. Called
+     * regularly while there may be messages which have not been acknowledged.
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     */
+    public synchronized void update(long now){
+        if(unacknowledged.isEmpty() || now - lastTransmission < timeout){
+            return;
+        }
+        attempts++;
+        if(attempts >= ReliableChannel.MAX_ATTEMPTS){
+            /* the peer has gone, so stop sending to it */
+            unacknowledged.clear();
+            attempts = 0;
+            return;
+        }
+        timeout = Math.min(timeout * 2, ReliableChannel.MAX_TIMEOUT);
+        lastTransmission = now;
+        for(Outgoing outgoing : unacknowledged){
+            outgoing.retransmitted = true;
+            for(int i = 0; i < outgoing.acknowledged.length; i++){
+                if(!outgoing.acknowledged[i]){
+                    transmitFragment(outgoing, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the current retransmission timeout, in nanoseconds
+     */
+    public synchronized long getTimeout(){
+        return timeout;
+    }
+
+    /**
+     * @return the number of messages sent which have fragments that have not been acknowledged
+     */
+    public synchronized int getUnacknowledgedCount(){
+        return unacknowledged.size();
+    }
+
+    /* update the round trip time estimate and the timeout as in RFC 6298 */
+    private void measure(long rtt){
+        if(!rttMeasured){
+            smoothedRtt = rtt;
+            rttVariance = rtt / 2;
+            rttMeasured = true;
+        }
+        else {
+            rttVariance = (3 * rttVariance + Math.abs(smoothedRtt - rtt)) / 4;
+            smoothedRtt = (7 * smoothedRtt + rtt) / 8;
+        }
+        timeout = Math.max(ReliableChannel.MIN_TIMEOUT, Math.min(ReliableChannel.MAX_TIMEOUT,
+                smoothedRtt + 4 * rttVariance));
+    }
+
+    private void transmitFragment(Outgoing outgoing, int index){
+        int offset = index * FRAGMENT_SIZE;
+        packet.clear();
+        Protocol.writeHeader(packet, Protocol.FRAGMENT);
+        packet.putInt(outgoing.id);
+        packet.putShort((short) index);
+        packet.putShort((short) outgoing.acknowledged.length);
+        packet.put(outgoing.bytes, offset, Math.min(FRAGMENT_SIZE, outgoing.bytes.length - offset));
+        transmit();
+    }
+
+    /* acknowledge the fragments of a message received so far, or all of them if received is null */
+    private void transmitAck(int id, int count, boolean[] received){
+        packet.clear();
+        Protocol.writeHeader(packet, Protocol.FRAGMENT_ACK);
+        packet.putInt(id);
+        packet.putShort((short) count);
+        for(int i = 0; i < (count + 7) / 8; i++){
+            int bits = 0;
+            for(int j = 0; j < 8 && i * 8 + j < count; j++){
+                if(received == null || received[i * 8 + j]){
+                    bits |= 1 << j;
+                }
+            }
+            packet.put((byte) bits);
+        }
+        transmit();
+    }
+
+    private void transmit(){
+        packet.flip();
+        NetworkStats currentStats = stats;
+        if(currentStats != null){
+            currentStats.onSent(packet.remaining());
+        }
+        try {
+            transport.send(packet, peer);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /* a message which has fragments that have not been acknowledged */
+    private static final class Outgoing {
+        final int id;
+        final byte[] bytes;
+        final boolean[] acknowledged;
+        final long sent;
+        int remaining;
+        boolean retransmitted;
+        boolean measured;
+
+        Outgoing(int id, byte[] bytes, int count, long sent){
+            this.id = id;
+            this.bytes = bytes;
+            this.sent = sent;
+            acknowledged = new boolean[count];
+            remaining = count;
+        }
+    }
+
+    /* a message which is being reassembled, in a buffer large enough for every fragment to be full */
+    private static final class Incoming {
+        final byte[] bytes;
+        final boolean[] received;
+        int receivedCount;
+        int length;
+
+        Incoming(int count){
+            bytes = new byte[count * FRAGMENT_SIZE];
+            received = new boolean[count];
+        }
+
+        /* only the last fragment may be shorter than FRAGMENT_SIZE, so it gives the length of the message */
+        void store(int index, ByteBuffer data){
+            if(received[index]){
+                return;
+            }
+            int size = Math.min(data.remaining(), FRAGMENT_SIZE);
+            data.get(bytes, index * FRAGMENT_SIZE, size);
+            received[index] = true;
+            receivedCount++;
+            if(index == received.length - 1){
+                length = index * FRAGMENT_SIZE + size;
+            }
+        }
+
+        boolean isComplete(){
+            return receivedCount == received.length;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An ImpairedLink carries datagrams in one direction under the current {@link NetworkConditions}. Each datagram
+ * submitted is copied and either dropped or given the time it is released at, which takes the delay, the jitter,
+ * reordering and the time taken to send it over a link of limited bandwidth into account; {@link #release} then
+ * passes on every datagram which is due, in order of release time.
+ * <p>
+ * Every random choice comes from a seeded {@link Random} and every time is passed in, so a link given the same seed,
+ * datagrams and times always behaves the same way. Only used by one thread at a time.
+ */
+public class ImpairedLink {
+
+    /**
+     * Receives the datagrams released by a link
+     */
+    public interface Sink {
+        /**
+         * @param data the datagram
+         * @param target the target the datagram was submitted with
+         */
+        void send(ByteBuffer data, SocketAddress target);
+    }
+
+    /* datagrams which would wait longer than this for a link of limited bandwidth are dropped, as by a full router
+     * queue */
+    private static final long MAX_QUEUE_DELAY = TimeUnit.SECONDS.toNanos(1);
+
+    private final NetworkConditions conditions;
+    private final Random random;
+    private final PriorityQueue<Datagram> queue;
+    private final ArrayDeque<Datagram> pool;
+
+    /* the number of datagrams still to be lost in the current burst */
+    private int burstRemaining;
+    /* the time the link of limited bandwidth has finished sending the datagrams already submitted */
+    private long linkFreeAt;
+    /* breaks ties between datagrams released at the same time, so they keep the order they were submitted in */
+    private long submitted;
+
+    private int dropped;
+    private int duplicated;
+
+    /**
+     * @param conditions the conditions of the link, which can be changed while it is in use
+     * @param seed the seed of the random choices
+     */
+    public ImpairedLink(NetworkConditions conditions, long seed){
+        this.conditions = conditions;
+        random = new Random(seed);
+        queue = new PriorityQueue<>((a, b) -> a.releaseAt != b.releaseAt
+                ? Long.compare(a.releaseAt - b.releaseAt, 0) : Long.compare(a.order, b.order));
+        pool = new ArrayDeque<>();
+    }
+
+    /**
+     * Copies a datagram into the link, unless it is lost
+     * @param data the bytes between the position and the limit of the buffer, which are all consumed
+     * @param target where the datagram is going, passed back to the {@link Sink}
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     */
+    public void submit(ByteBuffer data, SocketAddress target, long now){
+        if(isLost()){
+            data.position(data.limit());
+            dropped++;
+            return;
+        }
+        int copies = 1;
+        if(chance(conditions.getDuplicate())){
+            copies = 2;
+            duplicated++;
+        }
+        int start = data.position();
+        for(int i = 0; i < copies; i++){
+            data.position(start);
+            schedule(data, target, now);
+        }
+    }
+
+    /**
+     * Passes every datagram which is due to a sink, in order of release time
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     * @param sink where the datagrams are sent
+     * @return the number of datagrams released
+     */
+    public int release(long now, Sink sink){
+        int released = 0;
+        Datagram datagram;
+        while((datagram = queue.peek()) != null && now - datagram.releaseAt >= 0){
+            queue.poll();
+            try {
+                sink.send(datagram.data, datagram.target);
+            }
+            finally {
+                datagram.target = null;
+                pool.add(datagram);
+            }
+            released++;
+        }
+        return released;
+    }
+
+    /**
+     * @return the conditions of the link
+     */
+    public NetworkConditions getConditions(){
+        return conditions;
+    }
+
+    /**
+     * @return the number of datagrams waiting to be released
+     */
+    public int size(){
+        return queue.size();
+    }
+
+    /**
+     * @return the number of datagrams lost so far
+     */
+    public int getDropped(){
+        return dropped;
+    }
+
+    /**
+     * @return the number of datagrams duplicated so far
+     */
+    public int getDuplicated(){
+        return duplicated;
+    }
+
+    /* decide whether the next datagram is lost, at random or as part of a burst */
+    private boolean isLost(){
+        if(burstRemaining > 0){
+            burstRemaining--;
+            return true;
+        }
+        if(chance(conditions.getBurstLoss())){
+            burstRemaining = conditions.getBurstLength() - 1;
+            return true;
+        }
+        return chance(conditions.getLoss());
+    }
+
+    /* copy one datagram into the queue with the time it is released at */
+    private void schedule(ByteBuffer data, SocketAddress target, long now){
+        int size = data.remaining();
+        long departure = now;
+        int bandwidth = conditions.getBandwidth();
+        if(bandwidth > 0){
+            departure = linkFreeAt - now > 0 ? linkFreeAt : now;
+            if(departure - now > MAX_QUEUE_DELAY){
+                data.position(data.limit());
+                dropped++;
+                return;
+            }
+            linkFreeAt = departure + size * TimeUnit.SECONDS.toNanos(1) / bandwidth;
+        }
+
+        long delay = conditions.getDelay();
+        int jitter = conditions.getJitter();
+        if(jitter > 0){
+            delay = Math.max(0, delay + random.nextInt(2 * jitter + 1) - jitter);
+        }
+        if(chance(conditions.getReorder())){
+            delay += conditions.getReorderDelay();
+        }
+
+        Datagram datagram = pool.poll();
+        if(datagram == null){
+            datagram = new Datagram();
+        }
+        if(datagram.data.capacity() < size){
+            datagram.data = ByteBuffer.allocate(size);
+        }
+        datagram.data.clear();
+        datagram.data.put(data);
+        datagram.data.flip();
+        datagram.target = target;
+        datagram.releaseAt = departure + TimeUnit.MILLISECONDS.toNanos(delay);
+        datagram.order = submitted++;
+        queue.add(datagram);
+    }
+
+    private boolean chance(double percent){
+        return percent > 0 && random.nextDouble() * 100 < percent;
+    }
+
+    /* a datagram waiting to be released */
+    private static final class Datagram {
+        ByteBuffer data = ByteBuffer.allocate(512);
+        SocketAddress target;
+        long releaseAt;
+        long order;
+    }
+}
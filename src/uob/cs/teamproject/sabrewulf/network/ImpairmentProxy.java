@@ -0,0 +1,218 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An ImpairmentProxy sits between clients and a server and passes the datagrams between them through an
+ * {@link ImpairedLink} in each direction, so that a game can be played on one machine under latency, jitter, loss,
+ * duplication, reordering and limited bandwidth.
+ * <p>
+ * Clients connect to the proxy instead of the server. The proxy talks to the server from a separate socket for each
+ * client, so the server still tells the clients apart by their port. The conditions can be fixed, or changed over
+ * time by an {@link ImpairmentScenario}. Everything runs on the thread of one {@link NetworkEngine}, which releases
+ * the datagrams which are due every millisecond.
+ * <p>
+ * It can be started in the same process as the game or a test, or on its own with the {@code --proxy} command line
+ * argument, e.g. {@code --proxy --listen 50001 --target localhost:50000 --delay 100 --jitter 20 --loss 2}.
+ */
+public class ImpairmentProxy {
+
+    /* how often due datagrams are released */
+    private static final int RELEASE_RATE = 1000;
+
+    private final Transport listener;
+    private final SocketAddress target;
+    private final NetworkConditions conditions;
+    private final NetworkEngine engine;
+    private final ImpairedLink toServer;
+    private final ImpairedLink toClients;
+
+    /* the socket each client talks to the server through, only used on the engine thread */
+    private final HashMap<SocketAddress, Transport> upstreams;
+    private final ImpairedLink.Sink serverSink;
+    private final ImpairedLink.Sink clientSink;
+
+    private volatile ImpairmentScenario scenario;
+    private long scenarioStart;
+    private int scenarioStep;
+    private final CountDownLatch closed;
+
+    /**
+     * @param listenPort the port clients connect to, or 0 for any free port
+     * @param target the address of the server
+     * @param conditions the conditions of the links, which can be changed while the proxy is running
+     * @param seed the seed of the random choices made by the links
+     * @throws IOException if the port is unavailable or the engine could not be opened
+     */
+    public ImpairmentProxy(int listenPort, SocketAddress target, NetworkConditions conditions, long seed)
+            throws IOException {
+        this.target = target;
+        this.conditions = conditions;
+        listener = UdpTransport.bind(listenPort);
+        engine = new NetworkEngine("impairment-proxy");
+        toServer = new ImpairedLink(conditions, seed);
+        toClients = new ImpairedLink(conditions, seed + 1);
+        upstreams = new HashMap<>();
+        closed = new CountDownLatch(1);
+        serverSink = (data, client) -> send(upstreams.get(client), data, this.target);
+        clientSink = (data, client) -> send(listener, data, client);
+    }
+
+    /**
+     * The entry point of a proxy which runs until the process is stopped
+     * @param args the command line arguments: {@code --listen}, {@code --target} as host:port, {@code --scenario}
+     * as the path of an {@link ImpairmentScenario} file and {@code --seed}, as well as any of the keys of
+     * {@link NetworkConditions#parse(String)}, e.g. {@code --delay 100}, each followed by its value
+     * @throws IOException if the proxy could not be started or the scenario could not be read
+     */
+    public static void main(String[] args) throws IOException {
+        int listenPort = DedicatedServer.DEFAULT_PORT + 1;
+        SocketAddress target = new InetSocketAddress("localhost", DedicatedServer.DEFAULT_PORT);
+        NetworkConditions conditions = new NetworkConditions();
+        ImpairmentScenario scenario = null;
+        long seed = System.nanoTime();
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (!args[i].startsWith("--") || args[i].equals("--proxy")) {
+                continue;
+            }
+            String key = args[i].substring(2);
+            String value = args[++i];
+            switch (key) {
+                case "listen":
+                    listenPort = Integer.parseInt(value);
+                    break;
+                case "target":
+                    int colon = value.lastIndexOf(':');
+                    target = new InetSocketAddress(value.substring(0, colon),
+                            Integer.parseInt(value.substring(colon + 1)));
+                    break;
+                case "scenario":
+                    scenario = ImpairmentScenario.load(value);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                default:
+                    conditions.set(key, value);
+            }
+        }
+
+        ImpairmentProxy proxy = new ImpairmentProxy(listenPort, target, conditions, seed);
+        proxy.setScenario(scenario);
+        System.out.println("Impairment proxy listening on port " + proxy.getLocalAddress().getPort() + " for "
+                + target + (scenario == null ? " with " + conditions : " running a scenario"));
+        proxy.run();
+    }
+
+    /**
+     * @param scenario the scenario to run from the next time the proxy is started, or null to keep the conditions
+     * as they are
+     */
+    public void setScenario(ImpairmentScenario scenario) {
+        this.scenario = scenario;
+    }
+
+    /**
+     * Starts passing datagrams on. Returns straight away.
+     */
+    public void start() {
+        long now = System.nanoTime();
+        scenarioStart = now;
+        scenarioStep = -1;
+        listener.register(engine, this::fromClient);
+        engine.startTicking(this::tick, RELEASE_RATE);
+    }
+
+    /**
+     * Starts passing datagrams on and waits until the proxy is closed
+     */
+    public void run() {
+        start();
+        try {
+            closed.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the proxy and closes every socket
+     */
+    public void close() {
+        engine.shutdown();
+        listener.close();
+        for (Transport upstream : upstreams.values()) {
+            upstream.close();
+        }
+        closed.countDown();
+    }
+
+    /**
+     * @return the address clients connect to
+     */
+    public InetSocketAddress getLocalAddress() {
+        return listener.getLocalAddress();
+    }
+
+    /**
+     * @return the conditions of the links
+     */
+    public NetworkConditions getConditions() {
+        return conditions;
+    }
+
+    /* a datagram from a client, which opens a socket to the server for it the first time it is heard from */
+    private void fromClient(ByteBuffer data, SocketAddress client) {
+        if (!upstreams.containsKey(client)) {
+            Transport upstream;
+            try {
+                upstream = UdpTransport.connect(target);
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            upstreams.put(client, upstream);
+            upstream.register(engine, (reply, server) -> toClients.submit(reply, client, System.nanoTime()));
+        }
+        toServer.submit(data, client, System.nanoTime());
+    }
+
+    /* move to the next step of the scenario and release the datagrams which are due, on the engine thread */
+    private void tick() {
+        long now = System.nanoTime();
+        ImpairmentScenario currentScenario = scenario;
+        if (currentScenario != null) {
+            int step = currentScenario.stepAt(TimeUnit.NANOSECONDS.toMillis(now - scenarioStart));
+            if (step != scenarioStep && step >= 0) {
+                currentScenario.apply(step, conditions);
+                scenarioStep = step;
+            }
+        }
+        toServer.release(now, serverSink);
+        toClients.release(now, clientSink);
+    }
+
+    private static void send(Transport transport, ByteBuffer data, SocketAddress address) {
+        if (transport == null) {
+            return;
+        }
+        try {
+            transport.send(data, address);
+        }
+        catch (PortUnreachableException e) {
+            //The other end has gone, as can happen on a real network
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An ImpairmentScenario changes the {@link NetworkConditions} of an {@link ImpairmentProxy} over time, so that the
+ * same sequence of bad network conditions can be replayed, e.g. in a test.
+ * <p>
+ * A scenario is written one step per line: the time from the start of the scenario in milliseconds, followed by the
+ * conditions from then on, as parsed by {@link NetworkConditions#parse(String)}. Each step replaces every condition,
+ * so a step with no conditions goes back to a clean network. Blank lines and lines starting with {@code #} are
+ * ignored, e.g.
+ * <pre>
+ * # clean, then a slow link, then a burst of loss
+ * 0
+ * 2000 delay=150 jitter=30
+ * 5000 delay=150 jitter=30 burst-loss=5 burst-length=8
+ * </pre>
+ */
+public class ImpairmentScenario {
+
+    private final List<Step> steps;
+
+    private ImpairmentScenario(List<Step> steps){
+        this.steps = steps;
+    }
+
+    /**
+     * @param text the scenario
+     * @return the parsed scenario
+     * @throws IllegalArgumentException if a line cannot be parsed or the steps are not in order
+     */
+    public static ImpairmentScenario parse(String text){
+        List<Step> steps = new ArrayList<>();
+        long previous = -1;
+        for(String line : text.split("\n")){
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")){
+                continue;
+            }
+            String[] timeAndConditions = line.split("\\s+", 2);
+            long time;
+            try {
+                time = Long.parseLong(timeAndConditions[0]);
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected a time in milliseconds: " + line, e);
+            }
+            if(time < previous){
+                throw new IllegalArgumentException("Steps are not in order: " + line);
+            }
+            previous = time;
+            steps.add(new Step(time, NetworkConditions.parse(
+                    timeAndConditions.length > 1 ? timeAndConditions[1] : "")));
+        }
+        return new ImpairmentScenario(steps);
+    }
+
+    /**
+     * @param file the path of a file containing a scenario
+     * @return the parsed scenario
+     * @throws IOException if the file could not be read
+     * @throws IllegalArgumentException if the scenario cannot be parsed
+     */
+    public static ImpairmentScenario load(String file) throws IOException {
+        return parse(new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param elapsed the time since the start of the scenario, in milliseconds
+     * @return the index of the latest step which has started, or -1 if none has
+     */
+    public int stepAt(long elapsed){
+        int current = -1;
+        for(int i = 0; i < steps.size() && steps.get(i).time <= elapsed; i++){
+            current = i;
+        }
+        return current;
+    }
+
+    /**
+     * Sets conditions to those of a step
+     * @param step the index of the step, as returned by {@link #stepAt(long)}
+     * @param conditions the conditions to set
+     */
+    public void apply(int step, NetworkConditions conditions){
+        conditions.copyFrom(steps.get(step).conditions);
+    }
+
+    /**
+     * @return the time the last step starts, in milliseconds
+     */
+    public long getLength(){
+        return steps.isEmpty() ? 0 : steps.get(steps.size() - 1).time;
+    }
+
+    /* the conditions from a time onwards */
+    private static final class Step {
+        final long time;
+        final NetworkConditions conditions;
+
+        Step(long time, NetworkConditions conditions){
+            this.time = time;
+            this.conditions = conditions;
+        }
+    }
+}
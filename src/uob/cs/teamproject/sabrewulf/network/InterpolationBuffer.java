@@ -0,0 +1,128 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import uob.cs.teamproject.sabrewulf.util.XYPair;
+
+/**
+ * The InterpolationBuffer keeps the most recent time-stamped states received for one remote character, so that the
+ * character can be drawn a short delay in the past, moving smoothly between the two states either side of that time
+ * however unevenly the packets arrived.
+ * If no newer state has arrived in time, the character keeps moving at its last known velocity for a bounded time.
+ * Only used by one thread at a time: the {@link NetworkEngine} thread adds states to its own buffers and
+ * {@link DataStorage} hands copies of them to the game thread, which samples them.
+ */
+public class InterpolationBuffer {
+
+    /** the number of states kept */
+    public static final int CAPACITY = 32;
+
+    private final long maxExtrapolation;
+
+    /* ring of states, the newest at index (head - 1) */
+    private final long[] times;
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] bits;
+    private int head;
+    private int count;
+
+    /**
+     * @param maxExtrapolation the longest time past the newest state the character is extrapolated, in nanoseconds
+     */
+    public InterpolationBuffer(long maxExtrapolation){
+        this.maxExtrapolation = maxExtrapolation;
+        times = new long[CAPACITY];
+        xs = new double[CAPACITY];
+        ys = new double[CAPACITY];
+        bits = new int[CAPACITY];
+    }
+
+    /**
+     * Adds a state. States older than the newest state already added are ignored.
+     * @param time the time of the state, in nanoseconds on the {@link System#nanoTime()} clock
+     * @param x the x position of the character
+     * @param y the y position of the character
+     * @param stateBits the packed directions and flags of the character, as written by {@link Protocol}
+     */
+    public void add(long time, double x, double y, int stateBits){
+        if(count > 0 && time - times[index(count - 1)] <= 0){
+            return;
+        }
+        times[head] = time;
+        xs[head] = x;
+        ys[head] = y;
+        bits[head] = stateBits;
+        head = (head + 1) % CAPACITY;
+        if(count < CAPACITY){
+            count++;
+        }
+    }
+
+    /**
+     * Finds the state of the character at a time
+     * @param renderTime the time to draw the character at, in nanoseconds on the {@link System#nanoTime()} clock
+     * @param position set to the position of the character at that time
+     * @return the packed directions and flags of the state before that time, or -1 if no state has been added
+     */
+    public int sample(long renderTime, XYPair position){
+        if(count == 0){
+            return -1;
+        }
+        /* before the oldest state: hold it */
+        if(renderTime - times[index(0)] <= 0){
+            position.x = xs[index(0)];
+            position.y = ys[index(0)];
+            return bits[index(0)];
+        }
+
+        int newest = index(count - 1);
+        if(renderTime - times[newest] >= 0){
+            position.x = xs[newest];
+            position.y = ys[newest];
+            if(count > 1){
+                int previous = index(count - 2);
+                double elapsed = Math.min(renderTime - times[newest], maxExtrapolation);
+                double interval = times[newest] - times[previous];
+                position.x += (xs[newest] - xs[previous]) * elapsed / interval;
+                position.y += (ys[newest] - ys[previous]) * elapsed / interval;
+            }
+            return bits[newest];
+        }
+
+        int i = count - 2;
+        while(renderTime - times[index(i)] < 0){
+            i--;
+        }
+        int from = index(i);
+        int to = index(i + 1);
+        double alpha = (double) (renderTime - times[from]) / (times[to] - times[from]);
+        position.x = xs[from] + (xs[to] - xs[from]) * alpha;
+        position.y = ys[from] + (ys[to] - ys[from]) * alpha;
+        return bits[from];
+    }
+
+    /**
+     * Removes every state, e.g. when a new game starts
+     */
+    public void clear(){
+        head = 0;
+        count = 0;
+    }
+
+    /**
+     * Makes this buffer hold the same states as another, without allocating
+     * @param other the buffer to copy
+     */
+    public void copyFrom(InterpolationBuffer other){
+        System.arraycopy(other.times, 0, times, 0, CAPACITY);
+        System.arraycopy(other.xs, 0, xs, 0, CAPACITY);
+        System.arraycopy(other.ys, 0, ys, 0, CAPACITY);
+        System.arraycopy(other.bits, 0, bits, 0, CAPACITY);
+        head = other.head;
+        count = other.count;
+    }
+
+    /* the ring index of the i-th oldest state */
+    private int index(int i){
+        return (head - count + i + CAPACITY) % CAPACITY;
+    }
+}
@@ -0,0 +1,678 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import uob.cs.teamproject.sabrewulf.GameSettings;
+import uob.cs.teamproject.sabrewulf.ui.selectors.DIFFICULTY;
+import uob.cs.teamproject.sabrewulf.ui.selectors.MODE;
+import uob.cs.teamproject.sabrewulf.ui.selectors.MODEL;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A LoadTest joins a number of {@link BotClient}s to one server, lets them play for a while and reports how the
+ * server and the network path coped: the percentiles of the server tick duration, the packets and bytes sent and
+ * received per second, the garbage collection pauses and the end-to-end latency of the inputs of the bots.
+ * Any number of {@link SpectatorClient}s can watch the game as well, to measure what spectators cost the server.
+ * <p>
+ * The server is a {@link DedicatedServer} started in the same process, unless the address of a server elsewhere is
+ * given, in which case only what the bots can see is reported. The garbage collection pauses are those of the whole
+ * process, i.e. of the bots as well as of a server in the same process.
+ * <p>
+ * Each run appends one row to a CSV report, so that a file collects the results of many runs and a regression shows
+ * up as a change in the numbers. It can be run with the {@code --load-test} command line argument, e.g.
+ * {@code --load-test --players 8 --duration 30 --report load-test.csv}.
+ */
+public class LoadTest {
+
+    /** the file the report is appended to if none is given */
+    public static final String DEFAULT_REPORT = "load-test.csv";
+
+    /* the bots send an input command every frame, as the game loop of a client does */
+    private static final int FRAME_RATE = 60;
+    /* how long every bot has to join and the game to start */
+    private static final long JOIN_TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+
+    private final int players;
+    private final int numberOfEnemies;
+    private final SocketAddress target;
+    private BotScript script;
+    private long seed;
+    private int spectators;
+
+    /**
+     * @param players the number of bots, which is also the number of players in the game
+     * @param numberOfEnemies the number of enemies
+     * @param target the address of the server, or null to start a {@link DedicatedServer} in the same process
+     */
+    public LoadTest(int players, int numberOfEnemies, SocketAddress target) {
+        this.players = players;
+        this.numberOfEnemies = numberOfEnemies;
+        this.target = target;
+        seed = System.nanoTime();
+    }
+
+    /**
+     * The entry point of a load test, which runs once and appends the report to a file
+     * @param args the command line arguments: {@code --players}, {@code --difficulty}, {@code --tick-rate},
+     * {@code --enemy-threshold} in pixels, {@code --keyframe-interval} in milliseconds, {@code --client-budget} in
+     * bytes per tick, {@code --interest-radius} in cells, {@code --min-send-rate} and {@code --max-send-rate} in
+     * messages per second, {@code --spectators}, {@code --warmup} and {@code --duration} in seconds,
+     * {@code --target} as host:port, {@code --script} as the path of a {@link BotScript} file, {@code --seed} and
+     * {@code --report}, each followed by its value; any other argument is ignored
+     * @throws IOException if the test could not be run or the report could not be written
+     */
+    public static void main(String[] args) throws IOException {
+        int players = 4;
+        DIFFICULTY difficulty = DIFFICULTY.EASY;
+        int spectators = 0;
+        long warmup = 5;
+        long duration = 30;
+        SocketAddress target = null;
+        BotScript script = null;
+        Long seed = null;
+        String report = DEFAULT_REPORT;
+        for (int i = 0; i + 1 < args.length; i++) {
+            switch (args[i]) {
+                case "--players":
+                    players = Integer.parseInt(args[++i]);
+                    break;
+                case "--difficulty":
+                    difficulty = DIFFICULTY.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--tick-rate":
+                    GameSettings.setServerTickRate(Integer.parseInt(args[++i]));
+                    break;
+                case "--enemy-threshold":
+                    GameSettings.setEnemyCorrectionThreshold(Double.parseDouble(args[++i]));
+                    break;
+                case "--keyframe-interval":
+                    GameSettings.setEnemyKeyframeInterval(Integer.parseInt(args[++i]));
+                    break;
+                case "--client-budget":
+                    GameSettings.setClientBandwidthBudget(Integer.parseInt(args[++i]));
+                    break;
+                case "--interest-radius":
+                    GameSettings.setInterestRadius(Integer.parseInt(args[++i]));
+                    break;
+                case "--min-send-rate":
+                    GameSettings.setMinSendRate(Integer.parseInt(args[++i]));
+                    break;
+                case "--max-send-rate":
+                    GameSettings.setMaxSendRate(Integer.parseInt(args[++i]));
+                    break;
+                case "--spectators":
+                    spectators = Integer.parseInt(args[++i]);
+                    break;
+                case "--warmup":
+                    warmup = Long.parseLong(args[++i]);
+                    break;
+                case "--duration":
+                    duration = Long.parseLong(args[++i]);
+                    break;
+                case "--target":
+                    String value = args[++i];
+                    int colon = value.lastIndexOf(':');
+                    target = new InetSocketAddress(value.substring(0, colon),
+                            Integer.parseInt(value.substring(colon + 1)));
+                    break;
+                case "--script":
+                    script = BotScript.load(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--report":
+                    report = args[++i];
+                    break;
+            }
+        }
+        GameSettings.setGameMode(MODE.MULTIPLAYER);
+        GameSettings.setDifficulty(difficulty);
+        int numberOfEnemies = difficulty == DIFFICULTY.EASY ? 3 : 4;
+
+        LoadTest test = new LoadTest(players, numberOfEnemies, target);
+        test.setScript(script);
+        test.setSpectators(spectators);
+        if (seed != null) {
+            test.setSeed(seed);
+        }
+        System.out.println("Load test of " + players + " bots and " + spectators + " spectators against "
+                + (target == null ? "a server in this process" : target.toString()));
+        Report result = test.run(TimeUnit.SECONDS.toMillis(warmup), TimeUnit.SECONDS.toMillis(duration));
+        result.append(report);
+        System.out.print(result);
+    }
+
+    /**
+     * @param script the movement every bot repeats, or null for the bots to walk at random
+     */
+    public void setScript(BotScript script) {
+        this.script = script;
+    }
+
+    /**
+     * @param seed the seed of the random walks, each bot using a different seed derived from it
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param spectators the number of spectators which watch the game once it has started
+     */
+    public void setSpectators(int spectators) {
+        this.spectators = spectators;
+    }
+
+    /**
+     * Joins every bot to the server, waits for the game to start, lets the bots play for the warmup and then
+     * measures for the duration. Blocks until the test is over, then closes the bots and any server it started.
+     * @param warmup how long to play before measuring, in milliseconds
+     * @param duration how long to measure for, in milliseconds
+     * @return the report
+     * @throws IOException if the server could not be started or a bot could not join in time
+     */
+    public Report run(long warmup, long duration) throws IOException {
+        /* bots are clients which do not own the enemies, so they do not send the state of the enemies */
+        MODEL model = GameSettings.getModel();
+        GameSettings.setModel(MODEL.CLIENT);
+        ExecutorService joining = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "load-test-join");
+            thread.setDaemon(true);
+            return thread;
+        });
+        MeasuredServer server = null;
+        NetworkEngine serverEngine = null;
+        BotClient[] bots = new BotClient[players];
+        SpectatorClient[] watchers = new SpectatorClient[spectators];
+        List<NetworkEngine> botEngines = new ArrayList<>();
+        GcPauses gcPauses = new GcPauses();
+        try {
+            SocketAddress address = target;
+            Future<?> hosting = null;
+            if (address == null) {
+                server = new MeasuredServer(players, numberOfEnemies,
+                        new CountingTransport(UdpTransport.bind(0)));
+                serverEngine = new NetworkEngine("load-test-server");
+                address = new InetSocketAddress("localhost", server.transport.getLocalAddress().getPort());
+                hosting = joining.submit(host(server, serverEngine));
+            }
+
+            List<Future<?>> joins = new ArrayList<>();
+            for (int i = 0; i < players; i++) {
+                int bot = i;
+                SocketAddress serverAddress = address;
+                joins.add(joining.submit(() -> {
+                    bots[bot] = new BotClient(players, numberOfEnemies, "bot" + bot, serverAddress, script,
+                            seed + bot);
+                    bots[bot].join();
+                    return null;
+                }));
+            }
+            long deadline = System.nanoTime() + JOIN_TIMEOUT;
+            for (Future<?> join : joins) {
+                await(join, deadline);
+            }
+            if (hosting != null) {
+                await(hosting, deadline);
+            }
+
+            int engineCount = Math.max(1, Math.min(players, Runtime.getRuntime().availableProcessors() / 2));
+            List<List<BotClient>> groups = new ArrayList<>();
+            for (int e = 0; e < engineCount; e++) {
+                NetworkEngine engine = new NetworkEngine("load-test-bots-" + e);
+                List<BotClient> group = new ArrayList<>();
+                for (int i = e; i < players; i += engineCount) {
+                    bots[i].attach(engine);
+                    group.add(bots[i]);
+                }
+                engine.startTicking(step(group, new ArrayList<>()), FRAME_RATE);
+                botEngines.add(engine);
+                groups.add(group);
+            }
+            for (BotClient bot : bots) {
+                while (!bot.getStart()) {
+                    if (System.nanoTime() - deadline > 0) {
+                        throw new IOException("The game was not started in time");
+                    }
+                }
+            }
+
+            /* spectators can only join once the game is running, and are stepped by the engines of the bots */
+            List<Future<?>> watches = new ArrayList<>();
+            for (int i = 0; i < spectators; i++) {
+                int watcher = i;
+                SocketAddress serverAddress = address;
+                watches.add(joining.submit(() -> {
+                    watchers[watcher] = new SpectatorClient(players, numberOfEnemies, serverAddress);
+                    watchers[watcher].watch();
+                    return null;
+                }));
+            }
+            long watchDeadline = System.nanoTime() + JOIN_TIMEOUT;
+            for (Future<?> watch : watches) {
+                await(watch, watchDeadline);
+            }
+            if (spectators > 0) {
+                for (int e = 0; e < engineCount; e++) {
+                    NetworkEngine engine = botEngines.get(e);
+                    List<SpectatorClient> group = new ArrayList<>();
+                    for (int i = e; i < spectators; i += engineCount) {
+                        watchers[i].attach(engine);
+                        group.add(watchers[i]);
+                    }
+                    engine.startTicking(step(groups.get(e), group), FRAME_RATE);
+                }
+            }
+
+            sleep(warmup);
+            long serverPacketsSent = 0, serverBytesSent = 0, serverPacketsReceived = 0, serverBytesReceived = 0;
+            if (server != null) {
+                CountingTransport counting = (CountingTransport) server.transport;
+                serverPacketsSent = counting.packetsSent.get();
+                serverBytesSent = counting.bytesSent.get();
+                serverPacketsReceived = counting.packetsReceived.get();
+                serverBytesReceived = counting.bytesReceived.get();
+                server.measuring = true;
+            }
+            for (BotClient bot : bots) {
+                bot.setMeasuring(true);
+            }
+            for (SpectatorClient spectator : watchers) {
+                spectator.setMeasuring(true);
+            }
+            gcPauses.start();
+            long start = System.nanoTime();
+            sleep(duration);
+            gcPauses.stop();
+            for (BotClient bot : bots) {
+                bot.setMeasuring(false);
+            }
+            for (SpectatorClient spectator : watchers) {
+                spectator.setMeasuring(false);
+            }
+            double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+
+            /* stop every thread which records samples before reading them */
+            for (NetworkEngine engine : botEngines) {
+                engine.shutdown();
+            }
+            botEngines.clear();
+            if (server != null) {
+                server.measuring = false;
+                serverEngine.stopTicking();
+            }
+
+            Report report = new Report();
+            report.put("time_ms", System.currentTimeMillis());
+            report.put("players", players);
+            report.put("spectators", spectators);
+            report.put("duration_s", seconds);
+            report.put("tick_rate", server == null ? null : server.getTickRate());
+            report.put("ticks", server == null ? null : server.tickTimes.size());
+            report.putMillis("tick_p50_ms", server == null ? null : server.tickTimes.percentile(50));
+            report.putMillis("tick_p90_ms", server == null ? null : server.tickTimes.percentile(90));
+            report.putMillis("tick_p99_ms", server == null ? null : server.tickTimes.percentile(99));
+            report.putMillis("tick_max_ms", server == null ? null : server.tickTimes.max());
+            if (server != null) {
+                CountingTransport counting = (CountingTransport) server.transport;
+                report.put("server_packets_sent_per_s", (counting.packetsSent.get() - serverPacketsSent) / seconds);
+                report.put("server_bytes_sent_per_s", (counting.bytesSent.get() - serverBytesSent) / seconds);
+                report.put("server_packets_received_per_s",
+                        (counting.packetsReceived.get() - serverPacketsReceived) / seconds);
+                report.put("server_bytes_received_per_s",
+                        (counting.bytesReceived.get() - serverBytesReceived) / seconds);
+            }
+            else {
+                report.put("server_packets_sent_per_s", null);
+                report.put("server_bytes_sent_per_s", null);
+                report.put("server_packets_received_per_s", null);
+                report.put("server_bytes_received_per_s", null);
+            }
+            long inputs = 0, packetsReceived = 0, bytesReceived = 0;
+            Samples latency = new Samples();
+            for (BotClient bot : bots) {
+                inputs += bot.getInputsSent();
+                packetsReceived += bot.getPacketsReceived();
+                bytesReceived += bot.getBytesReceived();
+                latency.addAll(bot.getLatency());
+            }
+            report.put("bot_inputs_sent_per_s", inputs / seconds);
+            report.put("bot_packets_received_per_s", packetsReceived / seconds);
+            report.put("bot_bytes_received_per_s", bytesReceived / seconds);
+            long spectatorPackets = 0, spectatorBytes = 0;
+            for (SpectatorClient spectator : watchers) {
+                spectatorPackets += spectator.getPacketsReceived();
+                spectatorBytes += spectator.getBytesReceived();
+            }
+            report.put("spectator_packets_received_per_s", spectatorPackets / seconds);
+            report.put("spectator_bytes_received_per_s", spectatorBytes / seconds);
+            report.put("latency_samples", latency.size());
+            report.putMillis("latency_p50_ms", latency.percentile(50));
+            report.putMillis("latency_p90_ms", latency.percentile(90));
+            report.putMillis("latency_p99_ms", latency.percentile(99));
+            report.putMillis("latency_max_ms", latency.max());
+            synchronized (gcPauses) {
+                report.put("gc_pauses", gcPauses.pauses.size());
+                report.putMillis("gc_pause_total_ms", gcPauses.pauses.sum());
+                report.putMillis("gc_pause_max_ms", gcPauses.pauses.max());
+            }
+            return report;
+        }
+        finally {
+            gcPauses.stop();
+            for (NetworkEngine engine : botEngines) {
+                engine.shutdown();
+            }
+            for (BotClient bot : bots) {
+                if (bot != null) {
+                    bot.close();
+                }
+            }
+            for (SpectatorClient spectator : watchers) {
+                if (spectator != null) {
+                    spectator.close();
+                }
+            }
+            if (server != null) {
+                serverEngine.shutdown();
+                server.endGame();
+                server.closeChannel();
+            }
+            joining.shutdownNow();
+            GameSettings.setModel(model);
+        }
+    }
+
+    /* step a group of bots and spectators on every frame of the engine they are attached to */
+    private static Runnable step(List<BotClient> bots, List<SpectatorClient> spectators) {
+        return () -> {
+            long now = System.nanoTime();
+            for (BotClient bot : bots) {
+                bot.step(now);
+            }
+            for (SpectatorClient spectator : spectators) {
+                spectator.step(now);
+            }
+        };
+    }
+
+    /* run the lobby handshake of the server, then start ticking it, on a joining thread */
+    private static Callable<Void> host(MeasuredServer server, NetworkEngine engine) {
+        return () -> {
+            server.start();
+            server.beginGame();
+            server.transport.register(engine, server::onPacket);
+            engine.startTicking(server::tick, server.getTickRate());
+            server.sendStart();
+            return null;
+        };
+    }
+
+    private static void await(Future<?> future, long deadline) throws IOException {
+        try {
+            future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        catch (TimeoutException e) {
+            throw new IOException("Not every bot joined in time", e);
+        }
+        catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while the bots joined", e);
+        }
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during the load test", e);
+        }
+    }
+
+    /**
+     * The results of a load test, by name in the order they are reported in. A result which could not be measured,
+     * e.g. the tick duration of a server in another process, has no value.
+     */
+    public static final class Report {
+
+        private final Map<String, Number> results = new LinkedHashMap<>();
+
+        private Report() {
+        }
+
+        /**
+         * @param name the name of a result, as in the header of the report file
+         * @return the value of the result, or NaN if it was not measured
+         */
+        public double get(String name) {
+            Number value = results.get(name);
+            return value == null ? Double.NaN : value.doubleValue();
+        }
+
+        /**
+         * Appends the results as a row of a CSV file, writing the header first if the file is new or empty
+         * @param file the path of the file
+         * @throws IOException if the file could not be written
+         */
+        public void append(String file) throws IOException {
+            Path path = Paths.get(file);
+            boolean empty = !Files.exists(path) || Files.size(path) == 0;
+            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                if (empty) {
+                    writer.write(String.join(",", results.keySet()));
+                    writer.newLine();
+                }
+                List<String> values = new ArrayList<>();
+                for (Number value : results.values()) {
+                    values.add(format(value));
+                }
+                writer.write(String.join(",", values));
+                writer.newLine();
+            }
+        }
+
+        /**
+         * @return one result per line
+         */
+        @Override
+        public String toString() {
+            StringBuilder str = new StringBuilder();
+            for (Map.Entry<String, Number> result : results.entrySet()) {
+                str.append(result.getKey()).append(": ").append(format(result.getValue()))
+                        .append(System.lineSeparator());
+            }
+            return str.toString();
+        }
+
+        private void put(String name, Number value) {
+            results.put(name, value);
+        }
+
+        /* a duration in nanoseconds, reported in milliseconds */
+        private void putMillis(String name, Long nanos) {
+            results.put(name, nanos == null ? null : nanos / 1e6);
+        }
+
+        private static String format(Number value) {
+            if (value == null) {
+                return "";
+            }
+            if (value instanceof Double) {
+                return String.format(Locale.ROOT, "%.3f", value.doubleValue());
+            }
+            return value.toString();
+        }
+    }
+
+    /* a dedicated server which records the duration of each tick while it is being measured */
+    private static final class MeasuredServer extends DedicatedServer {
+
+        volatile boolean measuring;
+        /* only used on the server engine thread until it has stopped ticking */
+        final Samples tickTimes = new Samples();
+
+        MeasuredServer(int numberOfPlayers, int numberOfEnemies, Transport transport) throws SocketException {
+            super(numberOfPlayers, numberOfEnemies, transport);
+        }
+
+        @Override
+        protected void tick() {
+            long start = System.nanoTime();
+            super.tick();
+            if (measuring) {
+                tickTimes.add(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /* passes everything on to another transport, counting the packets and bytes sent and received */
+    private static final class CountingTransport implements Transport {
+
+        private final Transport transport;
+        final AtomicLong packetsSent = new AtomicLong();
+        final AtomicLong bytesSent = new AtomicLong();
+        final AtomicLong packetsReceived = new AtomicLong();
+        final AtomicLong bytesReceived = new AtomicLong();
+
+        CountingTransport(Transport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public void send(ByteBuffer data, SocketAddress target) throws IOException {
+            int size = data.remaining();
+            transport.send(data, target);
+            packetsSent.incrementAndGet();
+            bytesSent.addAndGet(size);
+        }
+
+        @Override
+        public void send(ByteBuffer data, SocketAddress[] targets, int count) throws IOException {
+            int size = data.remaining();
+            transport.send(data, targets, count);
+            packetsSent.addAndGet(count);
+            bytesSent.addAndGet((long) size * count);
+        }
+
+        @Override
+        public SocketAddress receive(ByteBuffer buffer) throws IOException {
+            int start = buffer.position();
+            SocketAddress sender = transport.receive(buffer);
+            packetsReceived.incrementAndGet();
+            bytesReceived.addAndGet(buffer.position() - start);
+            return sender;
+        }
+
+        @Override
+        public void setTimeout(int timeout) throws SocketException {
+            transport.setTimeout(timeout);
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return transport.getLocalAddress();
+        }
+
+        @Override
+        public void register(NetworkEngine engine, NetworkEngine.PacketHandler handler) {
+            transport.register(engine, (data, sender) -> {
+                packetsReceived.incrementAndGet();
+                bytesReceived.addAndGet(data.remaining());
+                handler.onPacket(data, sender);
+            });
+        }
+
+        @Override
+        public void unregister(NetworkEngine engine) {
+            transport.unregister(engine);
+        }
+
+        @Override
+        public void close() {
+            transport.close();
+        }
+    }
+
+    /* records the duration of every garbage collection pause while started */
+    private static final class GcPauses implements NotificationListener {
+
+        final Samples pauses = new Samples();
+        private final List<NotificationEmitter> emitters = new ArrayList<>();
+
+        synchronized void start() {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector instanceof NotificationEmitter) {
+                    NotificationEmitter emitter = (NotificationEmitter) collector;
+                    emitter.addNotificationListener(this, null, null);
+                    emitters.add(emitter);
+                }
+            }
+        }
+
+        synchronized void stop() {
+            for (NotificationEmitter emitter : emitters) {
+                try {
+                    emitter.removeNotificationListener(this);
+                }
+                catch (ListenerNotFoundException e) {
+                    //Already removed
+                }
+            }
+            emitters.clear();
+        }
+
+        @Override
+        public synchronized void handleNotification(Notification notification, Object handback) {
+            String type = notification.getType();
+            if (emitters.isEmpty() || !type.equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            /* concurrent collectors report their cycles as well as their pauses, but the cycles run alongside the
+             * game and do not stop it */
+            String name = info.getGcName();
+            if (name.contains("Concurrent") || name.contains("Cycles")) {
+                return;
+            }
+            pauses.add(TimeUnit.MILLISECONDS.toNanos(info.getGcInfo().getDuration()));
+        }
+    }
+}
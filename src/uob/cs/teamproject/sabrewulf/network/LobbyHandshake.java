@@ -0,0 +1,268 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import uob.cs.teamproject.sabrewulf.exceptions.UsernameUnavailableException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The LobbyHandshake loads a game for a {@link NetworkSystem} on its own thread, so the thread which asks for it,
+ * usually the JavaFX application thread, never waits on the network.
+ * It is a state machine which moves through the {@link Stage}s of joining a game as the messages from the server
+ * arrive: the username is sent until the server answers, the usernames of the players are read until everyone has
+ * joined, then the map and the spawn positions are read, and finally the engines are started. Each stage has its own
+ * timeout and the handshake can be cancelled at any time; the socket is polled every {@link #POLL} milliseconds, so
+ * moving to the next stage only waits for the server, never for a long blocking call.
+ * If this player hosts the game, the lobby of the {@link Server} runs on another thread at the same time.
+ * Every change is reported to a {@link Listener} on the thread of the handshake.
+ */
+public final class LobbyHandshake {
+
+    /**
+     * The stages of loading a game, in order
+     */
+    public enum Stage {
+        /** the username has been sent and the server has not answered yet */
+        JOINING,
+        /** the server has accepted the username and other players are still joining */
+        WAITING_FOR_PLAYERS,
+        /** every player has joined and the map is being received */
+        LOADING_MAP,
+        /** the map has been received and the spawn positions are being received */
+        LOADING_SPAWNS,
+        /** the game has loaded and is waiting for the host to start it */
+        LOADED,
+        /** the handshake has failed, see {@link Listener#onFailed(Exception)} */
+        FAILED,
+        /** the handshake was cancelled */
+        CANCELLED
+    }
+
+    /**
+     * Receives the progress of a handshake. Every method is called on the thread of the handshake.
+     */
+    public interface Listener {
+        /**
+         * Called whenever the handshake moves to another stage or another player joins
+         * @param stage the current stage
+         * @param usernames the usernames of the players which have joined so far
+         */
+        void onProgress(Stage stage, List<String> usernames);
+
+        /**
+         * Called once, when the handshake fails
+         * @param e a {@link UsernameUnavailableException} if the username is taken, otherwise an {@link IOException}
+         */
+        void onFailed(Exception e);
+    }
+
+    /** how often the socket is polled for messages and the handshake checked for cancellation, in milliseconds */
+    public static final int POLL = 50;
+    /** how long the server has to answer the username, in milliseconds */
+    public static final long JOIN_TIMEOUT = 5000;
+    /** how long the other players have to join, in milliseconds, as long as the server waits for them */
+    public static final long PLAYERS_TIMEOUT = 300000;
+    /** how long the map and then the spawn positions each have to arrive, in milliseconds */
+    public static final long LOAD_TIMEOUT = 10000;
+    /* how often the username is sent again while the server has not answered, in milliseconds */
+    private static final long RESEND_INTERVAL = 250;
+
+    private final NetworkSystem networkSystem;
+    private final Client client;
+    private final Server server;
+    private final Listener listener;
+    private final Thread thread;
+
+    private volatile Stage stage;
+    private volatile boolean cancelled;
+    /* why the handshake or the lobby of the server failed */
+    private volatile Exception failure;
+    private Thread serverThread;
+
+    /**
+     * @param networkSystem the network system to start the engines of once the game has loaded
+     * @param client the client
+     * @param server the server, if this player hosts the game, or null
+     * @param listener told about the progress of the handshake, or null
+     */
+    LobbyHandshake(NetworkSystem networkSystem, Client client, Server server, Listener listener){
+        this.networkSystem = networkSystem;
+        this.client = client;
+        this.server = server;
+        this.listener = listener;
+        stage = Stage.JOINING;
+        thread = new Thread(this::run, "lobby-handshake");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts the handshake, and the lobby of the server if there is one
+     */
+    void begin(){
+        if(server != null){
+            serverThread = new Thread(this::host, "server-lobby");
+            serverThread.setDaemon(true);
+            serverThread.start();
+        }
+        thread.start();
+    }
+
+    /**
+     * Stops the handshake and the lobby of the server within {@link #POLL} milliseconds, after which the stage is
+     * {@link Stage#CANCELLED} unless the game had already loaded. Can be called from any thread.
+     */
+    public void cancel(){
+        cancelled = true;
+        if(server != null){
+            server.cancelLobby();
+        }
+    }
+
+    /**
+     * @return the current stage
+     */
+    public Stage getStage(){
+        return stage;
+    }
+
+    /**
+     * Waits until the handshake has finished
+     * @throws IOException if the handshake failed or was cancelled
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * @throws UsernameUnavailableException if the username is unavailable
+     */
+    public void await() throws IOException, InterruptedException, UsernameUnavailableException {
+        thread.join();
+        Exception e = failure;
+        if(e instanceof UsernameUnavailableException){
+            throw (UsernameUnavailableException) e;
+        }
+        if(e instanceof IOException){
+            throw (IOException) e;
+        }
+        if(stage == Stage.CANCELLED){
+            throw new InterruptedIOException("The handshake was cancelled");
+        }
+    }
+
+    /* run the lobby of the server until the spawn positions have been sent, then start its engine */
+    private void host(){
+        try {
+            server.start();
+            server.sendRandomCoordinates();
+            networkSystem.startServerEngine();
+        }
+        catch (IOException e) {
+            /* the lobby is also cancelled when the handshake fails, which has already recorded why */
+            if(!cancelled && failure == null){
+                failure = e;
+            }
+        }
+    }
+
+    private void run(){
+        try {
+            client.beginLobby();
+            client.transport.setTimeout(POLL);
+            client.sendUsername();
+            long lastSent = System.currentTimeMillis();
+            long deadline = lastSent + JOIN_TIMEOUT;
+            report(Stage.JOINING);
+            while (stage != Stage.LOADED) {
+                if(cancelled){
+                    stopServer();
+                    report(Stage.CANCELLED);
+                    return;
+                }
+                if(failure != null){
+                    throw failure;
+                }
+                long now = System.currentTimeMillis();
+                if(now - deadline >= 0){
+                    throw new SocketTimeoutException("Timed out at stage " + stage);
+                }
+                if(stage == Stage.JOINING && now - lastSent >= RESEND_INTERVAL){
+                    /* the username is sent as a single datagram, so send it again until the server answers */
+                    client.sendUsername();
+                    lastSent = now;
+                }
+                ByteBuffer message;
+                try {
+                    message = client.pollMessage();
+                }
+                catch (SocketTimeoutException e) {
+                    continue;
+                }
+                if(message != null){
+                    deadline = handle(message, now, deadline);
+                }
+            }
+            if(serverThread != null){
+                serverThread.join();
+                if(failure != null){
+                    throw failure;
+                }
+            }
+            networkSystem.startClientEngine();
+            report(Stage.LOADED);
+        }
+        catch (Exception e) {
+            if(cancelled){
+                report(Stage.CANCELLED);
+                return;
+            }
+            failure = e instanceof UsernameUnavailableException || e instanceof IOException
+                    ? e : new IOException(e);
+            stopServer();
+            stage = Stage.FAILED;
+            if(listener != null){
+                listener.onFailed(failure);
+            }
+        }
+    }
+
+    /* move to the next stage with a message from the server, returning the deadline of the stage it is now at */
+    private long handle(ByteBuffer message, long now, long deadline) throws IOException, UsernameUnavailableException {
+        switch (stage) {
+            case JOINING:
+            case WAITING_FOR_PLAYERS:
+                boolean everyone = client.readUsernames(Client.decode(message));
+                if(everyone){
+                    client.assignUserNumbers();
+                    report(Stage.LOADING_MAP);
+                    return now + LOAD_TIMEOUT;
+                }
+                Stage previous = stage;
+                report(Stage.WAITING_FOR_PLAYERS);
+                return previous == Stage.JOINING ? now + PLAYERS_TIMEOUT : deadline;
+            case LOADING_MAP:
+                client.readMap(message);
+                report(Stage.LOADING_SPAWNS);
+                return now + LOAD_TIMEOUT;
+            case LOADING_SPAWNS:
+                client.readCoordinates(Client.decode(message));
+                stage = Stage.LOADED;
+                return deadline;
+            default:
+                return deadline;
+        }
+    }
+
+    private void report(Stage stage){
+        this.stage = stage;
+        if(listener != null){
+            listener.onProgress(stage, new ArrayList<>(client.getDataStorage().getUsernames()));
+        }
+    }
+
+    /* stop the lobby of the server, if it is still waiting for players */
+    private void stopServer(){
+        if(server != null){
+            server.cancelLobby();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+
+/**
+ * The LoopbackTransport passes datagrams between two ends in the same process through in-memory queues,
+ * with no socket, no port and no system call per datagram. It is used for single-player games.
+ * <p>
+ * Each end receives into a {@link DatagramQueue}, so each datagram is copied once and, as with UDP, a datagram
+ * which does not fit in the queue of the receiving end is dropped.
+ */
+public class LoopbackTransport implements Transport {
+
+    private final InetSocketAddress address;
+    private LoopbackTransport peer;
+
+    private final DatagramQueue inbox;
+
+    private volatile NetworkEngine engine;
+    private volatile NetworkEngine.PacketHandler handler;
+    private final Runnable poller;
+    private volatile int timeout;
+    private volatile boolean closed;
+
+    private LoopbackTransport(InetSocketAddress address){
+        this.address = address;
+        inbox = new DatagramQueue();
+        poller = this::deliver;
+    }
+
+    /**
+     * Creates two connected ends, one for a server and one for a client
+     * @return the server end at index 0 and the client end at index 1
+     */
+    public static LoopbackTransport[] pair(){
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        LoopbackTransport server = new LoopbackTransport(new InetSocketAddress(loopback, 1));
+        LoopbackTransport client = new LoopbackTransport(new InetSocketAddress(loopback, 2));
+        server.peer = client;
+        client.peer = server;
+        return new LoopbackTransport[]{server, client};
+    }
+
+    @Override
+    public void send(ByteBuffer data, SocketAddress target) throws IOException {
+        if(closed){
+            throw new ClosedChannelException();
+        }
+        if(peer.closed || !peer.address.equals(target)){
+            data.position(data.limit());
+            return;
+        }
+        if(peer.inbox.offer(data, address)){
+            NetworkEngine peerEngine = peer.engine;
+            if(peerEngine != null){
+                peerEngine.wakeup();
+            }
+        }
+    }
+
+    @Override
+    public SocketAddress receive(ByteBuffer buffer) throws IOException {
+        if(closed){
+            throw new ClosedChannelException();
+        }
+        return inbox.take(buffer, timeout);
+    }
+
+    @Override
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return address;
+    }
+
+    @Override
+    public void register(NetworkEngine engine, NetworkEngine.PacketHandler handler) {
+        this.handler = handler;
+        this.engine = engine;
+        engine.addPoller(poller);
+        /* deliver anything which arrived before the transport was registered */
+        engine.wakeup();
+    }
+
+    @Override
+    public void unregister(NetworkEngine engine) {
+        engine.removePoller(poller);
+        this.engine = null;
+        this.handler = null;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        inbox.clear();
+    }
+
+    /* pass every waiting datagram to the handler, called on the engine thread */
+    private void deliver(){
+        NetworkEngine.PacketHandler currentHandler = handler;
+        if(currentHandler != null){
+            inbox.drain(currentHandler);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import uob.cs.teamproject.sabrewulf.GameSettings;
+import uob.cs.teamproject.sabrewulf.ui.selectors.DIFFICULTY;
+import uob.cs.teamproject.sabrewulf.ui.selectors.MODE;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A MatchServer hosts many games at once on a single port. Each match is a {@link DedicatedServer} with its own map,
+ * players, {@link uob.cs.teamproject.sabrewulf.ServerWorld} and tick, which talks to its players through a
+ * {@link MatchTransport}.
+ * <p>
+ * Every datagram arrives on the one shared socket and is passed on by the address it was sent from: a client which
+ * is not yet in a match joins the lobby which is filling up, and a new lobby is opened once it is full. The lobby
+ * handshake of each match runs on a thread of its own. Once every player has joined, the match is ticked by one of a
+ * fixed number of lanes, each a {@link NetworkEngine} which ticks all of its matches in turn, so the number of
+ * threads does not grow with the number of matches.
+ * <p>
+ * It is started with the {@code --matches} command line argument, which takes the same arguments as
+ * {@code --dedicated} as well as {@code --lanes} and {@code --max-matches}.
+ */
+public class MatchServer {
+
+    /* how long closing the server waits for the matches still in their lobby to stop, in milliseconds */
+    private static final long LOBBY_SHUTDOWN_TIMEOUT = 1000;
+
+    private final int playersPerMatch;
+    private final int enemiesPerMatch;
+    private final int maxMatches;
+
+    private final Transport shared;
+    private final NetworkEngine receiver;
+    private final Lane[] lanes;
+    private final ExecutorService lobbies;
+    private volatile NetworkStatsLog statsLog;
+
+    /* the transport of the match each client is in */
+    private final ConcurrentHashMap<SocketAddress, MatchTransport> routes;
+    private final AtomicInteger matchCount;
+    private final CountDownLatch closed;
+
+    /* the lobby which new clients join and the number of clients in it, guarded by this */
+    private MatchTransport lobby;
+    private int lobbySize;
+    private int nextMatchId;
+
+    /**
+     * @param playersPerMatch the number of players in each match
+     * @param enemiesPerMatch the number of enemies in each match
+     * @param maxMatches the most matches which can be hosted at once, including those in their lobby
+     * @param numberOfLanes the number of threads the matches are ticked on
+     * @param shared the transport every match sends and receives through
+     * @throws IOException if an engine could not be opened
+     */
+    public MatchServer(int playersPerMatch, int enemiesPerMatch, int maxMatches, int numberOfLanes, Transport shared)
+            throws IOException {
+        this.playersPerMatch = playersPerMatch;
+        this.enemiesPerMatch = enemiesPerMatch;
+        this.maxMatches = maxMatches;
+        this.shared = shared;
+        routes = new ConcurrentHashMap<>();
+        matchCount = new AtomicInteger();
+        closed = new CountDownLatch(1);
+        lobbies = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "match-lobby");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        receiver = new NetworkEngine("match-server");
+        lanes = new Lane[numberOfLanes];
+        for (int i = 0; i < numberOfLanes; i++) {
+            lanes[i] = new Lane(new NetworkEngine("match-lane-" + i));
+            Lane lane = lanes[i];
+            lane.engine.startTicking(() -> tickLane(lane), GameSettings.getServerTickRate());
+        }
+    }
+
+    /**
+     * The entry point of a server which hosts many matches at once until the process is stopped
+     * @param args the command line arguments: {@code --port}, {@code --players}, {@code --difficulty},
+     * {@code --tick-rate}, {@code --enemy-threshold} in pixels, {@code --keyframe-interval} in milliseconds,
+     * {@code --client-budget} in bytes per tick, {@code --interest-radius} in cells, {@code --min-send-rate} and
+     * {@code --max-send-rate} in messages per second, {@code --lanes}, {@code --max-matches} and
+     * {@code --stats-log}, each followed by its value; any other argument is ignored
+     * @throws IOException if the server could not be started
+     */
+    public static void main(String[] args) throws IOException {
+        int port = DedicatedServer.DEFAULT_PORT;
+        int players = 2;
+        int lanes = Runtime.getRuntime().availableProcessors();
+        int maxMatches = 256;
+        DIFFICULTY difficulty = DIFFICULTY.EASY;
+        String statsLog = null;
+        for (int i = 0; i + 1 < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--players":
+                    players = Integer.parseInt(args[++i]);
+                    break;
+                case "--difficulty":
+                    difficulty = DIFFICULTY.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--tick-rate":
+                    GameSettings.setServerTickRate(Integer.parseInt(args[++i]));
+                    break;
+                case "--enemy-threshold":
+                    GameSettings.setEnemyCorrectionThreshold(Double.parseDouble(args[++i]));
+                    break;
+                case "--keyframe-interval":
+                    GameSettings.setEnemyKeyframeInterval(Integer.parseInt(args[++i]));
+                    break;
+                case "--client-budget":
+                    GameSettings.setClientBandwidthBudget(Integer.parseInt(args[++i]));
+                    break;
+                case "--interest-radius":
+                    GameSettings.setInterestRadius(Integer.parseInt(args[++i]));
+                    break;
+                case "--min-send-rate":
+                    GameSettings.setMinSendRate(Integer.parseInt(args[++i]));
+                    break;
+                case "--max-send-rate":
+                    GameSettings.setMaxSendRate(Integer.parseInt(args[++i]));
+                    break;
+                case "--lanes":
+                    lanes = Integer.parseInt(args[++i]);
+                    break;
+                case "--max-matches":
+                    maxMatches = Integer.parseInt(args[++i]);
+                    break;
+                case "--stats-log":
+                    statsLog = args[++i];
+                    break;
+            }
+        }
+        GameSettings.setGameMode(MODE.MULTIPLAYER);
+        GameSettings.setDifficulty(difficulty);
+        int numberOfEnemies = difficulty == DIFFICULTY.EASY ? 3 : 4;
+
+        MatchServer server = new MatchServer(players, numberOfEnemies, maxMatches, lanes, UdpTransport.bind(port));
+        if (statsLog != null) {
+            server.setStatsLog(new NetworkStatsLog(statsLog));
+        }
+        System.out.println("Match server listening on port " + port + " for matches of " + players + " players ("
+                + difficulty + ") on " + lanes + " lanes");
+        server.run();
+    }
+
+    /**
+     * Starts receiving from the shared transport. Returns straight away.
+     */
+    public void start() {
+        shared.register(receiver, this::route);
+    }
+
+    /**
+     * Starts receiving from the shared transport and waits until the server is closed
+     */
+    public void run() {
+        start();
+        try {
+            closed.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops every match and closes the shared transport, once any match still in its lobby has stopped as well
+     */
+    public void close() {
+        shared.unregister(receiver);
+        receiver.shutdown();
+        for (Lane lane : lanes) {
+            lane.engine.shutdown();
+        }
+        lobbies.shutdownNow();
+        for (MatchTransport transport : routes.values()) {
+            transport.close();
+        }
+        routes.clear();
+        try {
+            lobbies.awaitTermination(LOBBY_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        shared.close();
+        closed.countDown();
+    }
+
+    /**
+     * @param statsLog the log every match writes the quality of the connection to each of its clients to, or null
+     */
+    public void setStatsLog(NetworkStatsLog statsLog) {
+        this.statsLog = statsLog;
+    }
+
+    /**
+     * @return the address of the shared transport
+     */
+    public InetSocketAddress getLocalAddress() {
+        return shared.getLocalAddress();
+    }
+
+    /**
+     * @return the number of matches being hosted, including those in their lobby
+     */
+    public int getMatchCount() {
+        return matchCount.get();
+    }
+
+    /* pass a datagram received by the shared transport to the match its sender is in, called on the receiver thread */
+    private void route(ByteBuffer data, SocketAddress sender) {
+        MatchTransport transport = routes.get(sender);
+        if (transport == null) {
+            /* only a client joining a lobby sends text before it is in a match */
+            if (Protocol.isBinary(data)) {
+                return;
+            }
+            transport = joinLobby(sender);
+            if (transport == null) {
+                return;
+            }
+        }
+        transport.post(data, sender);
+    }
+
+    /* add a client to the lobby which is filling up, opening a new one if needed, or return null if there is no room */
+    private synchronized MatchTransport joinLobby(SocketAddress sender) {
+        if (lobby == null || lobbySize == playersPerMatch) {
+            if (matchCount.get() >= maxMatches) {
+                return null;
+            }
+            matchCount.incrementAndGet();
+            MatchTransport transport = new MatchTransport(nextMatchId++, shared);
+            lobby = transport;
+            lobbySize = 0;
+            lobbies.execute(() -> host(transport));
+        }
+        routes.put(sender, lobby);
+        lobbySize++;
+        return lobby;
+    }
+
+    /* run the lobby handshake of a match, then hand it to the least busy lane, called on a lobby thread */
+    private void host(MatchTransport transport) {
+        DedicatedServer match;
+        try {
+            match = new DedicatedServer(playersPerMatch, enemiesPerMatch, transport);
+            match.setStatsLog(statsLog, "match-" + transport.getMatchId());
+            match.start();
+            match.beginGame();
+        }
+        catch (SocketTimeoutException e) {
+            //Not every player joined in time
+            retire(transport);
+            return;
+        }
+        catch (IOException e) {
+            if (!transport.isClosed()) {
+                e.printStackTrace();
+            }
+            retire(transport);
+            return;
+        }
+        synchronized (this) {
+            /* a client which has not joined by now is not counted as part of this match */
+            if (lobby == transport) {
+                lobby = null;
+            }
+        }
+        if (transport.isClosed()) {
+            /* the server was closed while the players joined */
+            match.endGame();
+            return;
+        }
+
+        Lane lane = lanes[0];
+        for (Lane other : lanes) {
+            if (other.load.get() < lane.load.get()) {
+                lane = other;
+            }
+        }
+        lane.load.incrementAndGet();
+        transport.register(lane.engine, match::onPacket);
+        lane.added.add(match);
+        match.sendStart();
+    }
+
+    /* tick every match on a lane, and remove those which are over, called on the lane thread */
+    private void tickLane(Lane lane) {
+        DedicatedServer added;
+        while ((added = lane.added.poll()) != null) {
+            lane.matches.add(added);
+        }
+        long now = System.nanoTime();
+        Iterator<DedicatedServer> iterator = lane.matches.iterator();
+        while (iterator.hasNext()) {
+            DedicatedServer match = iterator.next();
+            match.tick();
+            if (match.isOver(now)) {
+                iterator.remove();
+                lane.load.decrementAndGet();
+                match.transport.unregister(lane.engine);
+                match.endGame();
+                retire((MatchTransport) match.transport);
+            }
+        }
+    }
+
+    /* close the transport of a match which is over and forget its clients */
+    private void retire(MatchTransport transport) {
+        synchronized (this) {
+            if (lobby == transport) {
+                lobby = null;
+            }
+        }
+        transport.close();
+        routes.values().removeIf(route -> route == transport);
+        matchCount.decrementAndGet();
+    }
+
+    /* a thread which ticks a number of matches */
+    private static final class Lane {
+        final NetworkEngine engine;
+        /* matches handed to the lane which have not yet been ticked */
+        final Queue<DedicatedServer> added = new ConcurrentLinkedQueue<>();
+        /* the matches ticked by the lane, only accessed on the lane thread */
+        final List<DedicatedServer> matches = new ArrayList<>();
+        /* the number of matches on the lane */
+        final AtomicInteger load = new AtomicInteger();
+
+        Lane(NetworkEngine engine) {
+            this.engine = engine;
+        }
+    }
+}
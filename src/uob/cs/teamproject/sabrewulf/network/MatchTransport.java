@@ -0,0 +1,137 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+
+/**
+ * The MatchTransport is the {@link Transport} of one match hosted by a {@link MatchServer}. Every match shares the
+ * one socket of the server: datagrams are sent straight through it, and the server passes each datagram it receives
+ * to the transport of the match its sender belongs to, which queues it in a {@link DatagramQueue} until the match
+ * receives it.
+ */
+public class MatchTransport implements Transport {
+
+    private final int matchId;
+    private final Transport shared;
+    private final DatagramQueue inbox;
+
+    private volatile NetworkEngine engine;
+    private volatile NetworkEngine.PacketHandler handler;
+    private final Runnable poller;
+    private volatile int timeout;
+    private volatile boolean closed;
+
+    /**
+     * @param matchId the id of the match
+     * @param shared the transport of the socket every match sends and receives through
+     */
+    MatchTransport(int matchId, Transport shared){
+        this.matchId = matchId;
+        this.shared = shared;
+        inbox = new DatagramQueue();
+        poller = this::deliver;
+    }
+
+    /**
+     * @return the id of the match
+     */
+    public int getMatchId(){
+        return matchId;
+    }
+
+    /**
+     * Sends a datagram through the shared socket. Once the transport has been closed, e.g. by the server shutting
+     * down while the match starts, the datagram is dropped, as one which cannot be delivered.
+     * @param data the bytes between the position and the limit of the buffer, which are all consumed
+     * @param target the address to send the datagram to
+     * @throws IOException if an IO error occurs on the shared socket
+     */
+    @Override
+    public void send(ByteBuffer data, SocketAddress target) throws IOException {
+        if(closed){
+            data.position(data.limit());
+            return;
+        }
+        shared.send(data, target);
+    }
+
+    @Override
+    public SocketAddress receive(ByteBuffer buffer) throws IOException {
+        if(closed){
+            throw new ClosedChannelException();
+        }
+        return inbox.take(buffer, timeout);
+    }
+
+    @Override
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return shared.getLocalAddress();
+    }
+
+    @Override
+    public void register(NetworkEngine engine, NetworkEngine.PacketHandler handler) {
+        this.handler = handler;
+        this.engine = engine;
+        engine.addPoller(poller);
+        /* deliver anything which arrived before the transport was registered */
+        engine.wakeup();
+    }
+
+    @Override
+    public void unregister(NetworkEngine engine) {
+        engine.removePoller(poller);
+        this.engine = null;
+        this.handler = null;
+    }
+
+    /**
+     * Closes the transport of the match. The shared socket is left open for the other matches.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        inbox.clear();
+    }
+
+    /**
+     * @return true once the transport has been closed
+     */
+    boolean isClosed(){
+        return closed;
+    }
+
+    /**
+     * Queues a datagram received by the shared socket from a player in this match, and wakes up the engine the
+     * transport is registered with. Called on the thread which receives from the shared socket.
+     * @param data the received bytes, which are all consumed
+     * @param sender the address the datagram was sent from
+     */
+    void post(ByteBuffer data, SocketAddress sender){
+        if(closed){
+            data.position(data.limit());
+            return;
+        }
+        if(inbox.offer(data, sender)){
+            NetworkEngine currentEngine = engine;
+            if(currentEngine != null){
+                currentEngine.wakeup();
+            }
+        }
+    }
+
+    /* pass every waiting datagram to the handler, called on the engine thread */
+    private void deliver(){
+        NetworkEngine.PacketHandler currentHandler = handler;
+        if(currentHandler != null){
+            inbox.drain(currentHandler);
+        }
+    }
+}
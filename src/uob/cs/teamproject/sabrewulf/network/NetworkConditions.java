@@ -0,0 +1,201 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.util.Locale;
+
+/**
+ * NetworkConditions describes how an {@link ImpairedLink} treats the datagrams passing through it: how long they are
+ * delayed and by how much that varies, how many are lost at random or in bursts, duplicated or reordered, and how
+ * fast the link is. The default conditions leave every datagram untouched.
+ * <p>
+ * Conditions can be changed from any thread while datagrams are passing through, e.g. by an
+ * {@link ImpairmentScenario}.
+ */
+public class NetworkConditions {
+
+    private volatile int delay;
+    private volatile int jitter;
+    private volatile double loss;
+    private volatile double burstLoss;
+    private volatile int burstLength = 1;
+    private volatile double duplicate;
+    private volatile double reorder;
+    private volatile int reorderDelay = 50;
+    private volatile int bandwidth;
+
+    /**
+     * Parses conditions written as space separated {@code key=value} pairs, e.g. {@code "delay=100 jitter=20 loss=5"}.
+     * The keys are {@code delay}, {@code jitter} and {@code reorder-delay} in milliseconds, {@code loss},
+     * {@code burst-loss}, {@code duplicate} and {@code reorder} as percentages, {@code burst-length} as a number of
+     * datagrams and {@code bandwidth} in bytes per second. Anything not given is left as in the default conditions.
+     * @param text the conditions
+     * @return the parsed conditions
+     * @throws IllegalArgumentException if a key is unknown or a value is not a number
+     */
+    public static NetworkConditions parse(String text){
+        NetworkConditions conditions = new NetworkConditions();
+        for(String pair : text.trim().split("\\s+")){
+            if(pair.isEmpty()){
+                continue;
+            }
+            String[] keyValue = pair.split("=", 2);
+            if(keyValue.length != 2){
+                throw new IllegalArgumentException("Expected key=value: " + pair);
+            }
+            conditions.set(keyValue[0], keyValue[1]);
+        }
+        return conditions;
+    }
+
+    /**
+     * Sets one of the conditions by the key it is parsed from
+     * @param key the key, as in {@link #parse(String)}
+     * @param value the value
+     * @throws IllegalArgumentException if the key is unknown or the value is not a number
+     */
+    public void set(String key, String value){
+        try {
+            switch (key) {
+                case "delay":
+                    setDelay(Integer.parseInt(value));
+                    break;
+                case "jitter":
+                    setJitter(Integer.parseInt(value));
+                    break;
+                case "loss":
+                    setLoss(Double.parseDouble(value));
+                    break;
+                case "burst-loss":
+                    setBurstLoss(Double.parseDouble(value));
+                    break;
+                case "burst-length":
+                    setBurstLength(Integer.parseInt(value));
+                    break;
+                case "duplicate":
+                    setDuplicate(Double.parseDouble(value));
+                    break;
+                case "reorder":
+                    setReorder(Double.parseDouble(value));
+                    break;
+                case "reorder-delay":
+                    setReorderDelay(Integer.parseInt(value));
+                    break;
+                case "bandwidth":
+                    setBandwidth(Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown network condition: " + key);
+            }
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+        }
+    }
+
+    /**
+     * Copies every condition from other conditions
+     * @param other the conditions to copy
+     */
+    public void copyFrom(NetworkConditions other){
+        delay = other.delay;
+        jitter = other.jitter;
+        loss = other.loss;
+        burstLoss = other.burstLoss;
+        burstLength = other.burstLength;
+        duplicate = other.duplicate;
+        reorder = other.reorder;
+        reorderDelay = other.reorderDelay;
+        bandwidth = other.bandwidth;
+    }
+
+    /** @param delay the fixed one-way delay, in milliseconds */
+    public void setDelay(int delay){
+        this.delay = Math.max(0, delay);
+    }
+
+    /** @param jitter the most the delay of a datagram varies either side of the fixed delay, in milliseconds */
+    public void setJitter(int jitter){
+        this.jitter = Math.max(0, jitter);
+    }
+
+    /** @param loss the percentage of datagrams lost at random */
+    public void setLoss(double loss){
+        this.loss = clampPercent(loss);
+    }
+
+    /** @param burstLoss the percentage of datagrams which start a burst of losses */
+    public void setBurstLoss(double burstLoss){
+        this.burstLoss = clampPercent(burstLoss);
+    }
+
+    /** @param burstLength the number of datagrams lost in a row in each burst */
+    public void setBurstLength(int burstLength){
+        this.burstLength = Math.max(1, burstLength);
+    }
+
+    /** @param duplicate the percentage of datagrams delivered twice */
+    public void setDuplicate(double duplicate){
+        this.duplicate = clampPercent(duplicate);
+    }
+
+    /** @param reorder the percentage of datagrams held back, so that datagrams sent after them overtake them */
+    public void setReorder(double reorder){
+        this.reorder = clampPercent(reorder);
+    }
+
+    /** @param reorderDelay how long a reordered datagram is held back for, in milliseconds */
+    public void setReorderDelay(int reorderDelay){
+        this.reorderDelay = Math.max(0, reorderDelay);
+    }
+
+    /** @param bandwidth the speed of the link in bytes per second, or 0 for no limit */
+    public void setBandwidth(int bandwidth){
+        this.bandwidth = Math.max(0, bandwidth);
+    }
+
+    public int getDelay(){
+        return delay;
+    }
+
+    public int getJitter(){
+        return jitter;
+    }
+
+    public double getLoss(){
+        return loss;
+    }
+
+    public double getBurstLoss(){
+        return burstLoss;
+    }
+
+    public int getBurstLength(){
+        return burstLength;
+    }
+
+    public double getDuplicate(){
+        return duplicate;
+    }
+
+    public double getReorder(){
+        return reorder;
+    }
+
+    public int getReorderDelay(){
+        return reorderDelay;
+    }
+
+    public int getBandwidth(){
+        return bandwidth;
+    }
+
+    @Override
+    public String toString(){
+        return String.format(Locale.ROOT, "delay=%d jitter=%d loss=%.1f burst-loss=%.1f burst-length=%d "
+                        + "duplicate=%.1f reorder=%.1f reorder-delay=%d bandwidth=%d",
+                delay, jitter, loss, burstLoss, burstLength, duplicate, reorder, reorderDelay, bandwidth);
+    }
+
+    private static double clampPercent(double percent){
+        return Math.max(0, Math.min(100, percent));
+    }
+}
@@ -0,0 +1,325 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The NetworkEngine owns a {@link Selector} and a dedicated thread which receives datagrams from any number of
+ * registered {@link DatagramChannel}s and passes them to a {@link PacketHandler}.
+ * This keeps all blocking network I/O off the JavaFX application thread: a slow or lost packet only makes the
+ * received state older, it never stalls a rendered frame.
+ * The engine can also run a fixed-rate tick task on the same thread, so a handler and its tick never need locking.
+ * Sources of datagrams which are not channels, such as a {@link LoopbackTransport}, are polled on the same thread
+ * every time the engine wakes up.
+ */
+public class NetworkEngine {
+
+    /**
+     * Receives the datagrams read by the engine thread.
+     */
+    public interface PacketHandler {
+        /**
+         * Called on the engine thread for every datagram received by a registered channel.
+         * The buffer is reused by the engine and is only valid until this method returns.
+         * @param data the received bytes, positioned at the start of the datagram
+         * @param sender the address the datagram was sent from
+         */
+        void onPacket(ByteBuffer data, SocketAddress sender);
+    }
+
+    /* the largest datagram that can be received, so no receive buffer has to guess the size of a message */
+    static final int MAX_DATAGRAM_SIZE = 65507;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final ByteBuffer receiveBuffer;
+    private final Queue<Runnable> tasks;
+    private volatile boolean running;
+
+    /* polled after every selection, only accessed on the engine thread */
+    private final List<Runnable> pollers;
+
+    /* the fixed-rate task, only accessed on the engine thread */
+    private Runnable tickTask;
+    private long tickPeriodNanos;
+    private long nextTickNanos;
+
+    /**
+     * Creates a new engine and starts its thread
+     * @param name the name given to the engine thread
+     * @throws IOException if the {@link Selector} could not be opened
+     */
+    public NetworkEngine(String name) throws IOException {
+        selector = Selector.open();
+        receiveBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+        tasks = new ConcurrentLinkedQueue<>();
+        pollers = new ArrayList<>();
+        running = true;
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Switches a channel to non-blocking mode and starts receiving from it on the engine thread.
+     * Blocks until the channel has been registered.
+     * @param channel the channel to receive from
+     * @param handler the handler to pass received datagrams to
+     */
+    public void register(DatagramChannel channel, PacketHandler handler) {
+        runOnEngineThread(() -> {
+            try {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, handler);
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Stops receiving from a channel and switches it back to blocking mode,
+     * so that it can be used for blocking calls again (e.g. when a game is restarted).
+     * Blocks until the channel has been deregistered.
+     * @param channel the channel to stop receiving from
+     */
+    public void unregister(DatagramChannel channel) {
+        runOnEngineThread(() -> {
+            SelectionKey key = channel.keyFor(selector);
+            if (key == null) {
+                return;
+            }
+            key.cancel();
+            try {
+                /* a cancelled key is only removed from the selector by the next selection operation */
+                selector.selectNow();
+                if (channel.isOpen()) {
+                    channel.configureBlocking(true);
+                }
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Adds a task which is run on the engine thread every time the engine wakes up, e.g. to receive datagrams
+     * from an in-memory queue. The source should call {@link #wakeup()} when it has something to be polled.
+     * @param poller the task to run
+     */
+    public void addPoller(Runnable poller) {
+        runOnEngineThread(() -> pollers.add(poller));
+    }
+
+    /**
+     * Stops running a task added by {@link #addPoller(Runnable)}
+     * @param poller the task to stop running
+     */
+    public void removePoller(Runnable poller) {
+        runOnEngineThread(() -> pollers.remove(poller));
+    }
+
+    /**
+     * Wakes up the engine thread if it is waiting, so that every poller is run
+     */
+    public void wakeup() {
+        selector.wakeup();
+    }
+
+    /**
+     * Runs a task on the engine thread at a fixed rate, replacing any task which was already running.
+     * Ticks are scheduled from a fixed start time, so the rate does not drift with the time each tick takes.
+     * @param task the task to run every tick
+     * @param ticksPerSecond the number of times the task is run per second
+     */
+    public void startTicking(Runnable task, int ticksPerSecond) {
+        runOnEngineThread(() -> {
+            tickTask = task;
+            tickPeriodNanos = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+            nextTickNanos = System.nanoTime() + tickPeriodNanos;
+        });
+    }
+
+    /**
+     * Stops running the fixed-rate task
+     */
+    public void stopTicking() {
+        runOnEngineThread(() -> tickTask = null);
+    }
+
+    /**
+     * @param channel a channel
+     * @return true if the channel is currently registered with this engine
+     */
+    public boolean isRegistered(DatagramChannel channel) {
+        return channel.keyFor(selector) != null;
+    }
+
+    /**
+     * Stops the engine thread and closes the {@link Selector}. Registered channels are not closed.
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join(1000);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /* runs a task on the engine thread and waits for it to complete */
+    private void runOnEngineThread(Runnable task) {
+        if (Thread.currentThread() == thread || !running) {
+            task.run();
+            return;
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        tasks.add(() -> {
+            try {
+                task.run();
+            }
+            finally {
+                done.complete(null);
+            }
+        });
+        selector.wakeup();
+        try {
+            done.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /* the engine thread loop */
+    private void run() {
+        try {
+            while (running) {
+                if (tickTask == null) {
+                    selector.select();
+                }
+                else {
+                    long wait = nextTickNanos - System.nanoTime();
+                    if (wait >= TimeUnit.MILLISECONDS.toNanos(1)) {
+                        selector.select(TimeUnit.NANOSECONDS.toMillis(wait));
+                    }
+                    else {
+                        selector.selectNow();
+                    }
+                }
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        drain(key);
+                    }
+                }
+
+                for (int i = 0; i < pollers.size(); i++) {
+                    try {
+                        pollers.get(i).run();
+                    }
+                    catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+
+                runTickIfDue();
+            }
+        }
+        catch (IOException | ClosedSelectorException e) {
+            e.printStackTrace();
+        }
+        finally {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+            try {
+                selector.close();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /* run the tick task if its next tick is due */
+    private void runTickIfDue() {
+        if (tickTask == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - nextTickNanos < 0) {
+            return;
+        }
+        try {
+            tickTask.run();
+        }
+        catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        nextTickNanos += tickPeriodNanos;
+        /* if the engine has fallen more than a tick behind, skip the missed ticks rather than running them in a
+         * burst */
+        if (now - nextTickNanos > tickPeriodNanos) {
+            nextTickNanos = now + tickPeriodNanos;
+        }
+    }
+
+    /* receive every datagram waiting on a channel */
+    private void drain(SelectionKey key) {
+        DatagramChannel channel = (DatagramChannel) key.channel();
+        PacketHandler handler = (PacketHandler) key.attachment();
+        while (key.isValid()) {
+            receiveBuffer.clear();
+            SocketAddress sender;
+            try {
+                sender = channel.receive(receiveBuffer);
+            }
+            catch (IOException e) {
+                /* e.g. an ICMP port unreachable from a peer that has left; the channel is still usable */
+                return;
+            }
+            if (sender == null) {
+                return;
+            }
+            receiveBuffer.flip();
+            try {
+                handler.onPacket(receiveBuffer, sender);
+            }
+            catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
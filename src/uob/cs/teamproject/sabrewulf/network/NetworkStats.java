@@ -0,0 +1,332 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * NetworkStats measures the quality of the connection to one peer: the packets and bytes sent and received each
+ * second, the percentage of sequenced packets lost, the number which arrived out of order, the round trip time and
+ * its jitter, and the longest tick. It also holds what the peer reports about the packets it receives, and the rate
+ * the {@link SendRateController} currently sends at.
+ * <p>
+ * The round trip time is measured with {@link Protocol#PING} messages, which carry the time they were sent and are
+ * echoed back by the peer in a {@link Protocol#PONG}. Jitter is the smoothed difference between consecutive round
+ * trip times, as in RFC 3550. Loss is counted from the sequence numbers the peer numbers each world state or input
+ * message with, and every pong carries the loss measured by the peer in the last window, so each end knows how
+ * much of what it sends is lost, as in an RTCP receiver report.
+ * <p>
+ * Counters are collected over a window of one second; {@link #update(long)} closes the window and publishes the
+ * results, which can then be read from any thread. Packets can be counted as sent from any thread, everything else
+ * is called on the {@link NetworkEngine} thread.
+ */
+public final class NetworkStats {
+
+    /** how often a ping is sent, in nanoseconds */
+    public static final long PING_INTERVAL = TimeUnit.MILLISECONDS.toNanos(250);
+    /** the length of the window the counters are collected over, in nanoseconds */
+    public static final long WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+    /* the number of round trip times the mean and 99th percentile are taken over */
+    private static final int RTT_SAMPLES = 128;
+    /* a jump in sequence numbers larger than this is a new stream, e.g. a restarted game, rather than loss */
+    private static final int MAX_SEQUENCE_GAP = 1024;
+
+    /* counted from any thread */
+    private final AtomicLong packetsSent;
+    private final AtomicLong bytesSent;
+    private final AtomicLong longestTick;
+
+    /* counted on the engine thread, reset every window */
+    private int packetsReceived;
+    private int bytesReceived;
+    private int sequencesExpected;
+    private int sequencesReceived;
+    private long windowStart;
+
+    /* sequence tracking, on the engine thread */
+    private int highestSequence;
+    private boolean sequenceSeen;
+    private int outOfOrderCount;
+
+    /* round trip times, on the engine thread */
+    private final long[] rttSamples;
+    private final long[] sortedRtts;
+    private int rttCount;
+    private int rttIndex;
+    private long previousRtt;
+    private double jitterNanos;
+    private long lastPing;
+    private long windowRttTotal;
+    private int windowRttCount;
+
+    /* the results of the last window */
+    private volatile int packetsSentPerSecond;
+    private volatile int bytesSentPerSecond;
+    private volatile int packetsReceivedPerSecond;
+    private volatile int bytesReceivedPerSecond;
+    private volatile double lossPercent;
+    private volatile int outOfOrder;
+    private volatile double rttMean;
+    private volatile double rttP99;
+    private volatile double jitter;
+    private volatile double maxTick;
+    private volatile double recentRtt;
+    private volatile double peerLossPercent;
+    private volatile double sendRate;
+    private volatile int messagesReceivedPerSecond;
+
+    /**
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     */
+    public NetworkStats(long now){
+        packetsSent = new AtomicLong();
+        bytesSent = new AtomicLong();
+        longestTick = new AtomicLong();
+        rttSamples = new long[RTT_SAMPLES];
+        sortedRtts = new long[RTT_SAMPLES];
+        windowStart = now;
+        lastPing = now - PING_INTERVAL;
+    }
+
+    /**
+     * Counts a packet sent to the peer. Can be called from any thread.
+     * @param bytes the size of the packet
+     */
+    public void onSent(int bytes){
+        packetsSent.incrementAndGet();
+        bytesSent.addAndGet(bytes);
+    }
+
+    /**
+     * Counts a packet received from the peer
+     * @param bytes the size of the packet
+     */
+    public void onReceived(int bytes){
+        packetsReceived++;
+        bytesReceived += bytes;
+    }
+
+    /**
+     * Records the sequence number of a received packet, from a stream in which the peer numbers each packet one
+     * higher than the last, to count the packets lost and those which arrive out of order
+     * @param sequence the sequence number
+     */
+    public void onSequence(int sequence){
+        int ahead = sequence - highestSequence;
+        if(!sequenceSeen || ahead > MAX_SEQUENCE_GAP || ahead < -MAX_SEQUENCE_GAP){
+            sequenceSeen = true;
+            highestSequence = sequence;
+            sequencesExpected++;
+            sequencesReceived++;
+            return;
+        }
+        if(ahead > 0){
+            sequencesExpected += ahead;
+            highestSequence = sequence;
+        }
+        else {
+            /* counted as lost when the packets after it arrived, so it now makes up for that */
+            outOfOrderCount++;
+        }
+        sequencesReceived++;
+    }
+
+    /**
+     * Records the sequence number of a received packet which only carries its low 16 bits, as
+     * {@link #onSequence(int)} does
+     * @param sequence the low 16 bits of the sequence number
+     */
+    public void onShortSequence(short sequence){
+        onSequence(highestSequence + (short) (sequence - highestSequence));
+    }
+
+    /**
+     * Records how long a tick took, e.g. a server tick or a frame of the game loop. Can be called from any thread.
+     * @param nanos the duration of the tick
+     */
+    public void onTick(long nanos){
+        longestTick.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     * @return true if it is time to send another ping
+     */
+    public boolean pingDue(long now){
+        return now - lastPing >= PING_INTERVAL;
+    }
+
+    /**
+     * Writes a {@link Protocol#PING} message
+     * @param buffer the buffer to write to
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     */
+    public void writePing(ByteBuffer buffer, long now){
+        Protocol.writeHeader(buffer, Protocol.PING);
+        buffer.putLong(now);
+        lastPing = now;
+    }
+
+    /**
+     * Writes the {@link Protocol#PONG} which answers a ping, reporting the loss measured in the last window
+     * @param ping the received ping, positioned after the header
+     * @param buffer the buffer to write to
+     * @param time the time on the clock of the one answering, in nanoseconds
+     */
+    public void writePong(ByteBuffer ping, ByteBuffer buffer, long time){
+        Protocol.writeHeader(buffer, Protocol.PONG);
+        buffer.putLong(ping.getLong());
+        buffer.putLong(time);
+        buffer.put((byte) Math.min(100, Math.round(lossPercent)));
+    }
+
+    /**
+     * Measures the round trip time from a received {@link Protocol#PONG}, and records the loss the peer reported
+     * @param pong the received pong, positioned after the header
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     */
+    public void onPong(ByteBuffer pong, long now){
+        long rtt = now - pong.getLong();
+        pong.getLong();
+        peerLossPercent = pong.get() & 0xFF;
+        if(rtt < 0 || rtt > WINDOW * 10){
+            return;
+        }
+        windowRttTotal += rtt;
+        windowRttCount++;
+        if(rttCount > 0){
+            jitterNanos += (Math.abs(rtt - previousRtt) - jitterNanos) / 16;
+        }
+        previousRtt = rtt;
+        rttSamples[rttIndex] = rtt;
+        rttIndex = (rttIndex + 1) % RTT_SAMPLES;
+        rttCount = Math.min(rttCount + 1, RTT_SAMPLES);
+    }
+
+    /**
+     * Publishes the results and starts a new window, once the current window is over
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     * @return true if a window was closed, so there are new results to report
+     */
+    public boolean update(long now){
+        long elapsed = now - windowStart;
+        if(elapsed < WINDOW){
+            return false;
+        }
+        double perSecond = (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        packetsSentPerSecond = (int) Math.round(packetsSent.getAndSet(0) * perSecond);
+        bytesSentPerSecond = (int) Math.round(bytesSent.getAndSet(0) * perSecond);
+        packetsReceivedPerSecond = (int) Math.round(packetsReceived * perSecond);
+        bytesReceivedPerSecond = (int) Math.round(bytesReceived * perSecond);
+        messagesReceivedPerSecond = (int) Math.round(sequencesReceived * perSecond);
+        lossPercent = sequencesExpected == 0 ? 0
+                : Math.max(0, 100.0 * (sequencesExpected - sequencesReceived) / sequencesExpected);
+        outOfOrder = outOfOrderCount;
+        maxTick = toMillis(longestTick.getAndSet(0));
+
+        if(rttCount > 0){
+            long total = 0;
+            for(int i = 0; i < rttCount; i++){
+                total += rttSamples[i];
+                sortedRtts[i] = rttSamples[i];
+            }
+            Arrays.sort(sortedRtts, 0, rttCount);
+            rttMean = toMillis(total / rttCount);
+            rttP99 = toMillis(sortedRtts[(int) Math.ceil(rttCount * 0.99) - 1]);
+            jitter = toMillis((long) jitterNanos);
+        }
+        recentRtt = windowRttCount == 0 ? 0 : toMillis(windowRttTotal / windowRttCount);
+
+        packetsReceived = 0;
+        bytesReceived = 0;
+        sequencesExpected = 0;
+        sequencesReceived = 0;
+        windowRttTotal = 0;
+        windowRttCount = 0;
+        windowStart = now;
+        return true;
+    }
+
+    /** @return the packets sent per second in the last window */
+    public int getPacketsSentPerSecond(){
+        return packetsSentPerSecond;
+    }
+
+    /** @return the bytes sent per second in the last window */
+    public int getBytesSentPerSecond(){
+        return bytesSentPerSecond;
+    }
+
+    /** @return the packets received per second in the last window */
+    public int getPacketsReceivedPerSecond(){
+        return packetsReceivedPerSecond;
+    }
+
+    /** @return the bytes received per second in the last window */
+    public int getBytesReceivedPerSecond(){
+        return bytesReceivedPerSecond;
+    }
+
+    /** @return the percentage of sequenced packets lost in the last window */
+    public double getLossPercent(){
+        return lossPercent;
+    }
+
+    /** @return the number of packets which have arrived out of order or more than once */
+    public int getOutOfOrder(){
+        return outOfOrder;
+    }
+
+    /** @return the mean of the recent round trip times, in milliseconds */
+    public double getRttMean(){
+        return rttMean;
+    }
+
+    /** @return the 99th percentile of the recent round trip times, in milliseconds */
+    public double getRttP99(){
+        return rttP99;
+    }
+
+    /** @return the jitter of the round trip time, in milliseconds */
+    public double getJitter(){
+        return jitter;
+    }
+
+    /** @return the longest tick in the last window, in milliseconds */
+    public double getMaxTick(){
+        return maxTick;
+    }
+
+    /** @return the mean of the round trip times measured in the last window, in milliseconds, or 0 if none were */
+    public double getRecentRtt(){
+        return recentRtt;
+    }
+
+    /** @return the percentage of the packets sent to it which the peer last reported as lost */
+    public double getPeerLossPercent(){
+        return peerLossPercent;
+    }
+
+    /** @return the world state or input messages received from the peer per second in the last window */
+    public int getMessagesReceivedPerSecond(){
+        return messagesReceivedPerSecond;
+    }
+
+    /** @return the number of world state or input messages sent to the peer per second, as currently allowed */
+    public double getSendRate(){
+        return sendRate;
+    }
+
+    /**
+     * @param sendRate the number of world state or input messages sent to the peer per second, for diagnostics
+     */
+    public void setSendRate(double sendRate){
+        this.sendRate = sendRate;
+    }
+
+    private static double toMillis(long nanos){
+        return nanos / 1_000_000.0;
+    }
+}
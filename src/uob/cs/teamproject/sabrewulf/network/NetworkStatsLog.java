@@ -0,0 +1,70 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * The NetworkStatsLog writes the {@link NetworkStats} of each peer to a CSV file once a second, along with the
+ * longest tick, so that spikes in tick time can be matched up with the network conditions at the time.
+ * A log can be shared by every server and client in the process.
+ */
+public class NetworkStatsLog {
+
+    private static final String HEADER = "time_ms,peer,packets_sent_per_s,bytes_sent_per_s,packets_received_per_s,"
+            + "bytes_received_per_s,loss_percent,out_of_order,rtt_mean_ms,rtt_p99_ms,jitter_ms,max_tick_ms,"
+            + "send_rate_per_s,messages_received_per_s,peer_loss_percent";
+
+    private final BufferedWriter writer;
+
+    /**
+     * Creates the file, replacing any file already there, and writes the header
+     * @param file the path of the file
+     * @throws IOException if the file could not be created
+     */
+    public NetworkStatsLog(String file) throws IOException {
+        Path path = Paths.get(file);
+        writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        writer.write(HEADER);
+        writer.newLine();
+        writer.flush();
+    }
+
+    /**
+     * Writes a row for a peer. Can be called from any thread.
+     * @param peer a name for the peer, which must not contain a comma
+     * @param stats the statistics of the peer, from the last window
+     */
+    public synchronized void write(String peer, NetworkStats stats){
+        try {
+            writer.write(String.format(Locale.ROOT, "%d,%s,%d,%d,%d,%d,%.2f,%d,%.2f,%.2f,%.2f,%.2f,%.1f,%d,%.0f",
+                    System.currentTimeMillis(), peer,
+                    stats.getPacketsSentPerSecond(), stats.getBytesSentPerSecond(),
+                    stats.getPacketsReceivedPerSecond(), stats.getBytesReceivedPerSecond(),
+                    stats.getLossPercent(), stats.getOutOfOrder(),
+                    stats.getRttMean(), stats.getRttP99(), stats.getJitter(), stats.getMaxTick(),
+                    stats.getSendRate(), stats.getMessagesReceivedPerSecond(), stats.getPeerLossPercent()));
+            writer.newLine();
+            writer.flush();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes the file
+     */
+    public synchronized void close(){
+        try {
+            writer.close();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
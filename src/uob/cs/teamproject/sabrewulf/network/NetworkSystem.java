@@ -7,19 +7,24 @@ import uob.cs.teamproject.sabrewulf.ui.selectors.MODE;
 import uob.cs.teamproject.sabrewulf.ui.selectors.MODEL;
 
 import java.io.IOException;
-import java.net.PortUnreachableException;
 import java.net.SocketException;
-import java.net.SocketTimeoutException;
 import java.util.HashMap;
 
 
 /**
  * The network system is responsible for a client and a server initiation
- * and the way they work during the whole game
+ * and the way they work during the whole game.
+ * Once a game has loaded, the server and the client receive packets on their own {@link NetworkEngine} threads,
+ * so nothing called from the game loop blocks on the network.
  */
 public class NetworkSystem{
     private Server server;
     private Client client;
+    /* created by the thread of the handshake or the lobby of the server */
+    private volatile NetworkEngine serverEngine;
+    private volatile NetworkEngine clientEngine;
+    /* where the network statistics are written, if the player asked for them */
+    private NetworkStatsLog statsLog;
 
     public NetworkSystem(){}
 
@@ -37,88 +42,114 @@ public class NetworkSystem{
         if(GameSettings.getDifficulty() != DIFFICULTY.EASY){
             numberOfEnemies = 4;
         }
-        int port  = Integer.parseInt(portNumber);
         if(GameSettings.getGameMode().equals(MODE.SINGLEPLAYER)) {
-            //Choose a random port until the chosen one is available
-            while(true){
-                port = (int) ((Math.random() * 16383) + 49152);
-                try {
-                    server = new Server(numOfPlayers, numberOfEnemies,port);
-                    break;
-                } catch (SocketException e) {
-                    System.out.println("Port is not available. Trying another port");
-                }
-            }
+            //The server runs in this process, so the client talks to it in memory rather than through a socket
+            LoopbackTransport[] ends = LoopbackTransport.pair();
+            server = new Server(numOfPlayers, numberOfEnemies, ends[0]);
+            client = new Client(numOfPlayers, numberOfEnemies, username, ends[1], ends[0].getLocalAddress());
+            openStatsLog();
+            return;
         }
-        else if(GameSettings.getModel().equals(MODEL.SERVER)){
+        int port  = Integer.parseInt(portNumber);
+        if(GameSettings.getModel().equals(MODEL.SERVER)){
             server = new Server(numOfPlayers, numberOfEnemies,port);
         }
         client = new Client(numOfPlayers, numberOfEnemies, username, ip,port);
+        openStatsLog();
+    }
+
+    /**
+     * Opens the log the network statistics are written to, if one has been set in {@link GameSettings}
+     */
+    private void openStatsLog(){
+        if(GameSettings.getNetworkStatsLog() == null){
+            return;
+        }
+        if(statsLog == null){
+            try {
+                statsLog = new NetworkStatsLog(GameSettings.getNetworkStatsLog());
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        if(server != null){
+            server.setStatsLog(statsLog, "host");
+        }
+        client.setStatsLog(statsLog);
     }
 
     /**
-     * The start method for the network system which loads the game for all clients
+     * Starts loading the game for all clients on another thread, without waiting for any of it
+     * @param listener told about the progress of loading the game on the thread of the {@link LobbyHandshake}, or
+     * null
+     * @return the handshake, which can be cancelled
+     */
+    public LobbyHandshake startAsync(LobbyHandshake.Listener listener){
+        LobbyHandshake handshake = new LobbyHandshake(this, client, server, listener);
+        handshake.begin();
+        return handshake;
+    }
+
+    /**
+     * The start method for the network system which loads the game for all clients, waiting until it has loaded
      * @throws IOException if an IO error occurs
-     * @throws ClassNotFoundException if a class of a serialized object cannot be found
      * @throws InterruptedException if a thread is interrupted
      * @throws UsernameUnavailableException if the username is already used by another player.
      */
-    public void start() throws IOException, ClassNotFoundException, InterruptedException, UsernameUnavailableException {
-        if(server != null) {
-            Thread thread = new Thread(() -> {
-                try {
-                    server.start();
-                }
-                catch (IOException e) {
-                    Thread.currentThread().interrupt();
-                }
-            });
-            thread.start();
-            client.start();
-            thread.join();
-
-        }
-        else {
-            client.start();
-        }
-        client.getMap();
-        Thread thread3 = new Thread(() -> {
-            if(server != null){
-                while(server.playerSpawnsAt == null){
-                    try {
-                        Thread.sleep(100);
-                    }
-                    catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-                try {
-                    server.sendRandomCoordinates();
-                }
-                catch (IOException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-        });
-        thread3.start();
-        thread3.join();
-        client.getRandomCoordinates();
+    public void start() throws IOException, InterruptedException, UsernameUnavailableException {
+        startAsync(null).await();
     }
 
     /**
      * The update method for the network system.
+     * Applies the latest state received by the engine threads without waiting for any packets.
      */
     public void update(){
-        if (server != null) {
-            if (server.isConnected) {
-                server.update();
-                client.update();
-            }
+        if(client != null && client.isConnected()){
+            client.update();
         }
-        else {
-            if(client.isConnected()){
-                client.update();
-            }
+    }
+
+    /**
+     * Registers the server transport with its engine so that in-game packets are received on the engine thread.
+     * Called by the {@link LobbyHandshake} once the server has sent the spawn positions.
+     * @throws IOException if the engine could not be created
+     */
+    void startServerEngine() throws IOException {
+        if(serverEngine == null){
+            serverEngine = new NetworkEngine("server-network");
+        }
+        server.transport.register(serverEngine, server::onPacket);
+        serverEngine.startTicking(server::tick, server.getTickRate());
+    }
+
+    /**
+     * Registers the client transport with its engine so that in-game packets are received on the engine thread.
+     * Called by the {@link LobbyHandshake} once the game has loaded.
+     * @throws IOException if the engine could not be created
+     */
+    void startClientEngine() throws IOException {
+        if(clientEngine == null){
+            clientEngine = new NetworkEngine("client-network");
+        }
+        client.transport.register(clientEngine, client::onPacket);
+        clientEngine.startTicking(client::tick, client.getTickRate());
+    }
+
+    /**
+     * Stops receiving packets on the engine threads so that the transports can be used for
+     * the blocking calls made while a game loads
+     */
+    private void stopEngines(){
+        if(server != null && serverEngine != null){
+            serverEngine.stopTicking();
+            server.transport.unregister(serverEngine);
+        }
+        if(client != null && clientEngine != null){
+            clientEngine.stopTicking();
+            client.transport.unregister(clientEngine);
         }
     }
 
@@ -127,26 +158,24 @@ public class NetworkSystem{
      * prepares the server and the client for the start of a new game.
      */
     public void restart(){
+        stopEngines();
         server.setInitialValues();
         server.createMap();
         client.sendData(client.getDataStorage().getUsername());
         try {
             start();
         }
-        catch (IOException | ClassNotFoundException | InterruptedException | UsernameUnavailableException e) {
+        catch (IOException | InterruptedException | UsernameUnavailableException e) {
             e.printStackTrace();
         }
     }
 
     /**
      * Handles the way the client and the server act if a player quits a game.
-     * @throws SocketTimeoutException if a timeout has occurred on a socket read or accept
-     * @throws PortUnreachableException if an ICMP Port Unreachable message has been received on a connected datagram
      */
-    public void handleQuit() throws SocketTimeoutException, PortUnreachableException {
+    public void handleQuit() {
         if(server != null) {
             server.sendEnd(false);
-            client.getData(5);
         }
         else if(client != null){
             client.sendQuit();
@@ -161,7 +190,7 @@ public class NetworkSystem{
             server.sendEnd(true);
         }
         else if(client != null){
-            client.sendData("end#");
+            client.sendControl("end#");
         }
     }
 
@@ -170,7 +199,11 @@ public class NetworkSystem{
      */
     public void closeServerSocket(){
         if(server != null){
-            server.dtSocket.close();
+            if(serverEngine != null){
+                serverEngine.shutdown();
+                serverEngine = null;
+            }
+            server.closeChannel();
             server = null;
         }
     }
@@ -179,36 +212,48 @@ public class NetworkSystem{
      * Closes a client socket
      */
     public void closeClientSocket(){
-        client.datagramSocket.close();
+        if(clientEngine != null){
+            clientEngine.shutdown();
+            clientEngine = null;
+        }
+        client.closeChannel();
         client = null;
+        if(statsLog != null){
+            statsLog.close();
+            statsLog = null;
+        }
     }
 
     /**
+     * Returns the scores straight away from the scoreboard the server keeps sending, so the end of the game never
+     * waits on the network. Once the game has ended this is the final scoreboard sent with the end, the same on
+     * every machine.
      * @return scores of players connected
      */
     public HashMap<String, Integer> getScores(){
-        if(client.getDataStorage().getScores() == null){
-            Thread thread = new Thread(() -> {
-                if(server != null){
-                    server.getScore();
-                }
-            });
-            thread.start();
-            client.sendScore(GameSettings.getInventory().getScore());
-            HashMap<String,Integer> scores = client.getScores();
-            while(scores == null){
-                client.sendScore(GameSettings.getInventory().getScore());
-                scores = client.getScores();
-            }
-            try {
-                thread.join();
-            }
-            catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            return scores;
-        }
-        return client.getDataStorage().getScores();
+        return client.getScoreboard();
+    }
+
+    /**
+     * Records that the game has started on this machine, see {@link Client#getMatchTime()}
+     */
+    public void markStarted(){
+        client.markStarted();
+    }
+
+    /**
+     * @return how long the game has lasted on the clock of the server, in milliseconds
+     */
+    public long getMatchTime(){
+        return client.getMatchTime();
+    }
+
+    /**
+     * @return the quality of the connection from the client to the server, or null if there is no client
+     */
+    public NetworkStats getNetworkStats(){
+        Client currentClient = client;
+        return currentClient == null ? null : currentClient.getNetworkStats();
     }
 
     /**
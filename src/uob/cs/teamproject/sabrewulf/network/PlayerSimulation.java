@@ -0,0 +1,282 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import uob.cs.teamproject.sabrewulf.collisions.BoxCollider;
+import uob.cs.teamproject.sabrewulf.collisions.ColliderTag;
+import uob.cs.teamproject.sabrewulf.collisions.CollisionSystem;
+import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
+import uob.cs.teamproject.sabrewulf.components.MovementPhysics;
+import uob.cs.teamproject.sabrewulf.components.PlayerColliderData;
+import uob.cs.teamproject.sabrewulf.map.Cell;
+import uob.cs.teamproject.sabrewulf.map.GameMapWrapper;
+import uob.cs.teamproject.sabrewulf.util.Transform;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The PlayerSimulation moves the player in each slot by the input commands received from its client, so the server
+ * decides where every player is instead of taking the position each client claims.
+ * <p>
+ * A command is applied the same way one frame of the game loop applies it to the local player, with the rules of
+ * {@link MovementPhysics}. First the player is moved by the directions of the previous command, as by
+ * {@link CharacterMovement}. Then the keys of the new command set the directions, whether the player moves, the way
+ * it faces, and the boosts. Last, the player is pushed back
+ * out of any wall or locked door, as by {@link uob.cs.teamproject.sabrewulf.components.PlayerCollider}.
+ * <p>
+ * The position reported for a command is the one before the push out of the walls. That is where the client
+ * recorded the player in its {@link PredictionBuffer} when it sent the command. Keys are picked up by walking over
+ * them, as on the client, and are then gone for every player. Only used by the {@link NetworkEngine} thread.
+ */
+final class PlayerSimulation {
+
+    private final BoxCollider[] walls;
+    private final BoxCollider[] keys;
+
+    private final Transform[] transforms;
+    private final BoxCollider[] colliders;
+    /* the most recent position which was not colliding with anything, and the one before it */
+    private final double[] lastX;
+    private final double[] lastY;
+    private final double[] lastLastX;
+    private final double[] lastLastY;
+
+    private final CharacterMovement.Direction[] dirX;
+    private final CharacterMovement.Direction[] dirY;
+    private final CharacterMovement.Direction[] facing;
+    private final boolean[] moving;
+    private final int[] speedBoost;
+    private final int[] speedFrames;
+    private final int[] invisibilityFrames;
+
+    /* whether a command has been applied, and the position the newest one was sent at */
+    private final boolean[] hasInput;
+    private final double[] commandX;
+    private final double[] commandY;
+    /* the power-ups activated by the commands applied since the record was last written */
+    private final boolean[] invisibilityActivated;
+    private final boolean[] speedActivated;
+
+    /**
+     * @param mapData the map of the game
+     * @param spawns the position the player in each slot spawns at
+     */
+    PlayerSimulation(GameMapWrapper mapData, XYPair[] spawns){
+        walls = createWalls(mapData);
+        keys = createKeys(mapData);
+
+        int slots = spawns.length;
+        transforms = new Transform[slots];
+        colliders = new BoxCollider[slots];
+        lastX = new double[slots];
+        lastY = new double[slots];
+        lastLastX = new double[slots];
+        lastLastY = new double[slots];
+        dirX = new CharacterMovement.Direction[slots];
+        dirY = new CharacterMovement.Direction[slots];
+        facing = new CharacterMovement.Direction[slots];
+        moving = new boolean[slots];
+        speedBoost = new int[slots];
+        speedFrames = new int[slots];
+        invisibilityFrames = new int[slots];
+        hasInput = new boolean[slots];
+        commandX = new double[slots];
+        commandY = new double[slots];
+        invisibilityActivated = new boolean[slots];
+        speedActivated = new boolean[slots];
+        for(int i = 0; i < slots; i++){
+            transforms[i] = new Transform(spawns[i].x, spawns[i].y, MovementPhysics.PLAYER_WIDTH,
+                    MovementPhysics.PLAYER_HEIGHT);
+            colliders[i] = new BoxCollider(transforms[i], ColliderTag.PLAYER, PlayerColliderData.INITIAL_VALUE);
+            lastX[i] = spawns[i].x;
+            lastY[i] = spawns[i].y;
+            dirX[i] = CharacterMovement.Direction.NONE;
+            dirY[i] = CharacterMovement.Direction.DOWN;
+            facing[i] = CharacterMovement.Direction.DOWN;
+            commandX[i] = spawns[i].x;
+            commandY[i] = spawns[i].y;
+        }
+    }
+
+    /**
+     * Applies an input command, the next one in order, as one frame of the game loop
+     * @param slot the slot of the player
+     * @param command the input command, packed by {@link Protocol#packInput}
+     */
+    void apply(int slot, int command){
+        Transform transform = transforms[slot];
+        if(moving[slot]){
+            MovementPhysics.step(transform.position, dirX[slot], dirY[slot],
+                    MovementPhysics.SPEED + speedBoost[slot]);
+        }
+        lastLastX[slot] = lastX[slot];
+        lastLastY[slot] = lastY[slot];
+        lastX[slot] = transform.position.x;
+        lastY[slot] = transform.position.y;
+        commandX[slot] = transform.position.x;
+        commandY[slot] = transform.position.y;
+        hasInput[slot] = true;
+
+        CharacterMovement.Direction keyX = Protocol.inputDirectionX(command);
+        CharacterMovement.Direction keyY = Protocol.inputDirectionY(command);
+        facing[slot] = facing(facing[slot], dirX[slot], dirY[slot], keyX, keyY);
+        dirX[slot] = keyX;
+        dirY[slot] = keyY;
+        moving[slot] = MovementPhysics.isMoving(keyX, keyY, Protocol.inputStandsStill(command));
+        /* a boost cannot be activated again while it is on, which the client never does */
+        if(Protocol.inputSpeed(command) && speedFrames[slot] == 0){
+            speedBoost[slot] = MovementPhysics.SPEED_BOOST;
+            speedFrames[slot] = MovementPhysics.BOOST_FRAMES;
+            speedActivated[slot] = true;
+        }
+        if(Protocol.inputInvisibility(command) && invisibilityFrames[slot] == 0){
+            invisibilityFrames[slot] = MovementPhysics.BOOST_FRAMES;
+            invisibilityActivated[slot] = true;
+        }
+        if(speedFrames[slot] > 0 && --speedFrames[slot] == 0){
+            speedBoost[slot] = 0;
+        }
+        if(invisibilityFrames[slot] > 0){
+            invisibilityFrames[slot]--;
+        }
+
+        collide(slot);
+    }
+
+    /**
+     * Writes the record of a player for the next snapshot. The boosts are flagged in the first record written after
+     * the command which activated them, as the client flagged them itself.
+     * @param slot the slot of the player
+     * @param id the id of the player
+     * @param record the buffer to write the record to, from position 0
+     */
+    void writeRecord(int slot, int id, ByteBuffer record){
+        record.clear();
+        Protocol.writePlayer(record, id, dirX[slot], dirY[slot], moving[slot], facing[slot],
+                invisibilityActivated[slot], speedActivated[slot], commandX[slot], commandY[slot]);
+        invisibilityActivated[slot] = false;
+        speedActivated[slot] = false;
+    }
+
+    /**
+     * @param slot the slot of a player
+     * @return true once a command has been applied for the player
+     */
+    boolean hasInput(int slot){
+        return hasInput[slot];
+    }
+
+    /**
+     * @param slot the slot of a player
+     * @param position set to the position the player was at when the newest command applied was sent
+     */
+    void getPosition(int slot, XYPair position){
+        position.x = commandX[slot];
+        position.y = commandY[slot];
+    }
+
+    /**
+     * @param slot the slot of a player
+     * @return true while the player is using the invisibility boost
+     */
+    boolean isInvisible(int slot){
+        return invisibilityFrames[slot] > 0;
+    }
+
+    /**
+     * @param slot the slot of a player
+     * @param keyType a type of key
+     * @return true if the player has picked up a key of that type
+     */
+    boolean hasKey(int slot, Cell.KeyType keyType){
+        return PlayerColliderData.hasKey(colliders[slot].getTagData(), keyType);
+    }
+
+    /* push the player out of the walls and locked doors, then pick up any key the player is on */
+    private void collide(int slot){
+        BoxCollider player = colliders[slot];
+        for(BoxCollider wall : walls){
+            if(!CollisionSystem.closeToPlayer(player, wall)){
+                continue;
+            }
+            XYPair overlap = player.getOverlapSize(wall);
+            if(overlap == null){
+                continue;
+            }
+            int door = wall.getTagData();
+            if(door == 0 || !PlayerColliderData.hasKey(player.getTagData(), Cell.KeyType.values()[door - 1])){
+                pushOut(slot, overlap);
+            }
+        }
+        for(int i = 0; i < keys.length; i++){
+            BoxCollider key = keys[i];
+            if(key != null && CollisionSystem.closeToPlayer(player, key) && player.getOverlapSize(key) != null){
+                player.setTagData(PlayerColliderData.addKey(player.getTagData(),
+                        Cell.KeyType.values()[key.getTagData()]));
+                /* a key is gone once anyone has picked it up, as every client removes it */
+                keys[i] = null;
+            }
+        }
+    }
+
+    /* move the player back to the last non-colliding X or Y (or both) coordinate(s) */
+    private void pushOut(int slot, XYPair overlapSize){
+        Transform transform = transforms[slot];
+        if(MovementPhysics.revertsX(overlapSize)){
+            transform.position.x = lastX[slot];
+            lastX[slot] = lastLastX[slot];
+        }
+        if(MovementPhysics.revertsY(overlapSize)){
+            transform.position.y = lastY[slot];
+            lastY[slot] = lastLastY[slot];
+        }
+    }
+
+    /* the way a player faces after a command: towards a key which has just been pressed, as the client faces the most
+     * recent key pressed, or towards a key still held once the one it faced has been let go. The client knows which
+     * of two keys pressed on the same frame came last, which the keys do not tell, so the vertical one is taken. */
+    private static CharacterMovement.Direction facing(CharacterMovement.Direction facing,
+                                                      CharacterMovement.Direction lastX,
+                                                      CharacterMovement.Direction lastY,
+                                                      CharacterMovement.Direction keyX,
+                                                      CharacterMovement.Direction keyY){
+        if(keyY != CharacterMovement.Direction.NONE && keyY != lastY){
+            return keyY;
+        }
+        if(keyX != CharacterMovement.Direction.NONE && keyX != lastX){
+            return keyX;
+        }
+        if(facing == keyX || facing == keyY){
+            return facing;
+        }
+        if(keyY != CharacterMovement.Direction.NONE){
+            return keyY;
+        }
+        return keyX != CharacterMovement.Direction.NONE ? keyX : facing;
+    }
+
+    /* the walls and doors, in the same places as GameWorld creates them */
+    private static BoxCollider[] createWalls(GameMapWrapper mapData){
+        List<BoxCollider> walls = new ArrayList<>();
+        MovementPhysics.forEachWall(mapData, (x, y, width, height, dividerType) ->
+                walls.add(new BoxCollider(new Transform(x, y, width, height), ColliderTag.WALL,
+                        MovementPhysics.wallTagData(dividerType))));
+        return walls.toArray(new BoxCollider[0]);
+    }
+
+    /* the keys, in the cells GameWorld places them in */
+    private static BoxCollider[] createKeys(GameMapWrapper mapData){
+        List<BoxCollider> keys = new ArrayList<>();
+        for(Cell[] column : mapData.getCellGrid()){
+            for(Cell cell : column){
+                if(cell.hasKey()){
+                    keys.add(new BoxCollider(new Transform(cell.getX(), cell.getY(),
+                            MovementPhysics.KEY_WIDTH, MovementPhysics.KEY_HEIGHT),
+                            ColliderTag.KEY, cell.getKeyType().ordinal()));
+                }
+            }
+        }
+        return keys.toArray(new BoxCollider[0]);
+    }
+}
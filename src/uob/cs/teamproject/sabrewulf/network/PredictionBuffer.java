@@ -0,0 +1,98 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import uob.cs.teamproject.sabrewulf.util.XYPair;
+
+/**
+ * The PredictionBuffer keeps the input commands the local player has sent but the server has not yet acknowledged,
+ * along with the position the player was at when each one was sent.
+ * The local player is moved as soon as a key is pressed; when the authoritative state for a command arrives, the
+ * player is rewound to it and the commands sent since are replayed on top, which gives the position the player
+ * should be at now. Only used by the game thread.
+ */
+public class PredictionBuffer {
+
+    /** the number of unacknowledged commands kept, more than a second of commands at 60 frames per second */
+    public static final int CAPACITY = 128;
+
+    private final int[] sequences;
+    private final double[] xs;
+    private final double[] ys;
+    private int head;
+    private int count;
+
+    public PredictionBuffer(){
+        sequences = new int[CAPACITY];
+        xs = new double[CAPACITY];
+        ys = new double[CAPACITY];
+    }
+
+    /**
+     * Records a command which has been sent to the server
+     * @param sequence the sequence number of the command
+     * @param x the x position the player was at when the command was sent
+     * @param y the y position the player was at when the command was sent
+     */
+    public void record(int sequence, double x, double y){
+        sequences[head] = sequence;
+        xs[head] = x;
+        ys[head] = y;
+        head = (head + 1) % CAPACITY;
+        if(count < CAPACITY){
+            count++;
+        }
+    }
+
+    /**
+     * Rewinds the player to the state the server has acknowledged and replays every command sent since.
+     * Commands up to and including the acknowledged one are forgotten.
+     * @param sequence the sequence number of the last command the server has applied
+     * @param x the x position of the player in the server's state
+     * @param y the y position of the player in the server's state
+     * @param currentX the x position the player has been predicted to be at
+     * @param currentY the y position the player has been predicted to be at
+     * @param correction set to the difference between the replayed position and the predicted one
+     * @return true if the command was still waiting to be acknowledged, false if it is unknown or was already
+     * acknowledged, in which case the correction is not set
+     */
+    public boolean reconcile(int sequence, double x, double y, double currentX, double currentY,
+                             XYPair correction){
+        int found = -1;
+        for(int i = 0; i < count; i++){
+            if(sequences[index(i)] == sequence){
+                found = i;
+                break;
+            }
+        }
+        if(found < 0){
+            return false;
+        }
+        int acknowledged = index(found);
+        /* the moves made since the command are the same whichever position they are replayed from */
+        double replayedX = x + (currentX - xs[acknowledged]);
+        double replayedY = y + (currentY - ys[acknowledged]);
+        correction.x = replayedX - currentX;
+        correction.y = replayedY - currentY;
+        count -= found + 1;
+        return true;
+    }
+
+    /**
+     * @return the number of commands waiting to be acknowledged
+     */
+    public int size(){
+        return count;
+    }
+
+    /**
+     * Forgets every command, e.g. when a new game starts
+     */
+    public void clear(){
+        head = 0;
+        count = 0;
+    }
+
+    /* the ring index of the i-th oldest command */
+    private int index(int i){
+        return (head - count + i + CAPACITY) % CAPACITY;
+    }
+}
@@ -0,0 +1,138 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+/**
+ * The PriorityAccumulator chooses which players and enemies go into a client's snapshot when not every change fits
+ * in the client's budget of bytes per tick.
+ * For each client, every player and enemy which has changed since the client's baseline gains priority on each tick it
+ * is left out, faster the closer it is to the client's own player. The snapshot is filled in order of priority until
+ * the budget is spent, and the priority of each entity sent goes back to zero, so far away entities are still sent
+ * now and again however many there are.
+ * Only used by the {@link NetworkEngine} thread, and does not allocate once created.
+ */
+public final class PriorityAccumulator {
+
+    /* the distance in pixels at which an entity gains half of the extra priority for being close */
+    private static final double NEAR_DISTANCE = 240.0;
+    /* an entity next to the player gains priority this much faster than one across the map */
+    private static final double NEAR_WEIGHT = 4.0;
+
+    private final int slots;
+    /* the priority of each player and then each enemy, for each client */
+    private final double[][] priorities;
+    /* the entities which have changed on this tick, sorted by priority */
+    private final int[] order;
+
+    /**
+     * @param slots the number of player slots
+     * @param maxEnemies the largest number of enemies
+     */
+    public PriorityAccumulator(int slots, int maxEnemies){
+        this.slots = slots;
+        priorities = new double[slots][slots + maxEnemies];
+        order = new int[slots + maxEnemies];
+    }
+
+    /**
+     * Records that every change has been sent to a client
+     * @param client the slot of the client
+     */
+    public void sentAll(int client){
+        double[] priority = priorities[client];
+        for(int i = 0; i < priority.length; i++){
+            priority[i] = 0;
+        }
+    }
+
+    /**
+     * Fills the snapshot to send to a client with the records of the latest snapshot in order of priority.
+     * The client's own player is always sent, since its record acknowledges the client's inputs, and so is any enemy
+     * the client has no record of yet.
+     * @param client the slot of the client
+     * @param latest the snapshot holding the newest record of every player and enemy
+     * @param baseline the snapshot the client already has, or null
+     * @param view the snapshot to send to the client, which is filled
+     * @param budget the largest number of bytes the delta of the view against the baseline may take
+     * @param x the x position of the client's player
+     * @param y the y position of the client's player
+     */
+    public void fill(int client, Snapshot latest, Snapshot baseline, Snapshot view, int budget, double x, double y){
+        if(baseline != null){
+            view.copyFrom(baseline);
+        }
+        int enemies = latest.getEnemyCount();
+        view.setEnemyCount(enemies);
+        int firstNew = baseline == null ? 0 : Math.min(baseline.getEnemyCount(), enemies);
+        double[] priority = priorities[client];
+        int remaining = budget - Snapshot.deltaOverhead(slots, enemies);
+        int candidates = 0;
+
+        for(int slot = 0; slot < slots; slot++){
+            int size = latest.playerDeltaSize(slot, baseline);
+            if(size == 0){
+                priority[slot] = 0;
+            }
+            else if(slot == client){
+                view.copyPlayer(slot, latest);
+                remaining -= size;
+                priority[slot] = 0;
+            }
+            else{
+                priority[slot] += gain(x, y, Protocol.toPosition(latest.getPlayerField(slot, 2)),
+                        Protocol.toPosition(latest.getPlayerField(slot, 3)));
+                candidates = insert(priority, candidates, slot);
+            }
+        }
+        for(int enemy = 0; enemy < enemies; enemy++){
+            int entity = slots + enemy;
+            int size = latest.enemyDeltaSize(enemy, baseline);
+            if(size == 0){
+                priority[entity] = 0;
+            }
+            else if(enemy >= firstNew){
+                view.copyEnemy(enemy, latest);
+                remaining -= size;
+                priority[entity] = 0;
+            }
+            else{
+                priority[entity] += gain(x, y, Protocol.toPosition(latest.getEnemyField(enemy, 1)),
+                        Protocol.toPosition(latest.getEnemyField(enemy, 2)));
+                candidates = insert(priority, candidates, entity);
+            }
+        }
+
+        /* a cheaper record further down may still fit once a bigger one has not */
+        for(int i = 0; i < candidates && remaining > 0; i++){
+            int entity = order[i];
+            if(entity < slots){
+                int size = latest.playerDeltaSize(entity, baseline);
+                if(size <= remaining){
+                    view.copyPlayer(entity, latest);
+                    remaining -= size;
+                    priority[entity] = 0;
+                }
+            }
+            else if(Protocol.ENEMY_KEYFRAME_SIZE <= remaining){
+                view.copyEnemy(entity - slots, latest);
+                remaining -= Protocol.ENEMY_KEYFRAME_SIZE;
+                priority[entity] = 0;
+            }
+        }
+    }
+
+    /* inserts an entity into the first count entries of the order, highest priority first */
+    private int insert(double[] priority, int count, int entity){
+        int i = count;
+        while(i > 0 && priority[order[i - 1]] < priority[entity]){
+            order[i] = order[i - 1];
+            i--;
+        }
+        order[i] = entity;
+        return count + 1;
+    }
+
+    /* the priority an entity at (toX, toY) gains on one tick for a client whose player is at (x, y) */
+    private static double gain(double x, double y, double toX, double toY){
+        double distance = Math.hypot(toX - x, toY - y);
+        return 1 + NEAR_WEIGHT * NEAR_DISTANCE / (NEAR_DISTANCE + distance);
+    }
+}
@@ -0,0 +1,458 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The Protocol class defines the binary format of the messages which are sent every frame.
+ * Every binary message starts with a three byte header: {@link #PROTOCOL_ID}, which can never be the first byte of
+ * a text control message (e.g. "start#", "end#"), followed by the protocol version and the message type, a byte
+ * each.
+ * <p>
+ * Directions are packed into bits as their ordinals, booleans as flag bits and positions as fixed-point shorts,
+ * so a player record takes {@link #PLAYER_RECORD_SIZE} bytes and an enemy record {@link #ENEMY_RECORD_SIZE} bytes.
+ * Snapshots carry an enemy as a keyframe of {@link #ENEMY_KEYFRAME_SIZE} bytes instead, which the clients
+ * extrapolate from until the server sends a new one (see {@link DeadReckoning}). A record marked absent is of a
+ * character outside the receiver's area of interest, and the rest of it is stale (see {@link AreaOfInterest}).
+ * An input command is the keys held on one frame as a key mask and the power-ups activated on it, and nothing the
+ * server can work out from them, such as the way the player faces; a held key sends the same command frame after
+ * frame, so commands are sent as runs of identical ones.
+ * All methods read from or write to a caller-supplied {@link ByteBuffer} and never allocate.
+ */
+public final class Protocol {
+
+    /** the first byte of every binary message */
+    public static final int PROTOCOL_ID = 0xB5;
+    /** the version of the binary format, bumped once for each release which changes the layout of a message */
+    public static final int VERSION = 1;
+
+    /** a client acknowledging the snapshots it has received and sending its most recent input commands
+     * (and, for the host, the state of the enemies) to the server, after the low 16 bits of the number of the message
+     * (see {@link #SEQUENCE_SIZE}) */
+    public static final int PLAYER_INPUT = 1;
+    /** the server sending a {@link Snapshot} of every player and enemy to the clients, once per server tick, then the
+     * ports of the players who have quit, the scoreboard if it has changed (see {@link #SCORE_RECORD_SIZE}) and the
+     * sequence number of the last input command applied for the receiver */
+    public static final int WORLD_STATE = 2;
+    /** the server sending the map to a client when a game loads, encoded by
+     * {@link uob.cs.teamproject.sabrewulf.map.MapCodec} and sent through a {@link FragmentChannel} */
+    public static final int MAP = 3;
+    /** text control messages sent through a {@link ReliableChannel}, and their acknowledgements */
+    public static final int CONTROL = 4;
+    /** a probe carrying the time it was sent (8 bytes), which the peer echoes back straight away in a
+     * {@link #PONG} so the round trip time can be measured by {@link NetworkStats} */
+    public static final int PING = 5;
+    /** the answer to a {@link #PING}, carrying the time from the ping, then the time on the clock of the peer when it
+     * answered (8 bytes) so a client can synchronise its {@link ClockSync} with the server, and the percentage of the
+     * peer's messages lost in the last window (1 byte) */
+    public static final int PONG = 6;
+    /** one piece of a message too long for a single datagram, sent through a {@link FragmentChannel}: the id of the
+     * message (4 bytes), the index of the fragment and the number of fragments (2 bytes each), then the bytes */
+    public static final int FRAGMENT = 7;
+    /** the fragments of a message received so far: the id of the message (4 bytes), the number of fragments
+     * (2 bytes), then a bit for each fragment */
+    public static final int FRAGMENT_ACK = 8;
+    /** a spectator asking to watch a game in progress, sent again now and then for as long as it watches; it has
+     * no body. The server answers with the usernames, the map and the spawn positions, as it does a player which has
+     * joined, and then sends it every snapshot (see {@link SpectatorClient}). */
+    public static final int SPECTATE = 9;
+
+    public static final int HEADER_SIZE = 3;
+    /** the newest tick received (4 bytes) and a bit for each of the 32 ticks before it which was received */
+    public static final int ACK_SIZE = 8;
+    /** player id (2 bytes), packed directions and flags (2 bytes), x and y (2 bytes each) */
+    public static final int PLAYER_RECORD_SIZE = 8;
+    /** packed directions and moving flag (2 bytes), x and y (2 bytes each) */
+    public static final int ENEMY_RECORD_SIZE = 6;
+    /** an enemy record, then the velocity along x and y (1 byte each) and the low 16 bits of the tick the record is
+     * from (2 bytes) */
+    public static final int ENEMY_KEYFRAME_SIZE = ENEMY_RECORD_SIZE + 4;
+    /** the size of a {@link #PING} message, including the header */
+    public static final int PING_SIZE = HEADER_SIZE + 8;
+    /** the size of a {@link #PONG} message, including the header */
+    public static final int PONG_SIZE = PING_SIZE + 9;
+    /** the low 16 bits of the number of a {@link #WORLD_STATE} or {@link #PLAYER_INPUT} message, one higher for
+     * each message sent to the same peer, from which the peer counts the messages lost. The ticks and input commands
+     * cannot be used, since a {@link SendRateController} may skip some of them. */
+    public static final int SEQUENCE_SIZE = 2;
+    /** the size of the start of a {@link #WORLD_STATE} message: the header, the number of the message (2 bytes),
+     * the tick (4 bytes), the tick of the baseline (4 bytes), the tick rate (1 byte) and the server time the snapshot
+     * was taken at, in milliseconds since the game was loaded (4 bytes) */
+    public static final int WORLD_STATE_HEADER_SIZE = HEADER_SIZE + SEQUENCE_SIZE + 13;
+    /** the score of one player on the scoreboard a {@link #WORLD_STATE} message carries: the player id (2 bytes) and
+     * the score (4 bytes). The scoreboard starts with the number of records (1 byte), which is 0 when the receiver
+     * already has the newest scoreboard. */
+    public static final int SCORE_RECORD_SIZE = 6;
+    /** a run of identical input commands: the key mask (1 byte), then the power-up bits and the length of the run
+     * (1 byte) */
+    public static final int INPUT_RUN_SIZE = 2;
+    /** the most input commands a {@link #PLAYER_INPUT} message carries, the newest and those sent just before it */
+    public static final int MAX_INPUT_COMMANDS = 16;
+
+    /* positions are sent with 4 fractional bits, which covers -2048 to 2047 */
+    private static final double POSITION_SCALE = 16.0;
+    /* velocities are sent in quarters of a pixel per tick, which covers -32 to 31.75, so that the fastest enemy
+     * (3 pixels a frame at 60 frames per second) still fits at the lowest server tick rate of 10 Hz, 18 pixels a tick */
+    private static final double VELOCITY_SCALE = 4.0;
+
+    /* bit layout of the packed directions and flags */
+    private static final int DIRECTION_BITS = 3;
+    private static final int DIRECTION_MASK = (1 << DIRECTION_BITS) - 1;
+    private static final int DIR_Y_SHIFT = 3;
+    private static final int FACING_SHIFT = 6;
+    private static final int MOVING_FLAG = 1 << 9;
+    private static final int INVISIBILITY_FLAG = 1 << 10;
+    private static final int SPEED_FLAG = 1 << 11;
+    private static final int ABSENT_FLAG = 1 << 12;
+
+    /* bit layout of an input command: the key mask in the low byte, the power-ups activated in the next two bits */
+    private static final int KEY_LEFT = 1;
+    private static final int KEY_RIGHT = 1 << 1;
+    private static final int KEY_UP = 1 << 2;
+    private static final int KEY_DOWN = 1 << 3;
+    private static final int KEY_STAND_STILL = 1 << 4;
+    private static final int INPUT_INVISIBILITY = 1 << 8;
+    private static final int INPUT_SPEED = 1 << 9;
+    private static final int INPUT_MASK = (1 << 10) - 1;
+    /* the second byte of a run holds the power-up bits and, above them, the length of the run minus one */
+    private static final int RUN_LENGTH_SHIFT = 2;
+
+    /* cached because Direction.values() returns a new array on every call */
+    private static final CharacterMovement.Direction[] DIRECTIONS = CharacterMovement.Direction.values();
+
+    private Protocol(){}
+
+    /**
+     * Writes the header of a binary message
+     * @param buffer the buffer to write to
+     * @param messageType the type of the message
+     */
+    public static void writeHeader(ByteBuffer buffer, int messageType){
+        buffer.put((byte) PROTOCOL_ID);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) messageType);
+    }
+
+    /**
+     * @param buffer a received message
+     * @return true if the message is a binary message, false if it is a text control message
+     */
+    public static boolean isBinary(ByteBuffer buffer){
+        return buffer.remaining() >= HEADER_SIZE && (buffer.get(buffer.position()) & 0xFF) == PROTOCOL_ID;
+    }
+
+    /**
+     * Reads the header of a binary message
+     * @param buffer a received binary message
+     * @return the type of the message, or -1 if the message was written by a different version of the protocol
+     */
+    public static int readHeader(ByteBuffer buffer){
+        buffer.get();
+        int version = buffer.get() & 0xFF;
+        int type = buffer.get() & 0xFF;
+        return version == VERSION ? type : -1;
+    }
+
+    /**
+     * Writes a player record
+     * @param buffer the buffer to write to
+     * @param id the id of the player (the port of its client)
+     * @param dirX the x direction of the character
+     * @param dirY the y direction of the character
+     * @param isMoving true if the character is moving, false otherwise
+     * @param facing the direction the character is facing
+     * @param invisibility true if the character is using the invisibility boost
+     * @param speed true if the character is using the speed boost
+     * @param x the x position of the character
+     * @param y the y position of the character
+     */
+    public static void writePlayer(ByteBuffer buffer, int id, CharacterMovement.Direction dirX,
+                                   CharacterMovement.Direction dirY, boolean isMoving,
+                                   CharacterMovement.Direction facing, boolean invisibility, boolean speed,
+                                   double x, double y){
+        int bits = packDirections(dirX, dirY, facing, isMoving);
+        if(invisibility){
+            bits |= INVISIBILITY_FLAG;
+        }
+        if(speed){
+            bits |= SPEED_FLAG;
+        }
+        buffer.putShort((short) id);
+        buffer.putShort((short) bits);
+        buffer.putShort(toFixedPoint(x));
+        buffer.putShort(toFixedPoint(y));
+    }
+
+    /**
+     * Writes an enemy record
+     * @param buffer the buffer to write to
+     * @param dirX the x direction of the enemy
+     * @param dirY the y direction of the enemy
+     * @param isMoving true if the enemy is moving, false otherwise
+     * @param facing the direction the enemy is facing
+     * @param x the x position of the enemy
+     * @param y the y position of the enemy
+     */
+    public static void writeEnemy(ByteBuffer buffer, CharacterMovement.Direction dirX,
+                                  CharacterMovement.Direction dirY, boolean isMoving,
+                                  CharacterMovement.Direction facing, double x, double y){
+        buffer.putShort((short) packDirections(dirX, dirY, facing, isMoving));
+        buffer.putShort(toFixedPoint(x));
+        buffer.putShort(toFixedPoint(y));
+    }
+
+    /**
+     * Packs the keys held and the power-ups activated on one frame into an input command
+     * @param dirX the x direction of the keys held
+     * @param dirY the y direction of the keys held
+     * @param standStill true if the key which keeps the player standing still is held
+     * @param invisibility true if the invisibility boost is activated on this frame
+     * @param speed true if the speed boost is activated on this frame
+     * @return the input command
+     */
+    public static int packInput(CharacterMovement.Direction dirX, CharacterMovement.Direction dirY,
+                                boolean standStill, boolean invisibility, boolean speed){
+        int command = 0;
+        if(dirX == CharacterMovement.Direction.LEFT){
+            command |= KEY_LEFT;
+        }
+        else if(dirX == CharacterMovement.Direction.RIGHT){
+            command |= KEY_RIGHT;
+        }
+        if(dirY == CharacterMovement.Direction.UP){
+            command |= KEY_UP;
+        }
+        else if(dirY == CharacterMovement.Direction.DOWN){
+            command |= KEY_DOWN;
+        }
+        if(standStill){
+            command |= KEY_STAND_STILL;
+        }
+        if(invisibility){
+            command |= INPUT_INVISIBILITY;
+        }
+        if(speed){
+            command |= INPUT_SPEED;
+        }
+        return command;
+    }
+
+    /**
+     * Writes a run of identical input commands
+     * @param buffer the buffer to write to
+     * @param command the input command
+     * @param length the number of commands in the run, from 1 to 64
+     */
+    public static void writeInputRun(ByteBuffer buffer, int command, int length){
+        buffer.put((byte) command);
+        buffer.put((byte) (((length - 1) << RUN_LENGTH_SHIFT) | (command >>> 8)));
+    }
+
+    /**
+     * Reads a run of identical input commands
+     * @param buffer the buffer to read from
+     * @return the command in the low 16 bits and the length of the run above them
+     */
+    public static int readInputRun(ByteBuffer buffer){
+        int keys = buffer.get() & 0xFF;
+        int second = buffer.get() & 0xFF;
+        int command = keys | ((second << 8) & INPUT_MASK);
+        int length = (second >>> RUN_LENGTH_SHIFT) + 1;
+        return command | (length << 16);
+    }
+
+    /**
+     * @param run a run read by {@link #readInputRun(ByteBuffer)}
+     * @return the input command of the run
+     */
+    public static int runCommand(int run){
+        return run & 0xFFFF;
+    }
+
+    /**
+     * @param run a run read by {@link #readInputRun(ByteBuffer)}
+     * @return the number of commands in the run
+     */
+    public static int runLength(int run){
+        return run >>> 16;
+    }
+
+    /**
+     * @param command an input command
+     * @return the x direction of the keys held
+     */
+    public static CharacterMovement.Direction inputDirectionX(int command){
+        if((command & KEY_LEFT) != 0){
+            return CharacterMovement.Direction.LEFT;
+        }
+        return (command & KEY_RIGHT) != 0 ? CharacterMovement.Direction.RIGHT : CharacterMovement.Direction.NONE;
+    }
+
+    /**
+     * @param command an input command
+     * @return the y direction of the keys held
+     */
+    public static CharacterMovement.Direction inputDirectionY(int command){
+        if((command & KEY_UP) != 0){
+            return CharacterMovement.Direction.UP;
+        }
+        return (command & KEY_DOWN) != 0 ? CharacterMovement.Direction.DOWN : CharacterMovement.Direction.NONE;
+    }
+
+    /**
+     * @param command an input command
+     * @return true if the key which keeps the player standing still is held
+     */
+    public static boolean inputStandsStill(int command){
+        return (command & KEY_STAND_STILL) != 0;
+    }
+
+    public static boolean inputInvisibility(int command){
+        return (command & INPUT_INVISIBILITY) != 0;
+    }
+
+    public static boolean inputSpeed(int command){
+        return (command & INPUT_SPEED) != 0;
+    }
+
+    /**
+     * Writes an enemy keyframe
+     * @param buffer the buffer to write to
+     * @param bits the packed directions and moving flag of the enemy
+     * @param x the x position of the enemy at the keyframe, as a fixed-point short
+     * @param y the y position of the enemy at the keyframe, as a fixed-point short
+     * @param velocityX the velocity along x, as written by {@link #toVelocity(double)}
+     * @param velocityY the velocity along y, as written by {@link #toVelocity(double)}
+     * @param tick the tick of the keyframe
+     */
+    public static void writeEnemyKeyframe(ByteBuffer buffer, int bits, short x, short y, byte velocityX,
+                                          byte velocityY, int tick){
+        buffer.putShort((short) bits);
+        buffer.putShort(x);
+        buffer.putShort(y);
+        buffer.put(velocityX);
+        buffer.put(velocityY);
+        buffer.putShort((short) tick);
+    }
+
+    /**
+     * @param pixelsPerTick a velocity
+     * @return the velocity as a byte, clamped to the range which can be sent
+     */
+    public static byte toVelocity(double pixelsPerTick){
+        long value = Math.round(pixelsPerTick * VELOCITY_SCALE);
+        return (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, value));
+    }
+
+    /**
+     * Finds where a character is a number of ticks after a keyframe, moving at the velocity of the keyframe.
+     * The server and the clients both use this, so they get exactly the same position.
+     * @param position the fixed-point position at the keyframe
+     * @param velocity the velocity of the keyframe
+     * @param ticks the number of ticks since the keyframe
+     * @return the position
+     */
+    public static double extrapolate(short position, byte velocity, int ticks){
+        return toPosition(position) + velocity / VELOCITY_SCALE * ticks;
+    }
+
+    /**
+     * @param tick a tick
+     * @param keyframeTick the low 16 bits of the tick of a keyframe no later than it, as read from a keyframe
+     * @return the number of ticks between the keyframe and the tick
+     */
+    public static int ticksSince(int tick, short keyframeTick){
+        return (tick - keyframeTick) & 0xFFFF;
+    }
+
+    /**
+     * @param bits the packed directions and flags of a record
+     * @return the x direction, or NONE if the value is not valid
+     */
+    public static CharacterMovement.Direction directionX(int bits){
+        return toDirection(bits & DIRECTION_MASK, CharacterMovement.Direction.NONE);
+    }
+
+    /**
+     * @param bits the packed directions and flags of a record
+     * @return the y direction, or DOWN if the value is not valid
+     */
+    public static CharacterMovement.Direction directionY(int bits){
+        return toDirection((bits >>> DIR_Y_SHIFT) & DIRECTION_MASK, CharacterMovement.Direction.DOWN);
+    }
+
+    /**
+     * @param bits the packed directions and flags of a record
+     * @return the facing direction, or DOWN if the value is not valid
+     */
+    public static CharacterMovement.Direction facing(int bits){
+        return toDirection((bits >>> FACING_SHIFT) & DIRECTION_MASK, CharacterMovement.Direction.DOWN);
+    }
+
+    public static boolean isMoving(int bits){
+        return (bits & MOVING_FLAG) != 0;
+    }
+
+    public static boolean invisibility(int bits){
+        return (bits & INVISIBILITY_FLAG) != 0;
+    }
+
+    public static boolean speed(int bits){
+        return (bits & SPEED_FLAG) != 0;
+    }
+
+    /**
+     * @param bits the packed directions and flags of a record
+     * @return the same bits, marked as the record of a character outside the receiver's area of interest
+     */
+    public static int markAbsent(int bits){
+        return bits | ABSENT_FLAG;
+    }
+
+    public static boolean isAbsent(int bits){
+        return (bits & ABSENT_FLAG) != 0;
+    }
+
+    /**
+     * @param value a fixed-point position read from a record
+     * @return the position
+     */
+    public static double toPosition(short value){
+        return value / POSITION_SCALE;
+    }
+
+    /**
+     * @param position a position
+     * @return the position as a fixed-point short, clamped to the range which can be sent
+     */
+    public static short toFixedPoint(double position){
+        long value = Math.round(position * POSITION_SCALE);
+        if(value > Short.MAX_VALUE){
+            value = Short.MAX_VALUE;
+        }
+        else if(value < Short.MIN_VALUE){
+            value = Short.MIN_VALUE;
+        }
+        return (short) value;
+    }
+
+    /* pack three directions and the moving flag into the low 10 bits of an int */
+    private static int packDirections(CharacterMovement.Direction dirX, CharacterMovement.Direction dirY,
+                                      CharacterMovement.Direction facing, boolean isMoving){
+        int bits = ordinal(dirX) | (ordinal(dirY) << DIR_Y_SHIFT) | (ordinal(facing) << FACING_SHIFT);
+        if(isMoving){
+            bits |= MOVING_FLAG;
+        }
+        return bits;
+    }
+
+    /* null is sent as an ordinal which is not valid, so the receiver falls back to its default */
+    private static int ordinal(CharacterMovement.Direction direction){
+        return direction == null ? DIRECTION_MASK : direction.ordinal();
+    }
+
+    private static CharacterMovement.Direction toDirection(int ordinal, CharacterMovement.Direction fallback){
+        return ordinal < DIRECTIONS.length ? DIRECTIONS[ordinal] : fallback;
+    }
+}
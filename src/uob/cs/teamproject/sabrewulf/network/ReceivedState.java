@@ -0,0 +1,222 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
+
+import java.util.Arrays;
+
+/**
+ * A ReceivedState is everything the client has received from the server up to one tick: the newest state of each
+ * player and enemy, the time-stamped states they are interpolated between, which players have left and the newest
+ * input command the server has applied for the local player.
+ * <p>
+ * {@link DataStorage} keeps several of them so that the {@link NetworkEngine} thread can write one while the game
+ * thread reads another. Each is only used by one thread at a time and is handed between the threads whole, so the
+ * game thread never sees part of one tick and part of the next.
+ */
+final class ReceivedState {
+
+    private final CharacterMovement.Direction[] playerDirections;
+    private final CharacterMovement.Direction[] playerIsFacing;
+    private final boolean[] playerIsMoving;
+    private final boolean[] playerInvisibilityBoost;
+    private final boolean[] playerSpeedBoost;
+    /* the position of each player, which is null until a state has been received for it */
+    private final XYPair[] transformCheck;
+    private final XYPair[] transforms;
+    private final boolean[] removed;
+
+    private final CharacterMovement.Direction[] enemyDirections;
+    private final CharacterMovement.Direction[] enemyIsFacing;
+    private final boolean[] enemyIsMoving;
+
+    private final InterpolationBuffer[] playerInterpolation;
+    private final InterpolationBuffer[] enemyInterpolation;
+
+    private int acknowledgedInput;
+    private double acknowledgedX;
+    private double acknowledgedY;
+
+    /* set by the engine thread when it publishes the state, cleared by the game thread when it takes it */
+    volatile boolean fresh;
+
+    /**
+     * @param numOfPlayers a number of players
+     * @param numberOfEnemies a number of enemies
+     * @param maxExtrapolation the longest time past the newest state a character is extrapolated, in nanoseconds
+     */
+    ReceivedState(int numOfPlayers, int numberOfEnemies, long maxExtrapolation){
+        playerDirections = new CharacterMovement.Direction[numOfPlayers*2];
+        playerIsFacing = new CharacterMovement.Direction[numOfPlayers];
+        playerIsMoving = new boolean[numOfPlayers];
+        playerInvisibilityBoost = new boolean[numOfPlayers];
+        playerSpeedBoost = new boolean[numOfPlayers];
+        transformCheck = new XYPair[numOfPlayers];
+        transforms = new XYPair[numOfPlayers];
+        removed = new boolean[numOfPlayers];
+        for(int i = 0; i < numOfPlayers; i++){
+            transforms[i] = new XYPair(0, 0);
+        }
+        enemyDirections = new CharacterMovement.Direction[numberOfEnemies*2];
+        enemyIsFacing = new CharacterMovement.Direction[numberOfEnemies];
+        enemyIsMoving = new boolean[numberOfEnemies];
+        playerInterpolation = new InterpolationBuffer[numOfPlayers];
+        for(int i = 0; i < numOfPlayers; i++){
+            playerInterpolation[i] = new InterpolationBuffer(maxExtrapolation);
+        }
+        enemyInterpolation = new InterpolationBuffer[numberOfEnemies];
+        for(int i = 0; i < numberOfEnemies; i++){
+            enemyInterpolation[i] = new InterpolationBuffer(maxExtrapolation);
+        }
+        clear();
+    }
+
+    /**
+     * Forgets everything received, e.g. when a new game starts
+     */
+    void clear(){
+        Arrays.fill(playerDirections, null);
+        Arrays.fill(playerIsFacing, null);
+        Arrays.fill(playerIsMoving, false);
+        Arrays.fill(playerInvisibilityBoost, false);
+        Arrays.fill(playerSpeedBoost, false);
+        Arrays.fill(transformCheck, null);
+        Arrays.fill(removed, false);
+        for(int i = 0; i < enemyIsFacing.length; i++){
+            enemyDirections[i*2] = CharacterMovement.Direction.NONE;
+            enemyDirections[i*2+1] = CharacterMovement.Direction.NONE;
+            enemyIsFacing[i] = CharacterMovement.Direction.DOWN;
+            enemyIsMoving[i] = false;
+        }
+        for(InterpolationBuffer buffer : playerInterpolation){
+            buffer.clear();
+        }
+        for(InterpolationBuffer buffer : enemyInterpolation){
+            buffer.clear();
+        }
+        acknowledgedInput = 0;
+        acknowledgedX = 0;
+        acknowledgedY = 0;
+    }
+
+    /**
+     * Makes this state the same as another, without allocating
+     * @param other a state with the same number of players and enemies
+     */
+    void copyFrom(ReceivedState other){
+        System.arraycopy(other.playerDirections, 0, playerDirections, 0, playerDirections.length);
+        System.arraycopy(other.playerIsFacing, 0, playerIsFacing, 0, playerIsFacing.length);
+        System.arraycopy(other.playerIsMoving, 0, playerIsMoving, 0, playerIsMoving.length);
+        System.arraycopy(other.playerInvisibilityBoost, 0, playerInvisibilityBoost, 0,
+                playerInvisibilityBoost.length);
+        System.arraycopy(other.playerSpeedBoost, 0, playerSpeedBoost, 0, playerSpeedBoost.length);
+        System.arraycopy(other.removed, 0, removed, 0, removed.length);
+        for(int i = 0; i < transforms.length; i++){
+            if(other.transformCheck[i] == null){
+                transformCheck[i] = null;
+            }
+            else {
+                transforms[i].x = other.transformCheck[i].x;
+                transforms[i].y = other.transformCheck[i].y;
+                transformCheck[i] = transforms[i];
+            }
+        }
+        System.arraycopy(other.enemyDirections, 0, enemyDirections, 0, enemyDirections.length);
+        System.arraycopy(other.enemyIsFacing, 0, enemyIsFacing, 0, enemyIsFacing.length);
+        System.arraycopy(other.enemyIsMoving, 0, enemyIsMoving, 0, enemyIsMoving.length);
+        for(int i = 0; i < playerInterpolation.length; i++){
+            playerInterpolation[i].copyFrom(other.playerInterpolation[i]);
+        }
+        for(int i = 0; i < enemyInterpolation.length; i++){
+            enemyInterpolation[i].copyFrom(other.enemyInterpolation[i]);
+        }
+        acknowledgedInput = other.acknowledgedInput;
+        acknowledgedX = other.acknowledgedX;
+        acknowledgedY = other.acknowledgedY;
+    }
+
+    void setPlayer(int num, CharacterMovement.Direction dirX, CharacterMovement.Direction dirY, boolean isMoving,
+                   CharacterMovement.Direction facing, boolean invisibility, boolean speed, double x, double y){
+        playerDirections[num*2] = dirX;
+        playerDirections[num*2+1] = dirY;
+        playerIsMoving[num] = isMoving;
+        playerIsFacing[num] = facing;
+        playerInvisibilityBoost[num] = invisibility;
+        playerSpeedBoost[num] = speed;
+        transforms[num].x = x;
+        transforms[num].y = y;
+        transformCheck[num] = transforms[num];
+    }
+
+    void setEnemy(int num, CharacterMovement.Direction dirX, CharacterMovement.Direction dirY, boolean isMoving,
+                  CharacterMovement.Direction facing){
+        enemyDirections[num*2] = dirX;
+        enemyDirections[num*2+1] = dirY;
+        enemyIsMoving[num] = isMoving;
+        enemyIsFacing[num] = facing;
+    }
+
+    void setRemoved(int num){
+        removed[num] = true;
+    }
+
+    void setAcknowledgedInput(int sequence, double x, double y){
+        acknowledgedInput = sequence;
+        acknowledgedX = x;
+        acknowledgedY = y;
+    }
+
+    int getAcknowledgedInput(XYPair position){
+        position.x = acknowledgedX;
+        position.y = acknowledgedY;
+        return acknowledgedInput;
+    }
+
+    CharacterMovement.Direction[] getPlayerDirections(){
+        return playerDirections;
+    }
+
+    CharacterMovement.Direction getPlayerIsFacing(int num){
+        return playerIsFacing[num];
+    }
+
+    boolean getPlayerIsMoving(int num){
+        return playerIsMoving[num];
+    }
+
+    boolean getInvisibilityBoost(int num){
+        return playerInvisibilityBoost[num];
+    }
+
+    boolean getSpeedBoost(int num){
+        return playerSpeedBoost[num];
+    }
+
+    XYPair getTransformCheck(int num){
+        return transformCheck[num];
+    }
+
+    boolean isRemoved(int num){
+        return removed[num];
+    }
+
+    CharacterMovement.Direction[] getEnemyDirections(){
+        return enemyDirections;
+    }
+
+    CharacterMovement.Direction[] getEnemyIsFacing(){
+        return enemyIsFacing;
+    }
+
+    boolean[] getEnemyIsMoving(){
+        return enemyIsMoving;
+    }
+
+    InterpolationBuffer getPlayerInterpolation(int num){
+        return playerInterpolation[num];
+    }
+
+    InterpolationBuffer getEnemyInterpolation(int num){
+        return enemyInterpolation[num];
+    }
+}
@@ -0,0 +1,303 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The ReliableChannel delivers the text control messages ("start#", "end#", "coin#", ...) between a client and the
+ * server exactly once and in the order they were sent, over a {@link Transport} which may drop, duplicate or reorder
+ * datagrams. Per-frame state is still sent without it, since a newer state replaces a lost one anyway.
+ * <p>
+ * Every message has a sequence number and is kept until the peer acknowledges it. Each {@link Protocol#CONTROL}
+ * message carries the sequence number of the last message received in order, and a message carrying new messages is
+ * acknowledged straight away. Messages which have not been acknowledged within the retransmission timeout are sent
+ * again; the timeout is estimated from the round trip time as in RFC 6298 and doubles every time it expires.
+ * <p>
+ * A peer which has not acknowledged anything after {@link #MAX_ATTEMPTS} transmissions is given up on: nothing more
+ * is sent to it, the messages it has not acknowledged are kept, and the owner of the channel is told through the
+ * handler set by {@link #setUnreachableHandler(Runnable)}, so that it can treat the peer as disconnected.
+ * <p>
+ * Messages can be sent from any thread. Received messages are passed to the handler on the thread that calls
+ * {@link #receive(ByteBuffer, long)}, which is the {@link NetworkEngine} thread.
+ */
+public class ReliableChannel {
+
+    /** the retransmission timeout before the round trip time has been measured, in nanoseconds */
+    public static final long INITIAL_TIMEOUT = 250_000_000L;
+    /** the shortest retransmission timeout, in nanoseconds */
+    public static final long MIN_TIMEOUT = 50_000_000L;
+    /** the longest retransmission timeout, in nanoseconds */
+    public static final long MAX_TIMEOUT = 2_000_000_000L;
+    /** the number of times messages are sent without being acknowledged before the peer is given up on */
+    public static final int MAX_ATTEMPTS = 12;
+
+    /* small enough not to be fragmented by IP */
+    private static final int MAX_PACKET_SIZE = 1200;
+    /* sequence number (4 bytes) and length (2 bytes) of each message */
+    private static final int MESSAGE_HEADER_SIZE = 6;
+    /* the number of messages received out of order which are kept until the ones before them arrive */
+    private static final int RECEIVE_WINDOW = 64;
+
+    private final Transport transport;
+    private final SocketAddress peer;
+    private final Consumer<String> handler;
+    private final ByteBuffer packet;
+    /* counts the packets sent, if set */
+    private volatile NetworkStats stats;
+    /* told once the peer has been given up on, if set */
+    private volatile Runnable unreachableHandler;
+
+    /* messages sent but not yet acknowledged, oldest first */
+    private final ArrayDeque<Pending> unacknowledged;
+    private int nextSequence;
+
+    /* the last message received in order and the messages received ahead of it */
+    private int received;
+    private final HashMap<Integer, String> receivedAhead;
+
+    /* round trip time estimate */
+    private long smoothedRtt;
+    private long rttVariance;
+    private boolean rttMeasured;
+    private long timeout;
+    private long lastTransmission;
+    private int attempts;
+    private boolean unreachable;
+
+    /**
+     * @param transport the transport to send through
+     * @param peer the address of the other end of the channel
+     * @param handler passed every message received, once each and in order
+     */
+    public ReliableChannel(Transport transport, SocketAddress peer, Consumer<String> handler){
+        this.transport = transport;
+        this.peer = peer;
+        this.handler = handler;
+        packet = ByteBuffer.allocate(MAX_PACKET_SIZE);
+        unacknowledged = new ArrayDeque<>();
+        receivedAhead = new HashMap<>();
+        nextSequence = 1;
+        timeout = INITIAL_TIMEOUT;
+    }
+
+    /**
+     * @param stats the statistics to count every packet sent through the channel in, or null
+     */
+    public void setStats(NetworkStats stats){
+        this.stats = stats;
+    }
+
+    /**
+     * @param handler run once on the {@link NetworkEngine} thread when the peer is given up on, or null
+     */
+    public void setUnreachableHandler(Runnable handler){
+        this.unreachableHandler = handler;
+    }
+
+    /**
+     * Sends a message, which is retransmitted by {@link #update(long)} until it is acknowledged, unless the peer has
+     * been given up on
+     * @param message the message to send
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     * @throws IllegalArgumentException if the message is too long to be sent in one datagram
+     */
+    public synchronized void send(String message, long now){
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length > MAX_PACKET_SIZE - Protocol.HEADER_SIZE - 5 - MESSAGE_HEADER_SIZE){
+            throw new IllegalArgumentException("Control message too long: " + bytes.length + " bytes");
+        }
+        Pending pending = new Pending(nextSequence++, bytes, now);
+        if(unacknowledged.isEmpty()){
+            lastTransmission = now;
+        }
+        unacknowledged.add(pending);
+        if(unreachable){
+            return;
+        }
+        beginPacket();
+        writeMessage(pending);
+        transmit();
+    }
+
+    /**
+     * Handles a {@link Protocol#CONTROL} message from the peer: forgets the messages it acknowledges, passes any new
+     * messages which can be delivered in order to the handler and acknowledges them
+     * @param data the message, positioned after the header
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     */
+    public void receive(ByteBuffer data, long now){
+        List<String> deliverable = null;
+        synchronized (this) {
+            acknowledge(data.getInt(), now);
+            int count = data.get() & 0xFF;
+            if(count == 0){
+                return;
+            }
+            for(int i = 0; i < count; i++){
+                int sequence = data.getInt();
+                byte[] bytes = new byte[data.getShort() & 0xFFFF];
+                data.get(bytes);
+                int ahead = sequence - received;
+                if(ahead <= 0 || ahead > RECEIVE_WINDOW){
+                    continue;
+                }
+                receivedAhead.put(sequence, new String(bytes, StandardCharsets.UTF_8));
+            }
+            String message;
+            while((message = receivedAhead.remove(received + 1)) != null){
+                if(deliverable == null){
+                    deliverable = new ArrayList<>();
+                }
+                deliverable.add(message);
+                received++;
+            }
+            /* acknowledge straight away, even duplicates, since the previous acknowledgement may have been lost */
+            beginPacket();
+            transmit();
+        }
+        /* handled outside the lock, since a handler may send on this or another channel */
+        if(deliverable != null){
+            for(String message : deliverable){
+                handler.accept(message);
+            }
+        }
+    }
+
+    /**
+     * Sends every unacknowledged message again if the retransmission timeout has expired, or gives up on the peer
+     * once they have been sent {@link #MAX_ATTEMPTS} times. Called regularly on the {@link NetworkEngine} thread.
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     */
+    public void update(long now){
+        synchronized (this) {
+            if(unreachable || unacknowledged.isEmpty() || now - lastTransmission < timeout){
+                return;
+            }
+            attempts++;
+            if(attempts < MAX_ATTEMPTS){
+                timeout = Math.min(timeout * 2, MAX_TIMEOUT);
+                lastTransmission = now;
+                beginPacket();
+                for(Pending pending : unacknowledged){
+                    if(packet.remaining() < MESSAGE_HEADER_SIZE + pending.bytes.length){
+                        break;
+                    }
+                    pending.retransmitted = true;
+                    writeMessage(pending);
+                }
+                transmit();
+                return;
+            }
+            /* the peer has gone, so stop sending to it */
+            unreachable = true;
+        }
+        /* told outside the lock, since the owner may send on this or another channel */
+        Runnable handler = unreachableHandler;
+        if(handler != null){
+            handler.run();
+        }
+    }
+
+    /**
+     * @return true once the peer has been given up on, after which nothing more is sent to it
+     */
+    public synchronized boolean isUnreachable(){
+        return unreachable;
+    }
+
+    /**
+     * @return the current retransmission timeout, in nanoseconds
+     */
+    public synchronized long getTimeout(){
+        return timeout;
+    }
+
+    /**
+     * @return the number of messages sent which have not been acknowledged
+     */
+    public synchronized int getUnacknowledgedCount(){
+        return unacknowledged.size();
+    }
+
+    /* forget the messages up to and including the acknowledged one, measuring the round trip time */
+    private void acknowledge(int acknowledged, long now){
+        Pending newest = null;
+        while(!unacknowledged.isEmpty() && unacknowledged.peek().sequence - acknowledged <= 0){
+            newest = unacknowledged.poll();
+        }
+        if(newest == null){
+            return;
+        }
+        /* only measure messages sent once, as it is not known which transmission was acknowledged otherwise */
+        if(!newest.retransmitted){
+            measure(now - newest.sent);
+        }
+        attempts = 0;
+        lastTransmission = now;
+    }
+
+    /* update the round trip time estimate and the timeout as in RFC 6298 */
+    private void measure(long rtt){
+        if(!rttMeasured){
+            smoothedRtt = rtt;
+            rttVariance = rtt / 2;
+            rttMeasured = true;
+        }
+        else {
+            rttVariance = (3 * rttVariance + Math.abs(smoothedRtt - rtt)) / 4;
+            smoothedRtt = (7 * smoothedRtt + rtt) / 8;
+        }
+        timeout = Math.max(MIN_TIMEOUT, Math.min(MAX_TIMEOUT, smoothedRtt + 4 * rttVariance));
+    }
+
+    /* start a packet, acknowledging the messages received so far, with a count of 0 messages */
+    private void beginPacket(){
+        packet.clear();
+        Protocol.writeHeader(packet, Protocol.CONTROL);
+        packet.putInt(received);
+        packet.put((byte) 0);
+    }
+
+    private void writeMessage(Pending pending){
+        int countIndex = Protocol.HEADER_SIZE + 4;
+        packet.put(countIndex, (byte) (packet.get(countIndex) + 1));
+        packet.putInt(pending.sequence);
+        packet.putShort((short) pending.bytes.length);
+        packet.put(pending.bytes);
+    }
+
+    private void transmit(){
+        packet.flip();
+        NetworkStats currentStats = stats;
+        if(currentStats != null){
+            currentStats.onSent(packet.remaining());
+        }
+        try {
+            transport.send(packet, peer);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /* a message which has not been acknowledged */
+    private static final class Pending {
+        final int sequence;
+        final byte[] bytes;
+        final long sent;
+        boolean retransmitted;
+
+        Pending(int sequence, byte[] bytes, long sent){
+            this.sequence = sequence;
+            this.bytes = bytes;
+            this.sent = sent;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.util.Arrays;
+
+/**
+ * Samples keeps every value recorded during a measurement, e.g. the duration of each server tick, so that
+ * percentiles can be taken at the end. Values are kept in a growing array of primitives, so recording a value only
+ * allocates when the array is full. Only used by one thread at a time.
+ */
+final class Samples {
+
+    private long[] values;
+    private int size;
+    private boolean sorted;
+
+    Samples(){
+        values = new long[1024];
+        sorted = true;
+    }
+
+    /**
+     * @param value the value to record
+     */
+    void add(long value){
+        if(size == values.length){
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+        sorted = false;
+    }
+
+    /**
+     * Records every value of other samples
+     * @param other the samples to record
+     */
+    void addAll(Samples other){
+        for(int i = 0; i < other.size; i++){
+            add(other.values[i]);
+        }
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    int size(){
+        return size;
+    }
+
+    /**
+     * @return the sum of every value recorded
+     */
+    long sum(){
+        long sum = 0;
+        for(int i = 0; i < size; i++){
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @param percent the percentile, from 0 to 100
+     * @return the smallest value which at least that percentage of the values are less than or equal to, or 0 if
+     * nothing has been recorded
+     */
+    long percentile(double percent){
+        if(size == 0){
+            return 0;
+        }
+        if(!sorted){
+            Arrays.sort(values, 0, size);
+            sorted = true;
+        }
+        int index = (int) Math.ceil(percent / 100 * size) - 1;
+        return values[Math.max(0, Math.min(size - 1, index))];
+    }
+
+    /**
+     * @return the largest value recorded, or 0 if nothing has been recorded
+     */
+    long max(){
+        return percentile(100);
+    }
+}
@@ -0,0 +1,132 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import uob.cs.teamproject.sabrewulf.GameSettings;
+
+/**
+ * The SendRateController decides how many world state or input messages are sent to one peer each second, so that a
+ * client rendering at a high frame rate does not flood the host and a lossy or congested link is not made worse by
+ * sending more. Once per {@link NetworkStats} window the rate is adjusted from what the peer reported: if it lost
+ * more than {@link #LOSS_THRESHOLD} percent of the messages, or the round trip time has grown more than
+ * {@link #QUEUEING_THRESHOLD} milliseconds above the lowest of the recent windows because packets are queueing on the
+ * way, the rate is cut by a quarter; otherwise it climbs back by a tenth of the range, so a clean link probes back up
+ * to the highest rate within a few seconds. The rate always stays between the limits it was created with.
+ * <p>
+ * A message is due when enough time has passed at the current rate since the last one, which is checked on every
+ * server tick or frame. The rate is adjusted on the {@link NetworkEngine} thread and can be read from any thread.
+ */
+public final class SendRateController {
+
+    /** the percentage of messages the peer may lose in a window before the rate is cut */
+    public static final double LOSS_THRESHOLD = 2.0;
+    /** how far the round trip time may grow above the lowest recent one before the rate is cut, in milliseconds */
+    public static final double QUEUEING_THRESHOLD = 25.0;
+
+    /* the fraction of the rate kept when the link is congested */
+    private static final double DECREASE = 0.75;
+    /* the number of clean windows it takes to climb from the lowest rate to the highest */
+    private static final int INCREASE_STEPS = 10;
+    /* the number of windows the lowest round trip time is taken over, so that a route which becomes slower for good
+     * is eventually accepted as the new normal */
+    private static final int BASE_WINDOWS = 10;
+    /* the most messages the credit builds up to; more than one, so the part of a message carried over from one
+     * check to the next is not lost, which allows a burst of two after a pause */
+    private static final double MAX_CREDIT = 2;
+
+    private final double minRate;
+    private final double maxRate;
+    private volatile double rate;
+
+    /* the messages that may be sent, built up as time passes at the current rate */
+    private double credit;
+    private long lastCheck;
+    private boolean checked;
+
+    /* the round trip times of the recent windows, in milliseconds */
+    private final double[] recentRtts;
+    private int rttIndex;
+    private int rttCount;
+
+    /**
+     * Creates a controller between the limits in {@link GameSettings}, which starts at the highest rate
+     * @param naturalRate the rate messages would be sent at without a controller, e.g. the server tick rate, which
+     *                    the rate never goes above
+     */
+    public SendRateController(double naturalRate){
+        this(Math.min(GameSettings.getMinSendRate(), naturalRate),
+                Math.min(GameSettings.getMaxSendRate(), naturalRate));
+    }
+
+    /**
+     * Creates a controller which starts at the highest rate
+     * @param minRate the lowest number of messages per second
+     * @param maxRate the highest number of messages per second
+     */
+    public SendRateController(double minRate, double maxRate){
+        this.minRate = Math.min(minRate, maxRate);
+        this.maxRate = maxRate;
+        rate = maxRate;
+        recentRtts = new double[BASE_WINDOWS];
+    }
+
+    /**
+     * Checks whether a message should be sent now, and if so counts it as sent
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     * @return true if a message is due
+     */
+    public synchronized boolean isDue(long now){
+        if(!checked){
+            checked = true;
+            credit = 1;
+        }
+        else {
+            credit = Math.min(MAX_CREDIT, credit + rate * (now - lastCheck) / 1_000_000_000.0);
+        }
+        lastCheck = now;
+        if(credit >= 1){
+            credit -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adjusts the rate from the results of the window which has just closed, and publishes it in them
+     * @param stats the quality of the connection to the peer, whose window has just closed
+     */
+    public void onWindow(NetworkStats stats){
+        adjust(stats.getPeerLossPercent(), stats.getRecentRtt());
+        stats.setSendRate(rate);
+    }
+
+    /**
+     * Adjusts the rate from what was measured over a window
+     * @param lossPercent the percentage of the messages sent which the peer lost
+     * @param rtt the mean round trip time, in milliseconds, or 0 if it was not measured
+     */
+    public synchronized void adjust(double lossPercent, double rtt){
+        boolean queueing = false;
+        if(rtt > 0){
+            double lowest = rtt;
+            for(int i = 0; i < rttCount; i++){
+                lowest = Math.min(lowest, recentRtts[i]);
+            }
+            queueing = rtt - lowest > QUEUEING_THRESHOLD;
+            recentRtts[rttIndex] = rtt;
+            rttIndex = (rttIndex + 1) % BASE_WINDOWS;
+            rttCount = Math.min(rttCount + 1, BASE_WINDOWS);
+        }
+        if(lossPercent > LOSS_THRESHOLD || queueing){
+            rate = Math.max(minRate, rate * DECREASE);
+        }
+        else {
+            rate = Math.min(maxRate, rate + (maxRate - minRate) / INCREASE_STEPS);
+        }
+    }
+
+    /**
+     * @return the number of messages currently sent per second
+     */
+    public double getRate(){
+        return rate;
+    }
+}
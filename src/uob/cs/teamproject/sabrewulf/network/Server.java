@@ -4,29 +4,60 @@ import uob.cs.teamproject.sabrewulf.GameSettings;
 import uob.cs.teamproject.sabrewulf.map.Cell;
 import uob.cs.teamproject.sabrewulf.map.GameMap;
 import uob.cs.teamproject.sabrewulf.map.GameMapWrapper;
+import uob.cs.teamproject.sabrewulf.map.MapCodec;
+import uob.cs.teamproject.sabrewulf.components.CharacterMovement;
+import uob.cs.teamproject.sabrewulf.components.Inventory;
 import uob.cs.teamproject.sabrewulf.ui.selectors.MODE;
+import uob.cs.teamproject.sabrewulf.util.XYPair;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.io.InterruptedIOException;
 import java.net.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The server class is responsible for the distribution of information from each {@link Client} to other clients.
- * It creates a {@link DatagramSocket} which is used to receive and send {@link DatagramPacket} to clients.
+ * It creates a {@link DatagramChannel} which is used to receive and send datagrams to clients.
+ * While clients join the channel is used in blocking mode; once the game is loaded it is registered with a
+ * {@link NetworkEngine} and every in-game packet is handled by {@link #onPacket(ByteBuffer, SocketAddress)}.
+ * Clients only send the keys they hold, as input commands, and the server moves every player itself with a
+ * {@link PlayerSimulation}, so no client can put its player anywhere it likes.
+ * Once the game is running, a {@link SpectatorClient} may join it to watch without playing; every spectator is sent
+ * the same encoded snapshot each tick.
+ * The server also keeps the scoreboard, which is sent along with the snapshots whenever it has changed and once
+ * more with the end of the game, so every client shows the same final scores. A server hosted by a player has no
+ * world of its own, so each client reports every coin it picks up and every time it is caught. The server only counts
+ * a coin which a {@link CoinTracker} shows was still there, touching that player where the server had moved it with
+ * the same input command. A {@link DedicatedServer} ignores those reports and works the scores out itself in its world.
  */
 public class Server {
-    protected DatagramSocket dtSocket;
+    /** the most spectators which can watch a game at once */
+    public static final int MAX_SPECTATORS = 64;
+    /** how long a spectator is kept without asking to watch again, in nanoseconds */
+    public static final long SPECTATOR_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+    /** how many ticks apart the snapshots the spectators are sent deltas against are, so that a spectator which has
+     * joined or lost one can follow the game again within half a second or so */
+    public static final int SPECTATOR_KEYFRAME_INTERVAL = SnapshotHistory.SIZE / 2;
+
+    /* how long a lobby waits for every player to join, in milliseconds */
+    private static final long LOBBY_TIMEOUT = 300000;
+    /* how often a lobby checks whether any fragments have to be sent again while it waits, in milliseconds */
+    private static final int LOBBY_POLL = 50;
+
+    protected Transport transport;
     protected boolean isConnected;
+    private final int playersPerGame;
     private int numberOfPlayers;
     private final int numberOfEnemies;
     private int playersConnected;
     private List<Integer> ports;
     private HashMap<Integer,InetAddress> addresses;
-    private List<Integer> unavailablePorts;
     private List<String> usernames;
 
     protected HashMap<Integer,String> playerSpawnsAt;
@@ -35,27 +66,135 @@ public class Server {
     private GameMapWrapper gameMapWrapper;
     private Cell[][] cellGrid;
 
+    /* each connected player has a slot, so that in-game packets are handled without boxing or allocating */
+    private int[] slotPorts;
+    private InetSocketAddress[] slotAddresses;
+    private boolean[] slotActive;
+    /* control messages are sent to and received from each slot reliably */
+    private ReliableChannel[] slotChannels;
+    /* the messages too long for one datagram sent to each port while players join, which become those of the slots */
+    private HashMap<Integer,FragmentChannel> lobbyChannels;
+    private FragmentChannel[] slotFragments;
+    /* reused for every datagram received while players join */
+    private final ByteBuffer lobbyBuffer = ByteBuffer.allocate(NetworkEngine.MAX_DATAGRAM_SIZE);
+    /* set to stop waiting for players */
+    private volatile boolean lobbyCancelled;
+
+    /* moves each player by the input commands received from it, only used by the engine thread */
+    private PlayerSimulation players;
+    /* the coins not picked up yet and the position of a player after an input command, only used by the engine
+     * thread */
+    private CoinTracker coins;
+    private final XYPair pickupPosition = new XYPair(0, 0);
+    /* the record of each player for the next snapshot and the latest enemy records, only used by the engine thread */
+    private ByteBuffer[] playerRecords;
+    /* the sequence number of the newest input command applied for each slot */
+    private int[] inputSequences;
+    /* the commands read from a message, newest first, before they are applied in order */
+    private final int[] inputScratch = new int[Protocol.MAX_INPUT_COMMANDS];
+    private ByteBuffer enemyRecords;
+    private int enemyCount;
+    /* the keyframes the clients extrapolate the enemies from */
+    private DeadReckoning enemyKeyframes;
+    private ByteBuffer broadcastBuffer;
+    /* reused for every ping and pong, only used by the engine thread */
+    private final ByteBuffer probeBuffer = ByteBuffer.allocate(Protocol.PONG_SIZE);
+    /* the local time the game was loaded at, from which the server time sent to the clients is measured */
+    private volatile long epoch;
+
+    /* the quality of the connection to each slot, and where it is logged if anywhere */
+    private volatile NetworkStats[] slotStats;
+    private volatile NetworkStatsLog statsLog;
+    private volatile String statsLabel = "server";
+
+    /* the number of the current server tick, the newest state of every player and enemy, and the snapshots sent to
+     * each slot at the most recent ticks, which only hold what fitted in the slot's budget */
+    private int tick;
+    private int tickRate;
+    private Snapshot latest;
+    private SnapshotHistory[] slotHistories;
+    /* chooses what to send to a slot when not every change fits in its budget of bytes per tick */
+    private PriorityAccumulator priorities;
+    private int budget;
+    /* decides how often each slot is sent a snapshot, and the number of the next message to each slot */
+    private volatile SendRateController[] slotRates;
+    private int[] slotSequences;
+    /* decides what each slot is sent about, or null if every slot is sent everything, and the copy of the newest
+     * snapshot it changes for each slot */
+    private AreaOfInterest interest;
+    private Snapshot interestScratch;
+
+    /* the address of each spectator, the channel the game is loaded through and the time it last asked to watch,
+     * only used by the engine thread */
+    private InetSocketAddress[] spectatorAddresses;
+    private FragmentChannel[] spectatorFragments;
+    private long[] spectatorSeen;
+    private volatile int spectatorCount;
+    /* the map sent to every spectator, encoded by the first one to join */
+    private ByteBuffer spectatorMap;
+    /* the snapshot every spectator is sent deltas against, the message encoded once for all of them each tick and a
+     * read-only view of it handed to the transport, and the number of the next message */
+    private Snapshot spectatorKeyframe;
+    private ByteBuffer spectatorBuffer;
+    private ByteBuffer spectatorView;
+    private int spectatorSequence;
+    /* what is sent to and received from all of the spectators together */
+    private volatile NetworkStats spectatorStats;
+
+    /* the newest score of each slot and the number of changes to the scoreboard so far, and for each slot
+     * the scoreboard it is being sent and the tick it was first sent at, only used by the engine thread */
+    private int[] slotScores;
+    private int scoreboardVersion;
+    private int[] scoreboardSent;
+    private int[] scoreboardSentTick;
+    /* the scoreboard the keyframe of the spectators was sent with */
+    private int spectatorScoreboard;
+
+    /* set once the end of the game has been sent, and once the game is over for every player */
+    private volatile boolean ended;
+    private volatile boolean finished;
+    /* the time the latest in-game packet was received from any client */
+    private volatile long lastPacketTime;
+
     /**
-     * The server class constructor initiates a {@link DatagramSocket} and creates data important to run the game
+     * The server class constructor initiates a {@link UdpTransport} and creates data important to run the game
      * @param numberOfPlayers a number of players
      * @param numberOfEnemies a number of enemies
      * @param port a port the server is listening on
-     * @throws SocketException if the port is unavailable
+     * @throws SocketException if the port is unavailable or the channel could not be opened
      */
     protected Server(int numberOfPlayers, int numberOfEnemies, int port) throws SocketException {
+        this(numberOfPlayers, numberOfEnemies, UdpTransport.bind(port));
+    }
+
+    /**
+     * The server class constructor which talks to clients through a given {@link Transport} and creates data
+     * important to run the game
+     * @param numberOfPlayers a number of players
+     * @param numberOfEnemies a number of enemies
+     * @param transport the transport to talk to clients through
+     * @throws SocketException if the timeout of the transport could not be set
+     */
+    protected Server(int numberOfPlayers, int numberOfEnemies, Transport transport) throws SocketException {
         this.isConnected = false;
+        this.playersPerGame = numberOfPlayers;
         this.numberOfPlayers = numberOfPlayers;
         this.numberOfEnemies = numberOfEnemies;
         playersConnected = 0;
         ports = new ArrayList<>();
         addresses= new HashMap<>();
-        unavailablePorts = new ArrayList<>();
         usernames = new ArrayList<>();
         playerSpawnsAt = new HashMap<>();
         setInitialValues();
 
-        dtSocket = new DatagramSocket(port);
-        dtSocket.setSoTimeout(300000);
+        this.transport = transport;
+        try {
+            transport.setTimeout(300000);
+        }
+        catch (SocketException e) {
+            closeChannel();
+            throw e;
+        }
 
         createMap();
     }
@@ -64,15 +203,8 @@ public class Server {
      * Sends a message to all clients to notify each of them to start the game
      */
     public void sendStart(){
-        try {
-            for(int p : ports){
-                byte[] data = ("start#"+p+"#").getBytes();
-                DatagramPacket dtPacket = new DatagramPacket(data,data.length, addresses.get(p),p);
-                dtSocket.send(dtPacket);
-            }
-        }
-        catch (IOException e) {
-            e.printStackTrace();
+        for(int i = 0; i < slotPorts.length; i++){
+            sendControl(i, "start#" + slotPorts[i] + "#" + serverMillis(System.nanoTime()) + "#");
         }
     }
 
@@ -83,11 +215,14 @@ public class Server {
      * @throws IOException if an IO error occurs
      */
     protected void start() throws IOException {
+        lobbyCancelled = false;
+        transport.setTimeout(LOBBY_POLL);
+        long deadline = System.currentTimeMillis() + LOBBY_TIMEOUT;
         int k;
         for(int i = 0; i < numberOfPlayers; i++){
             do{
                 k = -1;
-                DatagramPacket dp = getData(16);
+                DatagramPacket dp = getData(deadline);
                 String username = new String(dp.getData());
                 int p = dp.getPort();
                 InetAddress address = dp.getAddress();
@@ -139,13 +274,15 @@ public class Server {
         }
         if(playersConnected == numberOfPlayers){
             this.isConnected = true;
+            createSlots();
+            ByteBuffer map = encodeMap();
             for (int i = 0; i < numberOfPlayers; i++) {
-                sendMap(ports.get(i));
+                sendMap(map, i);
             }
         }
 
         try {
-            dtSocket.setSoTimeout(200000);
+            transport.setTimeout(200000);
         }
         catch (SocketException e) {
             e.printStackTrace();
@@ -153,53 +290,607 @@ public class Server {
     }
 
     /**
-     * The update method for the server waits for {@link DatagramPacket}
-     * from all clients, checks if anyone has quit the game or if the game has ended
-     * and notifies the clients accordingly
+     * Handles a packet received during the game. Called on the {@link NetworkEngine} thread.
+     * The input commands received from each client are applied as they arrive and the result is sent by the next
+     * {@link #tick()}, so the server never waits for a packet from any particular player.
+     * Control messages are passed to the {@link ReliableChannel} of the client, which hands them to
+     * {@link #handleControl(int, String)} in order.
+     * @param data the received bytes
+     * @param sender the address of the client which sent the packet
      */
-    protected void update(){
-        List<DatagramPacket> packets = new ArrayList<>();
-        List<DatagramPacket> tobeRemoved = new ArrayList<>();
-        int remove = 0;
+    protected void onPacket(ByteBuffer data, SocketAddress sender){
+        if(!Protocol.isBinary(data)){
+            return;
+        }
+        int port = ((InetSocketAddress) sender).getPort();
+        int slot = slotOf(port);
+        if(slot < 0){
+            onSpectatorPacket(data, sender);
+            return;
+        }
+        lastPacketTime = System.nanoTime();
+        slotStats[slot].onReceived(data.remaining());
+        try {
+            switch (Protocol.readHeader(data)) {
+                case Protocol.PLAYER_INPUT:
+                    if(slotActive[slot]
+                            && data.remaining() >= Protocol.SEQUENCE_SIZE + Protocol.ACK_SIZE + 4 + 1){
+                        applyPlayerInput(slot, data);
+                    }
+                    break;
+                case Protocol.CONTROL:
+                    /* still acknowledged after a player has quit, so the client stops sending */
+                    slotChannels[slot].receive(data, System.nanoTime());
+                    break;
+                case Protocol.FRAGMENT_ACK:
+                    slotFragments[slot].receiveAck(data, System.nanoTime());
+                    break;
+                case Protocol.PING:
+                    probeBuffer.clear();
+                    slotStats[slot].writePong(data, probeBuffer, serverTime(System.nanoTime()));
+                    sendProbe(slot);
+                    break;
+                case Protocol.PONG:
+                    slotStats[slot].onPong(data, System.nanoTime());
+                    break;
+            }
+        }
+        catch (BufferUnderflowException e) {
+            //Ignore a truncated packet, should not occur
+        }
+    }
 
-        for(int i = 0; i < numberOfPlayers; i++){
-            try {
-                packets.add(i,getData(256));
+    /**
+     * Handles a packet received during the game from an address which is not a player: a spectator asking to watch
+     * or to keep watching, acknowledging the fragments of the game it is loading, or pinging.
+     * @param data the received bytes
+     * @param sender the address the packet was sent from
+     */
+    private void onSpectatorPacket(ByteBuffer data, SocketAddress sender){
+        if(slotPorts == null){
+            return;
+        }
+        long now = System.nanoTime();
+        int size = data.remaining();
+        int spectator = spectatorOf(sender);
+        try {
+            switch (Protocol.readHeader(data)) {
+                case Protocol.SPECTATE:
+                    if(spectator >= 0){
+                        spectatorSeen[spectator] = now;
+                    }
+                    else if(!ended && spectatorCount < MAX_SPECTATORS){
+                        spectator = addSpectator((InetSocketAddress) sender, now);
+                    }
+                    break;
+                case Protocol.FRAGMENT_ACK:
+                    if(spectator >= 0){
+                        spectatorFragments[spectator].receiveAck(data, now);
+                    }
+                    break;
+                case Protocol.PING:
+                    if(spectator >= 0){
+                        probeBuffer.clear();
+                        spectatorStats.writePong(data, probeBuffer, serverTime(now));
+                        probeBuffer.flip();
+                        spectatorStats.onSent(probeBuffer.remaining());
+                        transport.send(probeBuffer, sender);
+                    }
+                    break;
             }
-            catch (IOException e) {
-                e.printStackTrace();
+        }
+        catch (BufferUnderflowException e) {
+            //Ignore a truncated packet, should not occur
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+        if(spectator >= 0){
+            spectatorStats.onReceived(size);
+        }
+    }
+
+    /**
+     * Lets a spectator watch the game, sending it the usernames, the map and the spawn positions as a player is
+     * sent them when it joins. Called on the {@link NetworkEngine} thread.
+     * @param address the address of the spectator
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     * @return the index of the spectator
+     */
+    private int addSpectator(InetSocketAddress address, long now){
+        int spectator = spectatorCount;
+        FragmentChannel channel = new FragmentChannel(transport, address, message -> {});
+        channel.setStats(spectatorStats);
+        if(spectatorMap == null){
+            spectatorMap = encodeMap();
+        }
+        channel.send(ByteBuffer.wrap(usernamesMessage().getBytes(StandardCharsets.UTF_8)), now);
+        channel.send(spectatorMap, now);
+        channel.send(ByteBuffer.wrap(coordinatesMessage().getBytes(StandardCharsets.UTF_8)), now);
+        spectatorAddresses[spectator] = address;
+        spectatorFragments[spectator] = channel;
+        spectatorSeen[spectator] = now;
+        spectatorCount = spectator + 1;
+        return spectator;
+    }
+
+    /**
+     * Sends any fragments the spectators have not acknowledged in time again, and forgets the spectators which have
+     * stopped asking to watch. Called on the {@link NetworkEngine} thread.
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     */
+    private void updateSpectators(long now){
+        for(int i = spectatorCount - 1; i >= 0; i--){
+            if(now - spectatorSeen[i] > SPECTATOR_TIMEOUT){
+                /* the last spectator takes the place of the one which has left */
+                int last = spectatorCount - 1;
+                spectatorAddresses[i] = spectatorAddresses[last];
+                spectatorFragments[i] = spectatorFragments[last];
+                spectatorSeen[i] = spectatorSeen[last];
+                spectatorAddresses[last] = null;
+                spectatorFragments[last] = null;
+                spectatorCount = last;
             }
-            String[] data = (new String(packets.get(i).getData())).split("#",-2);
-            if(data[0].trim().equals("quit")){
-                remove++;
-                unavailablePorts.add(packets.get(i).getPort());
-                tobeRemoved.add(packets.get(i));
+            else {
+                spectatorFragments[i].update(now);
+            }
+        }
+    }
+
+    /**
+     * @param address the address a packet was sent from
+     * @return the index of the spectator at the address, or -1 if it is not watching
+     */
+    private int spectatorOf(SocketAddress address){
+        for(int i = 0; i < spectatorCount; i++){
+            if(spectatorAddresses[i].equals(address)){
+                return i;
             }
-            else if(data[0].trim().equals("end")){
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of spectators watching the game
+     */
+    public int getSpectatorCount(){
+        return spectatorCount;
+    }
+
+    /**
+     * @return what is sent to and received from all of the spectators together, measured over the last second, or
+     * null if the game has not started
+     */
+    public NetworkStats getSpectatorStats(){
+        return spectatorStats;
+    }
+
+    /**
+     * Handles a control message received in order from a client through its {@link ReliableChannel}.
+     * Called on the {@link NetworkEngine} thread.
+     * @param slot the slot of the client which sent the message
+     * @param text the message
+     */
+    private void handleControl(int slot, String text){
+        if(!slotActive[slot]){
+            return;
+        }
+        String[] message = text.split("#",-2);
+        switch (message[0].trim()) {
+            case "quit":
+                disconnect(slot);
+                break;
+            case "end":
                 sendEnd(true);
-                return;
+                break;
+            case "coin":
+                if(acceptsReportedPickups() && message.length > 1
+                        && coins.claim(slot, parseSequence(message[1]))){
+                    collectCoins(slot, 1);
+                }
+                break;
+            case "caught":
+                if(acceptsReportedPickups()){
+                    setScore(slot, Math.max(0, slotScores[slot] - Inventory.HIT_PENALTY));
+                }
+                break;
+        }
+    }
+
+    /**
+     * Runs one fixed-rate server tick on the {@link NetworkEngine} thread: applies the latest state which has
+     * arrived from each client since the last tick and sends one snapshot of the game to every client.
+     * Also pings each client and logs the quality of each connection once a second.
+     */
+    protected void tick(){
+        if(slotPorts == null){
+            return;
+        }
+        tick++;
+        long now = System.nanoTime();
+        simulate(now);
+        buildPacket();
+        for(ReliableChannel channel : slotChannels){
+            channel.update(now);
+        }
+        for(FragmentChannel channel : slotFragments){
+            channel.update(now);
+        }
+        updateSpectators(now);
+        long duration = System.nanoTime() - now;
+        NetworkStatsLog log = statsLog;
+        if(spectatorStats.update(now) && log != null && spectatorCount > 0){
+            log.write(statsLabel + "-spectators", spectatorStats);
+        }
+        for(int i = 0; i < slotStats.length; i++){
+            if(!slotActive[i]){
+                continue;
+            }
+            NetworkStats stats = slotStats[i];
+            stats.onTick(duration);
+            if(stats.pingDue(now)){
+                probeBuffer.clear();
+                stats.writePing(probeBuffer, now);
+                sendProbe(i);
+            }
+            if(stats.update(now)){
+                slotRates[i].onWindow(stats);
+                if(log != null){
+                    log.write(statsLabel + "-" + slotPorts[i], stats);
+                }
             }
         }
+    }
 
-        numberOfPlayers = numberOfPlayers - remove;
-        /* End game if a player has quit and only one player has left
-         * or the player who quit hosted the server
-         */
-        if(GameSettings.getGameMode() != MODE.SINGLEPLAYER && numberOfPlayers == 1) {
-            sendEnd(false);
+    /**
+     * @param slot a slot
+     * @return the quality of the connection to the client in the slot, measured over the last second, or null if
+     * the game has not started
+     */
+    public NetworkStats getNetworkStats(int slot){
+        NetworkStats[] stats = slotStats;
+        return stats == null || slot >= stats.length ? null : stats[slot];
+    }
+
+    /**
+     * @param slot a slot
+     * @return the number of snapshots currently sent to the client in the slot each second, or 0 if the game has
+     * not started
+     */
+    public double getSendRate(int slot){
+        SendRateController[] rates = slotRates;
+        return rates == null || slot >= rates.length ? 0 : rates[slot].getRate();
+    }
+
+    /**
+     * @param statsLog the log to write the quality of the connection to each client to once a second, or null
+     * @param label the name the server is logged under
+     */
+    public void setStatsLog(NetworkStatsLog statsLog, String label){
+        this.statsLog = statsLog;
+        this.statsLabel = label;
+    }
+
+    /* send the ping or pong in the probe buffer to the client in a slot */
+    private void sendProbe(int slot){
+        probeBuffer.flip();
+        slotStats[slot].onSent(probeBuffer.remaining());
+        try {
+            transport.send(probeBuffer, slotAddresses[slot]);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs the part of the game which the server is in charge of, at the start of every {@link #tick()}.
+     * The players are moved as their input commands arrive and the clients simulate the rest of the game themselves,
+     * so this does nothing unless a subclass such as {@link DedicatedServer} runs the simulation instead.
+     * @param now the time of the tick, in nanoseconds on the {@link System#nanoTime()} clock
+     */
+    protected void simulate(long now){
+    }
+
+    /**
+     * @return true if the enemy records sent by the host client are sent on to the other clients, false if the
+     * server sets the state of the enemies itself with {@link #setEnemyState}
+     */
+    protected boolean acceptsEnemyStates(){
+        return true;
+    }
+
+    /**
+     * @return true if the coins and catches reported by the clients are put on the scoreboard, false if the server
+     * sets the scores itself with {@link #setScore(int, int)}
+     */
+    protected boolean acceptsReportedPickups(){
+        return true;
+    }
+
+    /**
+     * @return the number of server ticks per second
+     */
+    protected int getTickRate(){
+        return tickRate;
+    }
+
+    /**
+     * @return the number of player slots in the current game, or 0 before every player has joined
+     */
+    protected int getSlotCount(){
+        return slotPorts == null ? 0 : slotPorts.length;
+    }
+
+    /**
+     * @param slot the slot of a player
+     * @return true if the player has not quit the game
+     */
+    protected boolean isSlotActive(int slot){
+        return slotActive[slot];
+    }
+
+    /**
+     * Reads the position of a player, as moved by the input commands applied so far. Only called on the
+     * {@link NetworkEngine} thread.
+     * @param slot the slot of the player
+     * @param position set to the position of the player
+     * @return false if no input command has been received from the player yet, true otherwise
+     */
+    protected boolean readPlayerState(int slot, XYPair position){
+        if(!players.hasInput(slot)){
+            return false;
+        }
+        players.getPosition(slot, position);
+        return true;
+    }
+
+    /**
+     * @param slot the slot of a player
+     * @return true while the player is using the invisibility boost
+     */
+    protected boolean isPlayerInvisible(int slot){
+        return players.isInvisible(slot);
+    }
+
+    /**
+     * Sets the state of an enemy which is sent to the clients in the next snapshot. Only called on the
+     * {@link NetworkEngine} thread.
+     * @param num the number of the enemy
+     * @param dirX the x direction of the enemy
+     * @param dirY the y direction of the enemy
+     * @param isMoving true if the enemy is moving, false otherwise
+     * @param facing the direction the enemy is facing
+     * @param x the x position of the enemy
+     * @param y the y position of the enemy
+     */
+    protected void setEnemyState(int num, CharacterMovement.Direction dirX, CharacterMovement.Direction dirY,
+                                 boolean isMoving, CharacterMovement.Direction facing, double x, double y){
+        enemyRecords.position(num * Protocol.ENEMY_RECORD_SIZE);
+        Protocol.writeEnemy(enemyRecords, dirX, dirY, isMoving, facing, x, y);
+        enemyCount = Math.max(enemyCount, num + 1);
+    }
+
+    /**
+     * @return the map of the current game
+     */
+    protected GameMapWrapper getGameMapWrapper(){
+        return gameMapWrapper;
+    }
+
+    /**
+     * @return the position each player spawns at, by slot
+     */
+    protected XYPair[] getPlayerSpawns(){
+        XYPair[] spawns = new XYPair[ports.size()];
+        for(int i = 0; i < spawns.length; i++){
+            spawns[i] = parsePosition(playerSpawnsAt.get(ports.get(i)).split("#"), 0);
+        }
+        return spawns;
+    }
+
+    /**
+     * @return the position each enemy spawns at
+     */
+    protected XYPair[] getEnemySpawns(){
+        String[] coordinates = enemiesSpawnAt.split("#");
+        XYPair[] spawns = new XYPair[numberOfEnemies];
+        for(int i = 0; i < numberOfEnemies; i++){
+            spawns[i] = parsePosition(coordinates, i * 2);
+        }
+        return spawns;
+    }
+
+    private static XYPair parsePosition(String[] coordinates, int index){
+        return new XYPair(Double.parseDouble(coordinates[index]), Double.parseDouble(coordinates[index + 1]));
+    }
+
+    /* the sequence number of an input command in a control message, or -1 if it is missing */
+    private static int parseSequence(String sequence){
+        try {
+            return Integer.parseInt(sequence.trim());
         }
-        /* Remove a player from the game if one has quit the game */
-        else if(remove != 0){
-            for(DatagramPacket r : tobeRemoved){
-                packets.remove(r);
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return true once the end of the game has been sent to the clients
+     */
+    protected boolean hasEnded(){
+        return ended;
+    }
+
+    /**
+     * @return true once the end of the game has been sent to every player, or every player has left
+     */
+    protected boolean isFinished(){
+        return finished;
+    }
+
+    /**
+     * @return the time the latest in-game packet was received from any client, in nanoseconds on the
+     * {@link System#nanoTime()} clock
+     */
+    protected long getLastPacketTime(){
+        return lastPacketTime;
+    }
+
+    /**
+     * @return true if a control message or a fragmented message sent to a client still in the game has not been
+     * acknowledged yet
+     */
+    protected boolean hasUnacknowledgedControl(){
+        if(slotChannels == null){
+            return false;
+        }
+        for(int i = 0; i < slotChannels.length; i++){
+            if(slotActive[i] && (slotChannels[i].getUnacknowledgedCount() > 0
+                    || slotFragments[i].getUnacknowledgedCount() > 0)){
+                return true;
             }
-            buildPacket(packets,true);
         }
-        /* Distribute data from all clients to each client */
-        else {
-            buildPacket(packets,false);
+        return false;
+    }
+
+    /**
+     * Records the acknowledgement of a {@link Protocol#PLAYER_INPUT} message, applies the input commands in it which
+     * have not been applied yet, oldest first, and stores any enemy records.
+     * Each message repeats the commands sent just before the newest one, so a lost message costs nothing as long as
+     * one of the next few arrives; commands older than that are lost with it and the client is corrected.
+     * @param slot the slot of the client which sent the message
+     * @param data the message, positioned after the header
+     */
+    private void applyPlayerInput(int slot, ByteBuffer data){
+        slotStats[slot].onShortSequence(data.getShort());
+        int ackTick = data.getInt();
+        int ackBits = data.getInt();
+        slotHistories[slot].acknowledge(slot, ackTick, ackBits);
+        int newest = data.getInt();
+
+        int runs = data.get() & 0xFF;
+        int count = 0;
+        for(int i = 0; i < runs; i++){
+            int run = Protocol.readInputRun(data);
+            for(int j = 0; j < Protocol.runLength(run) && count < inputScratch.length; j++){
+                if(newest - count - inputSequences[slot] <= 0){
+                    break;
+                }
+                inputScratch[count++] = Protocol.runCommand(run);
+            }
+        }
+        for(int i = count - 1; i >= 0; i--){
+            players.apply(slot, inputScratch[i]);
+            if(acceptsReportedPickups()){
+                players.getPosition(slot, pickupPosition);
+                collectCoins(slot, coins.onInput(slot, newest - i, pickupPosition.x, pickupPosition.y));
+            }
+        }
+        if(count > 0){
+            inputSequences[slot] = newest;
         }
 
+        if(data.hasRemaining() && acceptsEnemyStates()){
+            int enemies = Math.min(data.get() & 0xFF, numberOfEnemies);
+            if(enemies > 0 && data.remaining() >= enemies * Protocol.ENEMY_RECORD_SIZE){
+                enemyRecords.clear();
+                for(int i = 0; i < enemies * Protocol.ENEMY_RECORD_SIZE; i++){
+                    enemyRecords.put(data.get());
+                }
+                enemyCount = enemies;
+            }
+        }
+    }
+
+    /**
+     * @param port the port of a client
+     * @return the slot of the client, or -1 if the client is not in the game
+     */
+    private int slotOf(int port){
+        if(slotPorts == null){
+            return -1;
+        }
+        for(int i = 0; i < slotPorts.length; i++){
+            if(slotPorts[i] == port){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates a slot for each connected player once every player has joined
+     */
+    private void createSlots(){
+        int slots = ports.size();
+        slotPorts = new int[slots];
+        slotAddresses = new InetSocketAddress[slots];
+        slotActive = new boolean[slots];
+        slotChannels = new ReliableChannel[slots];
+        slotFragments = new FragmentChannel[slots];
+        playerRecords = new ByteBuffer[slots];
+        inputSequences = new int[slots];
+        NetworkStats[] stats = new NetworkStats[slots];
+        for(int i = 0; i < slots; i++){
+            int port = ports.get(i);
+            slotPorts[i] = port;
+            slotAddresses[i] = new InetSocketAddress(addresses.get(port), port);
+            slotActive[i] = true;
+            int slot = i;
+            slotChannels[i] = new ReliableChannel(transport, slotAddresses[i], message -> handleControl(slot, message));
+            slotChannels[i].setUnreachableHandler(() -> disconnect(slot));
+            stats[i] = new NetworkStats(System.nanoTime());
+            slotChannels[i].setStats(stats[i]);
+            slotFragments[i] = lobbyChannel(addresses.get(port), port);
+            slotFragments[i].setStats(stats[i]);
+            playerRecords[i] = ByteBuffer.allocate(Protocol.PLAYER_RECORD_SIZE);
+        }
+        players = new PlayerSimulation(gameMapWrapper, getPlayerSpawns());
+        coins = new CoinTracker(gameMapWrapper, getPlayerSpawns());
+        enemyRecords = ByteBuffer.allocate(numberOfEnemies * Protocol.ENEMY_RECORD_SIZE);
+        enemyCount = 0;
+        epoch = System.nanoTime();
+        broadcastBuffer = ByteBuffer.allocate(Protocol.WORLD_STATE_HEADER_SIZE
+                + Snapshot.maxDeltaSize(slots, numberOfEnemies) + 1 + slots * 2
+                + 1 + slots * Protocol.SCORE_RECORD_SIZE + 4);
+        tick = 0;
+        tickRate = GameSettings.getServerTickRate();
+        slotRates = new SendRateController[slots];
+        slotSequences = new int[slots];
+        for (int i = 0; i < slots; i++) {
+            slotRates[i] = new SendRateController(tickRate);
+        }
+        enemyKeyframes = new DeadReckoning(numberOfEnemies, GameSettings.getEnemyCorrectionThreshold(),
+                GameSettings.getEnemyKeyframeInterval() * tickRate / 1000);
+        lastPacketTime = System.nanoTime();
+        latest = new Snapshot(slots, numberOfEnemies);
+        slotHistories = new SnapshotHistory[slots];
+        for (int i = 0; i < slots; i++) {
+            slotHistories[i] = new SnapshotHistory(slots, numberOfEnemies);
+        }
+        priorities = new PriorityAccumulator(slots, numberOfEnemies);
+        budget = GameSettings.getClientBandwidthBudget();
+        int radius = GameSettings.getInterestRadius();
+        interest = radius > 0 ? new AreaOfInterest(gameMapWrapper, slots, radius) : null;
+        interestScratch = new Snapshot(slots, numberOfEnemies);
+        spectatorAddresses = new InetSocketAddress[MAX_SPECTATORS];
+        spectatorFragments = new FragmentChannel[MAX_SPECTATORS];
+        spectatorSeen = new long[MAX_SPECTATORS];
+        spectatorCount = 0;
+        spectatorMap = null;
+        spectatorKeyframe = new Snapshot(slots, numberOfEnemies);
+        spectatorBuffer = ByteBuffer.allocate(broadcastBuffer.capacity());
+        spectatorView = spectatorBuffer.asReadOnlyBuffer();
+        spectatorSequence = 0;
+        spectatorStats = new NetworkStats(System.nanoTime());
+        slotScores = new int[slots];
+        /* the empty scoreboard is sent as well, so every client knows every player's score from the start */
+        scoreboardVersion = 1;
+        scoreboardSent = new int[slots];
+        scoreboardSentTick = new int[slots];
+        spectatorScoreboard = 0;
+        slotStats = stats;
     }
 
     /**
@@ -207,12 +898,18 @@ public class Server {
      */
     protected void setInitialValues(){
         isConnected = false;
+        numberOfPlayers = playersPerGame;
         playersConnected = 0;
         ports = new ArrayList<>();
         addresses= new HashMap<>();
-        unavailablePorts = new ArrayList<>();
         usernames = new ArrayList<>();
         playerSpawnsAt = new HashMap<>();
+        slotPorts = null;
+        slotChannels = null;
+        lobbyChannels = new HashMap<>();
+        slotFragments = null;
+        ended = false;
+        finished = false;
     }
 
     /**
@@ -245,7 +942,17 @@ public class Server {
      * @throws IOException if an IO error occurs
      */
     protected void sendRandomCoordinates() throws IOException {
-        DatagramPacket dp;
+        String coordinates = coordinatesMessage();
+        for(int p : ports){
+            send(coordinates, p);
+        }
+    }
+
+    /**
+     * @return a message containing the port and spawn position of every player and the spawn positions of the
+     * enemies
+     */
+    private String coordinatesMessage(){
         StringBuilder str = new StringBuilder();
         for(int p : ports) {
             str.append(p);
@@ -254,10 +961,7 @@ public class Server {
             str.append("#");
         }
         str.append(enemiesSpawnAt);
-        for(int p : ports){
-            dp = new DatagramPacket(str.toString().getBytes(),str.toString().getBytes().length, addresses.get(p),p);
-            dtSocket.send(dp);
-        }
+        return str.toString();
     }
 
     /**
@@ -270,59 +974,121 @@ public class Server {
             send="end#score#";
         }
         else {
-            send = "end#";
+            send = "end#quit#";
         }
-        try {
-            for(int p : ports){
-                byte[] data = send.getBytes();
-                DatagramPacket dtPacket = new DatagramPacket(data,data.length,addresses.get(p),p);
-                dtSocket.send(dtPacket);
+        send += serverMillis(System.nanoTime()) + "#";
+        if(slotPorts == null){
+            return;
+        }
+        /* the final scoreboard goes with the end, so nothing is left to wait for once the end has reached them */
+        for (int i = 0; i < slotPorts.length; i++) {
+            send += slotPorts[i] + "#" + slotScores[i] + "#";
+        }
+        ended = true;
+        finished = true;
+        for(int i = 0; i < slotPorts.length; i++){
+            if(slotActive[i]){
+                sendControl(i, send);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
     }
 
     /**
-     * Builds a message containing each player's username and score
+     * Takes a player out of the game, either because it has quit or because its {@link ReliableChannel} has given up
+     * on it, and ends the game if only one player is left, or finishes it if none are. Nothing more is sent to it, and
+     * nothing it has not acknowledged is waited for. Called on the {@link NetworkEngine} thread.
+     * @param slot the slot of the player
      */
-    protected void getScore(){
-        StringBuilder scores = new StringBuilder();
-        scores.append("scores#");
-        ArrayList<Integer> ports = new ArrayList<>();
-        for(int i = 0; i < numberOfPlayers; i++){
-            boolean score = false;
-            while(!score){
-                DatagramPacket packet = null;
-                try {
-                    packet = getData(100);
-                }
-                catch (IOException e) {
-                    e.printStackTrace();
-                }
-                String[] data;
-                if (packet != null) {
-                    data = (new String(packet.getData())).trim().split("#");
-                    if(data[0].trim().equals("score") && !ports.contains(packet.getPort())){
-                        ports.add(packet.getPort());
-                        scores.append(data[1]);
-                        scores.append("#");
-                        scores.append(data[2]);
-                        scores.append("#");
-                        score = true;
-                    }
-                }
-            }
+    private void disconnect(int slot){
+        if(!slotActive[slot]){
+            return;
+        }
+        slotActive[slot] = false;
+        numberOfPlayers--;
+        /* End game if a player has quit and only one player has left */
+        if(GameSettings.getGameMode() != MODE.SINGLEPLAYER && numberOfPlayers == 1 && !ended) {
+            sendEnd(false);
+        }
+        if(numberOfPlayers <= 0){
+            finished = true;
+        }
+    }
+
+    /**
+     * Counts the coins a client has picked up which the {@link CoinTracker} has accepted, and ends the game once every
+     * coin has been picked up. Called on the {@link NetworkEngine} thread.
+     * @param slot the slot of the client which picked up the coins
+     * @param collected the number of coins accepted
+     */
+    private void collectCoins(int slot, int collected){
+        if(collected == 0){
+            return;
+        }
+        setScore(slot, slotScores[slot] + collected * Inventory.COIN_SCORE);
+        if(coins.getRemaining() == 0 && !ended){
+            sendEnd(true);
+        }
+    }
+
+    /**
+     * Puts the score of a slot on the scoreboard, which is sent to every client in the next snapshot if it has
+     * changed. Called on the {@link NetworkEngine} thread.
+     * @param slot the slot
+     * @param score the score of the player in that slot
+     */
+    protected void setScore(int slot, int score){
+        if(slotScores[slot] != score){
+            slotScores[slot] = score;
+            scoreboardVersion++;
+        }
+    }
+
+    /**
+     * Decides whether the scoreboard is sent to a slot in this tick's message: from the tick it changes until the
+     * slot acknowledges a message which carried it. Every message sent to the slot in between carries the newest
+     * scoreboard, so the acknowledgement of any one of them is enough.
+     * @param slot the slot
+     * @param baseline the newest snapshot the slot has acknowledged, or null
+     * @return true if the scoreboard is sent
+     */
+    private boolean scoreboardDue(int slot, Snapshot baseline){
+        if(scoreboardSent[slot] != scoreboardVersion){
+            scoreboardSent[slot] = scoreboardVersion;
+            scoreboardSentTick[slot] = tick;
+            return true;
+        }
+        return baseline == null || baseline.getTick() - scoreboardSentTick[slot] < 0;
+    }
+
+    /**
+     * Writes the scoreboard: the id and the score of every player, including those who have quit
+     * @param packet the buffer to write to
+     * @param include false to only write that the scoreboard has not changed
+     */
+    private void writeScoreboard(ByteBuffer packet, boolean include){
+        if(!include){
+            packet.put((byte) 0);
+            return;
+        }
+        packet.put((byte) slotPorts.length);
+        for (int i = 0; i < slotPorts.length; i++) {
+            packet.putShort((short) slotPorts[i]);
+            packet.putInt(slotScores[i]);
         }
-        sendScores(scores.toString());
     }
 
     /**
      * Send message containing number of players connected, their usernames and ports
      * @param port a port to send the message to
-     * @throws IOException if an IO error occurs
      */
-    private void sendUsernames(int port) throws IOException {
+    private void sendUsernames(int port){
+        send(usernamesMessage(), port);
+    }
+
+    /**
+     * @return a message containing number of players connected, their usernames and ports
+     */
+    private String usernamesMessage(){
         StringBuilder un = new StringBuilder();
         un.append(playersConnected);
         un.append("#");
@@ -332,72 +1098,198 @@ public class Server {
             un.append(ports.get(i));
             un.append("#");
         }
-        byte[] data = un.toString().getBytes();
-        DatagramPacket dtPacket = new DatagramPacket(data,data.length, addresses.get(port),port);
-        dtSocket.send(dtPacket);
+        return un.toString();
     }
 
     /**
-     * Sends map to each client
-     * @param port a port to send the map to
-     * @throws IOException if an IO error occurs
+     * Encodes the map once as a {@link Protocol#MAP} message with {@link MapCodec}, so it can be sent to every client
+     * @return the encoded message
      */
-    private void sendMap(int port) throws IOException {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
-        objectOutputStream.writeObject(cellGrid);
-        byte[] data = byteArrayOutputStream.toByteArray();
-        DatagramPacket dtPacket = new DatagramPacket(data,data.length,addresses.get(port),port);
-        dtSocket.send(dtPacket);
+    private ByteBuffer encodeMap(){
+        int[] cellDimensions = gameMapWrapper.getCellDimensions();
+        ByteBuffer map = ByteBuffer.allocate(Protocol.HEADER_SIZE
+                + MapCodec.encodedSize(cellGrid.length, cellGrid[0].length));
+        Protocol.writeHeader(map, Protocol.MAP);
+        MapCodec.encode(cellGrid, cellDimensions[0], cellDimensions[1], map);
+        map.flip();
+        return map;
     }
 
     /**
-     * Distributes data of packets got from all clients to each client
-     * @param datagramPackets a list of {@link DatagramPacket}
-     * @param r true if any player has quit, false otherwise
+     * Sends map to a client through its {@link FragmentChannel}
+     * @param map the map encoded by {@link #encodeMap()}
+     * @param slot the slot of the client to send the map to
      */
-    private void buildPacket(List<DatagramPacket> datagramPackets, boolean r){
-        DatagramPacket dp;
-        int dataLength = 0;
-        int offset = 0;
-        for (DatagramPacket datagramPacket : datagramPackets) {
+    private void sendMap(ByteBuffer map, int slot){
+        slotFragments[slot].send(map, System.nanoTime());
+    }
+
+    /**
+     * Records a {@link Snapshot} of the latest state of every player and enemy and sends it to each client as a
+     * {@link Protocol#WORLD_STATE} message, along with the ports of any players who have quit.
+     * Each client is sent the snapshot as a delta against the newest snapshot it has acknowledged, so players and
+     * enemies which have not changed since are not sent at all. An enemy only changes when the clients' extrapolation
+     * of it needs correcting, see {@link DeadReckoning}.
+     * If an {@link AreaOfInterest} is in use, players and enemies outside a client's area are marked absent and then
+     * left out until they come back in.
+     * A message never takes more than the budget of bytes per tick: if not every change fits, the
+     * {@link PriorityAccumulator} chooses which are sent and the rest wait for a later tick. Each client is only sent
+     * a snapshot on the ticks its {@link SendRateController} allows. Clients which are sent every change against the
+     * same complete baseline share one encoded message; only the number of the message and the last four bytes, the
+     * sequence number of the last input command applied for the client, are written separately for each one.
+     * Finally the snapshot is sent to every spectator, see {@link #sendToSpectators(Snapshot, int)}.
+     */
+    private void buildPacket(){
+        Snapshot snapshot = latest;
+        snapshot.reset(tick);
+        for (int i = 0; i < slotPorts.length; i++) {
+            if (slotActive[i] && players.hasInput(i)) {
+                /* the id of a player is the port it sends from */
+                players.writeRecord(i, slotPorts[i], playerRecords[i]);
+                snapshot.setPlayer(i, playerRecords[i]);
+            }
+        }
+        enemyKeyframes.update(tick, enemyRecords, enemyCount);
+        snapshot.setEnemies(enemyKeyframes.getKeyframes(), enemyCount);
+
+        ByteBuffer packet = broadcastBuffer;
+        long now = System.nanoTime();
+        int serverMillis = serverMillis(now);
+        int snapshotBudget = budget - (Protocol.WORLD_STATE_HEADER_SIZE + 1 + 2 * removedCount() + 1 + 4);
+        int scoreboardSize = slotPorts.length * Protocol.SCORE_RECORD_SIZE;
+        int encodedBaseline = -1;
+        boolean encodedScoreboard = false;
+        for (int i = 0; i < slotPorts.length; i++) {
+            /* a slot skipped on this tick is sent the changes on a later one, against the same baseline */
+            if (!slotActive[i] || !slotRates[i].isDue(now)) {
+                continue;
+            }
+            Snapshot baseline = slotHistories[i].latestAcknowledged(i);
+            int baselineTick = baseline == null ? 0 : baseline.getTick();
+            boolean scoreboard = scoreboardDue(i, baseline);
+            int slotBudget = scoreboard ? snapshotBudget - scoreboardSize : snapshotBudget;
+            Snapshot view = slotHistories[i].next(tick);
+            Snapshot source = snapshot;
+            boolean hidden = false;
+            if (interest != null && snapshot.hasPlayer(i)) {
+                source = interestScratch;
+                source.reset(tick);
+                source.copyFrom(snapshot);
+                hidden = interest.filter(i, source, baseline);
+            }
+            boolean everything = source.deltaSize(baseline) <= slotBudget;
+            if (everything) {
+                view.copyFrom(source);
+                priorities.sentAll(i);
+            }
+            else {
+                priorities.fill(i, source, baseline, view, slotBudget,
+                        Protocol.toPosition(source.getPlayerField(i, 2)),
+                        Protocol.toPosition(source.getPlayerField(i, 3)));
+            }
+            view.setComplete(everything && !hidden);
+            boolean shared = view.isComplete() && (baseline == null || baseline.isComplete());
+            if (!shared || baselineTick != encodedBaseline || scoreboard != encodedScoreboard) {
+                packet.clear();
+                Protocol.writeHeader(packet, Protocol.WORLD_STATE);
+                packet.putShort((short) 0);
+                packet.putInt(tick);
+                packet.putInt(baselineTick);
+                packet.put((byte) tickRate);
+                packet.putInt(serverMillis);
+                view.writeDelta(packet, baseline);
+                writeRemoved(packet);
+                writeScoreboard(packet, scoreboard);
+                packet.putInt(0);
+                packet.flip();
+                encodedBaseline = shared ? baselineTick : -1;
+                encodedScoreboard = scoreboard;
+            }
+            packet.putShort(Protocol.HEADER_SIZE, (short) slotSequences[i]++);
+            packet.putInt(packet.limit() - 4, inputSequences[i]);
+            packet.position(0);
+            slotStats[i].onSent(packet.remaining());
             try {
-                dataLength = dataLength + datagramPacket.getData().length;
+                transport.send(packet, slotAddresses[i]);
             }
-            catch (IndexOutOfBoundsException e) {
+            catch (IOException e) {
                 e.printStackTrace();
             }
         }
-        StringBuilder remove = new StringBuilder();
-        for (Integer unavailablePort : unavailablePorts) {
-            remove.append("remove#");
-            remove.append(unavailablePort);
-            remove.append("#");
-        }
-        byte[] data;
-        if (r){
-            data = new byte[dataLength+remove.toString().length()];
-        } else {
-            data = new byte[dataLength];
+        if(spectatorCount > 0){
+            sendToSpectators(snapshot, serverMillis);
         }
+    }
 
-        for (DatagramPacket datagramPacket : datagramPackets) {
-            System.arraycopy(datagramPacket.getData(), 0, data, offset, datagramPacket.getData().length);
-            offset = offset + datagramPacket.getData().length;
+    /**
+     * Sends the newest snapshot to every spectator. Spectators send no input and are not told about individually,
+     * so the message is encoded once for all of them, as a delta against a keyframe sent in full every
+     * {@link #SPECTATOR_KEYFRAME_INTERVAL} ticks rather than against what each one has acknowledged, and the same
+     * read-only bytes are handed to the transport for every address. Watching costs the server little more than the
+     * datagrams themselves, however many spectators there are.
+     * @param snapshot the newest snapshot, of every player and enemy
+     * @param serverMillis the server time of the tick, in milliseconds
+     */
+    private void sendToSpectators(Snapshot snapshot, int serverMillis){
+        Snapshot keyframe = spectatorKeyframe;
+        boolean full = keyframe.getTick() == 0 || tick - keyframe.getTick() >= SPECTATOR_KEYFRAME_INTERVAL;
+        ByteBuffer packet = spectatorBuffer;
+        packet.clear();
+        Protocol.writeHeader(packet, Protocol.WORLD_STATE);
+        packet.putShort((short) spectatorSequence++);
+        packet.putInt(tick);
+        packet.putInt(full ? 0 : keyframe.getTick());
+        packet.put((byte) tickRate);
+        packet.putInt(serverMillis);
+        snapshot.writeDelta(packet, full ? null : keyframe);
+        writeRemoved(packet);
+        /* the scoreboard is sent with every keyframe, and with every delta once it has changed since the keyframe */
+        writeScoreboard(packet, full || spectatorScoreboard != scoreboardVersion);
+        if(full){
+            spectatorScoreboard = scoreboardVersion;
+        }
+        /* a spectator has no input commands to acknowledge */
+        packet.putInt(0);
+        if(full){
+            keyframe.reset(tick);
+            keyframe.copyFrom(snapshot);
         }
-        if (r){
-            System.arraycopy(remove.toString().getBytes(), 0, data, offset, remove.toString().getBytes().length);
+        ByteBuffer view = spectatorView;
+        view.limit(packet.position());
+        view.position(0);
+        for(int i = 0; i < spectatorCount; i++){
+            spectatorStats.onSent(view.remaining());
         }
+        try {
+            transport.send(view, spectatorAddresses, spectatorCount);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-        for (DatagramPacket datagramPacket : datagramPackets) {
-            dp = new DatagramPacket(data, data.length, datagramPacket.getAddress(), datagramPacket.getPort());
-            try {
-                dtSocket.send(dp);
+    /**
+     * Writes the ports of the players who have quit the game
+     * @param packet the buffer to write to
+     */
+    private void writeRemoved(ByteBuffer packet){
+        packet.put((byte) removedCount());
+        for (int i = 0; i < slotPorts.length; i++) {
+            if (!slotActive[i]) {
+                packet.putShort((short) slotPorts[i]);
             }
-            catch (IOException e) {
-                e.printStackTrace();
+        }
+    }
+
+    /* the number of players who have quit the game */
+    private int removedCount(){
+        int removed = 0;
+        for (boolean active : slotActive) {
+            if (!active) {
+                removed++;
             }
         }
+        return removed;
     }
 
     public List<String> getUsernames(){
@@ -410,45 +1302,122 @@ public class Server {
      * @param port a port the client socket is listening on
      */
     private void getNewUsername(InetAddress address, int port){
-        byte[] data = "unavailable".getBytes();
-        DatagramPacket dtPacket = new DatagramPacket(data,data.length,address,port);
-        try {
-            dtSocket.send(dtPacket);
-        }
-        catch (IOException e) {
-            e.printStackTrace();
-        }
+        byte[] data = "unavailable".getBytes(StandardCharsets.UTF_8);
+        lobbyChannel(address, port).send(ByteBuffer.wrap(data), System.nanoTime());
     }
 
     /**
-     * Sends the message containing scores to each client
-     * @param scores a message containing scores
+     * Sends a control message to a client through its {@link ReliableChannel}
+     * @param slot the slot of the client
+     * @param message the message to send
      */
-    private void sendScores(String scores){
-        for(int port : ports){
-            if(!unavailablePorts.contains(port)){
-                DatagramPacket dp = new DatagramPacket(scores.getBytes(),scores.getBytes().length,
-                        addresses.get(port), port);
-                try {
-                    dtSocket.send(dp);
+    private void sendControl(int slot, String message){
+        slotChannels[slot].send(message, System.nanoTime());
+    }
+
+    /**
+     * Receives the next text message sent by a client while players join, of whatever length.
+     * Acknowledgements of fragments are handed to the {@link FragmentChannel} of the client, and any fragments which
+     * have not been acknowledged in time are sent again while waiting.
+     * @param deadline the time to give up waiting, in milliseconds on the {@link System#currentTimeMillis()} clock
+     * @return a received {@link DatagramPacket}
+     * @throws SocketTimeoutException if no message is received before the deadline
+     * @throws InterruptedIOException if the lobby has been cancelled
+     * @throws IOException if an IO error occurs
+     */
+    private DatagramPacket getData(long deadline) throws IOException {
+        while (true) {
+            if(lobbyCancelled){
+                throw new InterruptedIOException("The lobby was cancelled");
+            }
+            lobbyBuffer.clear();
+            SocketAddress sender = null;
+            try {
+                sender = transport.receive(lobbyBuffer);
+            }
+            catch (SocketTimeoutException e) {
+                if(System.currentTimeMillis() - deadline >= 0){
+                    throw e;
+                }
+            }
+            long now = System.nanoTime();
+            if(sender != null){
+                lobbyBuffer.flip();
+                if(!Protocol.isBinary(lobbyBuffer)){
+                    byte[] data = new byte[lobbyBuffer.remaining()];
+                    lobbyBuffer.get(data);
+                    DatagramPacket dtPacket = new DatagramPacket(data, data.length);
+                    dtPacket.setSocketAddress(sender);
+                    return dtPacket;
                 }
-                catch (IOException e) {
-                    e.printStackTrace();
+                /* skip any state or control messages still arriving from the previous game */
+                FragmentChannel channel = lobbyChannels.get(((InetSocketAddress) sender).getPort());
+                if(channel != null && Protocol.readHeader(lobbyBuffer) == Protocol.FRAGMENT_ACK){
+                    try {
+                        channel.receiveAck(lobbyBuffer, now);
+                    }
+                    catch (BufferUnderflowException e) {
+                        //Ignore a truncated packet, should not occur
+                    }
                 }
             }
+            for(FragmentChannel channel : lobbyChannels.values()){
+                channel.update(now);
+            }
         }
     }
 
     /**
-     * Receives a {@link DatagramPacket} of given length
-     * @param size the length of byte array to receive
-     * @return a received {@link DatagramPacket}
-     * @throws IOException if an IO error occurs
+     * Stops waiting for players to join, so that {@link #start()} throws an {@link InterruptedIOException} within
+     * a fraction of a second. Can be called from any thread.
+     */
+    protected void cancelLobby(){
+        lobbyCancelled = true;
+    }
+
+    /**
+     * @param address the address of a client
+     * @param port the port of the client
+     * @return the {@link FragmentChannel} to the client, created the first time it is sent anything
      */
-    private DatagramPacket getData(int size) throws IOException {
-        byte[] data = new byte [size];
-        DatagramPacket dtPacket = new DatagramPacket(data,data.length);
-        dtSocket.receive(dtPacket);
-        return dtPacket;
+    private FragmentChannel lobbyChannel(InetAddress address, int port){
+        FragmentChannel channel = lobbyChannels.get(port);
+        if(channel == null){
+            channel = new FragmentChannel(transport, new InetSocketAddress(address, port), message -> {});
+            lobbyChannels.put(port, channel);
+        }
+        return channel;
+    }
+
+    /**
+     * Sends a text message to a connected client through its {@link FragmentChannel}, so it may be of any length
+     * @param message the message to send
+     * @param port the port of the client
+     */
+    private void send(String message, int port){
+        byte[] data = message.getBytes(StandardCharsets.UTF_8);
+        lobbyChannel(addresses.get(port), port).send(ByteBuffer.wrap(data), System.nanoTime());
+    }
+
+    /**
+     * @param now a local time, in nanoseconds on the {@link System#nanoTime()} clock
+     * @return the same time on the clock of the server, which the clients synchronise with through {@link ClockSync}
+     */
+    private long serverTime(long now){
+        return now - epoch;
+    }
+
+    /* the server time sent in snapshots and control messages, in milliseconds since the game was loaded */
+    private int serverMillis(long now){
+        return (int) TimeUnit.NANOSECONDS.toMillis(serverTime(now));
+    }
+
+    /**
+     * Closes the server channel
+     */
+    protected void closeChannel(){
+        if(transport != null){
+            transport.close();
+        }
     }
 }
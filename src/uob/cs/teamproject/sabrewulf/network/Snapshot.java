@@ -0,0 +1,412 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A Snapshot holds the state of every player and enemy at one server tick, as the raw records of {@link Protocol}.
+ * Snapshots are written as a delta against an older snapshot the receiver already has: only the players and enemies
+ * which have changed are sent, and for a player only the fields of its record which have changed.
+ * <p>
+ * Delta layout: slot count (1 byte), a changed bit for each slot, then for each changed slot a field mask (1 byte)
+ * followed by the changed fields; enemy count (1 byte), a changed bit for each enemy, then each changed enemy keyframe.
+ * Enemies are held as the keyframes written by {@link DeadReckoning}, which only change when the clients' extrapolation
+ * needs correcting, so most enemies are left out of most deltas.
+ */
+public final class Snapshot {
+
+    /* a player record is made of four 2 byte fields: id, packed directions and flags, x and y */
+    private static final int FIELD_SIZE = 2;
+    private static final int FIELDS = Protocol.PLAYER_RECORD_SIZE / FIELD_SIZE;
+
+    private final int slots;
+    private final int maxEnemies;
+
+    private int tick;
+    private final byte[] players;
+    private final boolean[] present;
+    private final byte[] enemies;
+    private int enemyCount;
+
+    /* a bit for each slot which has acknowledged this snapshot, only used by the server */
+    private int acknowledged;
+    /* true if the snapshot holds the newest record of every player and enemy at its tick, only used by the server */
+    private boolean complete;
+
+    /**
+     * Creates an empty snapshot
+     * @param slots the number of player slots
+     * @param maxEnemies the largest number of enemies the snapshot can hold
+     */
+    public Snapshot(int slots, int maxEnemies){
+        this.slots = slots;
+        this.maxEnemies = maxEnemies;
+        players = new byte[slots * Protocol.PLAYER_RECORD_SIZE];
+        present = new boolean[slots];
+        enemies = new byte[maxEnemies * Protocol.ENEMY_KEYFRAME_SIZE];
+    }
+
+    /**
+     * Empties the snapshot so it can be reused for another tick
+     * @param tick the tick the snapshot is reused for
+     */
+    public void reset(int tick){
+        this.tick = tick;
+        Arrays.fill(present, false);
+        enemyCount = 0;
+        acknowledged = 0;
+        complete = false;
+    }
+
+    /**
+     * Makes this snapshot hold the same records as another, keeping its own tick
+     * @param other a snapshot with the same number of slots and enemies
+     */
+    public void copyFrom(Snapshot other){
+        System.arraycopy(other.players, 0, players, 0, players.length);
+        System.arraycopy(other.present, 0, present, 0, slots);
+        System.arraycopy(other.enemies, 0, enemies, 0, other.enemyCount * Protocol.ENEMY_KEYFRAME_SIZE);
+        enemyCount = other.enemyCount;
+    }
+
+    /**
+     * Copies the record of one player from another snapshot
+     * @param slot the slot of the player
+     * @param other a snapshot with the same number of slots which holds a record for the player
+     */
+    public void copyPlayer(int slot, Snapshot other){
+        int offset = slot * Protocol.PLAYER_RECORD_SIZE;
+        System.arraycopy(other.players, offset, players, offset, Protocol.PLAYER_RECORD_SIZE);
+        present[slot] = true;
+    }
+
+    /**
+     * Copies the keyframe of one enemy from another snapshot
+     * @param enemy the number of the enemy, less than {@link #getEnemyCount()}
+     * @param other a snapshot with the same number of enemies which holds a keyframe for the enemy
+     */
+    public void copyEnemy(int enemy, Snapshot other){
+        int offset = enemy * Protocol.ENEMY_KEYFRAME_SIZE;
+        System.arraycopy(other.enemies, offset, enemies, offset, Protocol.ENEMY_KEYFRAME_SIZE);
+    }
+
+    /**
+     * Marks a player as outside the receiver's area of interest. The record the receiver already has is kept, so the
+     * player is only sent again once it is back inside the area.
+     * @param slot the slot of the player
+     * @param baseline the snapshot the receiver already has, or null
+     */
+    public void hidePlayer(int slot, Snapshot baseline){
+        if(baseline == null || !baseline.present[slot]){
+            present[slot] = false;
+            return;
+        }
+        copyPlayer(slot, baseline);
+        markAbsent(players, slot * Protocol.PLAYER_RECORD_SIZE + FIELD_SIZE);
+    }
+
+    /**
+     * Marks an enemy as outside the receiver's area of interest. The keyframe the receiver already has is kept, if
+     * it has one, so the enemy is only sent again once it is back inside the area.
+     * @param enemy the number of the enemy, less than {@link #getEnemyCount()}
+     * @param baseline the snapshot the receiver already has, or null
+     */
+    public void hideEnemy(int enemy, Snapshot baseline){
+        if(baseline != null && enemy < baseline.enemyCount){
+            copyEnemy(enemy, baseline);
+        }
+        markAbsent(enemies, enemy * Protocol.ENEMY_KEYFRAME_SIZE);
+    }
+
+    /**
+     * Sets the number of enemies, keeping the keyframes of those already held
+     * @param count the number of enemies
+     */
+    public void setEnemyCount(int count){
+        enemyCount = Math.min(count, maxEnemies);
+    }
+
+    public int getTick(){
+        return tick;
+    }
+
+    public int getSlots(){
+        return slots;
+    }
+
+    /**
+     * Stores the record of a player
+     * @param slot the slot of the player
+     * @param record a buffer holding a {@link Protocol#PLAYER_RECORD_SIZE} byte player record from position 0
+     */
+    public void setPlayer(int slot, ByteBuffer record){
+        System.arraycopy(record.array(), 0, players, slot * Protocol.PLAYER_RECORD_SIZE, Protocol.PLAYER_RECORD_SIZE);
+        present[slot] = true;
+    }
+
+    /**
+     * @param slot the slot of a player
+     * @return true if the snapshot holds a record for the player
+     */
+    public boolean hasPlayer(int slot){
+        return present[slot];
+    }
+
+    /**
+     * @param slot the slot of a player
+     * @param field the field of the record: 0 for the id, 1 for the packed bits, 2 for x and 3 for y
+     * @return the value of the field as read by {@link ByteBuffer#getShort()}
+     */
+    public short getPlayerField(int slot, int field){
+        int offset = slot * Protocol.PLAYER_RECORD_SIZE + field * FIELD_SIZE;
+        return (short) (((players[offset] & 0xFF) << 8) | (players[offset + 1] & 0xFF));
+    }
+
+    /**
+     * Stores the enemy keyframes
+     * @param records a buffer holding the {@link Protocol#ENEMY_KEYFRAME_SIZE} byte enemy keyframes from position 0
+     * @param count the number of keyframes
+     */
+    public void setEnemies(ByteBuffer records, int count){
+        enemyCount = Math.min(count, maxEnemies);
+        System.arraycopy(records.array(), 0, enemies, 0, enemyCount * Protocol.ENEMY_KEYFRAME_SIZE);
+    }
+
+    public int getEnemyCount(){
+        return enemyCount;
+    }
+
+    /**
+     * @param enemy the number of an enemy
+     * @return the packed directions and flags of the enemy
+     */
+    public int getEnemyBits(int enemy){
+        return getEnemyField(enemy, 0) & 0xFFFF;
+    }
+
+    /**
+     * @param enemy the number of an enemy
+     * @param field the field of the keyframe: 0 for the packed bits, 1 for x, 2 for y, 3 for the velocities along x
+     * (high byte) and y (low byte) and 4 for the tick of the keyframe
+     * @return the value of the field as read by {@link ByteBuffer#getShort()}
+     */
+    public short getEnemyField(int enemy, int field){
+        int offset = enemy * Protocol.ENEMY_KEYFRAME_SIZE + field * FIELD_SIZE;
+        return (short) (((enemies[offset] & 0xFF) << 8) | (enemies[offset + 1] & 0xFF));
+    }
+
+    /**
+     * @param complete true if the snapshot holds the newest record of every player and enemy at its tick
+     */
+    public void setComplete(boolean complete){
+        this.complete = complete;
+    }
+
+    public boolean isComplete(){
+        return complete;
+    }
+
+    /**
+     * @param slot the slot of a player
+     * @param baseline a snapshot the receiver already has, or null
+     * @return the number of bytes {@link #writeDelta(ByteBuffer, Snapshot)} writes for the player, 0 if it is left out
+     */
+    public int playerDeltaSize(int slot, Snapshot baseline){
+        if(!present[slot]){
+            return 0;
+        }
+        int fields = Integer.bitCount(changedFields(slot, baseline));
+        return fields == 0 ? 0 : 1 + fields * FIELD_SIZE;
+    }
+
+    /**
+     * @param enemy the number of an enemy
+     * @param baseline a snapshot the receiver already has, or null
+     * @return the number of bytes {@link #writeDelta(ByteBuffer, Snapshot)} writes for the enemy, 0 if it is left out
+     */
+    public int enemyDeltaSize(int enemy, Snapshot baseline){
+        if(baseline != null && enemy < baseline.enemyCount && sameEnemy(enemy, baseline)){
+            return 0;
+        }
+        return Protocol.ENEMY_KEYFRAME_SIZE;
+    }
+
+    /**
+     * @param baseline a snapshot the receiver already has, or null
+     * @return the number of bytes {@link #writeDelta(ByteBuffer, Snapshot)} writes against the baseline
+     */
+    public int deltaSize(Snapshot baseline){
+        int size = deltaOverhead(slots, enemyCount);
+        for(int slot = 0; slot < slots; slot++){
+            size += playerDeltaSize(slot, baseline);
+        }
+        for(int enemy = 0; enemy < enemyCount; enemy++){
+            size += enemyDeltaSize(enemy, baseline);
+        }
+        return size;
+    }
+
+    /**
+     * Marks the snapshot as acknowledged by a slot
+     * @param slot the slot which has received the snapshot
+     */
+    public void acknowledge(int slot){
+        acknowledged |= 1 << slot;
+    }
+
+    /**
+     * @param slot a slot
+     * @return true if the slot has acknowledged the snapshot
+     */
+    public boolean isAcknowledged(int slot){
+        return (acknowledged & (1 << slot)) != 0;
+    }
+
+    /**
+     * Writes the snapshot as a delta against a baseline
+     * @param buffer the buffer to write to
+     * @param baseline a snapshot the receiver already has, or null to write every record in full
+     */
+    public void writeDelta(ByteBuffer buffer, Snapshot baseline){
+        buffer.put((byte) slots);
+        int maskStart = buffer.position();
+        int maskBytes = (slots + 7) / 8;
+        for(int i = 0; i < maskBytes; i++){
+            buffer.put((byte) 0);
+        }
+        for(int slot = 0; slot < slots; slot++){
+            if(!present[slot]){
+                continue;
+            }
+            int fields = changedFields(slot, baseline);
+            if(fields == 0){
+                continue;
+            }
+            buffer.put(maskStart + slot / 8, (byte) (buffer.get(maskStart + slot / 8) | (1 << (slot % 8))));
+            buffer.put((byte) fields);
+            int offset = slot * Protocol.PLAYER_RECORD_SIZE;
+            for(int field = 0; field < FIELDS; field++){
+                if((fields & (1 << field)) != 0){
+                    buffer.put(players, offset + field * FIELD_SIZE, FIELD_SIZE);
+                }
+            }
+        }
+
+        buffer.put((byte) enemyCount);
+        maskStart = buffer.position();
+        maskBytes = (enemyCount + 7) / 8;
+        for(int i = 0; i < maskBytes; i++){
+            buffer.put((byte) 0);
+        }
+        for(int enemy = 0; enemy < enemyCount; enemy++){
+            if(baseline != null && enemy < baseline.enemyCount && sameEnemy(enemy, baseline)){
+                continue;
+            }
+            buffer.put(maskStart + enemy / 8, (byte) (buffer.get(maskStart + enemy / 8) | (1 << (enemy % 8))));
+            buffer.put(enemies, enemy * Protocol.ENEMY_KEYFRAME_SIZE, Protocol.ENEMY_KEYFRAME_SIZE);
+        }
+    }
+
+    /**
+     * Reads a delta written by {@link #writeDelta(ByteBuffer, Snapshot)} into this snapshot
+     * @param buffer the buffer to read from
+     * @param baseline the snapshot the delta was written against, or null if it was written in full
+     * @return true if the delta was read, false if it does not fit this snapshot
+     */
+    public boolean readDelta(ByteBuffer buffer, Snapshot baseline){
+        if(baseline != null && baseline.slots != slots){
+            return false;
+        }
+        if(baseline != null){
+            System.arraycopy(baseline.players, 0, players, 0, players.length);
+            System.arraycopy(baseline.present, 0, present, 0, slots);
+            System.arraycopy(baseline.enemies, 0, enemies, 0, baseline.enemyCount * Protocol.ENEMY_KEYFRAME_SIZE);
+        }
+
+        if((buffer.get() & 0xFF) != slots){
+            return false;
+        }
+        int maskStart = buffer.position();
+        buffer.position(maskStart + (slots + 7) / 8);
+        for(int slot = 0; slot < slots; slot++){
+            if((buffer.get(maskStart + slot / 8) & (1 << (slot % 8))) == 0){
+                continue;
+            }
+            int fields = buffer.get() & 0xFF;
+            int offset = slot * Protocol.PLAYER_RECORD_SIZE;
+            for(int field = 0; field < FIELDS; field++){
+                if((fields & (1 << field)) != 0){
+                    buffer.get(players, offset + field * FIELD_SIZE, FIELD_SIZE);
+                }
+            }
+            present[slot] = true;
+        }
+
+        int count = buffer.get() & 0xFF;
+        if(count > maxEnemies){
+            return false;
+        }
+        enemyCount = count;
+        maskStart = buffer.position();
+        buffer.position(maskStart + (count + 7) / 8);
+        for(int enemy = 0; enemy < count; enemy++){
+            if((buffer.get(maskStart + enemy / 8) & (1 << (enemy % 8))) != 0){
+                buffer.get(enemies, enemy * Protocol.ENEMY_KEYFRAME_SIZE, Protocol.ENEMY_KEYFRAME_SIZE);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param slots the number of player slots
+     * @param maxEnemies the largest number of enemies
+     * @return the largest number of bytes {@link #writeDelta(ByteBuffer, Snapshot)} can write
+     */
+    public static int maxDeltaSize(int slots, int maxEnemies){
+        return deltaOverhead(slots, maxEnemies) + slots * (1 + Protocol.PLAYER_RECORD_SIZE)
+                + maxEnemies * Protocol.ENEMY_KEYFRAME_SIZE;
+    }
+
+    /**
+     * @param slots the number of player slots
+     * @param enemies the number of enemies
+     * @return the number of bytes {@link #writeDelta(ByteBuffer, Snapshot)} writes even if nothing has changed
+     */
+    public static int deltaOverhead(int slots, int enemies){
+        return 1 + (slots + 7) / 8 + 1 + (enemies + 7) / 8;
+    }
+
+    /* marks the packed bits field at an offset of a record as absent */
+    private static void markAbsent(byte[] records, int offset){
+        int bits = Protocol.markAbsent(((records[offset] & 0xFF) << 8) | (records[offset + 1] & 0xFF));
+        records[offset] = (byte) (bits >> 8);
+        records[offset + 1] = (byte) bits;
+    }
+
+    /* true if the keyframe of an enemy is the same in the baseline */
+    private boolean sameEnemy(int enemy, Snapshot baseline){
+        int offset = enemy * Protocol.ENEMY_KEYFRAME_SIZE;
+        for(int i = offset; i < offset + Protocol.ENEMY_KEYFRAME_SIZE; i++){
+            if(enemies[i] != baseline.enemies[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* a bit for each field of a player record which differs from the baseline */
+    private int changedFields(int slot, Snapshot baseline){
+        if(baseline == null || !baseline.present[slot]){
+            return (1 << FIELDS) - 1;
+        }
+        int fields = 0;
+        int offset = slot * Protocol.PLAYER_RECORD_SIZE;
+        for(int field = 0; field < FIELDS; field++){
+            int i = offset + field * FIELD_SIZE;
+            if(players[i] != baseline.players[i] || players[i + 1] != baseline.players[i + 1]){
+                fields |= 1 << field;
+            }
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,97 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+/**
+ * The SnapshotHistory keeps the most recent {@link Snapshot}s in a ring, indexed by tick, so that a snapshot can be
+ * written as a delta against any recent snapshot the receiver has acknowledged.
+ * The snapshots are allocated once and reused, so recording a tick does not allocate.
+ */
+public class SnapshotHistory {
+
+    /** the number of snapshots kept, enough to cover a tick and every tick in its acknowledgement bitfield */
+    public static final int SIZE = 64;
+
+    private final Snapshot[] snapshots;
+
+    /**
+     * @param slots the number of player slots
+     * @param maxEnemies the largest number of enemies
+     */
+    public SnapshotHistory(int slots, int maxEnemies){
+        snapshots = new Snapshot[SIZE];
+        for(int i = 0; i < SIZE; i++){
+            snapshots[i] = new Snapshot(slots, maxEnemies);
+        }
+    }
+
+    /**
+     * Reuses the oldest snapshot for a new tick
+     * @param tick the new tick, greater than 0
+     * @return an empty snapshot for the tick
+     */
+    public Snapshot next(int tick){
+        Snapshot snapshot = snapshots[index(tick)];
+        snapshot.reset(tick);
+        return snapshot;
+    }
+
+    /**
+     * @param tick a tick
+     * @return the snapshot of the tick, or null if it is no longer (or was never) in the history
+     */
+    public Snapshot get(int tick){
+        if(tick <= 0){
+            return null;
+        }
+        Snapshot snapshot = snapshots[index(tick)];
+        return snapshot.getTick() == tick ? snapshot : null;
+    }
+
+    /**
+     * Records an acknowledgement received from a slot
+     * @param slot the slot which sent the acknowledgement
+     * @param tick the newest tick the slot has received
+     * @param bits bit i is set if the slot has also received tick - 1 - i
+     */
+    public void acknowledge(int slot, int tick, int bits){
+        Snapshot snapshot = get(tick);
+        if(snapshot != null){
+            snapshot.acknowledge(slot);
+        }
+        for(int i = 0; i < 32; i++){
+            if((bits & (1 << i)) != 0){
+                snapshot = get(tick - 1 - i);
+                if(snapshot != null){
+                    snapshot.acknowledge(slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param slot a slot
+     * @return the newest snapshot the slot has acknowledged, or null if it has not acknowledged any which are kept
+     */
+    public Snapshot latestAcknowledged(int slot){
+        Snapshot latest = null;
+        for(Snapshot snapshot : snapshots){
+            if(snapshot.getTick() > 0 && snapshot.isAcknowledged(slot)
+                    && (latest == null || snapshot.getTick() > latest.getTick())){
+                latest = snapshot;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Forgets every snapshot, e.g. when a new game starts
+     */
+    public void clear(){
+        for(Snapshot snapshot : snapshots){
+            snapshot.reset(0);
+        }
+    }
+
+    private static int index(int tick){
+        return tick & (SIZE - 1);
+    }
+}
@@ -0,0 +1,183 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import uob.cs.teamproject.sabrewulf.exceptions.UsernameUnavailableException;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A SpectatorClient is a {@link Client} which watches a game in progress without playing in it. It asks the server
+ * to let it watch with a {@link Protocol#SPECTATE} message, loads the game from the usernames, the map and the spawn
+ * positions the server answers with, as a player does when it joins, and then receives every snapshot the server
+ * sends to its spectators. It never sends an input command, so the server can send every spectator the same bytes.
+ * <p>
+ * The spectator keeps asking to watch now and again, as the server forgets a spectator which has not asked for
+ * {@link Server#SPECTATOR_TIMEOUT}. Once it has loaded the game, everything runs on the thread of the
+ * {@link NetworkEngine} it is attached to.
+ */
+public class SpectatorClient extends Client {
+
+    /** how long the server has to load the game for the spectator, in milliseconds */
+    public static final long JOIN_TIMEOUT = 5000;
+    /* how often the socket is polled while the game loads, in milliseconds */
+    private static final int POLL = 50;
+    /* how often the request to watch is sent while the game loads, as it is a single datagram, in milliseconds */
+    private static final long RESEND_INTERVAL = 250;
+    /* how often the request to watch is sent once the game has loaded */
+    private static final long KEEPALIVE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final SocketAddress serverAddress;
+    /* reused for every request to watch */
+    private final ByteBuffer requestBuffer;
+    private long lastRequest;
+
+    /* only recorded while measuring, read once the engine has stopped */
+    private volatile boolean measuring;
+    private long packetsReceived;
+    private long bytesReceived;
+
+    /**
+     * Opens a socket to watch a game on a server
+     * @param numberOfPlayers the number of players the game was started with
+     * @param numberOfEnemies a number of enemies
+     * @param serverAddress the address of the server
+     * @throws SocketException if the client could not initiate a socket
+     */
+    public SpectatorClient(int numberOfPlayers, int numberOfEnemies, SocketAddress serverAddress)
+            throws SocketException {
+        super(numberOfPlayers, numberOfEnemies, "spectator", UdpTransport.connect(serverAddress), serverAddress,
+                false);
+        this.serverAddress = serverAddress;
+        requestBuffer = ByteBuffer.allocate(Protocol.HEADER_SIZE);
+    }
+
+    /**
+     * Asks the server to watch its game, then receives the usernames, the map and the spawn positions. Blocks.
+     * @throws SocketTimeoutException if the server did not load the game in time, e.g. because it is not running one
+     * @throws IOException if the server could not be reached or sent something else
+     */
+    public void watch() throws IOException {
+        beginLobby();
+        transport.setTimeout(POLL);
+        long deadline = System.currentTimeMillis() + JOIN_TIMEOUT;
+        long lastSent = 0;
+        int loaded = 0;
+        while (loaded < 3) {
+            long now = System.currentTimeMillis();
+            if(now - deadline >= 0){
+                throw new SocketTimeoutException("The server did not let the spectator watch in time");
+            }
+            if(now - lastSent >= RESEND_INTERVAL){
+                sendRequest();
+                lastSent = now;
+            }
+            ByteBuffer message;
+            try {
+                message = pollMessage();
+            }
+            catch (SocketTimeoutException e) {
+                continue;
+            }
+            if(message == null){
+                continue;
+            }
+            switch (loaded) {
+                case 0:
+                    try {
+                        readUsernames(decode(message));
+                    }
+                    catch (UsernameUnavailableException e) {
+                        throw new IOException("The server refused the spectator", e);
+                    }
+                    assignUserNumbers();
+                    break;
+                case 1:
+                    readMap(message);
+                    break;
+                default:
+                    readCoordinates(decode(message));
+                    break;
+            }
+            loaded++;
+        }
+        lastRequest = System.nanoTime();
+    }
+
+    /**
+     * Receives packets on the thread of an engine from now on. {@link #step(long)} must then only be called on that
+     * thread.
+     * @param engine the engine
+     */
+    public void attach(NetworkEngine engine){
+        transport.register(engine, this::onPacket);
+    }
+
+    /**
+     * Pings the server and asks to keep watching now and again. Called regularly on the {@link NetworkEngine}
+     * thread.
+     * @param now the current time, in nanoseconds on the {@link System#nanoTime()} clock
+     */
+    public void step(long now){
+        tick();
+        if(now - lastRequest >= KEEPALIVE_INTERVAL){
+            sendRequest();
+            lastRequest = now;
+        }
+    }
+
+    /**
+     * Closes the socket of the spectator, without telling the server, which forgets it after a while
+     */
+    public void close(){
+        closeChannel();
+    }
+
+    /**
+     * Handles a packet as any client would, then publishes the tick straight away, as the spectator has no game
+     * thread, and counts the packet if measuring
+     * @param data the received bytes
+     * @param sender the address of the server
+     */
+    @Override
+    protected void onPacket(ByteBuffer data, SocketAddress sender){
+        int size = data.remaining();
+        super.onPacket(data, sender);
+        getDataStorage().acquireReceivedState();
+        if(measuring){
+            packetsReceived++;
+            bytesReceived += size;
+        }
+    }
+
+    /**
+     * @param measuring true to count the packets from now on
+     */
+    void setMeasuring(boolean measuring){
+        this.measuring = measuring;
+    }
+
+    long getPacketsReceived(){
+        return packetsReceived;
+    }
+
+    long getBytesReceived(){
+        return bytesReceived;
+    }
+
+    /* ask the server to watch, or to keep watching */
+    private void sendRequest(){
+        requestBuffer.clear();
+        Protocol.writeHeader(requestBuffer, Protocol.SPECTATE);
+        requestBuffer.flip();
+        try {
+            transport.send(requestBuffer, serverAddress);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
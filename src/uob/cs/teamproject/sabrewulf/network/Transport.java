@@ -0,0 +1,94 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+
+/**
+ * A Transport carries datagrams between a {@link Client} and a {@link Server}.
+ * While a game loads, datagrams are received with blocking calls; once it has loaded the transport is registered
+ * with a {@link NetworkEngine} and every datagram is passed to a {@link NetworkEngine.PacketHandler} on the
+ * engine thread instead.
+ * {@link UdpTransport} is used for games over a network and {@link LoopbackTransport} for single-player games,
+ * where the client and the server run in the same process.
+ */
+public interface Transport {
+
+    /**
+     * Sends a datagram. A datagram which cannot be delivered is dropped.
+     * @param data the bytes between the position and the limit of the buffer, which are all consumed
+     * @param target the address to send the datagram to
+     * @throws IOException if an IO error occurs
+     */
+    void send(ByteBuffer data, SocketAddress target) throws IOException;
+
+    /**
+     * Sends the same datagram to many targets, e.g. a snapshot to every spectator, without encoding it again.
+     * A target the datagram cannot be sent to does not stop it being sent to the rest.
+     * @param data the bytes between the position and the limit of the buffer, which are all consumed; the buffer may
+     *             be read-only
+     * @param targets the addresses to send the datagram to
+     * @param count the number of addresses at the start of the array to send it to
+     * @throws IOException the first IO error which occurred, once the datagram has been sent to every other target
+     */
+    default void send(ByteBuffer data, SocketAddress[] targets, int count) throws IOException {
+        int position = data.position();
+        IOException failure = null;
+        for(int i = 0; i < count; i++){
+            data.position(position);
+            try {
+                send(data, targets[i]);
+            }
+            catch (IOException e) {
+                if(failure == null){
+                    failure = e;
+                }
+            }
+        }
+        data.position(data.limit());
+        if(failure != null){
+            throw failure;
+        }
+    }
+
+    /**
+     * Waits for a datagram, for no longer than the timeout. A datagram larger than the space remaining in the
+     * buffer is truncated.
+     * @param buffer the buffer to receive the datagram into, from its position
+     * @return the address the datagram was sent from
+     * @throws java.net.SocketTimeoutException if no datagram is received in time
+     * @throws IOException if an IO error occurs
+     */
+    SocketAddress receive(ByteBuffer buffer) throws IOException;
+
+    /**
+     * @param timeout how long {@link #receive(ByteBuffer)} waits for a datagram in milliseconds, 0 to wait forever
+     * @throws SocketException if the timeout could not be set
+     */
+    void setTimeout(int timeout) throws SocketException;
+
+    /**
+     * @return the address datagrams sent by this transport come from
+     */
+    InetSocketAddress getLocalAddress();
+
+    /**
+     * Starts passing every received datagram to a handler on an engine thread
+     * @param engine the engine to receive on
+     * @param handler the handler to pass datagrams to
+     */
+    void register(NetworkEngine engine, NetworkEngine.PacketHandler handler);
+
+    /**
+     * Stops passing datagrams to the engine, so that {@link #receive(ByteBuffer)} can be used again
+     * @param engine the engine the transport was registered with
+     */
+    void unregister(NetworkEngine engine);
+
+    /**
+     * Closes the transport
+     */
+    void close();
+}
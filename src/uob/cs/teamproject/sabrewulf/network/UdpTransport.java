@@ -0,0 +1,130 @@
+package uob.cs.teamproject.sabrewulf.network;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * The UdpTransport sends datagrams over a network with a {@link DatagramChannel}.
+ * Blocking receives use the channel's socket adaptor so that they can time out.
+ */
+public class UdpTransport implements Transport {
+
+    private final DatagramChannel channel;
+    /* a datagram sent to many targets is copied here once, as the channel would otherwise copy a heap buffer into
+     * a direct one for every target */
+    private ByteBuffer batchBuffer;
+
+    private UdpTransport(DatagramChannel channel){
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a transport which listens on a port, e.g. for a server
+     * @param port the port to listen on
+     * @return the transport
+     * @throws SocketException if the port is unavailable or the channel could not be opened
+     */
+    public static UdpTransport bind(int port) throws SocketException {
+        return open(new InetSocketAddress(port), null);
+    }
+
+    /**
+     * Opens a transport on any free port which only talks to one address, e.g. for a client
+     * @param address the address to talk to
+     * @return the transport
+     * @throws SocketException if the channel could not be opened
+     */
+    public static UdpTransport connect(SocketAddress address) throws SocketException {
+        return open(null, address);
+    }
+
+    private static UdpTransport open(SocketAddress local, SocketAddress remote) throws SocketException {
+        DatagramChannel channel = null;
+        try {
+            channel = DatagramChannel.open();
+            channel.bind(local);
+            if(remote != null){
+                channel.connect(remote);
+            }
+            return new UdpTransport(channel);
+        }
+        catch (IOException e) {
+            try {
+                if(channel != null){
+                    channel.close();
+                }
+            }
+            catch (IOException ignored) {
+                //The original exception is the one reported
+            }
+            if(e instanceof SocketException){
+                throw (SocketException) e;
+            }
+            throw new SocketException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void send(ByteBuffer data, SocketAddress target) throws IOException {
+        channel.send(data, target);
+    }
+
+    @Override
+    public synchronized void send(ByteBuffer data, SocketAddress[] targets, int count) throws IOException {
+        if(data.isDirect()){
+            Transport.super.send(data, targets, count);
+            return;
+        }
+        if(batchBuffer == null || batchBuffer.capacity() < data.remaining()){
+            batchBuffer = ByteBuffer.allocateDirect(Math.max(data.remaining(), NetworkEngine.MAX_DATAGRAM_SIZE));
+        }
+        batchBuffer.clear();
+        batchBuffer.put(data);
+        batchBuffer.flip();
+        Transport.super.send(batchBuffer, targets, count);
+    }
+
+    @Override
+    public SocketAddress receive(ByteBuffer buffer) throws IOException {
+        DatagramPacket packet = new DatagramPacket(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                buffer.remaining());
+        channel.socket().receive(packet);
+        buffer.position(buffer.position() + packet.getLength());
+        return packet.getSocketAddress();
+    }
+
+    @Override
+    public void setTimeout(int timeout) throws SocketException {
+        channel.socket().setSoTimeout(timeout);
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return new InetSocketAddress(channel.socket().getLocalAddress(), channel.socket().getLocalPort());
+    }
+
+    @Override
+    public void register(NetworkEngine engine, NetworkEngine.PacketHandler handler) {
+        engine.register(channel, handler);
+    }
+
+    @Override
+    public void unregister(NetworkEngine engine) {
+        engine.unregister(channel);
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -13,9 +13,9 @@ import uob.cs.teamproject.sabrewulf.ui.scene.LobbyScene;
 import uob.cs.teamproject.sabrewulf.ui.selectors.MODEL;
 import uob.cs.teamproject.sabrewulf.ui.templates.TextButton;
 import uob.cs.teamproject.sabrewulf.ui.templates.WindowLabel;
+import uob.cs.teamproject.sabrewulf.network.LobbyHandshake;
 import uob.cs.teamproject.sabrewulf.network.NetworkSystem;
 
-import java.io.IOException;
 import java.net.SocketException;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -170,74 +170,154 @@ public class LobbyConfiguration extends VBox {
                             return;
                         }
 
-                        try {
-                            networkSystem.start();
-                        } catch (IOException | ClassNotFoundException | InterruptedException e) {
-                            /* Occurs if a host has not started a server
-                             * or anything goes wrong while loading the game
-                             * (couldn't create or get map, coordinates, etc) */
-                            networkSystem.closeClientSocket();
-                            if(networkSystem.getServer() != null){
-                                networkSystem.closeServerSocket();
-                            }
-                            WindowLabel gameErrorLabel = new WindowLabel("Could not load",
-                                    15);
-                            this.getChildren().add(gameErrorLabel);
-                            return;
-                        } catch (UsernameUnavailableException e) {
-                            WindowLabel usernameErrorLabel = new WindowLabel("Please enter a new username",
-                                    15);
-                            networkSystem.closeClientSocket();
-                            this.getChildren().addAll(usernameErrorLabel,usernameInput, continueButton);
-                            return;
-                        }
-
-                        lobbyScene.removeBackButton();
-                        WindowLabel numPlayersText = new WindowLabel(GameSettings.getNumPlayers() + " player game",
-                                15);
-                        this.getChildren().addAll(numPlayersText);
+                        join();
+                    }
+                }
+            }
+        });
+        continueButton = button;
+    }
 
-                        usernames = networkSystem.getClient().getDataStorage().getUsernames();
-                        for (String s : usernames) {
-                            WindowLabel username = new WindowLabel(s, 10);
-                            username.setTextFill(Color.web("#FFFFFF"));
-                            this.getChildren().add(username);
-                        }
+    /**
+     * Loads the game on the thread of a {@link LobbyHandshake}, so the window keeps responding while the lobby fills,
+     * and shows its progress with a button to cancel it
+     */
+    private void join() {
+        WindowLabel progressLabel = new WindowLabel("Joining game", 15);
+        VBox joined = new VBox();
+        joined.setSpacing(20);
+        joined.setAlignment(CENTER);
+        TextButton cancelButton = new TextButton("Cancel", 15, audio);
+        this.getChildren().addAll(progressLabel, joined, cancelButton);
 
-                        if (GameSettings.getModel() == MODEL.SERVER) {
-                            TextButton startMultiButton = new TextButton("Start Game", 15, audio);
-                            startMultiButton.setOnAction(actionEvent2 -> {
-                                networkSystem.getServer().sendStart();
-                                networkSystem.getClient().getStart();
-                                GameSettings.getGameStateOwner().startGame();
-                            });
-                            this.getChildren().addAll(startMultiButton);
-                        } else {
-                            WindowLabel waitingLabel = new WindowLabel("Waiting for host to start the game",
-                                    15);
-                            this.getChildren().add(waitingLabel);
-                            if(GameSettings.getModel() != MODEL.SERVER){
-                                Thread thread = new Thread(() -> {
-                                    while(true){
-                                        if(networkSystem.getClient().getStart()){
-                                            break;
-                                        }
-                                    }
-                                    Platform.runLater(new Runnable() {
-                                        @Override
-                                        public void run() {
-                                            GameSettings.getGameStateOwner().startGame();
-                                        }
-                                    });
-                                });
-                                thread.start();
-                            }
+        LobbyHandshake handshake = networkSystem.startAsync(new LobbyHandshake.Listener() {
+            @Override
+            public void onProgress(LobbyHandshake.Stage stage, List<String> usernames) {
+                Platform.runLater(() -> {
+                    switch (stage) {
+                        case JOINING:
+                            progressLabel.setText("Joining game");
+                            break;
+                        case WAITING_FOR_PLAYERS:
+                            progressLabel.setText("Waiting for players (" + usernames.size() + "/"
+                                    + GameSettings.getNumPlayers() + ")");
+                            showUsernames(joined, usernames);
+                            break;
+                        case LOADING_MAP:
+                        case LOADING_SPAWNS:
+                            progressLabel.setText("Loading game");
+                            showUsernames(joined, usernames);
+                            break;
+                        case LOADED:
+                            getChildren().removeAll(progressLabel, joined, cancelButton);
+                            showLoaded();
+                            break;
+                        case CANCELLED:
+                            getChildren().removeAll(progressLabel, joined, cancelButton);
+                            closeSockets();
+                            getChildren().addAll(selectNumPlayers, modelSelectionButtons, ipInput, usernameInput,
+                                    continueButton);
+                            break;
+                    }
+                });
+            }
 
-                        }
+            @Override
+            public void onFailed(Exception e) {
+                Platform.runLater(() -> {
+                    getChildren().removeAll(progressLabel, joined, cancelButton);
+                    if (e instanceof UsernameUnavailableException) {
+                        WindowLabel usernameErrorLabel = new WindowLabel("Please enter a new username",
+                                15);
+                        networkSystem.closeClientSocket();
+                        getChildren().addAll(usernameErrorLabel, usernameInput, continueButton);
+                    } else {
+                        /* Occurs if a host has not started a server
+                         * or anything goes wrong while loading the game
+                         * (couldn't create or get map, coordinates, etc) */
+                        closeSockets();
+                        WindowLabel gameErrorLabel = new WindowLabel("Could not load",
+                                15);
+                        getChildren().add(gameErrorLabel);
                     }
-                }
+                });
             }
         });
-        continueButton = button;
+        cancelButton.setOnAction(actionEvent -> {
+            cancelButton.setDisable(true);
+            handshake.cancel();
+        });
+    }
+
+    /**
+     * Lists the usernames of the players which have joined so far
+     * @param joined the box to list them in
+     * @param usernames the usernames
+     */
+    private void showUsernames(VBox joined, List<String> usernames) {
+        joined.getChildren().clear();
+        for (String s : usernames) {
+            WindowLabel username = new WindowLabel(s, 10);
+            username.setTextFill(Color.web("#FFFFFF"));
+            joined.getChildren().add(username);
+        }
+    }
+
+    /**
+     * Shows the players of the loaded game, and the button to start it for the host
+     */
+    private void showLoaded() {
+        lobbyScene.removeBackButton();
+        WindowLabel numPlayersText = new WindowLabel(GameSettings.getNumPlayers() + " player game",
+                15);
+        this.getChildren().addAll(numPlayersText);
+
+        usernames = networkSystem.getClient().getDataStorage().getUsernames();
+        for (String s : usernames) {
+            WindowLabel username = new WindowLabel(s, 10);
+            username.setTextFill(Color.web("#FFFFFF"));
+            this.getChildren().add(username);
+        }
+
+        if (GameSettings.getModel() == MODEL.SERVER) {
+            TextButton startMultiButton = new TextButton("Start Game", 15, audio);
+            startMultiButton.setOnAction(actionEvent2 -> {
+                startMultiButton.setDisable(true);
+                networkSystem.getServer().sendStart();
+                /* wait for the start to come back from the server off the JavaFX thread */
+                Thread thread = new Thread(() -> {
+                    networkSystem.getClient().getStart();
+                    Platform.runLater(() -> GameSettings.getGameStateOwner().startGame());
+                });
+                thread.start();
+            });
+            this.getChildren().addAll(startMultiButton);
+        } else {
+            WindowLabel waitingLabel = new WindowLabel("Waiting for host to start the game",
+                    15);
+            this.getChildren().add(waitingLabel);
+            Thread thread = new Thread(() -> {
+                if(!networkSystem.getClient().awaitStart()){
+                    return;
+                }
+                Platform.runLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        GameSettings.getGameStateOwner().startGame();
+                    }
+                });
+            });
+            thread.start();
+        }
+    }
+
+    /**
+     * Closes the sockets of the client and of the server if there is one
+     */
+    private void closeSockets() {
+        networkSystem.closeClientSocket();
+        if(networkSystem.getServer() != null){
+            networkSystem.closeServerSocket();
+        }
     }
 }
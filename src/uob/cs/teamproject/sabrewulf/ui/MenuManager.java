@@ -1,5 +1,6 @@
 package uob.cs.teamproject.sabrewulf.ui;
 
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.control.Slider;
 import javafx.scene.image.Image;
@@ -9,18 +10,15 @@ import javafx.stage.Stage;
 import uob.cs.teamproject.sabrewulf.audio.Audio;
 import uob.cs.teamproject.sabrewulf.GameSettings;
 import uob.cs.teamproject.sabrewulf.ResourceManager;
-import uob.cs.teamproject.sabrewulf.exceptions.UsernameUnavailableException;
 import uob.cs.teamproject.sabrewulf.input.Input;
 import uob.cs.teamproject.sabrewulf.rendering.Renderer;
 import uob.cs.teamproject.sabrewulf.ui.scene.*;
 import uob.cs.teamproject.sabrewulf.ui.selectors.*;
 import uob.cs.teamproject.sabrewulf.ui.templates.TextButton;
 import uob.cs.teamproject.sabrewulf.ui.templates.WindowLabel;
+import uob.cs.teamproject.sabrewulf.network.LobbyHandshake;
 import uob.cs.teamproject.sabrewulf.network.NetworkSystem;
 
-import java.io.IOException;
-import java.net.PortUnreachableException;
-import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.List;
 import static javafx.geometry.Pos.*;
@@ -278,13 +276,26 @@ public class MenuManager {
                     //shouldn't occur
                     e.printStackTrace();
                 }
-                try {
-                    networkSystem.start();
-                } catch (ClassNotFoundException | IOException | InterruptedException | UsernameUnavailableException e) {
-                    //shouldn't occur
-                    e.printStackTrace();
-                }
-                GameSettings.getGameStateOwner().startGame();
+                /* the game loads on the thread of the handshake, and starts once it has loaded */
+                startButton.setDisable(true);
+                networkSystem.startAsync(new LobbyHandshake.Listener() {
+                    @Override
+                    public void onProgress(LobbyHandshake.Stage stage, List<String> usernames) {
+                        if (stage == LobbyHandshake.Stage.LOADED) {
+                            Platform.runLater(() -> {
+                                startButton.setDisable(false);
+                                GameSettings.getGameStateOwner().startGame();
+                            });
+                        }
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        //shouldn't occur
+                        e.printStackTrace();
+                        Platform.runLater(() -> startButton.setDisable(false));
+                    }
+                });
             }
             if ((GameSettings.getGameMode()) == MODE.MULTIPLAYER && (GameSettings.getDifficulty()) != null) {
                 GameSettings.setNumPlayers(2);
@@ -337,11 +348,7 @@ public class MenuManager {
         hBox.getChildren().add(leaveGameButton);
         hBox.setAlignment(CENTER);
         leaveGameButton.setOnAction(actionEvent -> {
-            try {
-                networkSystem.handleQuit();
-            } catch (SocketTimeoutException | PortUnreachableException e) {
-                e.printStackTrace();
-            }
+            networkSystem.handleQuit();
             menuRoot.getChildren().remove(menu);
             GameSettings.getGameStateOwner().completeGame(FinalScoreScene.COMPLETIONTYPE.QUIT);
         });
@@ -0,0 +1,66 @@
+package uob.cs.teamproject.sabrewulf.ui;
+
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.BackgroundFill;
+import javafx.scene.layout.HBox;
+import javafx.scene.paint.Color;
+import uob.cs.teamproject.sabrewulf.GameSettings;
+import uob.cs.teamproject.sabrewulf.network.NetworkStats;
+import uob.cs.teamproject.sabrewulf.ui.templates.WindowLabel;
+
+import java.util.Locale;
+
+/** Network stats overlay creates a {@link HBox} which shows the quality of the connection to the server, measured
+ *  by {@link NetworkStats}, just below the {@link InGameBar}. It is shown and hidden with the F3 key.
+ */
+public class NetworkStatsOverlay extends HBox {
+
+    /* how often the text is refreshed, in nanoseconds; the statistics only change once a second */
+    private static final long REFRESH_INTERVAL = 250_000_000L;
+
+    private final WindowLabel statsLabel;
+    private long lastRefresh;
+
+    /** Creates a new instance of the overlay, hidden until the player shows it
+     */
+    public NetworkStatsOverlay() {
+        this.setPadding(new Insets(2, 5, 2, 5));
+        this.setBackground(new Background(new BackgroundFill(Color.web("#000000", 0.6), null, null)));
+        this.setAlignment(Pos.CENTER_LEFT);
+        this.setMaxSize(USE_PREF_SIZE, USE_PREF_SIZE);
+        this.setMouseTransparent(true);
+        this.visibleProperty().bind(GameSettings.networkStatsShownProperty());
+
+        statsLabel = new WindowLabel("", 12);
+        statsLabel.setTextFill(Color.web("#FFFFFF"));
+        this.getChildren().add(statsLabel);
+    }
+
+    /** Refreshes the text if the overlay is shown, called every frame
+     * @param now - The timestamp of the frame in nanoseconds
+     * @param stats - The statistics of the connection to the server, or null if there is none
+     */
+    public void update(long now, NetworkStats stats) {
+        if (!isVisible() || stats == null || now - lastRefresh < REFRESH_INTERVAL) {
+            return;
+        }
+        lastRefresh = now;
+        statsLabel.setText(describe(stats));
+    }
+
+    /** @param stats - The statistics of a connection
+     *  @return The statistics as one line of text
+     */
+    public static String describe(NetworkStats stats) {
+        return String.format(Locale.ROOT,
+                "RTT %.0f ms (p99 %.0f)  jitter %.1f ms  loss %.1f%%  out of order %d  "
+                        + "up %d/s %.1f KB/s  down %d/s %.1f KB/s  rate up %.0f/s down %d/s  frame %.0f ms",
+                stats.getRttMean(), stats.getRttP99(), stats.getJitter(), stats.getLossPercent(),
+                stats.getOutOfOrder(),
+                stats.getPacketsSentPerSecond(), stats.getBytesSentPerSecond() / 1024.0,
+                stats.getPacketsReceivedPerSecond(), stats.getBytesReceivedPerSecond() / 1024.0,
+                stats.getSendRate(), stats.getMessagesReceivedPerSecond(), stats.getMaxTick());
+    }
+}